@@ -1,7 +1,6 @@
 package it.unicam.cs.mpgc.jbudget126533;
 
-import it.unicam.cs.mpgc.jbudget126533.model.Ledger;
-import it.unicam.cs.mpgc.jbudget126533.model.TransactionManager;
+import it.unicam.cs.mpgc.jbudget126533.model.PersistenceContext;
 import it.unicam.cs.mpgc.jbudget126533.util.FileSystemUtils;
 import it.unicam.cs.mpgc.jbudget126533.view.ConsoleView;
 import it.unicam.cs.mpgc.jbudget126533.view.GUIView;
@@ -47,10 +46,11 @@ public class App {
             // Crea backup
             FileSystemUtils.createBackup();
 
+            // Console e GUI condividono l'unico registro caricato del contesto di persistenza
             if (args.length == 0) {
-                new App(new ConsoleView(new Ledger(new TransactionManager()))).startGUI();
+                new App(new ConsoleView(PersistenceContext.ledger())).startGUI();
             } else {
-                new App(new ConsoleView(new Ledger(new TransactionManager()))).startConsole();
+                new App(new ConsoleView(PersistenceContext.ledger())).startConsole();
             }
         } catch (Exception e) {
             e.printStackTrace();
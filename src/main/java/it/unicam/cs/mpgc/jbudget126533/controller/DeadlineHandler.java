@@ -154,16 +154,18 @@ public class DeadlineHandler extends BaseHandler<Deadline> {
                     if (planOptional.isPresent()) {
                         AmortizationPlan plan = planOptional.get();
 
-                        // Trova la rata e marcala come pagata
+                        // Trova la rata e marcala come pagata, come unica modifica del registro
                         for (Installment installment : plan.getInstallments()) {
                             if (installment.getNumber() == installmentNumber) {
-                                installment.setPaid(true);
+                                ledger.update(() -> {
+                                    installment.setPaid(true);
 
-                                // Crea la transazione corrispondente
-                                createTransactionFromAmortization(installment, plan);
+                                    // Crea la transazione corrispondente
+                                    createTransactionFromAmortization(installment, plan);
 
-                                // Salva i cambiamenti nei piani di ammortamento
-                                ledger.saveAmortizationPlans();
+                                    // Salva i cambiamenti nei piani di ammortamento
+                                    ledger.saveAmortizationPlans();
+                                });
 
                                 System.out.println("Rata " + installmentNumber + " del piano " + plan.getDescription() + " marcata come pagata");
                                 break;
@@ -203,8 +205,7 @@ public class DeadlineHandler extends BaseHandler<Deadline> {
                     plan.getTags()
             );
 
-            ledger.addTransaction(transaction);
-            ledger.write(transaction);
+            ledger.record(transaction);
 
             System.out.println("Transazione creata: " + transaction.getUser() + " - " + transaction.getMoney() + "€");
 
@@ -225,19 +226,21 @@ public class DeadlineHandler extends BaseHandler<Deadline> {
             for (ScheduledTransaction st : scheduledTransactions) {
                 if (isMatchingScheduledTransaction(st, deadline)) {
 
-                    // Esegui la transazione programmata
-                    ITransaction transaction = st.execute();
+                    // Esegui la transazione programmata e salva la data aggiornata come unica modifica del registro
+                    ITransaction transaction = ledger.update(() -> {
+                        ITransaction executed = st.execute();
+                        if (executed != null) {
+                            ledger.record(executed);
+                            ledger.getScheduledTransactionManager().saveScheduledTransactions();
+                        }
+                        return executed;
+                    });
                     if (transaction != null) {
-                        ledger.addTransaction(transaction);
-                        ledger.write(transaction);
                         found = true;
 
                         System.out.println("✅ Transazione programmata eseguita: " + transaction.getUser() +
                                 " - Importo: " + transaction.getMoney() + "€");
 
-                        // SALVA le modifiche (data aggiornata) nel file JSON
-                        ledger.getScheduledTransactionManager().saveScheduledTransactions();
-
                         // Marca la scadenza come pagata
                         deadline.setPaid(true);
 
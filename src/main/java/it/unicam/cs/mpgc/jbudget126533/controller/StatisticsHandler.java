@@ -5,10 +5,13 @@ import it.unicam.cs.mpgc.jbudget126533.util.AlertManager;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.event.ActionEvent;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 
 import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -20,6 +23,8 @@ import java.util.stream.Collectors;
  *     <li>Calcolare il saldo per un intervallo di date</li>
  *     <li>Determinare il trend del bilancio</li>
  *     <li>Visualizzare il bilancio aggregato per tag</li>
+ *     <li>Visualizzare il bilancio per categoria, sottocategorie comprese</li>
+ *     <li>Disegnare l'andamento del saldo e la spesa mobile a 30 giorni</li>
  * </ul>
  */
 public class StatisticsHandler extends BaseHandler<Map.Entry<String, Double>> {
@@ -33,6 +38,11 @@ public class StatisticsHandler extends BaseHandler<Map.Entry<String, Double>> {
     private final DatePicker dateEndForTrend;
     private final TableView<Map.Entry<String, Double>> tagTable;
     private final ChoiceBox<MovementType> choiceTypeForEachTag;
+    private final ChoiceBox<TimeGranularity> choiceGranularity;
+    private final LineChart<String, Number> timeSeriesChart;
+
+    /** Ampiezza della finestra della spesa mobile, in giorni */
+    private static final int ROLLING_WINDOW_DAYS = 30;
 
     /**
      * Costruttore.
@@ -47,12 +57,16 @@ public class StatisticsHandler extends BaseHandler<Map.Entry<String, Double>> {
      * @param dateEndForTrend       Data di fine periodo per trend
      * @param tagTable              Tabella per visualizzare saldo per tag
      * @param choiceTypeForEachTag  ChoiceBox per selezionare il tipo di movimento per la tabella tag
+     * @param choiceGranularity     ChoiceBox per selezionare l'ampiezza degli intervalli del grafico
+     * @param timeSeriesChart       Grafico dell'andamento nel periodo del trend
      */
     public StatisticsHandler(Ledger ledger, Label balanceForRange, DatePicker dateStartForRange,
                              DatePicker dateEndForRange, ChoiceBox<MovementType> choiceForRange,
                              Label balanceTrend, DatePicker dateStartForTrend, DatePicker dateEndForTrend,
                              TableView<Map.Entry<String, Double>> tagTable,
-                             ChoiceBox<MovementType> choiceTypeForEachTag) {
+                             ChoiceBox<MovementType> choiceTypeForEachTag,
+                             ChoiceBox<TimeGranularity> choiceGranularity,
+                             LineChart<String, Number> timeSeriesChart) {
         super(ledger);
         this.balanceForRange = balanceForRange;
         this.dateStartForRange = dateStartForRange;
@@ -63,6 +77,8 @@ public class StatisticsHandler extends BaseHandler<Map.Entry<String, Double>> {
         this.dateEndForTrend = dateEndForTrend;
         this.tagTable = tagTable;
         this.choiceTypeForEachTag = choiceTypeForEachTag;
+        this.choiceGranularity = choiceGranularity;
+        this.timeSeriesChart = timeSeriesChart;
 
         configureTagTable();
     }
@@ -77,6 +93,9 @@ public class StatisticsHandler extends BaseHandler<Map.Entry<String, Double>> {
 
         choiceTypeForEachTag.getItems().addAll(MovementType.values());
         choiceTypeForEachTag.setValue(MovementType.SPESA);
+
+        choiceGranularity.getItems().addAll(TimeGranularity.values());
+        choiceGranularity.setValue(TimeGranularity.MONTH);
     }
 
     /**
@@ -191,6 +210,44 @@ public class StatisticsHandler extends BaseHandler<Map.Entry<String, Double>> {
         }
     }
 
+    /**
+     * Disegna, per il periodo del trend, il saldo di ogni intervallo e la spesa degli ultimi
+     * {@value #ROLLING_WINDOW_DAYS} giorni alla fine di ciascun intervallo.
+     *
+     * @param actionEvent evento scatenante
+     */
+    public void showTimeSeries(ActionEvent actionEvent) {
+        try {
+            LocalDate startDate = dateStartForTrend.getValue();
+            LocalDate endDate = dateEndForTrend.getValue() != null ? dateEndForTrend.getValue() : LocalDate.now();
+            TimeGranularity granularity = choiceGranularity.getValue();
+
+            if (startDate == null) {
+                AlertManager.showErrorAlert("Seleziona una data di inizio!");
+                return;
+            }
+
+            Map<LocalDate, Double> balances = ledger.balanceSeries(null, granularity, startDate, endDate);
+            Iterator<Double> spending = ledger.rollingBalance(MovementType.SPESA, ROLLING_WINDOW_DAYS,
+                    granularity, startDate, endDate).values().iterator();
+
+            XYChart.Series<String, Number> balanceSeries = new XYChart.Series<>();
+            balanceSeries.setName("Saldo");
+            XYChart.Series<String, Number> spendingSeries = new XYChart.Series<>();
+            spendingSeries.setName("Spesa ultimi " + ROLLING_WINDOW_DAYS + " giorni");
+
+            balances.forEach((period, amount) -> {
+                balanceSeries.getData().add(new XYChart.Data<>(period.toString(), amount));
+                spendingSeries.getData().add(new XYChart.Data<>(period.toString(), Math.abs(spending.next())));
+            });
+
+            timeSeriesChart.getData().setAll(List.of(balanceSeries, spendingSeries));
+
+        } catch (Exception e) {
+            AlertManager.showErrorAlert("Impossibile generare il grafico: " + e.getMessage());
+        }
+    }
+
     /**
      * Configura la tabella dei saldi per tag con le colonne e formattazione dell'importo.
      */
@@ -222,21 +279,14 @@ public class StatisticsHandler extends BaseHandler<Map.Entry<String, Double>> {
      * Calcola le transazioni reali per il periodo.
      */
     private double calculateRealTransactions(MovementType type, LocalDate startDate, LocalDate endDate) {
-        return ledger.getTransaction().stream()
-                .filter(t -> type == null || t.getType().equals(type))
-                .filter(t -> !t.getDate().isBefore(startDate) && !t.getDate().isAfter(endDate))
-                .mapToDouble(ITransaction::getMoney)
-                .sum();
+        return ledger.realBalanceForDates(type, startDate, endDate);
     }
 
     /**
      * Conta le transazioni reali nel periodo.
      */
     private int countRealTransactions(LocalDate startDate, LocalDate endDate) {
-        return (int) ledger.getTransaction().stream()
-                .filter(t -> true)
-                .filter(t -> !t.getDate().isBefore(startDate) && !t.getDate().isAfter(endDate))
-                .count();
+        return ledger.countTransactions(null, startDate, endDate);
     }
 
     /**
@@ -277,6 +327,27 @@ public class StatisticsHandler extends BaseHandler<Map.Entry<String, Double>> {
         }
     }
 
+    /**
+     * Popola la tabella con il totale di ogni categoria, sottocategorie comprese,
+     * nel periodo selezionato per il bilancio (senza data di inizio considera tutto lo storico).
+     * Le categorie restano in ordine gerarchico, ciascuna seguita dalle sue sottocategorie.
+     *
+     * @param actionEvent evento di azione
+     */
+    public void showCategoryTable(ActionEvent actionEvent) {
+        try {
+            MovementType type = choiceTypeForEachTag.getValue();
+            LocalDate startDate = dateStartForRange.getValue();
+            LocalDate endDate = dateEndForRange.getValue();
+
+            Map<String, Double> totals = ledger.realBalanceForTagTree(type, startDate, endDate);
+            refreshTable(tagTable, List.copyOf(totals.entrySet()));
+
+        } catch (Exception e) {
+            AlertManager.showErrorAlert("Impossibile generare la tabella: " + e.getMessage());
+        }
+    }
+
     /**
      * Calcola i pagamenti di ammortamento per il periodo.
      * Restituisce un valore NEGATIVO perché sono spese.
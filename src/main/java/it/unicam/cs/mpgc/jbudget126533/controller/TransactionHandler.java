@@ -100,8 +100,7 @@ public class TransactionHandler extends BaseHandler<ITransaction> {
                         selectedTags
                 );
 
-                ledger.write(transaction);
-                ledger.addTransaction(transaction);
+                ledger.record(transaction);
 
                 updateBalance();
                 refreshTable();
@@ -329,8 +328,8 @@ public class TransactionHandler extends BaseHandler<ITransaction> {
 
     private void rewriteTransactionFile(ArrayList<ITransaction> transactions) {
         try {
-            IFileManagement fileManagement = new FileManagement();
-            fileManagement.writeObject("Movement.json", transactions);
+            IFileManagement fileManagement = PersistenceContext.fileManagement();
+            fileManagement.writeAll(transactions);
             System.out.println("File transazioni aggiornato con " + transactions.size() + " transazioni");
         } catch (Exception e) {
             System.err.println("Errore nel riscrivere il file: " + e.getMessage());
@@ -341,7 +340,7 @@ public class TransactionHandler extends BaseHandler<ITransaction> {
     @Override
     public void refreshTable() {
         if (transactionTable != null) {
-            refreshTable(transactionTable, ledger.getTransaction());
+            refreshTable(transactionTable, ledger.getTransactionSnapshot());
         }
     }
 
@@ -18,10 +18,10 @@ public class AmortizationManager extends BaseManager<AmortizationPlan> {
     /**
      * Costruttore di default.
      * <p>
-     * Inizializza {@link IFileManagement} e carica automaticamente i piani di ammortamento salvati.
+     * Usa il gestore dei file di {@link PersistenceContext} e carica automaticamente i piani di ammortamento salvati.
      */
     public AmortizationManager() {
-        super(new FileManagement(), FilePaths.getFileNameOnly(FilePaths.AMORTIZATION_FILE));
+        super(PersistenceContext.fileManagement(), FilePaths.getFileNameOnly(FilePaths.AMORTIZATION_FILE));
         loadItems();
     }
 
@@ -46,7 +46,7 @@ public class AmortizationManager extends BaseManager<AmortizationPlan> {
                 managedItems.clear();
                 for (AmortizationPlan plan : loadedPlans) {
                     System.out.println("Caricato piano: " + plan.getDescription() + " con " +
-                            plan.getInstallments().size() + " rate");
+                            plan.getNumberOfInstallments() + " rate");
                     managedItems.put(plan.getId(), plan);
                 }
                 System.out.println("Piani di ammortamento caricati: " + managedItems.size());
@@ -58,6 +58,7 @@ public class AmortizationManager extends BaseManager<AmortizationPlan> {
             e.printStackTrace();
             saveItems(); // Crea file vuoto se non esiste
         }
+        itemsChanged();
     }
 
 
@@ -91,7 +92,7 @@ public class AmortizationManager extends BaseManager<AmortizationPlan> {
     }
 
     public List<AmortizationPlan> getAmortizationPlans() {
-        return new ArrayList<>(managedItems.values());
+        return itemsSnapshot();
     }
 
     /**
@@ -103,15 +104,30 @@ public class AmortizationManager extends BaseManager<AmortizationPlan> {
      * @param ledger il registro contabile dove salvare le transazioni generate
      */
     public void processDueInstallments(Ledger ledger) {
-        LocalDate today = LocalDate.now();
+        // Le transazioni generate e le rate marcate come pagate vengono confermate insieme:
+        // dopo un crash una rata non può risultare da pagare se la sua transazione è già registrata
+        WriteAheadLog.atomically(() -> {
+            if (payDueInstallments(ledger)) {
+                itemsChanged();
+                writeItems();
+            }
+        });
+    }
+
+    private boolean payDueInstallments(Ledger ledger) {
         boolean changes = false;
 
+        LocalDate today = LocalDate.now();
+
         for (AmortizationPlan plan : managedItems.values()) {
+            // La bitmap indica le rate da pagare: le rate vengono generate solo se ce n'è almeno una
+            if (plan.countUnpaidBetween(LocalDate.MIN, today) == 0) {
+                continue;
+            }
             for (Installment installment : plan.getInstallments()) {
                 if (!installment.isPaid() && installment.isDue()) {
                     ITransaction transaction = createTransactionFromInstallment(installment, plan);
-                    ledger.addTransaction(transaction);
-                    ledger.write(transaction);
+                    ledger.record(transaction);
 
                     installment.setPaid(true);
                     changes = true;
@@ -122,9 +138,7 @@ public class AmortizationManager extends BaseManager<AmortizationPlan> {
             }
         }
 
-        if (changes) {
-            saveItems();
-        }
+        return changes;
     }
 
     /**
@@ -135,20 +149,13 @@ public class AmortizationManager extends BaseManager<AmortizationPlan> {
      * @return somma totale delle rate future nel periodo
      */
     public double calculateFutureInstallments(LocalDate startDate, LocalDate endDate) {
-        double total = 0;
+        long total = 0;
 
         for (AmortizationPlan plan : managedItems.values()) {
-            for (Installment installment : plan.getInstallments()) {
-                LocalDate dueDate = installment.getDueDate();
-                if (!installment.isPaid() &&
-                        !dueDate.isBefore(startDate) &&
-                        !dueDate.isAfter(endDate)) {
-                    total += installment.getTotalAmount();
-                }
-            }
+            total += plan.unpaidCentsBetween(startDate, endDate);
         }
 
-        return -total;
+        return -Money.toDouble(total);
     }
 
     /**
@@ -1,7 +1,14 @@
 package it.unicam.cs.mpgc.jbudget126533.model;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -9,7 +16,18 @@ import java.util.List;
  * <p>
  * Ogni rata è composta da una quota capitale e una quota interessi,
  * calcolate in base al tasso di interesse annuo e al numero totale di rate.
- * Le rate vengono generate automaticamente alla creazione del piano.
+ * Le rate sono interamente determinate da capitale, tasso, numero di rate e data di inizio:
+ * vengono generate solo quando servono (alla prima chiamata di {@link #getInstallments()})
+ * e lo stato di pagamento è mantenuto in una bitmap, unica informazione sulle rate da salvare.
+ * </p>
+ * <p>
+ * In modalità compatta (predefinita, vedi {@link #setCompactStorage(boolean)}) su file vengono
+ * scritti solo i parametri del piano e la bitmap {@code paidInstallments}; i file con l'elenco
+ * completo delle rate continuano a essere letti.
+ * </p>
+ * <p>
+ * Le fotografie del registro contengono copie di sola lettura ({@link #frozenCopy()}):
+ * pagare una rata del piano gestito non modifica le versioni già pubblicate.
  * </p>
  * <p>
  * Le transazioni reali vengono create solo al momento della scadenza di ciascuna rata,
@@ -19,20 +37,32 @@ import java.util.List;
 public class AmortizationPlan {
     private String id;
     private String description;
-    private double principalAmount;
+    /** Capitale iniziale in centesimi */
+    private long principalCents;
     private double annualInterestRate;
     private int numberOfInstallments;
     private LocalDate startDate;
     private List<ITag> tags;
+
+    /** Rate pagate: il bit {@code n - 1} corrisponde alla rata numero {@code n} */
+    private BitSet paidInstallments;
+
+    /** Rate generate, null finché non vengono richieste */
     private List<Installment> installments;
 
+    /** True per le copie di sola lettura pubblicate nelle {@link LedgerSnapshot} */
+    private boolean frozen;
+
+    /** Se true su file vengono salvati solo i parametri e la bitmap delle rate pagate */
+    private static volatile boolean compactStorage = true;
+
     /**
-     * Costruttore vuoto richiesto per Gson (deserializzazione).
+     * Costruttore vuoto richiesto per la deserializzazione.
      * Inizializza liste vuote.
      */
     public AmortizationPlan() {
-        this.tags = new ArrayList<>();
-        this.installments = new ArrayList<>();
+        this.tags = List.of();
+        this.paidInstallments = new BitSet();
     }
 
     /**
@@ -53,41 +83,54 @@ public class AmortizationPlan {
                             int numberOfInstallments, LocalDate startDate, List<ITag> tags) {
         this.id = id;
         this.description = description;
-        this.principalAmount = principalAmount;
+        this.principalCents = Money.centsOf(principalAmount);
         this.annualInterestRate = annualInterestRate;
         this.numberOfInstallments = numberOfInstallments;
         this.startDate = startDate;
-        this.tags = new ArrayList<>(tags);
-        this.installments = new ArrayList<>();
-        generateInstallments();
+        this.tags = Movement.immutableTags(tags);
+        this.paidInstallments = new BitSet(numberOfInstallments);
+    }
+
+    /**
+     * Sceglie il formato di salvataggio dei piani.
+     *
+     * @param compact true per salvare solo parametri e bitmap delle rate pagate,
+     *                false per salvare anche l'elenco completo delle rate
+     */
+    public static void setCompactStorage(boolean compact) {
+        compactStorage = compact;
     }
 
     /**
      * Genera tutte le rate (installments) del piano usando il metodo francese.
      * Ogni rata ha lo stesso importo complessivo ma quota capitale e interessi variabili.
      */
-    private void generateInstallments() {
+    private List<Installment> generateInstallments() {
+        List<Installment> generated = new ArrayList<>(numberOfInstallments);
         double monthlyRate = annualInterestRate / 12 / 100;
-        double monthlyPayment = calculateMonthlyPayment(principalAmount, monthlyRate, numberOfInstallments);
-        double remainingBalance = principalAmount;
+        long monthlyPayment = getMonthlyPaymentCents();
+        long remainingBalance = principalCents;
 
+        // Importi arrotondati al centesimo rata per rata, come in un piano reale
         for (int i = 1; i <= numberOfInstallments; i++) {
-            double interest = remainingBalance * monthlyRate;
-            double principal = monthlyPayment - interest;
+            long interest = Money.centsOf(Money.toDouble(remainingBalance) * monthlyRate);
+            long principal = monthlyPayment - interest;
             remainingBalance -= principal;
 
             Installment installment = new Installment(
                     i,
                     startDate.plusMonths(i - 1),
-                    principal,
-                    interest,
-                    monthlyPayment,
-                    Math.max(0, remainingBalance),
-                    false,
+                    Money.toDouble(principal),
+                    Money.toDouble(interest),
+                    Money.toDouble(monthlyPayment),
+                    Money.toDouble(Math.max(0, remainingBalance)),
+                    paidInstallments.get(i - 1),
                     id
             );
-            installments.add(installment);
+            installment.attachTo(this);
+            generated.add(installment);
         }
+        return generated;
     }
 
     /**
@@ -113,7 +156,7 @@ public class AmortizationPlan {
     public String getDescription() { return description; }
 
     /** @return capitale iniziale */
-    public double getPrincipalAmount() { return principalAmount; }
+    public double getPrincipalAmount() { return Money.toDouble(principalCents); }
 
     /** @return tasso di interesse annuo (percentuale) */
     public double getAnnualInterestRate() { return annualInterestRate; }
@@ -124,20 +167,263 @@ public class AmortizationPlan {
     /** @return data di inizio del piano */
     public LocalDate getStartDate() { return startDate; }
 
-    /** @return lista dei tag associati (nuova lista indipendente) */
-    public List<ITag> getTags() { return new ArrayList<>(tags); }
+    /** @return lista immutabile dei tag associati */
+    public List<ITag> getTags() { return tags; }
+
+    /**
+     * Restituisce le rate del piano, generandole alla prima richiesta.
+     * Segnare una rata come pagata aggiorna lo stato del piano.
+     *
+     * @return lista immutabile delle rate del piano, condivisa tra le chiamate
+     */
+    public synchronized List<Installment> getInstallments() {
+        if (installments == null) {
+            installments = Collections.unmodifiableList(generateInstallments());
+        }
+        return installments;
+    }
 
-    /** @return lista delle rate del piano (nuova lista indipendente) */
-    public List<Installment> getInstallments() { return new ArrayList<>(installments); }
+    /**
+     * Indica se una rata è stata pagata, senza generare le rate.
+     *
+     * @param number numero della rata (da 1)
+     * @return true se la rata è pagata
+     */
+    public boolean isInstallmentPaid(int number) {
+        return paidInstallments.get(number - 1);
+    }
+
+    /**
+     * Restituisce la data di scadenza di una rata, senza generare le rate.
+     *
+     * @param number numero della rata (da 1)
+     * @return data di scadenza
+     */
+    public LocalDate getInstallmentDueDate(int number) {
+        return startDate.plusMonths(number - 1);
+    }
+
+    /**
+     * Somma l'importo delle rate non pagate con scadenza nell'intervallo, senza generare le rate.
+     * Con il metodo francese tutte le rate hanno lo stesso importo.
+     *
+     * @param start data di inizio (inclusa)
+     * @param end   data di fine (inclusa)
+     * @return totale delle rate non pagate nel periodo
+     */
+    public double unpaidAmountBetween(LocalDate start, LocalDate end) {
+        return Money.toDouble(unpaidCentsBetween(start, end));
+    }
+
+    /**
+     * Come {@link #unpaidAmountBetween(LocalDate, LocalDate)}, ma in centesimi esatti.
+     *
+     * @param start data di inizio (inclusa)
+     * @param end   data di fine (inclusa)
+     * @return totale in centesimi delle rate non pagate nel periodo
+     */
+    public long unpaidCentsBetween(LocalDate start, LocalDate end) {
+        return getMonthlyPaymentCents() * countUnpaidBetween(start, end);
+    }
+
+    /**
+     * Conta le rate non pagate con scadenza nell'intervallo, senza generare le rate.
+     *
+     * @param start data di inizio (inclusa)
+     * @param end   data di fine (inclusa)
+     * @return numero di rate non pagate nel periodo
+     */
+    public int countUnpaidBetween(LocalDate start, LocalDate end) {
+        return unpaidNumbersBetween(start, end).size();
+    }
+
+    /**
+     * Restituisce i numeri delle rate non pagate con scadenza nell'intervallo.
+     *
+     * @param start data di inizio (inclusa)
+     * @param end   data di fine (inclusa)
+     * @return numeri delle rate (da 1) in ordine crescente
+     */
+    public List<Integer> unpaidNumbersBetween(LocalDate start, LocalDate end) {
+        List<Integer> numbers = new ArrayList<>();
+        if (startDate == null) {
+            return numbers;
+        }
+        for (int index = paidInstallments.nextClearBit(0); index < numberOfInstallments;
+             index = paidInstallments.nextClearBit(index + 1)) {
+            LocalDate dueDate = startDate.plusMonths(index);
+            if (dueDate.isAfter(end)) {
+                break;
+            }
+            if (!dueDate.isBefore(start)) {
+                numbers.add(index + 1);
+            }
+        }
+        return numbers;
+    }
+
+    /** @return importo costante di ciascuna rata */
+    public double getMonthlyPayment() {
+        return Money.toDouble(getMonthlyPaymentCents());
+    }
+
+    /** @return importo costante di ciascuna rata, arrotondato al centesimo */
+    public long getMonthlyPaymentCents() {
+        return Money.centsOf(calculateMonthlyPayment(
+                Money.toDouble(principalCents), annualInterestRate / 12 / 100, numberOfInstallments));
+    }
+
+    /**
+     * Aggiorna lo stato di pagamento di una rata; chiamato da {@link Installment#setPaid(boolean)}.
+     *
+     * @throws UnsupportedOperationException se il piano è una copia di sola lettura
+     */
+    synchronized void markPaid(int number, boolean paid) {
+        checkMutable();
+        paidInstallments.set(number - 1, paid);
+    }
+
+    /**
+     * Restituisce una copia di sola lettura del piano, con lo stato di pagamento attuale.
+     * Le rate della copia vengono generate a parte e non possono essere segnate come pagate.
+     *
+     * @return copia immutabile del piano
+     */
+    synchronized AmortizationPlan frozenCopy() {
+        if (frozen) {
+            return this;
+        }
+        AmortizationPlan copy = new AmortizationPlan();
+        copy.id = id;
+        copy.description = description;
+        copy.principalCents = principalCents;
+        copy.annualInterestRate = annualInterestRate;
+        copy.numberOfInstallments = numberOfInstallments;
+        copy.startDate = startDate;
+        copy.tags = tags;
+        copy.paidInstallments = (BitSet) paidInstallments.clone();
+        copy.frozen = true;
+        return copy;
+    }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Piano di ammortamento di sola lettura: " + id);
+        }
+    }
 
     // ===================== SETTERS (necessari per Gson) =====================
 
-    public void setId(String id) { this.id = id; }
+    public void setId(String id) { checkMutable(); this.id = id; }
+
+    public void setPrincipalAmount(double principalAmount) { checkMutable(); this.principalCents = Money.centsOf(principalAmount); }
 
-    public void setPrincipalAmount(double principalAmount) { this.principalAmount = principalAmount; }
+    public void setNumberOfInstallments(int numberOfInstallments) { checkMutable(); this.numberOfInstallments = numberOfInstallments; }
+    public void setStartDate(LocalDate startDate) { checkMutable(); this.startDate = startDate; }
+    public void setTags(List<ITag> tags) { checkMutable(); this.tags = Movement.immutableTags(tags); }
+    public synchronized void setInstallments(List<Installment> installments) {
+        checkMutable();
+        this.installments = List.copyOf(installments);
+        this.paidInstallments = new BitSet(installments.size());
+        for (Installment installment : this.installments) {
+            installment.attachTo(this);
+            if (installment.isPaid()) {
+                paidInstallments.set(installment.getNumber() - 1);
+            }
+        }
+    }
+
+    // ===================== SERIALIZZAZIONE =====================
+
+    /**
+     * Scrive i campi del piano nell'oggetto JSON aperto da {@link ModelTypeAdapters}.
+     *
+     * @param out writer JSON di destinazione
+     * @throws IOException in caso di errore di scrittura
+     */
+    void writeJsonFields(JsonWriter out) throws IOException {
+        out.name("id").value(id);
+        out.name("description").value(description);
+        out.name("principalAmount").value(Money.toDouble(principalCents));
+        out.name("annualInterestRate").value(annualInterestRate);
+        out.name("numberOfInstallments").value(numberOfInstallments);
+        out.name("startDate");
+        ModelTypeAdapters.writeDate(out, startDate);
+        out.name("tags");
+        ModelTypeAdapters.writeTags(out, tags);
+        out.name("paidInstallments");
+        out.beginArray();
+        for (long word : paidInstallments.toLongArray()) {
+            out.value(word);
+        }
+        out.endArray();
+        if (!compactStorage) {
+            out.name("installments");
+            out.beginArray();
+            for (Installment installment : getInstallments()) {
+                ModelTypeAdapters.INSTALLMENT.write(out, installment);
+            }
+            out.endArray();
+        }
+    }
 
-    public void setNumberOfInstallments(int numberOfInstallments) { this.numberOfInstallments = numberOfInstallments; }
-    public void setStartDate(LocalDate startDate) { this.startDate = startDate; }
-    public void setTags(List<ITag> tags) { this.tags = new ArrayList<>(tags); }
-    public void setInstallments(List<Installment> installments) { this.installments = new ArrayList<>(installments); }
+    /**
+     * Legge il valore di un campo del piano.
+     *
+     * @param name nome del campo
+     * @param in   reader JSON posizionato sul valore
+     * @return true se il campo è stato riconosciuto e letto, false se va ignorato
+     * @throws IOException in caso di errore di lettura
+     */
+    boolean readJsonField(String name, JsonReader in) throws IOException {
+        switch (name) {
+            case "id" -> id = ModelTypeAdapters.readString(in);
+            case "description" -> description = ModelTypeAdapters.readString(in);
+            case "principalAmount" -> principalCents = Money.centsOf(in.nextDouble());
+            case "annualInterestRate" -> annualInterestRate = in.nextDouble();
+            case "numberOfInstallments" -> numberOfInstallments = in.nextInt();
+            case "startDate" -> startDate = ModelTypeAdapters.readDate(in);
+            case "tags" -> tags = Movement.immutableTags(ModelTypeAdapters.readTags(in));
+            case "paidInstallments" -> paidInstallments = readBitmap(in);
+            case "installments" -> {
+                // Formato esteso: lo stato di pagamento si ricava dalle rate salvate
+                List<Installment> saved = readInstallments(in);
+                if (saved != null) {
+                    setInstallments(saved);
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BitSet readBitmap(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return new BitSet();
+        }
+        List<Long> words = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            words.add(in.nextLong());
+        }
+        in.endArray();
+        return BitSet.valueOf(words.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    private static List<Installment> readInstallments(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<Installment> installments = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            installments.add(ModelTypeAdapters.INSTALLMENT.read(in));
+        }
+        in.endArray();
+        return installments;
+    }
 }
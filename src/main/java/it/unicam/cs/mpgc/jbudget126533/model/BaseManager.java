@@ -2,26 +2,78 @@ package it.unicam.cs.mpgc.jbudget126533.model;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Classe base astratta per tutti i manager che gestiscono entità con ID.
  * Fornisce funzionalità comuni per la gestione delle mappe e la persistenza.
+ * <p>
+ * La mappa è concorrente perché i salvataggi differiti la leggono dal thread di {@link PersistenceScheduler}.
  */
 public abstract class BaseManager<T> {
-    protected final Map<String, T> managedItems = new HashMap<>();
+    protected final Map<String, T> managedItems = new ConcurrentHashMap<>();
     protected final IFileManagement fileManagement;
     protected final String fileName;
 
+    // Versione degli elementi gestiti e ultima vista immutabile calcolata per quella versione
+    private final AtomicLong itemsVersion = new AtomicLong();
+    private volatile ItemsView<T> itemsView;
+
+    private record ItemsView<T>(long version, List<T> items) {
+    }
+
     protected BaseManager(IFileManagement fileManagement, String fileName) {
         this.fileManagement = fileManagement;
         this.fileName = fileName;
     }
 
     /**
-     * Salva gli elementi gestiti nel file.
+     * Segnala che gli elementi gestiti sono cambiati. La scrittura su file viene
+     * eseguita da {@link PersistenceScheduler}, che raggruppa le modifiche ravvicinate.
      */
     protected void saveItems() {
+        itemsChanged();
+        PersistenceScheduler.schedule(this, this::writeItems);
+    }
+
+    /**
+     * Segnala che la mappa degli elementi è cambiata, invalidando la vista restituita da {@link #itemsSnapshot()}.
+     * Va chiamato dopo ogni modifica di {@link #managedItems} non seguita da {@link #saveItems()}.
+     */
+    protected void itemsChanged() {
+        itemsVersion.incrementAndGet();
+    }
+
+    /**
+     * @return versione degli elementi gestiti, incrementata da {@link #itemsChanged()}
+     */
+    long itemsVersion() {
+        return itemsVersion.get();
+    }
+
+    /**
+     * Restituisce gli elementi gestiti come lista immutabile. La lista viene copiata solo
+     * dopo una modifica: finché la mappa non cambia, le chiamate successive condividono la stessa vista.
+     *
+     * @return lista immutabile degli elementi
+     */
+    protected List<T> itemsSnapshot() {
+        long version = itemsVersion.get();
+        ItemsView<T> view = itemsView;
+        if (view == null || view.version() != version) {
+            view = new ItemsView<>(version, List.copyOf(managedItems.values()));
+            itemsView = view;
+        }
+        return view.items();
+    }
+
+    /**
+     * Scrive subito gli elementi gestiti nel file.
+     */
+    protected void writeItems() {
         try {
             fileManagement.writeObject(fileName, new ArrayList<>(managedItems.values()));
         } catch (Exception e) {
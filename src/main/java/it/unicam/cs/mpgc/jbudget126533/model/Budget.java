@@ -8,11 +8,16 @@ import java.time.LocalDate;
  * Permette di monitorare quanto denaro è stato speso, calcolare l'importo residuo,
  * la percentuale di utilizzo e verificare se il budget è stato superato.
  * </p>
+ * <p>
+ * Un budget è immutabile: l'importo speso aggiornato produce un nuovo oggetto
+ * ({@link #withSpentAmount(double)}), così le fotografie del registro già pubblicate non cambiano.
+ * </p>
  */
 public class Budget {
     private final String category;
-    private final double allocatedAmount;
-    private double spentAmount;
+    /** Importi in centesimi, vedi {@link Money} */
+    private final long allocatedCents;
+    private final long spentCents;
     private final LocalDate startDate;
     private final LocalDate endDate;
 
@@ -26,11 +31,16 @@ public class Budget {
      */
     public Budget(String category, double allocatedAmount,
                   LocalDate startDate, LocalDate endDate) {
+        this(category, Money.centsOf(allocatedAmount), 0, startDate, endDate);
+    }
+
+    private Budget(String category, long allocatedCents, long spentCents,
+                   LocalDate startDate, LocalDate endDate) {
         this.category = category;
-        this.allocatedAmount = allocatedAmount;
+        this.allocatedCents = allocatedCents;
+        this.spentCents = spentCents;
         this.startDate = startDate;
         this.endDate = endDate;
-        this.spentAmount = 0.0;
     }
 
     // ===================== GETTERS =====================
@@ -39,10 +49,10 @@ public class Budget {
     public String getCategory() { return category; }
 
     /** @return importo totale allocato per il budget */
-    public double getAllocatedAmount() { return allocatedAmount; }
+    public double getAllocatedAmount() { return Money.toDouble(allocatedCents); }
 
     /** @return importo già speso */
-    public double getSpentAmount() { return spentAmount; }
+    public double getSpentAmount() { return Money.toDouble(spentCents); }
 
     /** @return data di inizio del budget */
     public LocalDate getStartDate() { return startDate; }
@@ -50,14 +60,18 @@ public class Budget {
     /** @return data di fine del budget */
     public LocalDate getEndDate() { return endDate; }
 
-    // ===================== SETTERS =====================
+    // ===================== COPIE =====================
 
     /**
-     * Aggiorna l'importo speso finora.
+     * Restituisce lo stesso budget con un diverso importo speso.
      *
      * @param spent importo speso
+     * @return questo budget se l'importo non cambia, altrimenti un nuovo budget
      */
-    public void setSpentAmount(double spent) { this.spentAmount = spent; }
+    public Budget withSpentAmount(double spent) {
+        long cents = Money.centsOf(spent);
+        return cents == spentCents ? this : new Budget(category, allocatedCents, cents, startDate, endDate);
+    }
 
     // ===================== METODI DI UTILITÀ =====================
 
@@ -67,7 +81,7 @@ public class Budget {
      * @return importo residuo
      */
     public double getRemainingAmount() {
-        return allocatedAmount - spentAmount;
+        return Money.toDouble(allocatedCents - spentCents);
     }
 
     /**
@@ -76,8 +90,8 @@ public class Budget {
      * @return percentuale di utilizzo (0-100)
      */
     public double getUsagePercentage() {
-        if (allocatedAmount == 0) return 0;
-        return (spentAmount / allocatedAmount) * 100;
+        if (allocatedCents == 0) return 0;
+        return ((double) spentCents / allocatedCents) * 100;
     }
 
     /**
@@ -86,6 +100,6 @@ public class Budget {
      * @return true se l'importo speso è maggiore dell'allocazione
      */
     public boolean isExceeded() {
-        return spentAmount > allocatedAmount;
+        return spentCents > allocatedCents;
     }
 }
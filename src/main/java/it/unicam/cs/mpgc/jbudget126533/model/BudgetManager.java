@@ -39,52 +39,24 @@ public class BudgetManager extends BaseManager<Budget> {
     @Override
     protected void loadItems() {
         try {
-            Type type = new TypeToken<List<BudgetData>>() {}.getType();
-            List<BudgetData> loadedData = fileManagement.readObject(fileName, type);
+            // Letti e scritti con l'adapter di ModelTypeAdapters, che mantiene gli importi in euro
+            Type type = new TypeToken<List<Budget>>() {}.getType();
+            List<Budget> loaded = fileManagement.readObject(fileName, type);
 
-            if (loadedData != null) {
+            if (loaded != null) {
                 managedItems.clear();
-                for (BudgetData data : loadedData) {
-                    managedItems.put(data.category, data.toBudget());
+                for (Budget budget : loaded) {
+                    managedItems.put(budget.getCategory(), budget);
                 }
                 updateAllBudgets();
             }
         } catch (Exception e) {
             System.err.println("Errore nel caricamento dei budget: " + e.getMessage());
         }
+        itemsChanged();
     }
 
 
-    /**
-     * Classe interna per facilitare la serializzazione/deserializzazione dei budget.
-     */
-    private static class BudgetData {
-        String category;
-        double allocatedAmount;
-        double spentAmount;
-        LocalDate startDate;
-        LocalDate endDate;
-
-        BudgetData(Budget budget) {
-            this.category = budget.getCategory();
-            this.allocatedAmount = budget.getAllocatedAmount();
-            this.spentAmount = budget.getSpentAmount();
-            this.startDate = budget.getStartDate();
-            this.endDate = budget.getEndDate();
-        }
-
-        /**
-         * Converte il BudgetData in un oggetto {@link Budget}.
-         *
-         * @return oggetto Budget corrispondente
-         */
-        Budget toBudget() {
-            Budget budget = new Budget(category, allocatedAmount, startDate, endDate);
-            budget.setSpentAmount(spentAmount);
-            return budget;
-        }
-    }
-
     /**
      * Crea o aggiorna un budget per una categoria specifica.
      * Aggiorna immediatamente l'importo speso e salva i budget.
@@ -96,8 +68,7 @@ public class BudgetManager extends BaseManager<Budget> {
      */
     public void setBudget(String category, double amount, LocalDate startDate, LocalDate endDate) {
         Budget budget = new Budget(category, amount, startDate, endDate);
-        updateBudgetSpentAmount(category);
-        addItem(category, budget);
+        addItem(category, budget.withSpentAmount(spentFor(budget)));
     }
 
     /**
@@ -108,7 +79,6 @@ public class BudgetManager extends BaseManager<Budget> {
     public void onNewTransactionAdded(ITransaction transaction) {
         if (transaction.getType() == MovementType.SPESA) {
             updateAllBudgets();
-            saveItems();
         }
     }
 
@@ -118,27 +88,57 @@ public class BudgetManager extends BaseManager<Budget> {
      * @param category categoria del budget da aggiornare
      */
     public void updateBudgetSpentAmount(String category) {
+        if (refreshSpentAmount(category)) {
+            itemsChanged();
+        }
+    }
+
+    private boolean refreshSpentAmount(String category) {
         Budget budget = managedItems.get(category);
-        if (budget != null) {
-            double spent = budgetManagement.balanceForTag(
-                    MovementType.SPESA,
-                    category,
-                    budget.getStartDate(),
-                    budget.getEndDate()
-            );
-            budget.setSpentAmount(Math.abs(spent));
+        if (budget == null) {
+            return false;
         }
+        // Il budget viene sostituito, mai modificato: le fotografie già pubblicate restano coerenti
+        Budget updated = budget.withSpentAmount(spentFor(budget));
+        return updated != budget && managedItems.replace(category, budget, updated);
+    }
+
+    private double spentFor(Budget budget) {
+        return Math.abs(budgetManagement.balanceForTag(
+                MovementType.SPESA,
+                budget.getCategory(),
+                budget.getStartDate(),
+                budget.getEndDate()
+        ));
     }
 
     /**
      * Aggiorna l'importo speso per tutti i budget presenti.
-     * Salva i dati aggiornati su file.
+     * Il salvataggio su file è differito e raggruppato da {@link PersistenceScheduler}.
      */
     public void updateAllBudgets() {
+        if (refreshAllSpentAmounts()) {
+            saveItems();
+        }
+    }
+
+    /**
+     * Aggiorna l'importo speso per tutti i budget e, se è cambiato, li scrive subito:
+     * dentro un'operazione del {@link WriteAheadLog} il file dei budget fa parte dello stesso record.
+     */
+    void updateAllBudgetsNow() {
+        if (refreshAllSpentAmounts()) {
+            itemsChanged();
+            writeItems();
+        }
+    }
+
+    private boolean refreshAllSpentAmounts() {
+        boolean changed = false;
         for (String category : managedItems.keySet()) {
-            updateBudgetSpentAmount(category);
+            changed |= refreshSpentAmount(category);
         }
-        saveItems();
+        return changed;
     }
 
     /**
@@ -0,0 +1,275 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.Arrays;
+
+/**
+ * Proiezione dei flussi di cassa previsti: le occorrenze delle transazioni programmate attive
+ * e le rate di ammortamento non pagate, fino a un orizzonte configurabile.
+ * <p>
+ * Gli eventi sono materializzati in array primitivi ordinati per giorno, con una somma prefissa
+ * per serie (entrate e spese programmate, rate): il totale previsto di un qualunque intervallo
+ * di date è la differenza di due prefissi trovati con una ricerca binaria, O(log n).
+ * </p>
+ * <p>
+ * Le due sorgenti sono tenute separate e rigenerate solo quando cambia la versione del rispettivo
+ * manager ({@link BaseManager#itemsVersion()}): modificare una transazione programmata non ricalcola
+ * le rate e viceversa. La linea temporale finale è la fusione lineare delle due sorgenti.
+ * </p>
+ */
+final class CashFlowProjection {
+
+    /** Orizzonte predefinito, lo stesso usato da {@link TransactionManager#balanceForTag(MovementType, String)} */
+    static final Period DEFAULT_HORIZON = Period.ofYears(10);
+
+    /** Serie delle rate di ammortamento; le transazioni programmate usano l'ordinale del tipo */
+    private static final int INSTALLMENTS = MovementType.values().length;
+    private static final int SERIES = INSTALLMENTS + 1;
+
+    /**
+     * Eventi di una sorgente, ordinati per giorno.
+     */
+    private record Events(long version, long[] days, long[] cents, byte[] series) {
+        private static final Events EMPTY = new Events(-1, new long[0], new long[0], new byte[0]);
+    }
+
+    /**
+     * Linea temporale immutabile: giorni distinti e, per ogni serie, somme e conteggi prefissi.
+     * prefix[s][i] è il totale della serie s nei primi i giorni.
+     */
+    private record Timeline(Events scheduled, Events installments, LocalDate horizonEnd,
+                            long[] days, long[][] prefix, int[][] counts) {
+    }
+
+    private final ScheduledTransactionManager scheduledTransactionManager;
+    private final AmortizationManager amortizationManager;
+    private final Period horizon;
+    private volatile Timeline timeline;
+
+    /**
+     * @param scheduledTransactionManager manager delle transazioni programmate, può essere null
+     * @param amortizationManager         manager dei piani di ammortamento, può essere null
+     * @param horizon                     distanza da oggi dell'ultimo giorno materializzato
+     */
+    CashFlowProjection(ScheduledTransactionManager scheduledTransactionManager,
+                       AmortizationManager amortizationManager, Period horizon) {
+        this.scheduledTransactionManager = scheduledTransactionManager;
+        this.amortizationManager = amortizationManager;
+        this.horizon = horizon;
+    }
+
+    /**
+     * Indica se la proiezione copre la data: oltre l'orizzonte i totali vanno calcolati altrimenti.
+     *
+     * @param date data di fine di un'interrogazione
+     * @return true se la data non supera l'orizzonte
+     */
+    boolean covers(LocalDate date) {
+        return date != null && !date.isAfter(current().horizonEnd());
+    }
+
+    /**
+     * Somma le occorrenze delle transazioni programmate attive nel periodo:
+     * le spese con segno negativo, le entrate con segno positivo.
+     *
+     * @param type  tipo di movimento, null per tutti
+     * @param start data di inizio (inclusa), null per nessun limite
+     * @param end   data di fine (inclusa), entro l'orizzonte
+     * @return totale in centesimi
+     */
+    long scheduledCents(MovementType type, LocalDate start, LocalDate end) {
+        Timeline current = current();
+        if (type != null) {
+            return sum(current, type.ordinal(), start, end);
+        }
+        long total = 0;
+        for (MovementType movementType : MovementType.values()) {
+            total += sum(current, movementType.ordinal(), start, end);
+        }
+        return total;
+    }
+
+    /**
+     * Somma le rate non pagate con scadenza nel periodo.
+     *
+     * @param start data di inizio (inclusa), null per nessun limite
+     * @param end   data di fine (inclusa), entro l'orizzonte
+     * @return totale in centesimi, negativo perché le rate sono spese
+     */
+    long installmentCents(LocalDate start, LocalDate end) {
+        return sum(current(), INSTALLMENTS, start, end);
+    }
+
+    /**
+     * Conta le rate non pagate con scadenza nel periodo.
+     *
+     * @param start data di inizio (inclusa), null per nessun limite
+     * @param end   data di fine (inclusa), entro l'orizzonte
+     * @return numero di rate
+     */
+    int installmentCount(LocalDate start, LocalDate end) {
+        Timeline current = current();
+        int[] range = range(current, start, end);
+        return current.counts()[INSTALLMENTS][range[1]] - current.counts()[INSTALLMENTS][range[0]];
+    }
+
+    private static long sum(Timeline timeline, int series, LocalDate start, LocalDate end) {
+        int[] range = range(timeline, start, end);
+        return timeline.prefix()[series][range[1]] - timeline.prefix()[series][range[0]];
+    }
+
+    /** Posizioni dei prefissi che delimitano i giorni compresi tra start e end */
+    private static int[] range(Timeline timeline, LocalDate start, LocalDate end) {
+        long[] days = timeline.days();
+        int from = start == null ? 0 : firstAtOrAfter(days, start.toEpochDay());
+        int to = end == null ? days.length : firstAtOrAfter(days, end.toEpochDay() + 1);
+        return new int[]{from, Math.max(from, to)};
+    }
+
+    private static int firstAtOrAfter(long[] days, long day) {
+        int index = Arrays.binarySearch(days, day);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Restituisce la linea temporale aggiornata, rigenerando solo le sorgenti cambiate.
+     */
+    private Timeline current() {
+        long scheduledVersion = scheduledTransactionManager != null ? scheduledTransactionManager.itemsVersion() : 0;
+        long installmentsVersion = amortizationManager != null ? amortizationManager.itemsVersion() : 0;
+        Timeline current = timeline;
+        if (current != null && current.scheduled().version() == scheduledVersion
+                && current.installments().version() == installmentsVersion) {
+            return current;
+        }
+        synchronized (this) {
+            current = timeline;
+            LocalDate horizonEnd = current != null ? current.horizonEnd() : LocalDate.now().plus(horizon);
+            Events scheduled = current != null && current.scheduled().version() == scheduledVersion
+                    ? current.scheduled() : scheduledEvents(scheduledVersion, horizonEnd);
+            Events installments = current != null && current.installments().version() == installmentsVersion
+                    ? current.installments() : installmentEvents(installmentsVersion, horizonEnd);
+            current = merge(scheduled, installments, horizonEnd);
+            timeline = current;
+            return current;
+        }
+    }
+
+    private Events scheduledEvents(long version, LocalDate horizonEnd) {
+        EventBuilder builder = new EventBuilder();
+        if (scheduledTransactionManager != null) {
+            for (ScheduledTransaction scheduled : scheduledTransactionManager.getScheduledTransactions()) {
+                if (!scheduled.isActive() || scheduled.getStartDate() == null
+                        || scheduled.getRecurrence() == null || scheduled.getType() == null) {
+                    continue;
+                }
+                long cents = scheduled.getType() == MovementType.SPESA
+                        ? -Math.abs(scheduled.getCents()) : Math.abs(scheduled.getCents());
+                byte series = (byte) scheduled.getType().ordinal();
+                scheduled.getRecurrence()
+                        .occurrences(scheduled.getStartDate(), scheduled.getEndDate(), scheduled.getStartDate(), horizonEnd)
+                        .forEach(date -> builder.add(date.toEpochDay(), cents, series));
+            }
+        }
+        return builder.build(version);
+    }
+
+    private Events installmentEvents(long version, LocalDate horizonEnd) {
+        EventBuilder builder = new EventBuilder();
+        if (amortizationManager != null) {
+            for (AmortizationPlan plan : amortizationManager.getAmortizationPlans()) {
+                if (plan.getStartDate() == null) {
+                    continue;
+                }
+                long cents = -plan.getMonthlyPaymentCents();
+                for (int number : plan.unpaidNumbersBetween(plan.getStartDate(), horizonEnd)) {
+                    builder.add(plan.getStartDate().plusMonths(number - 1).toEpochDay(), cents, (byte) INSTALLMENTS);
+                }
+            }
+        }
+        return builder.build(version);
+    }
+
+    /**
+     * Fonde le due sorgenti ordinate in un'unica linea temporale, raggruppando gli eventi dello stesso giorno.
+     */
+    private static Timeline merge(Events scheduled, Events installments, LocalDate horizonEnd) {
+        int total = scheduled.days().length + installments.days().length;
+        long[] days = new long[total];
+        long[][] prefix = new long[SERIES][total + 1];
+        int[][] counts = new int[SERIES][total + 1];
+
+        int distinct = 0;
+        int i = 0;
+        int j = 0;
+        while (i < scheduled.days().length || j < installments.days().length) {
+            boolean fromScheduled = j == installments.days().length
+                    || (i < scheduled.days().length && scheduled.days()[i] <= installments.days()[j]);
+            Events source = fromScheduled ? scheduled : installments;
+            int index = fromScheduled ? i++ : j++;
+            long day = source.days()[index];
+
+            if (distinct == 0 || days[distinct - 1] != day) {
+                days[distinct++] = day;
+                for (int s = 0; s < SERIES; s++) {
+                    prefix[s][distinct] = prefix[s][distinct - 1];
+                    counts[s][distinct] = counts[s][distinct - 1];
+                }
+            }
+            prefix[source.series()[index]][distinct] += source.cents()[index];
+            counts[source.series()[index]][distinct]++;
+        }
+
+        for (int s = 0; s < SERIES; s++) {
+            prefix[s] = Arrays.copyOf(prefix[s], distinct + 1);
+            counts[s] = Arrays.copyOf(counts[s], distinct + 1);
+        }
+        return new Timeline(scheduled, installments, horizonEnd, Arrays.copyOf(days, distinct), prefix, counts);
+    }
+
+    /**
+     * Raccoglie gli eventi di una sorgente e li ordina per giorno con un ordinamento primitivo.
+     */
+    private static final class EventBuilder {
+        private long[] days = new long[64];
+        private long[] cents = new long[64];
+        private byte[] series = new byte[64];
+        private int size;
+
+        private void add(long day, long amount, byte kind) {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, size * 2);
+                cents = Arrays.copyOf(cents, size * 2);
+                series = Arrays.copyOf(series, size * 2);
+            }
+            days[size] = day;
+            cents[size] = amount;
+            series[size++] = kind;
+        }
+
+        private Events build(long version) {
+            if (size == 0) {
+                return new Events(version, Events.EMPTY.days(), Events.EMPTY.cents(), Events.EMPTY.series());
+            }
+            // Chiave = giorno relativo al minimo nei 32 bit alti, posizione dell'evento nei 32 bassi
+            long minDay = Arrays.stream(days, 0, size).min().getAsLong();
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = (days[i] - minDay) << 32 | i;
+            }
+            Arrays.sort(keys);
+
+            long[] sortedDays = new long[size];
+            long[] sortedCents = new long[size];
+            byte[] sortedSeries = new byte[size];
+            for (int i = 0; i < size; i++) {
+                int index = (int) keys[i];
+                sortedDays[i] = days[index];
+                sortedCents[i] = cents[index];
+                sortedSeries[i] = series[index];
+            }
+            return new Events(version, sortedDays, sortedCents, sortedSeries);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Variante di {@link TransactionManager} che memorizza le transazioni per colonne
+ * (struct-of-arrays) invece che come lista di oggetti.
+ * <p>
+ * Ogni transazione occupa una riga di array primitivi: giorno epoch ({@code int}), importo in
+ * centesimi ({@code long}), tipo ({@code byte}), id della persona e id dell'insieme di tag
+ * ({@code int}). Persone e insiemi di tag sono dizionari condivisi tra le righe, quindi una
+ * transazione costa circa 21 byte invece di alcune centinaia. Saldi, somme per periodo e per tag
+ * sono cicli su array primitivi, che il JIT può srotolare e vettorizzare.
+ * </p>
+ * <p>
+ * Gli oggetti {@link ITransaction} vengono creati solo quando richiesti ({@link #getList()},
+ * calcoli non specializzati, lettura di una riga di {@link #snapshot()}): sono copie indipendenti,
+ * quindi le modifiche vanno riportate con {@link #setList(ArrayList)}, come già avviene per
+ * eliminazioni e sincronizzazione.
+ * Si sceglie alla costruzione del registro: {@code new Ledger(new ColumnarTransactionManager())},
+ * caricato con {@link Ledger#read()} e registrato con {@link PersistenceContext#register(Ledger)}.
+ * </p>
+ */
+public class ColumnarTransactionManager extends TransactionManager {
+
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final byte NO_TYPE = -1;
+
+    /*
+     * Le righe già scritte non cambiano più: gli inserimenti scrivono oltre {@code size} (o in una
+     * copia più grande) e setList riparte da array e dizionari nuovi. Le viste di snapshot() possono
+     * quindi tenere i riferimenti correnti e leggere le prime righe senza il lock del gestore.
+     */
+    private int[] epochDays = new int[16];
+    private long[] amounts = new long[16];
+    private byte[] types = new byte[16];
+    private int[] personIds = new int[16];
+    private int[] tagSetIds = new int[16];
+    private int size;
+
+    /** Saldo di tutte le righe, in centesimi */
+    private long balance;
+
+    /**
+     * Voce del dizionario delle persone: l'utente della transazione e la persona associata.
+     */
+    private record PersonEntry(String user, Person person) {
+    }
+
+    private PersonEntry[] persons = new PersonEntry[4];
+    private int personCount;
+    private final Map<List<String>, Integer> personIdsByKey = new HashMap<>();
+
+    private TagSetDictionary tagSets = new TagSetDictionary();
+
+    /**
+     * Restituisce il saldo mantenuto a ogni inserimento.
+     * @return saldo totale
+     */
+    @Override
+    public synchronized double getBalance() {
+        return Money.toDouble(balance);
+    }
+
+    /**
+     * Aggiunge la transazione come nuova riga delle colonne.
+     * @param transaction la transazione da inserire
+     */
+    @Override
+    public synchronized void insert(ITransaction transaction) {
+        ensureCapacity(size + 1);
+        epochDays[size] = transaction.getDate() != null ? (int) transaction.getDate().toEpochDay() : NO_DATE;
+        amounts[size] = transaction.getCents();
+        types[size] = transaction.getType() != null ? (byte) transaction.getType().ordinal() : NO_TYPE;
+        personIds[size] = personId(transaction);
+        tagSetIds[size] = tagSets.intern(transaction.getTags());
+        balance += amounts[size];
+        size++;
+    }
+
+    /**
+     * Materializza tutte le righe come transazioni indipendenti.
+     * @return lista di transazioni
+     */
+    @Override
+    public synchronized ArrayList<ITransaction> getList() {
+        return new ArrayList<>(rows());
+    }
+
+    /**
+     * Sostituisce tutte le righe con le transazioni indicate.
+     * @param list lista di transazioni da impostare
+     */
+    @Override
+    public synchronized void setList(ArrayList<ITransaction> list) {
+        if (list == null) {
+            return;
+        }
+        int capacity = Math.max(16, list.size());
+        epochDays = new int[capacity];
+        amounts = new long[capacity];
+        types = new byte[capacity];
+        personIds = new int[capacity];
+        tagSetIds = new int[capacity];
+        size = 0;
+        balance = 0;
+        persons = new PersonEntry[4];
+        personCount = 0;
+        personIdsByKey.clear();
+        tagSets = new TagSetDictionary();
+        list.forEach(this::insert);
+    }
+
+    /**
+     * Restituisce una vista sulle righe presenti ora. Crearla costa tempo costante:
+     * ogni riga viene materializzata solo quando viene letta, senza il lock del gestore.
+     * @return vista immutabile delle transazioni
+     */
+    @Override
+    public synchronized List<ITransaction> snapshot() {
+        return rows();
+    }
+
+    @Override
+    public synchronized double realBalanceForDates(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        int from = (int) dateStart.toEpochDay();
+        int to = (int) dateEnd.toEpochDay();
+        int wanted = type != null ? type.ordinal() : NO_TYPE;
+        long total = 0;
+        for (int row = 0; row < size; row++) {
+            int day = epochDays[row];
+            boolean match = day >= from && day <= to && (wanted == NO_TYPE || types[row] == wanted);
+            total += match ? amounts[row] : 0;
+        }
+        return Money.toDouble(total);
+    }
+
+    @Override
+    public synchronized int countForDates(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        int from = (int) dateStart.toEpochDay();
+        int to = (int) dateEnd.toEpochDay();
+        int wanted = type != null ? type.ordinal() : NO_TYPE;
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            int day = epochDays[row];
+            boolean match = day >= from && day <= to && (wanted == NO_TYPE || types[row] == wanted);
+            count += match ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Somma le righe con il tag: gli insiemi di tag che lo contengono vengono individuati
+     * una sola volta sul dizionario, poi il ciclo sulle righe confronta solo interi.
+     */
+    @Override
+    public synchronized double realBalanceForTag(MovementType type, String tag, LocalDate dateStart, LocalDate dateEnd) {
+        boolean[] matchingSets = tagSets.containing(tag);
+
+        int from = dateStart != null ? (int) dateStart.toEpochDay() : Integer.MIN_VALUE;
+        int to = dateEnd != null ? (int) dateEnd.toEpochDay() : Integer.MAX_VALUE;
+        int wanted = type != null ? type.ordinal() : NO_TYPE;
+        long total = 0;
+        for (int row = 0; row < size; row++) {
+            int day = epochDays[row];
+            boolean match = matchingSets[tagSetIds[row]] && day >= from && day <= to
+                    && (wanted == NO_TYPE || types[row] == wanted);
+            total += match ? amounts[row] : 0;
+        }
+        return Money.toDouble(total);
+    }
+
+    /**
+     * Somma le righe per insieme di tag con un unico ciclo sugli array, poi riporta i totali
+     * sulle chiavi testuali del {@link TagSetDictionary}.
+     */
+    @Override
+    public synchronized HashMap<String, Double> balanceForEachTag(MovementType type) {
+        long[] totals = new long[tagSets.size()];
+        boolean[] present = new boolean[tagSets.size()];
+        int wanted = type != null ? type.ordinal() : NO_TYPE;
+        for (int row = 0; row < size; row++) {
+            if (types[row] == wanted) {
+                totals[tagSetIds[row]] += amounts[row];
+                present[tagSetIds[row]] = true;
+            }
+        }
+        return tagSets.totalsByKey(totals, present);
+    }
+
+    @Override
+    protected Stream<ITransaction> transactions() {
+        return snapshot().stream();
+    }
+
+    @Override
+    protected synchronized Stream<ITransaction> transactionsBetween(LocalDate start, LocalDate end) {
+        int from = (int) start.toEpochDay();
+        int to = (int) end.toEpochDay();
+        Rows rows = rows();
+        int[] matching = IntStream.range(0, size)
+                .filter(row -> epochDays[row] >= from && epochDays[row] <= to)
+                .toArray();
+        return Arrays.stream(matching).mapToObj(rows::get);
+    }
+
+    // ==================== METODI PRIVATI ====================
+
+    private Rows rows() {
+        return new Rows(epochDays, amounts, types, personIds, tagSetIds, persons, tagSets, size);
+    }
+
+    /**
+     * Vista sulle prime {@code size} righe delle colonne indicate. Ogni lettura crea la transazione
+     * della riga; persona e tag sono condivisi con le altre righe dello stesso dizionario.
+     */
+    private static final class Rows extends AbstractList<ITransaction> implements RandomAccess {
+        private final int[] epochDays;
+        private final long[] amounts;
+        private final byte[] types;
+        private final int[] personIds;
+        private final int[] tagSetIds;
+        private final PersonEntry[] persons;
+        private final TagSetDictionary tagSets;
+        private final int size;
+
+        private Rows(int[] epochDays, long[] amounts, byte[] types, int[] personIds, int[] tagSetIds,
+                     PersonEntry[] persons, TagSetDictionary tagSets, int size) {
+            this.epochDays = epochDays;
+            this.amounts = amounts;
+            this.types = types;
+            this.personIds = personIds;
+            this.tagSetIds = tagSetIds;
+            this.persons = persons;
+            this.tagSets = tagSets;
+            this.size = size;
+        }
+
+        @Override
+        public ITransaction get(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException(row);
+            }
+            Transaction transaction = new Transaction();
+            PersonEntry entry = persons[personIds[row]];
+            transaction.setPerson(entry.person());
+            transaction.setUser(entry.user());
+            transaction.setMoneyAmount(Money.ofCents(amounts[row]));
+            transaction.setDate(epochDays[row] != NO_DATE ? LocalDate.ofEpochDay(epochDays[row]) : null);
+            transaction.setType(types[row] != NO_TYPE ? MovementType.values()[types[row]] : null);
+            transaction.setTags(tagSets.tags(tagSetIds[row]));
+            return transaction;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private int personId(ITransaction transaction) {
+        Person person = transaction instanceof Movement movement ? movement.getPerson() : null;
+        List<String> key = person == null
+                ? Arrays.asList(transaction.getUser(), null, null, null)
+                : Arrays.asList(transaction.getUser(), person.getName(), person.getEmail(), person.getPhone());
+        return personIdsByKey.computeIfAbsent(key, k -> {
+            if (personCount == persons.length) {
+                persons = Arrays.copyOf(persons, personCount * 2);
+            }
+            persons[personCount] = new PersonEntry(transaction.getUser(), person);
+            return personCount++;
+        });
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= epochDays.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, epochDays.length * 2);
+        epochDays = Arrays.copyOf(epochDays, newCapacity);
+        amounts = Arrays.copyOf(amounts, newCapacity);
+        types = Arrays.copyOf(types, newCapacity);
+        personIds = Arrays.copyOf(personIds, newCapacity);
+        tagSetIds = Arrays.copyOf(tagSetIds, newCapacity);
+    }
+}
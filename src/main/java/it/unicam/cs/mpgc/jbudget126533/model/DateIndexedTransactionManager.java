@@ -0,0 +1,104 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Variante di {@link TransactionManager} che affianca alla lista delle transazioni
+ * un {@link TransactionDateIndex}, ordinato per data e con somme prefisse per tipo.
+ * <p>
+ * Saldi e conteggi per intervallo di date (e quindi {@link #balanceForDates}) non scorrono
+ * più tutta la lista ma costano due ricerche binarie; il saldo totale è mantenuto a ogni inserimento.
+ * Le somme per tag ({@link #balanceForTag}) usano le liste di posizioni per tag dello stesso indice.
+ * Le somme per sottoalbero di tag usano un {@link TagTreeIndex}: gli inserimenti finiscono nel suo
+ * delta, e l'indice viene ricostruito alla prima richiesta dopo che il delta si è riempito,
+ * dopo una sostituzione delle transazioni o dopo una modifica della gerarchia dei tag.
+ * </p>
+ */
+public class DateIndexedTransactionManager extends TransactionManager {
+
+    private final TransactionDateIndex index = new TransactionDateIndex();
+
+    /** Saldo di tutte le transazioni reali, in centesimi; letto senza lock, scritto solo da chi modifica la lista */
+    private volatile long balance;
+
+    private TagTreeIndex tagTree;
+    private int tagTreeVersion;
+
+    /**
+     * Restituisce il saldo mantenuto a ogni inserimento.
+     * @return saldo totale
+     */
+    @Override
+    public double getBalance() {
+        return Money.toDouble(balance);
+    }
+
+    /**
+     * Inserisce la transazione nella lista e nell'indice.
+     * @param transaction la transazione da inserire
+     */
+    @Override
+    public synchronized void insert(ITransaction transaction) {
+        super.insert(transaction);
+        index.add(transaction);
+        balance += transaction.getCents();
+        if (tagTree != null && !tagTree.add(transaction)) {
+            tagTree = null;
+        }
+    }
+
+    /**
+     * Imposta la lista delle transazioni e ricostruisce l'indice.
+     * @param list lista di transazioni da impostare
+     */
+    @Override
+    public synchronized void setList(ArrayList<ITransaction> list) {
+        if (list == null) {
+            return;
+        }
+        super.setList(list);
+        index.rebuild(list);
+        balance = list.stream().mapToLong(ITransaction::getCents).sum();
+        invalidateTagTree();
+    }
+
+    @Override
+    public double realBalanceForDates(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        return index.sum(type, dateStart, dateEnd);
+    }
+
+    @Override
+    public int countForDates(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        return index.count(type, dateStart, dateEnd);
+    }
+
+    @Override
+    public double realBalanceForTag(MovementType type, String tag, LocalDate dateStart, LocalDate dateEnd) {
+        return index.sumForTag(type, tag, dateStart, dateEnd);
+    }
+
+    @Override
+    public double realBalanceForTagSubtree(MovementType type, String tag, LocalDate dateStart, LocalDate dateEnd) {
+        return tagTree().sum(type, tag, dateStart, dateEnd);
+    }
+
+    @Override
+    public Map<String, Double> realBalanceForTagTree(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        return tagTree().totals(type, dateStart, dateEnd);
+    }
+
+    private synchronized void invalidateTagTree() {
+        tagTree = null;
+    }
+
+    private synchronized TagTreeIndex tagTree() {
+        int version = TagManager.hierarchyVersion();
+        if (tagTree == null || tagTreeVersion != version) {
+            tagTree = new TagTreeIndex(snapshot(), TagManager.getAllTags().values());
+            tagTreeVersion = version;
+        }
+        return tagTree;
+    }
+}
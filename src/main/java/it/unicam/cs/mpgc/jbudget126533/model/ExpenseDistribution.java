@@ -0,0 +1,183 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Distribuzione degli importi delle spese reali, per mese e per tag.
+ * <p>
+ * Per ogni mese e per ogni tag (più un insieme con tutte le spese del mese) sono mantenuti,
+ * a ogni inserimento, uno {@link QuantileSketch} sugli importi assoluti e le {@link TopExpenses}
+ * del gruppo. Mediana, 90° e 99° percentile o le spese più grandi di un intervallo di mesi
+ * si ottengono unendo gli sketch dei mesi richiesti, senza scorrere né ordinare le transazioni.
+ * </p>
+ * <p>
+ * I tag sono confrontati senza distinzione tra maiuscole e minuscole e riportati con il primo nome
+ * incontrato. Le spese senza data finiscono nel mese fittizio {@link TransactionCube#NO_MONTH},
+ * incluso solo nelle interrogazioni senza limite inferiore.
+ * </p>
+ */
+final class ExpenseDistribution {
+
+    /** Chiave del gruppo con tutte le spese del mese */
+    private static final String ALL = "";
+
+    /**
+     * Sketch e spese maggiori di un gruppo.
+     */
+    private static final class Bucket {
+        private final QuantileSketch sketch = new QuantileSketch();
+        private final TopExpenses top = new TopExpenses();
+
+        private void add(ITransaction transaction) {
+            sketch.add(Math.abs(transaction.getCents()));
+            top.add(transaction);
+        }
+    }
+
+    /** Mese (come in {@link TransactionCube}) → tag in minuscolo → gruppo */
+    private final NavigableMap<Integer, Map<String, Bucket>> months = new TreeMap<>();
+
+    /** Tag in minuscolo → nome da mostrare */
+    private final Map<String, String> tagNames = new HashMap<>();
+
+    /**
+     * Svuota la distribuzione e la ricalcola dalle transazioni indicate.
+     *
+     * @param transactions transazioni reali del registro
+     */
+    synchronized void rebuild(Collection<ITransaction> transactions) {
+        months.clear();
+        tagNames.clear();
+        transactions.forEach(this::add);
+    }
+
+    /**
+     * Aggiunge una transazione ai gruppi del suo mese, se è una spesa.
+     *
+     * @param transaction transazione da aggiungere
+     */
+    synchronized void add(ITransaction transaction) {
+        if (transaction.getType() != MovementType.SPESA) {
+            return;
+        }
+        int month = transaction.getDate() != null
+                ? TransactionCube.monthIndex(YearMonth.from(transaction.getDate()))
+                : TransactionCube.NO_MONTH;
+        Map<String, Bucket> buckets = months.computeIfAbsent(month, m -> new HashMap<>());
+        buckets.computeIfAbsent(ALL, k -> new Bucket()).add(transaction);
+
+        if (transaction.getTags() == null) {
+            return;
+        }
+        transaction.getTags().stream()
+                .filter(tag -> tag != null && tag.getName() != null)
+                .map(ITag::getName)
+                .distinct()
+                .forEach(name -> {
+                    String key = name.toLowerCase(Locale.ROOT);
+                    tagNames.putIfAbsent(key, name);
+                    buckets.computeIfAbsent(key, k -> new Bucket()).add(transaction);
+                });
+    }
+
+    /**
+     * Unisce gli sketch di un tag sui mesi richiesti.
+     *
+     * @param tag  tag delle spese, null per tutte
+     * @param from primo mese (incluso), null per nessun limite
+     * @param to   ultimo mese (incluso), null per nessun limite
+     * @return sketch degli importi in centesimi, vuoto se non ci sono spese
+     */
+    synchronized QuantileSketch sketch(String tag, YearMonth from, YearMonth to) {
+        String key = key(tag);
+        QuantileSketch merged = new QuantileSketch();
+        for (Map<String, Bucket> buckets : range(from, to).values()) {
+            Bucket bucket = buckets.get(key);
+            if (bucket != null) {
+                merged.merge(bucket.sketch);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Unisce, per ogni tag, gli sketch dei mesi richiesti.
+     *
+     * @param from primo mese (incluso), null per nessun limite
+     * @param to   ultimo mese (incluso), null per nessun limite
+     * @return mappa nome del tag → sketch, in ordine alfabetico
+     */
+    synchronized Map<String, QuantileSketch> sketchesByTag(YearMonth from, YearMonth to) {
+        Map<String, QuantileSketch> byTag = new TreeMap<>();
+        for (Map<String, Bucket> buckets : range(from, to).values()) {
+            buckets.forEach((key, bucket) -> {
+                if (!key.equals(ALL)) {
+                    byTag.computeIfAbsent(tagNames.get(key), k -> new QuantileSketch()).merge(bucket.sketch);
+                }
+            });
+        }
+        return byTag;
+    }
+
+    /**
+     * Restituisce lo sketch di un tag per ogni mese richiesto in cui ci sono spese.
+     * Le spese senza data non sono incluse.
+     *
+     * @param tag  tag delle spese, null per tutte
+     * @param from primo mese (incluso), null per nessun limite
+     * @param to   ultimo mese (incluso), null per nessun limite
+     * @return mappa mese → sketch, in ordine cronologico
+     */
+    synchronized Map<YearMonth, QuantileSketch> sketchesByMonth(String tag, YearMonth from, YearMonth to) {
+        String key = key(tag);
+        Map<YearMonth, QuantileSketch> byMonth = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Map<String, Bucket>> month : range(from, to).entrySet()) {
+            Bucket bucket = month.getValue().get(key);
+            if (month.getKey() != TransactionCube.NO_MONTH && bucket != null) {
+                QuantileSketch copy = new QuantileSketch();
+                copy.merge(bucket.sketch);
+                byMonth.put(TransactionCube.yearMonth(month.getKey()), copy);
+            }
+        }
+        return byMonth;
+    }
+
+    /**
+     * Restituisce le spese più grandi di un tag nei mesi richiesti.
+     *
+     * @param tag   tag delle spese, null per tutte
+     * @param from  primo mese (incluso), null per nessun limite
+     * @param to    ultimo mese (incluso), null per nessun limite
+     * @param limit numero massimo di spese, al più {@link TopExpenses#CAPACITY}
+     * @return spese dalla maggiore alla minore
+     */
+    synchronized List<ITransaction> largest(String tag, YearMonth from, YearMonth to, int limit) {
+        String key = key(tag);
+        TopExpenses merged = new TopExpenses();
+        for (Map<String, Bucket> buckets : range(from, to).values()) {
+            Bucket bucket = buckets.get(key);
+            if (bucket != null) {
+                merged.merge(bucket.top);
+            }
+        }
+        return merged.largest(limit);
+    }
+
+    private NavigableMap<Integer, Map<String, Bucket>> range(YearMonth from, YearMonth to) {
+        int first = from != null ? TransactionCube.monthIndex(from) : TransactionCube.NO_MONTH;
+        int last = to != null ? TransactionCube.monthIndex(to) : Integer.MAX_VALUE;
+        return first > last ? new TreeMap<>() : months.subMap(first, true, last, true);
+    }
+
+    private static String key(String tag) {
+        return tag != null ? tag.toLowerCase(Locale.ROOT) : ALL;
+    }
+}
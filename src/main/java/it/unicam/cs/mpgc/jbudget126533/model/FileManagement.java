@@ -4,140 +4,462 @@ import com.google.gson.*;
 
 import java.util.Collections;
 
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Implementazione di {@link IFileManagement} che gestisce la persistenza
  * di transazioni e oggetti generici su file JSON.
  * <p>
- * La classe utilizza Gson per serializzare e deserializzare oggetti,
- * supporta {@link LocalDate} e {@link ITag}, e salva i dati nella cartella "Data".
+ * La classe utilizza l'istanza Gson condivisa di {@link ModelTypeAdapters}, con adapter
+ * in streaming per tutti i modelli, e salva i dati nella cartella "Data".
  * Fornisce metodi per leggere e scrivere transazioni singole o oggetti generici,
  * gestendo anche file corrotti o mancanti tramite backup e ricreazione.
+ * <p>
+ * In modalità journal (predefinita) le nuove transazioni vengono accodate a un
+ * {@link TransactionJournal} invece di riscrivere l'intero {@code Movement.json};
+ * il journal viene riversato nello snapshot ogni {@value #COMPACTION_THRESHOLD} record
+ * o su richiesta tramite {@link #compact()}.
+ * <p>
+ * Accanto a {@code Movement.json}, che resta il formato di interscambio, viene mantenuto
+ * lo snapshot binario a colonne {@link TransactionSnapshot}, usato per il caricamento
+ * finché l'hash registrato nel manifest conferma che è allineato al JSON.
+ * <p>
+ * Tutte le scritture passano dal {@link WriteAheadLog}: i file vengono preparati in un file
+ * temporaneo e sostituiti con uno spostamento atomico solo dopo che l'operazione è registrata
+ * nel log, così un'interruzione non lascia mai un file a metà.
+ * <p>
+ * Con {@link #enablePartitionedLayout()} le transazioni passano all'archivio partizionato per mese
+ * {@link TransactionPartitions} in {@code Data/movements}: la compattazione del journal riscrive solo
+ * i mesi coinvolti e le letture per intervallo di date aprono solo le partizioni che lo intersecano.
+ * L'archivio partizionato, se presente, viene riconosciuto automaticamente all'avvio.
  */
 public class FileManagement implements IFileManagement {
 
+    /** Numero di record nel journal oltre il quale viene eseguita la compattazione */
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    /** Dimensione del buffer di lettura dei file di dati */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
     private final File MOVEMENT_FILE = new File(FilePaths.MOVEMENT_FILE);
+    private final File SNAPSHOT_FILE = new File(FilePaths.MOVEMENT_SNAPSHOT_FILE);
     private final Gson gson;
+    private final TransactionJournal journal;
+    private final boolean journalEnabled;
+    private final boolean binarySnapshotEnabled;
+    private TransactionPartitions partitions;
 
     public FileManagement() {
+        this(true, true);
+    }
+
+    /**
+     * Costruttore che permette di scegliere la modalità di scrittura delle transazioni.
+     *
+     * @param journalEnabled true per accodare le transazioni al journal,
+     *                       false per riscrivere lo snapshot a ogni inserimento
+     */
+    public FileManagement(boolean journalEnabled) {
+        this(journalEnabled, true);
+    }
+
+    /**
+     * Costruttore che permette di scegliere modalità di scrittura e formato di caricamento delle transazioni.
+     *
+     * @param journalEnabled        true per accodare le transazioni al journal,
+     *                              false per riscrivere lo snapshot a ogni inserimento
+     * @param binarySnapshotEnabled true per affiancare a {@code Movement.json} lo snapshot binario
+     *                              {@code Movement.bin} e caricare da quello quando è aggiornato
+     */
+    public FileManagement(boolean journalEnabled, boolean binarySnapshotEnabled) {
+        this.journalEnabled = journalEnabled;
+        this.binarySnapshotEnabled = binarySnapshotEnabled;
+
+        gson = ModelTypeAdapters.gson();
+
+        // Il journal usa una rappresentazione compatta: un record per riga
+        journal = new TransactionJournal(new File(FilePaths.MOVEMENT_JOURNAL_FILE), gson);
+
         try {
             new File(FilePaths.DATA_DIRECTORY).mkdirs();
 
-            if (!MOVEMENT_FILE.exists()) {
-                MOVEMENT_FILE.createNewFile();
-                try (FileWriter writer = new FileWriter(MOVEMENT_FILE)) {
-                    writer.write("[]");
-                }
-                // Aggiunge il timestamp al file appena creato
-                TimestampManager.updateTimestamp(FilePaths.MOVEMENT_FILE);
+            // Completa le operazioni rimaste a metà prima di leggere qualsiasi file
+            WriteAheadLog.recover();
+
+            if (TransactionPartitions.exists()) {
+                partitions = new TransactionPartitions(this, TransactionPartitions.DEFAULT_RESIDENT_PARTITIONS);
+                // Un crash subito dopo la migrazione può aver lasciato il vecchio snapshot
+                retireSnapshot();
+            } else if (!MOVEMENT_FILE.exists()) {
+                writeEmptySnapshot();
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
-
-        gson = new GsonBuilder()
-                .registerTypeAdapter(ITag.class, new ITagTypeAdapter())
-                .registerTypeAdapter(LocalDate.class, (JsonSerializer<LocalDate>) (src, typeOfSrc, context) -> new JsonPrimitive(src.toString()))
-                .registerTypeAdapter(LocalDate.class, (JsonDeserializer<LocalDate>) (json, typeOfT, context) -> LocalDate.parse(json.getAsString()))
-                .setPrettyPrinting()
-                .create();
     }
 
     @Override
     public void write(ITransaction transaction) {
-        try {
+        if (!journalEnabled && partitions != null) {
+            partitions.addAll(List.of(transaction));
+            return;
+        }
+
+        if (!journalEnabled) {
             List<ITransaction> allTransactions = read();
             allTransactions.add(transaction);
+            writeAll(allTransactions);
+            return;
+        }
 
-            File tempFile = new File(FilePaths.getTempPath("Movement"));
-            try (FileWriter writer = new FileWriter(tempFile)) {
-                gson.toJson(allTransactions, writer);
-            }
+        journal.append(transaction);
+        // La data di modifica cambia solo se l'operazione viene confermata
+        WriteAheadLog.afterCommit(() -> TimestampManager.markModified(FilePaths.MOVEMENT_FILE));
+
+        // Dentro un'operazione atomica la riga appena accodata non è ancora nel journal né nel conteggio
+        WriteAheadLog.afterCommit(this::compactIfFull);
+    }
 
-            if (MOVEMENT_FILE.exists()) {
-                MOVEMENT_FILE.delete();
+    @Override
+    public void writeAll(List<ITransaction> transactions) {
+        // Snapshot e svuotamento del journal in un'unica operazione: un crash non può duplicare i record
+        WriteAheadLog.atomically(() -> {
+            try {
+                if (partitions != null) {
+                    partitions.replaceAll(transactions);
+                } else {
+                    writeSnapshot(transactions);
+                }
+                journal.clear();
+            } catch (IOException e) {
+                System.err.println("Errore di scrittura file: " + e.getMessage());
+                e.printStackTrace();
             }
-            tempFile.renameTo(MOVEMENT_FILE);
+        });
+    }
+
+    /**
+     * Compatta il journal se ha raggiunto la soglia; più richieste nella stessa operazione
+     * atomica producono una sola compattazione.
+     */
+    private void compactIfFull() {
+        if (journal.size() >= COMPACTION_THRESHOLD) {
+            compactNow();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Chiamata durante un'operazione atomica, la compattazione avviene dopo la sua conferma.
+     */
+    @Override
+    public void compact() {
+        WriteAheadLog.afterCommit(this::compactNow);
+    }
+
+    private void compactNow() {
+        if (partitions == null) {
+            writeAll(read());
+            return;
+        }
+
+        // Nell'archivio partizionato si riscrivono solo i mesi delle transazioni accodate
+        List<ITransaction> pending = new ArrayList<>();
+        replayJournal(pending::add);
+        WriteAheadLog.atomically(() -> {
+            partitions.addAll(pending);
+            journal.clear();
+        });
+    }
+
+    @Override
+    public synchronized void enablePartitionedLayout() {
+        if (partitions != null) {
+            return;
+        }
 
-            // Aggiorna il timestamp nella prima riga del file
-            TimestampManager.updateTimestamp(FilePaths.MOVEMENT_FILE);
+        List<ITransaction> transactions = read();
+        TransactionPartitions migrated = new TransactionPartitions(this, TransactionPartitions.DEFAULT_RESIDENT_PARTITIONS);
+        WriteAheadLog.atomically(() -> {
+            migrated.replaceAll(transactions);
+            journal.clear();
+        });
+        partitions = migrated;
+        // Dentro un'operazione atomica più ampia la migrazione non è ancora confermata
+        WriteAheadLog.afterCommit(this::retireSnapshot);
+        System.out.println("Transazioni migrate nell'archivio partizionato: " + transactions.size());
+    }
 
+    /**
+     * Elimina {@code Movement.json} e {@code Movement.bin} dopo la migrazione all'archivio partizionato:
+     * il loro contenuto è già nelle partizioni e una copia ancora presente sembrerebbe un dato valido
+     * a backup e controlli dei file.
+     */
+    private void retireSnapshot() {
+        try {
+            Files.deleteIfExists(MOVEMENT_FILE.toPath());
+            Files.deleteIfExists(SNAPSHOT_FILE.toPath());
         } catch (IOException e) {
-            System.err.println("Errore di scrittura file: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("Impossibile eliminare lo snapshot sostituito dalle partizioni: " + e.getMessage());
         }
     }
 
+    /**
+     * Scrive lo snapshot completo delle transazioni passando per un file temporaneo.
+     */
+    private void writeSnapshot(List<ITransaction> transactions) throws IOException {
+        String hash = writeJson(MOVEMENT_FILE, transactions);
+        writeBinarySnapshot(transactions, hash);
+    }
+
+    /**
+     * Aggiorna lo snapshot binario a partire dalle transazioni appena salvate in JSON.
+     * Un errore non è bloccante: al prossimo avvio si leggerà il JSON.
+     */
+    private void writeBinarySnapshot(List<ITransaction> transactions, String sourceHash) {
+        if (!binarySnapshotEnabled || sourceHash == null) {
+            return;
+        }
+        try {
+            TransactionSnapshot.write(SNAPSHOT_FILE, transactions, sourceHash);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Errore di scrittura dello snapshot binario: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Serializza un oggetto in un file temporaneo e ne affida la sostituzione al
+     * {@link WriteAheadLog}; dimensione e hash, calcolati durante la scrittura,
+     * vengono registrati nel manifest quando la sostituzione è applicata.
+     *
+     * @param target file di destinazione
+     * @param object oggetto da serializzare
+     * @return hash SHA-256 del contenuto scritto
+     * @throws IOException in caso di errore di scrittura
+     */
+    private String writeJson(File target, Object object) throws IOException {
+        File stagedFile = WriteAheadLog.stagedFileFor(target);
+        MessageDigest digest = FileManifest.newDigest();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new DigestOutputStream(new FileOutputStream(stagedFile), digest), StandardCharsets.UTF_8))) {
+            ModelTypeAdapters.toPrettyJson(object, writer);
+        }
+
+        String hash = HexFormat.of().formatHex(digest.digest());
+        WriteAheadLog.replaceFile(target, stagedFile, stagedFile.length(), hash);
+        return hash;
+    }
+
+    /**
+     * Scrive uno snapshot vuoto delle transazioni.
+     */
+    private void writeEmptySnapshot() throws IOException {
+        writeJson(MOVEMENT_FILE, Collections.emptyList());
+    }
+
     @Override
     public ArrayList<ITransaction> read() {
         ArrayList<ITransaction> transactions = new ArrayList<>();
 
-        try {
-            // Legge il file saltando il timestamp
-            String content = TimestampManager.readFileWithoutTimestamp(FilePaths.MOVEMENT_FILE);
+        if (partitions != null) {
+            partitions.forEach(transactions::add);
+            replayJournal(transactions::add);
+            return transactions;
+        }
 
-            if (content.trim().isEmpty()) {
-                return transactions;
+        // Se lo snapshot è corrotto la lista contiene i record recuperati, gli stessi ora salvati su file
+        streamSnapshot(transactions::add);
+        replayJournal(transactions::add);
+
+        return transactions;
+    }
+
+    @Override
+    public void forEachTransaction(Consumer<ITransaction> consumer) {
+        if (partitions != null) {
+            partitions.forEach(consumer);
+        } else {
+            streamSnapshot(consumer);
+        }
+        replayJournal(consumer);
+    }
+
+    @Override
+    public void forEachTransactionBetween(LocalDate start, LocalDate end, Consumer<ITransaction> consumer) {
+        if (partitions == null) {
+            IFileManagement.super.forEachTransactionBetween(start, end, consumer);
+            return;
+        }
+
+        partitions.forEachBetween(start, end, consumer);
+        replayJournal(transaction -> {
+            LocalDate date = transaction.getDate();
+            if (date != null && !date.isBefore(start) && !date.isAfter(end)) {
+                consumer.accept(transaction);
             }
+        });
+    }
+
+    /**
+     * Legge lo snapshot delle transazioni emettendo un record alla volta.
+     * <p>
+     * Se lo snapshot binario è abilitato e allineato al JSON viene letto quello; altrimenti
+     * si legge {@code Movement.json} e lo snapshot binario viene rigenerato.
+     * Il JSON non viene mai caricato interamente in memoria: {@link JsonReader} legge
+     * da un canale bufferizzato e la riga del timestamp viene saltata sul posto.
+     * Se il file è corrotto viene messa da parte una copia e lo snapshot viene riscritto con i
+     * record leggibili, cioè esattamente quelli già emessi al consumer.
+     * </p>
+     *
+     * @param consumer destinatario di ciascuna transazione letta
+     * @return true se lo snapshot è stato letto completamente, false se era corrotto
+     */
+    private boolean streamSnapshot(Consumer<ITransaction> consumer) {
+        if (!MOVEMENT_FILE.exists()) {
+            return true;
+        }
+
+        if (!binarySnapshotEnabled) {
+            return streamJsonSnapshot(consumer);
+        }
+
+        String hash = currentSnapshotHash();
+        if (TransactionSnapshot.read(SNAPSHOT_FILE, hash, consumer)) {
+            return true;
+        }
+
+        // Snapshot binario assente o non aggiornato: si legge il JSON e lo si rigenera
+        List<ITransaction> loaded = new ArrayList<>();
+        boolean complete = streamJsonSnapshot(transaction -> {
+            loaded.add(transaction);
+            consumer.accept(transaction);
+        });
+        if (complete) {
+            writeBinarySnapshot(loaded, hash);
+        }
+        return complete;
+    }
 
-            content = content.trim();
-            if (!content.startsWith("[") || !content.endsWith("]")) {
-                recreateFile();
-                return transactions;
+    /**
+     * Restituisce l'hash di {@code Movement.json} registrato nel manifest.
+     * L'hash viene ricalcolato solo se manca (file scritti prima del manifest) o se la
+     * dimensione registrata non corrisponde più al file, ad esempio dopo una modifica esterna.
+     */
+    private String currentSnapshotHash() {
+        FileManifest.Entry entry = FileManifest.get(FilePaths.MOVEMENT_FILE);
+        String hash = entry != null && entry.size == MOVEMENT_FILE.length() ? entry.sha256 : null;
+        if (hash == null) {
+            try {
+                hash = FileManifest.hashOf(MOVEMENT_FILE);
+                FileManifest.recordHash(FilePaths.MOVEMENT_FILE, MOVEMENT_FILE.length(), hash);
+            } catch (IOException e) {
+                System.err.println("Errore nel calcolo dell'hash delle transazioni: " + e.getMessage());
             }
+        }
+        return hash;
+    }
 
-            Type transactionListType = new TypeToken<ArrayList<Transaction>>(){}.getType();
-            List<Transaction> loadedTransactions = gson.fromJson(content, transactionListType);
+    /**
+     * Legge {@code Movement.json} in streaming.
+     */
+    private boolean streamJsonSnapshot(Consumer<ITransaction> consumer) {
+
+        try (JsonReader reader = openJsonReader(MOVEMENT_FILE)) {
+            if (reader.peek() == JsonToken.END_DOCUMENT) {
+                return true;
+            }
 
-            if (loadedTransactions != null) {
-                transactions.addAll(loadedTransactions);
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Transaction transaction = gson.fromJson(reader, Transaction.class);
+                if (transaction != null) {
+                    consumer.accept(transaction);
+                }
             }
+            reader.endArray();
+            return true;
 
-        } catch (JsonSyntaxException e) {
+        } catch (JsonParseException | MalformedJsonException e) {
             System.err.println("Errore nel parsing del file JSON: " + e.getMessage());
-            recreateFile();
         } catch (Exception e) {
             System.err.println("Errore imprevisto: " + e.getMessage());
             e.printStackTrace();
-            recreateFile();
         }
 
-        return transactions;
+        salvageSnapshot();
+        return false;
     }
 
-    @Override
-    public void writeObject(String fileName, Object object) {
+    /**
+     * Riproduce le transazioni accodate nel journal.
+     */
+    private void replayJournal(Consumer<ITransaction> consumer) {
         try {
-            // Usa il percorso completo
-            String fullPath = FilePaths.getFullPath(fileName);
-            File file = new File(fullPath);
-            file.getParentFile().mkdirs();
-
-            File tempFile = new File(FilePaths.getTempPath(fileName.replace(".json", "")));
-            try (FileWriter writer = new FileWriter(tempFile)) {
-                gson.toJson(object, writer);
-            }
-
-            if (file.exists()) {
-                file.delete();
-            }
-            tempFile.renameTo(file);
-
-            // Aggiorna il timestamp nella prima riga del file
-            TimestampManager.updateTimestamp(fullPath);
-
+            journal.replay(consumer);
         } catch (IOException e) {
-            System.err.println("Errore di scrittura oggetto: " + e.getMessage());
+            System.err.println("Errore di lettura del journal: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    /**
+     * Apre un {@link JsonReader} su un file di dati tramite un canale bufferizzato,
+     * posizionandolo dopo l'eventuale riga del timestamp dei file nel vecchio formato.
+     *
+     * @param file file da leggere
+     * @return reader pronto per il primo token JSON
+     * @throws IOException in caso di errore di apertura
+     */
+    private JsonReader openJsonReader(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        BufferedReader bufferedReader = new BufferedReader(
+                Channels.newReader(channel, StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+        TimestampManager.skipTimestamp(file.getPath(), bufferedReader);
+
+        JsonReader reader = new JsonReader(bufferedReader);
+        reader.setLenient(true);
+        return reader;
+    }
+
+    @Override
+    public void writeObject(String fileName, Object object) {
+        WriteAheadLog.atomically(() -> {
+            try {
+                // Usa il percorso completo
+                String fullPath = FilePaths.getFullPath(fileName);
+                File file = new File(fullPath);
+                file.getParentFile().mkdirs();
+
+                writeJson(file, object);
+
+                // Lo snapshot delle transazioni è stato sostituito: il journal non è più valido
+                if (fullPath.equals(FilePaths.MOVEMENT_FILE)) {
+                    journal.clear();
+                }
+
+            } catch (IOException e) {
+                System.err.println("Errore di scrittura oggetto: " + e.getMessage());
+                e.printStackTrace();
+            }
+        });
+    }
+
     @Override
     public <T> T readObject(String fileName, Class<T> type) {
         return readObjectInternal(fileName, type);
@@ -156,41 +478,69 @@ public class FileManagement implements IFileManagement {
                 return null;
             }
 
-            // Legge il file saltando il timestamp
-            String content = TimestampManager.readFileWithoutTimestamp(fullPath);
-            if (content.trim().isEmpty()) {
-                return null;
+            // Legge il file in streaming saltando il timestamp; un file vuoto produce null
+            try (JsonReader reader = openJsonReader(file)) {
+                return gson.fromJson(reader, type);
             }
 
-            return gson.fromJson(content, type);
-
+        } catch (JsonParseException e) {
+            System.err.println("Errore nel parsing JSON dell'oggetto: " + e.getMessage());
+            // Il file non viene sovrascritto: se ne conserva una copia prima che venga salvato di nuovo
+            quarantine(new File(FilePaths.getFullPath(fileName)));
+            return null;
         } catch (IOException e) {
             System.err.println("Errore di lettura oggetto: " + e.getMessage());
             e.printStackTrace();
             return null;
-        } catch (JsonSyntaxException e) {
-            System.err.println("Errore nel parsing JSON dell'oggetto: " + e.getMessage());
-            writeObject(fileName, Collections.emptyList());
-            return null;
         }
     }
 
 
-    private void recreateFile() {
-        try {
-            File backupFile = new File(FilePaths.getBackupPath("Movement_corrupted"));
-            if (MOVEMENT_FILE.exists()) {
-                java.nio.file.Files.move(MOVEMENT_FILE.toPath(), backupFile.toPath());
+    /**
+     * Recupera uno snapshot corrotto invece di ripartire da una lista vuota.
+     * <p>
+     * Il file originale viene copiato nella cartella dei backup e lo snapshot viene riscritto,
+     * tramite il {@link WriteAheadLog}, con i record leggibili che precedono il primo errore.
+     * Il journal non viene toccato.
+     * </p>
+     */
+    private void salvageSnapshot() {
+        List<ITransaction> readable = new ArrayList<>();
+        try (JsonReader reader = openJsonReader(MOVEMENT_FILE)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Transaction transaction = gson.fromJson(reader, Transaction.class);
+                if (transaction != null) {
+                    readable.add(transaction);
+                }
             }
+        } catch (Exception e) {
+            // Ci si ferma al primo record non leggibile
+        }
 
-            try (FileWriter writer = new FileWriter(MOVEMENT_FILE)) {
-                writer.write("[]");
-            }
-            // Aggiunge il timestamp al file ricreato
-            TimestampManager.updateTimestamp(FilePaths.MOVEMENT_FILE);
+        quarantine(MOVEMENT_FILE);
+        try {
+            writeSnapshot(readable);
+            System.err.println("Snapshot delle transazioni recuperato con " + readable.size() + " record");
         } catch (IOException ex) {
-            System.err.println("Errore nella ricreazione del file: " + ex.getMessage());
+            System.err.println("Errore nel recupero dello snapshot: " + ex.getMessage());
             ex.printStackTrace();
         }
     }
+
+    /**
+     * Copia un file non leggibile nella cartella dei backup.
+     */
+    private void quarantine(File file) {
+        try {
+            if (file.exists()) {
+                File backupFile = new File(FilePaths.getBackupPath(file.getName().replace(".json", "") + "_corrupted"));
+                backupFile.getParentFile().mkdirs();
+                java.nio.file.Files.copy(file.toPath(), backupFile.toPath());
+                System.err.println("Copia del file non leggibile salvata in " + backupFile.getPath());
+            }
+        } catch (IOException ex) {
+            System.err.println("Errore nel salvataggio della copia di " + file.getName() + ": " + ex.getMessage());
+        }
+    }
 }
@@ -0,0 +1,222 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Manifest dei file di dati, salvato in {@link FilePaths#MANIFEST_FILE}.
+ * <p>
+ * Per ogni file registra data dell'ultima modifica, dimensione e hash SHA-256 del contenuto,
+ * così i file di dati restano JSON puro e non devono essere riscritti per aggiornare
+ * un'intestazione. Il manifest viene sostituito in modo atomico (file temporaneo + rename)
+ * ad ogni aggiornamento e tenuto in memoria dopo la prima lettura. Fanno eccezione le date
+ * aggiornate da {@link #touch}, che vengono salvate con il prossimo aggiornamento o con {@link #flush()}.
+ * </p>
+ */
+final class FileManifest {
+
+    /**
+     * Voce del manifest relativa a un singolo file.
+     */
+    static class Entry {
+        String lastModified;
+        long size;
+        String sha256;
+
+        LocalDateTime getLastModified() {
+            return lastModified != null ? LocalDateTime.parse(lastModified) : null;
+        }
+    }
+
+    private static Map<String, Entry> entries;
+
+    /** true se ci sono date aggiornate in memoria e non ancora salvate */
+    private static boolean dirty;
+
+    private FileManifest() {
+        throw new UnsupportedOperationException("Classe di utilità, non istanziabile");
+    }
+
+    /**
+     * Restituisce la voce di un file, o null se il file non è presente nel manifest.
+     *
+     * @param filePath percorso del file di dati
+     * @return voce del manifest
+     */
+    static synchronized Entry get(String filePath) {
+        return entries().get(keyOf(filePath));
+    }
+
+    /**
+     * Restituisce una copia di tutte le voci, indicizzate per percorso completo del file.
+     *
+     * @return mappa percorso → voce
+     */
+    static synchronized Map<String, Entry> getAll() {
+        Map<String, Entry> all = new HashMap<>();
+        entries().forEach((name, entry) -> all.put(FilePaths.getFullPath(name), entry));
+        return all;
+    }
+
+    /**
+     * Registra un file appena scritto di cui dimensione e hash sono già noti.
+     *
+     * @param filePath percorso del file
+     * @param size     dimensione in byte
+     * @param sha256   hash SHA-256 del contenuto in esadecimale
+     * @param time     istante della modifica
+     */
+    static synchronized void record(String filePath, long size, String sha256, LocalDateTime time) {
+        Entry entry = entries().computeIfAbsent(keyOf(filePath), k -> new Entry());
+        entry.lastModified = time.toString();
+        entry.size = size;
+        entry.sha256 = sha256;
+        save();
+    }
+
+    /**
+     * Registra dimensione e hash di un file senza cambiarne la data di modifica,
+     * ad esempio quando l'hash viene calcolato per la prima volta su un file esistente.
+     *
+     * @param filePath percorso del file
+     * @param size     dimensione in byte
+     * @param sha256   hash SHA-256 del contenuto in esadecimale
+     */
+    static synchronized void recordHash(String filePath, long size, String sha256) {
+        Entry entry = entries().computeIfAbsent(keyOf(filePath), k -> new Entry());
+        entry.size = size;
+        entry.sha256 = sha256;
+        save();
+    }
+
+    /**
+     * Aggiorna solo la data di modifica di un file (ad esempio dopo una scrittura in coda).
+     * La modifica resta in memoria fino al prossimo salvataggio del manifest: una scrittura
+     * in coda non deve riscriverlo per intero.
+     *
+     * @param filePath percorso del file
+     * @param time     istante della modifica
+     */
+    static synchronized void touch(String filePath, LocalDateTime time) {
+        Entry entry = entries().computeIfAbsent(keyOf(filePath), k -> new Entry());
+        entry.lastModified = time.toString();
+        dirty = true;
+    }
+
+    /**
+     * Salva il manifest se contiene date aggiornate da {@link #touch} e non ancora scritte.
+     */
+    static synchronized void flush() {
+        if (dirty) {
+            save();
+        }
+    }
+
+    /**
+     * Importa il timestamp letto dall'intestazione di un file nel vecchio formato,
+     * se il file non è ancora presente nel manifest. Non forza un salvataggio.
+     *
+     * @param filePath percorso del file
+     * @param time     timestamp letto dall'intestazione
+     */
+    static synchronized void importLegacy(String filePath, LocalDateTime time) {
+        entries().computeIfAbsent(keyOf(filePath), k -> {
+            Entry entry = new Entry();
+            entry.lastModified = time.toString();
+            entry.size = new File(filePath).length();
+            return entry;
+        });
+    }
+
+    /**
+     * Calcola l'hash SHA-256 di un file leggendolo in streaming.
+     *
+     * @param file file da analizzare
+     * @return hash in esadecimale
+     * @throws IOException in caso di errore di lettura
+     */
+    static String hashOf(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(new BufferedInputStream(new FileInputStream(file)), digest)) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // il digest viene aggiornato dallo stream
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Crea un nuovo {@link MessageDigest} SHA-256.
+     *
+     * @return digest pronto all'uso
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    // ==================== METODI PRIVATI ====================
+
+    private static String keyOf(String filePath) {
+        return FilePaths.getFileNameOnly(filePath);
+    }
+
+    private static Map<String, Entry> entries() {
+        if (entries == null) {
+            entries = load();
+        }
+        return entries;
+    }
+
+    private static Map<String, Entry> load() {
+        File file = new File(FilePaths.MANIFEST_FILE);
+        if (file.exists()) {
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                Type type = new TypeToken<HashMap<String, Entry>>() {}.getType();
+                Map<String, Entry> loaded = ModelTypeAdapters.gson().fromJson(reader, type);
+                if (loaded != null) {
+                    return loaded;
+                }
+            } catch (IOException | JsonParseException e) {
+                System.err.println("Manifest non leggibile, verrà ricostruito: " + e.getMessage());
+            }
+        }
+        return new HashMap<>();
+    }
+
+    private static void save() {
+        Path target = Path.of(FilePaths.MANIFEST_FILE);
+        Path temp = Path.of(FilePaths.MANIFEST_FILE + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            Files.writeString(temp, ModelTypeAdapters.toPrettyJson(entries), StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            dirty = false;
+        } catch (IOException e) {
+            System.err.println("Errore nel salvataggio del manifest: " + e.getMessage());
+        }
+    }
+}
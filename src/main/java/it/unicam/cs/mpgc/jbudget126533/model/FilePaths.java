@@ -1,5 +1,7 @@
 package it.unicam.cs.mpgc.jbudget126533.model;
 
+import java.io.File;
+
 /**
  * Classe che contiene tutti i percorsi dei file persistenti dell'applicazione.
  * Centralizza la gestione dei path per facilitare la manutenzione e la consistenza.
@@ -12,6 +14,23 @@ public final class FilePaths {
     // File per le transazioni
     public static final String MOVEMENT_FILE = DATA_DIRECTORY + "/Movement.json";
 
+    // Journal append-only delle transazioni non ancora compattate nello snapshot
+    public static final String MOVEMENT_JOURNAL_FILE = DATA_DIRECTORY + "/Movement.journal";
+
+    // Snapshot binario delle transazioni, cache di MOVEMENT_FILE
+    public static final String MOVEMENT_SNAPSHOT_FILE = DATA_DIRECTORY + "/Movement.bin";
+
+    // Archivio delle transazioni partizionato per mese, con il relativo indice;
+    // dopo la migrazione sostituisce MOVEMENT_FILE, che viene eliminato
+    public static final String MOVEMENTS_DIRECTORY = DATA_DIRECTORY + "/movements";
+    public static final String MOVEMENTS_INDEX_FILE = MOVEMENTS_DIRECTORY + "/index.json";
+
+    // Write-ahead log delle operazioni che modificano più file
+    public static final String WAL_FILE = DATA_DIRECTORY + "/wal.log";
+
+    // Manifest con timestamp, dimensione e hash di ciascun file di dati
+    public static final String MANIFEST_FILE = DATA_DIRECTORY + "/manifest.json";
+
     // File per i tag
     public static final String TAG_FILE = DATA_DIRECTORY + "/Tags.json";
     public static final String ALL_TAGS_FILE = DATA_DIRECTORY + "/AllTags.json";
@@ -30,6 +49,16 @@ public final class FilePaths {
         throw new UnsupportedOperationException("Questa è una classe di utilità e non può essere istanziata");
     }
 
+    /**
+     * Indica se le transazioni sono salvate nell'archivio partizionato di {@link #MOVEMENTS_DIRECTORY}
+     * anziché in {@link #MOVEMENT_FILE}.
+     *
+     * @return true se l'indice delle partizioni è presente
+     */
+    public static boolean isPartitionedLayout() {
+        return new File(MOVEMENTS_INDEX_FILE).exists();
+    }
+
     /**
      * Restituisce il nome del file senza il percorso della directory.
      *
@@ -4,7 +4,10 @@ import it.unicam.cs.mpgc.jbudget126533.util.Pair;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
 /**
@@ -64,6 +67,86 @@ public interface IBudgetManagement {
      */
     double balanceForDates(MovementType type, LocalDate dateStart, LocalDate dateEnd);
 
+    /**
+     * Somma le sole transazioni reali in un intervallo di date, escluse programmate e rate.
+     *
+     * @param type      tipo di movimento da filtrare (può essere null per includere tutti)
+     * @param dateStart data di inizio (inclusa)
+     * @param dateEnd   data di fine (inclusa)
+     * @return somma degli importi nell’intervallo
+     */
+    default double realBalanceForDates(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        return Money.toDouble(snapshot().stream()
+                .filter(t -> type == null || t.getType().equals(type))
+                .filter(t -> !t.getDate().isBefore(dateStart) && !t.getDate().isAfter(dateEnd))
+                .mapToLong(ITransaction::getCents)
+                .sum());
+    }
+
+    /**
+     * Conta le transazioni reali in un intervallo di date.
+     *
+     * @param type      tipo di movimento da filtrare (può essere null per includere tutti)
+     * @param dateStart data di inizio (inclusa)
+     * @param dateEnd   data di fine (inclusa)
+     * @return numero di transazioni nell’intervallo
+     */
+    default int countForDates(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        return (int) snapshot().stream()
+                .filter(t -> type == null || t.getType().equals(type))
+                .filter(t -> !t.getDate().isBefore(dateStart) && !t.getDate().isAfter(dateEnd))
+                .count();
+    }
+
+    /**
+     * Somma le sole transazioni reali con un tag, escluse programmate e rate.
+     *
+     * @param type      tipo di movimento da filtrare (può essere null per includere tutti)
+     * @param tag       nome del tag (senza distinzione tra maiuscole e minuscole)
+     * @param dateStart data di inizio (inclusa), null per nessun limite
+     * @param dateEnd   data di fine (inclusa), null per nessun limite
+     * @return somma degli importi con il tag
+     */
+    default double realBalanceForTag(MovementType type, String tag, LocalDate dateStart, LocalDate dateEnd) {
+        return Money.toDouble(snapshot().stream()
+                .filter(t -> type == null || t.getType().equals(type))
+                .filter(t -> dateStart == null || !t.getDate().isBefore(dateStart))
+                .filter(t -> dateEnd == null || !t.getDate().isAfter(dateEnd))
+                .filter(t -> t.hasTag(tag))
+                .mapToLong(ITransaction::getCents)
+                .sum());
+    }
+
+    /**
+     * Somma le transazioni reali che hanno il tag indicato o uno dei suoi discendenti
+     * nella gerarchia di {@link TagManager}; ogni transazione è contata una sola volta.
+     * <p>
+     * L'implementazione di base costruisce un {@link TagTreeIndex} temporaneo;
+     * le implementazioni indicizzate lo mantengono tra una chiamata e l'altra.
+     * </p>
+     *
+     * @param type      tipo di movimento da filtrare (può essere null per includere tutti)
+     * @param tag       nome del tag radice del sottoalbero
+     * @param dateStart data di inizio (inclusa), null per nessun limite
+     * @param dateEnd   data di fine (inclusa), null per nessun limite
+     * @return somma degli importi nel sottoalbero
+     */
+    default double realBalanceForTagSubtree(MovementType type, String tag, LocalDate dateStart, LocalDate dateEnd) {
+        return new TagTreeIndex(snapshot(), TagManager.getAllTags().values()).sum(type, tag, dateStart, dateEnd);
+    }
+
+    /**
+     * Calcola il totale delle transazioni reali di ogni categoria, sottocategorie comprese.
+     *
+     * @param type      tipo di movimento da filtrare (può essere null per includere tutti)
+     * @param dateStart data di inizio (inclusa), null per nessun limite
+     * @param dateEnd   data di fine (inclusa), null per nessun limite
+     * @return mappa {percorso del tag → totale}, con ogni categoria seguita dalle sue sottocategorie
+     */
+    default Map<String, Double> realBalanceForTagTree(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        return new TagTreeIndex(snapshot(), TagManager.getAllTags().values()).totals(type, dateStart, dateEnd);
+    }
+
     /**
      * Calcola il saldo relativo a un tag in un intervallo di date.
      *
@@ -90,6 +173,16 @@ public interface IBudgetManagement {
      */
     ArrayList<ITransaction> getList();
 
+    /**
+     * Restituisce una vista immutabile delle transazioni reali, da usare quando serve solo leggerle.
+     * Le implementazioni che mantengono viste condivise la restituiscono senza copiarla.
+     *
+     * @return vista non modificabile delle transazioni
+     */
+    default List<ITransaction> snapshot() {
+        return Collections.unmodifiableList(getList());
+    }
+
     /**
      * Imposta la lista di transazioni.
      *
@@ -97,6 +190,17 @@ public interface IBudgetManagement {
      */
     void setList(ArrayList<ITransaction> list);
 
+    /**
+     * Carica le transazioni dalla persistenza inserendole una alla volta,
+     * senza materializzare l'intera lista letta da file.
+     *
+     * @param fileManagement sorgente delle transazioni
+     */
+    default void load(IFileManagement fileManagement) {
+        setList(new ArrayList<>());
+        fileManagement.forEachTransaction(this::insert);
+    }
+
     /**
      * Imposta il gestore delle transazioni programmate.
      *
@@ -127,6 +231,17 @@ public interface IBudgetManagement {
      */
     double calculateScheduledTagTransactionsForPeriod(MovementType type, String tag, LocalDate start, LocalDate end);
 
+    /**
+     * Calcola il saldo previsto in un intervallo di tempo: transazioni programmate
+     * e, per le spese, rate di ammortamento non pagate.
+     *
+     * @param type  tipo di movimento ({@link MovementType}) da filtrare (null per tutti)
+     * @param start data di inizio (inclusa)
+     * @param end   data di fine (inclusa)
+     * @return saldo previsto nel periodo
+     */
+    double forecastBalance(MovementType type, LocalDate start, LocalDate end);
+
     /**
      * Imposta il gestore dei piani di ammortamento.
      *
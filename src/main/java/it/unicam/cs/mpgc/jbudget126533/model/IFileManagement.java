@@ -1,7 +1,10 @@
 package it.unicam.cs.mpgc.jbudget126533.model;
 
 import java.lang.reflect.Type;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Interfaccia per la gestione della persistenza delle transazioni e oggetti generici.
@@ -18,6 +21,52 @@ public interface IFileManagement {
      */
     ArrayList<ITransaction> read();
 
+    /**
+     * Legge le transazioni memorizzate emettendole una alla volta, senza
+     * materializzare in memoria l'intero file né l'intera lista.
+     *
+     * @param consumer destinatario di ciascuna transazione letta
+     */
+    void forEachTransaction(Consumer<ITransaction> consumer);
+
+    /**
+     * Emette le transazioni con data compresa nell'intervallo (estremi inclusi).
+     * L'implementazione predefinita scorre tutte le transazioni; un archivio
+     * partizionato per data può leggere solo le partizioni interessate.
+     *
+     * @param start    data di inizio
+     * @param end      data di fine
+     * @param consumer destinatario di ciascuna transazione nell'intervallo
+     */
+    default void forEachTransactionBetween(LocalDate start, LocalDate end, Consumer<ITransaction> consumer) {
+        forEachTransaction(transaction -> {
+            LocalDate date = transaction.getDate();
+            if (date != null && !date.isBefore(start) && !date.isAfter(end)) {
+                consumer.accept(transaction);
+            }
+        });
+    }
+
+    /**
+     * Passa all'archivio delle transazioni partizionato per mese, migrando i dati esistenti.
+     * Le implementazioni che non lo supportano ignorano la richiesta.
+     */
+    default void enablePartitionedLayout() {
+    }
+
+    /**
+     * Sostituisce l'intero insieme delle transazioni memorizzate
+     * (ad esempio dopo un'eliminazione o una sincronizzazione).
+     *
+     * @param transactions nuova lista completa di transazioni
+     */
+    void writeAll(List<ITransaction> transactions);
+
+    /**
+     * Riversa nello snapshot principale le transazioni accodate nel journal.
+     */
+    void compact();
+
     /**
      * Scrive un oggetto generico in un file specifico.
      *
@@ -1,13 +1,19 @@
 package it.unicam.cs.mpgc.jbudget126533.model;
 
-import com.google.gson.*;
-import java.lang.reflect.Type;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 
 /**
  * Adapter personalizzato per la (de)serializzazione degli oggetti {@link ITag}
  * tramite la libreria Gson.
  * <p>
- * Questo adapter converte un tag in JSON e viceversa
+ * Questo adapter converte un tag in JSON e viceversa in streaming,
+ * senza costruire un {@code JsonObject} intermedio per ogni tag.
  * </p>
  *
  * <h2>Esempio di serializzazione</h2>
@@ -30,53 +36,85 @@ import java.lang.reflect.Type;
  *   <li>Gestisce il collegamento al tag padre (se presente).</li>
  * </ul>
  */
-public class ITagTypeAdapter implements JsonSerializer<ITag>, JsonDeserializer<ITag> {
+public class ITagTypeAdapter extends TypeAdapter<ITag> {
 
     /**
-     * Serializza un oggetto {@link ITag} in formato JSON.
+     * Serializza un oggetto {@link ITag} in formato JSON scrivendo direttamente sul {@link JsonWriter}.
      * <p>
      * Per evitare cicli infiniti nella gerarchia dei tag, viene salvato
      * solamente il nome del parent (se presente).
      * </p>
      *
-     * @param tag       il tag da serializzare
-     * @param typeOfSrc tipo della sorgente
-     * @param context   contesto di serializzazione Gson
-     * @return rappresentazione JSON del tag
+     * @param out il writer JSON di destinazione
+     * @param tag il tag da serializzare
+     * @throws IOException in caso di errore di scrittura
      */
     @Override
-    public JsonElement serialize(ITag tag, Type typeOfSrc, JsonSerializationContext context) {
-        JsonObject jsonObject = new JsonObject();
-        jsonObject.addProperty("name", tag.getName());
-        jsonObject.addProperty("color", tag.getColor());
-        jsonObject.addProperty("description", tag.getDescription());
+    public void write(JsonWriter out, ITag tag) throws IOException {
+        if (tag == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("name").value(tag.getName());
+        out.name("color").value(tag.getColor());
+        out.name("description").value(tag.getDescription());
 
         // Serializza SOLO il nome del parent per evitare loop infiniti
         if (tag.getParent() != null) {
-            jsonObject.addProperty("parentName", tag.getParent().getName());
+            out.name("parentName").value(tag.getParent().getName());
         }
-
-        return jsonObject;
+        out.endObject();
     }
 
     /**
-     * Deserializza un oggetto {@link ITag} da un JSON.
+     * Deserializza un oggetto {@link ITag} leggendo i campi in streaming dal {@link JsonReader}.
      * <p>
      * L'adapter cerca prima se il tag esiste già nel {@link TagManager}.
      * Se esiste, viene restituito quello. Altrimenti, viene creato un nuovo {@link Tag}.
      * </p>
      *
-     * @param json     rappresentazione JSON del tag
-     * @param typeOfT  tipo target da deserializzare
-     * @param context  contesto di deserializzazione Gson
+     * @param in il reader JSON posizionato sul tag
      * @return istanza di {@link ITag} corrispondente al JSON
-     * @throws JsonParseException se il JSON non è valido o incompleto
+     * @throws IOException        in caso di errore di lettura
+     * @throws JsonParseException se il JSON non contiene il nome del tag
      */
     @Override
-    public ITag deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
-        JsonObject jsonObject = json.getAsJsonObject();
-        String tagName = jsonObject.get("name").getAsString();
+    public ITag read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
 
+        String name = null;
+        String color = null;
+        String description = null;
+        String parentName = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "name" -> name = ModelTypeAdapters.readString(in);
+                case "color" -> color = ModelTypeAdapters.readString(in);
+                case "description" -> description = ModelTypeAdapters.readString(in);
+                case "parentName" -> parentName = ModelTypeAdapters.readString(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (name == null) {
+            throw ModelTypeAdapters.missingField("name");
+        }
+        return resolve(name, color, description, parentName);
+    }
+
+    /**
+     * Restituisce il tag corrispondente ai campi serializzati, riusando quello
+     * già registrato nel {@link TagManager} se esiste.
+     * Usato sia dalla deserializzazione JSON sia dallo snapshot binario.
+     */
+    static ITag resolve(String tagName, String color, String description, String parentName) {
         // Cerca se il tag esiste già nel TagManager
         ITag existingTag = TagManager.getTag(tagName);
         if (existingTag != null) {
@@ -86,17 +124,16 @@ public class ITagTypeAdapter implements JsonSerializer<ITag>, JsonDeserializer<I
         // Se non esiste, crea un nuovo tag
         Tag tag = new Tag(tagName);
 
-        if (jsonObject.has("color")) {
-            tag.setColor(jsonObject.get("color").getAsString());
+        if (color != null) {
+            tag.setColor(color);
         }
 
-        if (jsonObject.has("description")) {
-            tag.setDescription(jsonObject.get("description").getAsString());
+        if (description != null) {
+            tag.setDescription(description);
         }
 
         // Gestione del parent DOPO la creazione del tag
-        if (jsonObject.has("parentName")) {
-            String parentName = jsonObject.get("parentName").getAsString();
+        if (parentName != null) {
             ITag parent = TagManager.getTag(parentName);
             if (parent != null) {
                 tag.setParent(parent);
@@ -89,6 +89,34 @@ public interface ITransaction {
      */
     void setMoney(double money);
 
+    /**
+     * Restituisce l'importo esatto della transazione in centesimi.
+     * Le aggregazioni sommano questo valore per non accumulare errori di arrotondamento.
+     *
+     * @return importo in centesimi (positivo per guadagni, negativo per spese)
+     */
+    default long getCents() {
+        return Money.centsOf(getMoney());
+    }
+
+    /**
+     * Restituisce l'importo della transazione come {@link Money}.
+     *
+     * @return importo della transazione
+     */
+    default Money getMoneyAmount() {
+        return Money.ofCents(getCents());
+    }
+
+    /**
+     * Imposta l'importo della transazione.
+     *
+     * @param amount importo (positivo per guadagni, negativo per spese)
+     */
+    default void setMoneyAmount(Money amount) {
+        setMoney(amount.toDouble());
+    }
+
     /**
      * Restituisce la data in cui è avvenuta la transazione.
      *
@@ -1,5 +1,9 @@
 package it.unicam.cs.mpgc.jbudget126533.model;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
 
@@ -20,11 +24,15 @@ import java.util.ArrayList;
  */
 public class Installment extends Transaction {
     private int number;
-    private double principalAmount;
-    private double interestAmount;
+    /** Quota capitale e quota interessi in centesimi */
+    private long principalCents;
+    private long interestCents;
     private boolean paid;
     private String planId;
 
+    /** Piano che ha generato la rata, a cui viene notificato il pagamento */
+    private transient AmortizationPlan plan;
+
     public Installment() {
         super();
         super.setType(MovementType.SPESA);
@@ -48,8 +56,8 @@ public class Installment extends Transaction {
                        double remainingBalance, boolean paid, String planId) {
         super(MovementType.SPESA, new Person("Sistema"), totalAmount, dueDate, new ArrayList<>());
         this.number = number;
-        this.principalAmount = principalAmount;
-        this.interestAmount = interestAmount;
+        this.principalCents = Money.centsOf(principalAmount);
+        this.interestCents = Money.centsOf(interestAmount);
         this.paid = paid;
         this.planId = planId;
     }
@@ -63,7 +71,7 @@ public class Installment extends Transaction {
     public LocalDate getDueDate() { return super.getDate(); }
 
     /** @return quota interessi della rata */
-    public double getInterestAmount() { return interestAmount; }
+    public double getInterestAmount() { return Money.toDouble(interestCents); }
 
     /** @return importo totale della rata */
     public double getTotalAmount() { return super.getMoney(); }
@@ -83,12 +91,56 @@ public class Installment extends Transaction {
 
     // ==================== SETTERS ====================
 
-    public void setPaid(boolean paid) { this.paid = paid; }
+    /**
+     * Segna la rata come pagata o da pagare, aggiornando il piano che l'ha generata.
+     *
+     * @param paid nuovo stato di pagamento
+     * @throws UnsupportedOperationException se la rata appartiene a una copia di sola lettura del piano
+     */
+    public void setPaid(boolean paid) {
+        // Prima il piano, che rifiuta la modifica se è una copia pubblicata in una fotografia
+        if (plan != null) {
+            plan.markPaid(number, paid);
+        }
+        this.paid = paid;
+    }
 
+    /**
+     * Collega la rata al piano che l'ha generata.
+     */
+    void attachTo(AmortizationPlan plan) {
+        this.plan = plan;
+    }
+
+
+    @Override
+    void writeJsonFields(JsonWriter out) throws IOException {
+        out.name("number").value(number);
+        out.name("principalAmount").value(Money.toDouble(principalCents));
+        out.name("interestAmount").value(Money.toDouble(interestCents));
+        out.name("paid").value(paid);
+        out.name("planId").value(planId);
+        super.writeJsonFields(out);
+    }
+
+    @Override
+    boolean readJsonField(String name, JsonReader in) throws IOException {
+        switch (name) {
+            case "number" -> number = in.nextInt();
+            case "principalAmount" -> principalCents = Money.centsOf(in.nextDouble());
+            case "interestAmount" -> interestCents = Money.centsOf(in.nextDouble());
+            case "paid" -> paid = in.nextBoolean();
+            case "planId" -> planId = ModelTypeAdapters.readString(in);
+            default -> {
+                return super.readJsonField(name, in);
+            }
+        }
+        return true;
+    }
 
     @Override
     public String toString() {
         return String.format("Rata %d: %.2f€ (C: %.2f€, I: %.2f€) - Scadenza: %s",
-                number, getTotalAmount(), principalAmount, interestAmount, getDueDate());
+                number, getTotalAmount(), Money.toDouble(principalCents), getInterestAmount(), getDueDate());
     }
 }
@@ -2,12 +2,19 @@ package it.unicam.cs.mpgc.jbudget126533.model;
 
 import it.unicam.cs.mpgc.jbudget126533.util.Pair;
 
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Classe principale che funge da registro centrale dell'applicazione.
@@ -21,37 +28,75 @@ import java.util.function.Function;
  * </ul>
  * Collabora con i manager specifici (BudgetManager, ScheduledTransactionManager,
  * AmortizationManager, DeadlineManager) e con l'interfaccia {@link IBudgetManagement}.
+ * <p>
+ * Il registro può essere letto e modificato da thread diversi. Le modifiche sono eseguite
+ * una alla volta (un solo scrittore) e al loro termine viene pubblicata una nuova
+ * {@link LedgerSnapshot}; chi legge con {@link #snapshot()} non prende lock e non vede mai
+ * una modifica a metà. Con {@link #submit(Runnable)} una modifica viene eseguita in background.
+ * </p>
  */
 public class Ledger {
 
-    private final IFileManagement fileManagement = new FileManagement();
+    private final IFileManagement fileManagement;
     private final IBudgetManagement budgetManagement;
     private final BudgetManager budgetManager;
     private final ScheduledTransactionManager scheduledTransactionManager;
     private final AmortizationManager amortizationManager;
     private final DeadlineManager deadlineManager;
 
+    /** Aggregati per mese, tag, tipo e persona; ricalcolati alla prima richiesta dopo una lettura o una sostituzione della lista */
+    private final TransactionCube cube = new TransactionCube();
+    private boolean cubeStale = true;
+
+    /** Somme giornaliere per tipo, per le serie temporali; ricalcolate come il cubo */
+    private final TransactionTimeSeries timeSeries = new TransactionTimeSeries();
+    private boolean timeSeriesStale = true;
+
+    /** Sketch dei quantili e spese maggiori per mese e tag; ricalcolati come il cubo */
+    private final ExpenseDistribution expenses = new ExpenseDistribution();
+    private boolean expensesStale = true;
+
+    /** Protegge cubo, serie temporali e distribuzione delle spese: l'inserimento nella lista e il loro aggiornamento avvengono insieme */
+    private final Object aggregatesLock = new Object();
+
+    /** Thread unico che esegue le modifiche inviate con {@link #submit(Runnable)} */
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jbudget-ledger-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Tenuto da chi modifica il registro per tutta la durata della modifica; chi legge non lo prende mai */
+    private final Object writeLock = new Object();
+    private int writeDepth;
+    private long version;
+    private volatile LedgerSnapshot snapshot;
+
+    /** Vero dopo una lettura riuscita da file: solo un registro caricato può riscrivere i dati su disco */
+    private volatile boolean loaded;
+
     /**
      * Costruttore del Ledger.
-     * Inizializza i manager e carica i tag.
+     * Inizializza i manager sul gestore dei file condiviso di {@link PersistenceContext}.
+     * Il registro parte vuoto: va caricato con {@link #read()} e, per farne il registro principale,
+     * registrato con {@link PersistenceContext#register(Ledger)}.
      *
      * @param budgetManagement l'implementazione dell'interfaccia per la gestione dei budget
      */
     public Ledger(IBudgetManagement budgetManagement) {
-        IFileManagement fileManagement = new FileManagement();
-        TagManager.setFileManagement(fileManagement);
-        TagManager.loadAllTags();
+        this.fileManagement = PersistenceContext.fileManagement();
         this.budgetManagement = budgetManagement;
         this.budgetManager = new BudgetManager(budgetManagement, this, fileManagement);
         this.scheduledTransactionManager = new ScheduledTransactionManager(this, fileManagement);
         this.budgetManagement.setScheduledTransactionManager(scheduledTransactionManager);
-        this.amortizationManager = new AmortizationManager(fileManagement);
+        this.amortizationManager = PersistenceContext.amortizationManager();
         this.deadlineManager = new DeadlineManager(
                 scheduledTransactionManager,
                 amortizationManager,
                 budgetManager
         );
         this.budgetManagement.setAmortizationManager(amortizationManager);
+        publish();
     }
 
     /**
@@ -67,7 +112,7 @@ public class Ledger {
      * Salva i piani di ammortamento correnti.
      */
     public void saveAmortizationPlans() {
-        amortizationManager.save();
+        update(amortizationManager::save);
     }
 
     /**
@@ -76,9 +121,37 @@ public class Ledger {
      * @param transaction transazione da aggiungere
      */
     public void addTransaction(ITransaction transaction) {
-        budgetManagement.insert(transaction);
-        budgetManager.onNewTransactionAdded(transaction);
-        updateBudgets();
+        update(() -> {
+            insert(transaction);
+            budgetManager.onNewTransactionAdded(transaction);
+            updateBudgets();
+        });
+    }
+
+    /**
+     * Registra una nuova transazione: la scrive su file e la aggiunge al registro
+     * come un'unica operazione atomica del {@link WriteAheadLog}, insieme ai budget il cui
+     * importo speso è cambiato.
+     *
+     * Se l'operazione non può essere registrata nel log o applicata ai file, il registro torna
+     * al contenuto dei file e l'errore viene rilanciato.
+     *
+     * @param transaction transazione da registrare
+     * @throws UncheckedIOException se la transazione non è stata salvata
+     */
+    public void record(ITransaction transaction) {
+        update(() -> {
+            try {
+                WriteAheadLog.atomically(() -> {
+                    write(transaction);
+                    insert(transaction);
+                    budgetManager.updateAllBudgetsNow();
+                });
+            } catch (UncheckedIOException e) {
+                reloadTransactions();
+                throw e;
+            }
+        });
     }
 
     /**
@@ -91,14 +164,27 @@ public class Ledger {
     }
 
     /**
-     * Legge le transazioni da file e aggiorna la lista nel budgetManagement.
+     * Legge le transazioni da file in streaming e le carica nel budgetManagement.
      */
     public void read() {
-        try {
-            budgetManagement.setList(fileManagement.read());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        update(() -> {
+            try {
+                budgetManagement.load(fileManagement);
+                loaded = true;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            invalidateAggregates();
+        });
+    }
+
+    /**
+     * Indica se le transazioni sono state lette da file con {@link #read()}.
+     *
+     * @return true se il registro è stato caricato
+     */
+    public boolean isLoaded() {
+        return loaded;
     }
 
     /**
@@ -135,14 +221,259 @@ public class Ledger {
         return budgetManagement.balanceForDates(type, dateStart, dateEnd);
     }
 
+    /**
+     * Somma le sole transazioni reali tra due date, senza programmate né rate di ammortamento.
+     *
+     * @param type      tipo di movimento, null per tutti
+     * @param dateStart data di inizio
+     * @param dateEnd   data di fine
+     * @return somma degli importi nel periodo
+     */
+    public double realBalanceForDates(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        return budgetManagement.realBalanceForDates(type, dateStart, dateEnd);
+    }
+
+    /**
+     * Conta le transazioni reali tra due date.
+     *
+     * @param type      tipo di movimento, null per tutti
+     * @param dateStart data di inizio
+     * @param dateEnd   data di fine
+     * @return numero di transazioni nel periodo
+     */
+    public int countTransactions(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        return budgetManagement.countForDates(type, dateStart, dateEnd);
+    }
+
+    /**
+     * Somma le sole transazioni reali con un tag, eventualmente limitate a un periodo.
+     *
+     * @param type      tipo di movimento, null per tutti
+     * @param tag       nome del tag
+     * @param dateStart data di inizio, null per nessun limite
+     * @param dateEnd   data di fine, null per nessun limite
+     * @return somma degli importi con il tag
+     */
+    public double realBalanceForTag(MovementType type, String tag, LocalDate dateStart, LocalDate dateEnd) {
+        return budgetManagement.realBalanceForTag(type, tag, dateStart, dateEnd);
+    }
+
+    /**
+     * Somma le sole transazioni reali di una categoria e di tutte le sue sottocategorie.
+     * Una transazione con più tag della stessa categoria è contata una volta sola.
+     *
+     * @param type      tipo di movimento, null per tutti
+     * @param tag       nome del tag radice della categoria
+     * @param dateStart data di inizio, null per nessun limite
+     * @param dateEnd   data di fine, null per nessun limite
+     * @return somma degli importi nel sottoalbero
+     */
+    public double realBalanceForTagSubtree(MovementType type, String tag, LocalDate dateStart, LocalDate dateEnd) {
+        return budgetManagement.realBalanceForTagSubtree(type, tag, dateStart, dateEnd);
+    }
+
+    /**
+     * Calcola il totale delle transazioni reali di ogni categoria, sottocategorie comprese.
+     *
+     * @param type      tipo di movimento, null per tutti
+     * @param dateStart data di inizio, null per nessun limite
+     * @param dateEnd   data di fine, null per nessun limite
+     * @return mappa percorso del tag -> totale, in ordine gerarchico
+     */
+    public Map<String, Double> realBalanceForTagTree(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        return budgetManagement.realBalanceForTagTree(type, dateStart, dateEnd);
+    }
+
     /**
      * Calcola il bilancio per ciascun tag.
+     * Il risultato viene dal cubo degli aggregati, senza scorrere le transazioni.
      *
      * @param type tipo di movimento
      * @return mappa tag -> valore
      */
     public HashMap<String, Double> balanceForEachTag(MovementType type) {
-        return budgetManagement.balanceForEachTag(type);
+        return new HashMap<>(toEuro(withCube(c -> c.sumByTagSet(type, null, null, null, null))));
+    }
+
+    /**
+     * Crea un'interrogazione componibile sulle transazioni reali, eseguita con
+     * il piano di accesso più efficiente tra cubo degli aggregati, indici e scansione.
+     *
+     * @return nuova interrogazione senza filtri
+     */
+    public TransactionQuery query() {
+        return new TransactionQuery(this, budgetManagement);
+    }
+
+    /**
+     * Somma le transazioni reali in un intervallo di mesi, eventualmente filtrate per tag e persona.
+     *
+     * @param type   tipo di movimento, null per tutti
+     * @param tag    tag che la transazione deve avere, null per tutti
+     * @param person utente della transazione, null per tutti
+     * @param from   primo mese (incluso), null per nessun limite
+     * @param to     ultimo mese (incluso), null per nessun limite
+     * @return somma degli importi
+     */
+    public double balanceForMonths(MovementType type, String tag, String person, YearMonth from, YearMonth to) {
+        return Money.toDouble(withCube(c -> c.sum(type, tag, person, from, to)));
+    }
+
+    /**
+     * Conta le transazioni reali in un intervallo di mesi, eventualmente filtrate per tag e persona.
+     *
+     * @param type   tipo di movimento, null per tutti
+     * @param tag    tag che la transazione deve avere, null per tutti
+     * @param person utente della transazione, null per tutti
+     * @param from   primo mese (incluso), null per nessun limite
+     * @param to     ultimo mese (incluso), null per nessun limite
+     * @return numero di transazioni
+     */
+    public int countForMonths(MovementType type, String tag, String person, YearMonth from, YearMonth to) {
+        return withCube(c -> c.count(type, tag, person, from, to));
+    }
+
+    /**
+     * Scompone mese per mese il saldo delle transazioni reali.
+     *
+     * @param type   tipo di movimento, null per tutti
+     * @param tag    tag che la transazione deve avere, null per tutti
+     * @param person utente della transazione, null per tutti
+     * @param from   primo mese (incluso), null per nessun limite
+     * @param to     ultimo mese (incluso), null per nessun limite
+     * @return mappa mese -> valore, in ordine cronologico
+     */
+    public Map<YearMonth, Double> balanceForEachMonth(MovementType type, String tag, String person,
+                                                      YearMonth from, YearMonth to) {
+        return toEuro(withCube(c -> c.sumByMonth(type, tag, person, from, to)));
+    }
+
+    /**
+     * Calcola il saldo di ogni singolo tag in un intervallo di mesi: una transazione
+     * con più tag contribuisce al totale di ciascuno.
+     *
+     * @param type tipo di movimento, null per tutti
+     * @param from primo mese (incluso), null per nessun limite
+     * @param to   ultimo mese (incluso), null per nessun limite
+     * @return mappa tag -> valore
+     */
+    public Map<String, Double> balanceForEachSingleTag(MovementType type, YearMonth from, YearMonth to) {
+        return toEuro(withCube(c -> c.sumByTag(type, null, null, from, to)));
+    }
+
+    /**
+     * Calcola il saldo di ogni persona in un intervallo di mesi.
+     *
+     * @param type tipo di movimento, null per tutti
+     * @param from primo mese (incluso), null per nessun limite
+     * @param to   ultimo mese (incluso), null per nessun limite
+     * @return mappa utente -> valore
+     */
+    public Map<String, Double> balanceForEachPerson(MovementType type, YearMonth from, YearMonth to) {
+        return toEuro(withCube(c -> c.sumByPerson(type, null, null, from, to)));
+    }
+
+    /**
+     * Stima i quantili degli importi delle spese in un intervallo di mesi, ad esempio
+     * la mediana (0.5) o il 90° percentile (0.9). L'errore sul rango è di circa l'1%.
+     *
+     * @param tag       tag delle spese, null per tutte
+     * @param from      primo mese (incluso), null per nessun limite
+     * @param to        ultimo mese (incluso), null per nessun limite
+     * @param quantiles quantili tra 0 e 1
+     * @return mappa quantile -> importo assoluto, vuota se non ci sono spese
+     */
+    public Map<Double, Double> expenseQuantiles(String tag, YearMonth from, YearMonth to, double... quantiles) {
+        return toEuro(withExpenses(e -> e.sketch(tag, from, to)), quantiles);
+    }
+
+    /**
+     * Stima i quantili degli importi delle spese di ogni singolo tag in un intervallo di mesi.
+     *
+     * @param from      primo mese (incluso), null per nessun limite
+     * @param to        ultimo mese (incluso), null per nessun limite
+     * @param quantiles quantili tra 0 e 1
+     * @return mappa tag -> (quantile -> importo assoluto), in ordine alfabetico
+     */
+    public Map<String, Map<Double, Double>> expenseQuantilesByTag(YearMonth from, YearMonth to, double... quantiles) {
+        Map<String, Map<Double, Double>> map = new LinkedHashMap<>();
+        withExpenses(e -> e.sketchesByTag(from, to)).forEach((tag, sketch) -> map.put(tag, toEuro(sketch, quantiles)));
+        return map;
+    }
+
+    /**
+     * Stima i quantili degli importi delle spese di ogni mese in cui ce ne sono.
+     *
+     * @param tag       tag delle spese, null per tutte
+     * @param from      primo mese (incluso), null per nessun limite
+     * @param to        ultimo mese (incluso), null per nessun limite
+     * @param quantiles quantili tra 0 e 1
+     * @return mappa mese -> (quantile -> importo assoluto), in ordine cronologico
+     */
+    public Map<YearMonth, Map<Double, Double>> expenseQuantilesByMonth(String tag, YearMonth from, YearMonth to,
+                                                                       double... quantiles) {
+        Map<YearMonth, Map<Double, Double>> map = new LinkedHashMap<>();
+        withExpenses(e -> e.sketchesByMonth(tag, from, to)).forEach((month, sketch) -> map.put(month, toEuro(sketch, quantiles)));
+        return map;
+    }
+
+    /**
+     * Restituisce le spese di importo maggiore in un intervallo di mesi.
+     *
+     * @param tag   tag delle spese, null per tutte
+     * @param from  primo mese (incluso), null per nessun limite
+     * @param to    ultimo mese (incluso), null per nessun limite
+     * @param limit numero massimo di spese (al più 50)
+     * @return spese dalla maggiore alla minore
+     */
+    public List<ITransaction> largestExpenses(String tag, YearMonth from, YearMonth to, int limit) {
+        return withExpenses(e -> e.largest(tag, from, to, limit));
+    }
+
+    /**
+     * Scompone il saldo delle transazioni reali per giorno, settimana, mese o anno, ad esempio per un grafico.
+     * Ogni intervallo tra le due date è presente, anche se vuoto.
+     *
+     * @param type        tipo di movimento, null per tutti
+     * @param granularity ampiezza degli intervalli
+     * @param from        primo giorno (incluso), null per la prima transazione
+     * @param to          ultimo giorno (incluso), null per l'ultima transazione
+     * @return mappa inizio dell'intervallo -> valore, in ordine cronologico
+     */
+    public Map<LocalDate, Double> balanceSeries(MovementType type, TimeGranularity granularity,
+                                                LocalDate from, LocalDate to) {
+        return toEuro(withTimeSeries(s -> s.series(type, granularity, from, to)));
+    }
+
+    /**
+     * Calcola il saldo progressivo delle transazioni reali alla fine di ogni intervallo,
+     * comprese quelle precedenti alla data di inizio.
+     *
+     * @param type        tipo di movimento, null per tutti
+     * @param granularity ampiezza degli intervalli
+     * @param from        primo giorno (incluso), null per la prima transazione
+     * @param to          ultimo giorno (incluso), null per l'ultima transazione
+     * @return mappa inizio dell'intervallo -> saldo alla sua fine, in ordine cronologico
+     */
+    public Map<LocalDate, Double> cumulativeBalanceSeries(MovementType type, TimeGranularity granularity,
+                                                          LocalDate from, LocalDate to) {
+        return toEuro(withTimeSeries(s -> s.cumulative(type, granularity, from, to)));
+    }
+
+    /**
+     * Calcola una somma mobile delle transazioni reali, ad esempio la spesa degli ultimi 30 giorni,
+     * valutata alla fine di ogni intervallo.
+     *
+     * @param type        tipo di movimento, null per tutti
+     * @param windowDays  ampiezza della finestra in giorni
+     * @param granularity intervalli alla fine dei quali valutare la finestra
+     * @param from        primo giorno (incluso), null per la prima transazione
+     * @param to          ultimo giorno (incluso), null per l'ultima transazione
+     * @return mappa ultimo giorno della finestra -> valore, in ordine cronologico
+     */
+    public Map<LocalDate, Double> rollingBalance(MovementType type, int windowDays, TimeGranularity granularity,
+                                                 LocalDate from, LocalDate to) {
+        return toEuro(withTimeSeries(s -> s.rolling(type, windowDays, granularity, from, to)));
     }
 
     /**
@@ -154,13 +485,26 @@ public class Ledger {
         return budgetManagement.getList();
     }
 
+    /**
+     * Restituisce una vista immutabile delle transazioni, senza copiarle:
+     * da preferire a {@link #getTransaction()} quando serve solo leggerle.
+     *
+     * @return vista non modificabile delle transazioni
+     */
+    public List<ITransaction> getTransactionSnapshot() {
+        return budgetManagement.snapshot();
+    }
+
     /**
      * Imposta la lista completa delle transazioni.
      *
      * @param list lista di transazioni
      */
     public void setList(ArrayList<ITransaction> list) {
-        budgetManagement.setList(list);
+        update(() -> {
+            budgetManagement.setList(list);
+            invalidateAggregates();
+        });
     }
 
     /**
@@ -172,7 +516,7 @@ public class Ledger {
      * @param endDate   data di fine
      */
     public void setBudget(String category, double amount, LocalDate startDate, LocalDate endDate) {
-        budgetManager.setBudget(category, amount, startDate, endDate);
+        update(() -> budgetManager.setBudget(category, amount, startDate, endDate));
     }
 
     /**
@@ -188,7 +532,7 @@ public class Ledger {
      * Aggiorna tutti i budget tramite {@link BudgetManager}.
      */
     public void updateBudgets() {
-        budgetManager.updateAllBudgets();
+        update(budgetManager::updateAllBudgets);
     }
 
     /**
@@ -206,17 +550,17 @@ public class Ledger {
      * @param category nome della categoria
      */
     public void removeBudget(String category) {
-        budgetManager.removeBudget(category);
+        update(() -> budgetManager.removeBudget(category));
     }
 
     // ===== TRANSAZIONI PROGRAMMATE =====
 
     public void addScheduledTransaction(ScheduledTransaction transaction) {
-        scheduledTransactionManager.addScheduledTransaction(transaction);
+        update(() -> scheduledTransactionManager.addScheduledTransaction(transaction));
     }
 
     public void removeScheduledTransaction(int index) {
-        scheduledTransactionManager.removeScheduledTransaction(index);
+        update(() -> scheduledTransactionManager.removeScheduledTransaction(index));
     }
 
     public List<ScheduledTransaction> getScheduledTransactions() {
@@ -224,7 +568,7 @@ public class Ledger {
     }
 
     public void checkScheduledTransactions() {
-        scheduledTransactionManager.checkAndExecuteScheduledTransactions();
+        update(scheduledTransactionManager::checkAndExecuteScheduledTransactions);
     }
 
     public ScheduledTransactionManager getScheduledTransactionManager() {
@@ -235,13 +579,26 @@ public class Ledger {
         return budgetManagement.calculateScheduledTransactionsForPeriod(type, start, end);
     }
 
+    /**
+     * Calcola il saldo previsto in un periodo da transazioni programmate e rate di ammortamento
+     * non pagate, con una ricerca binaria sui flussi già proiettati.
+     *
+     * @param type  tipo di movimento, null per tutti
+     * @param start data di inizio (inclusa)
+     * @param end   data di fine (inclusa)
+     * @return saldo previsto nel periodo
+     */
+    public double forecastBalance(MovementType type, LocalDate start, LocalDate end) {
+        return budgetManagement.forecastBalance(type, start, end);
+    }
+
     // ===== AMMORTAMENTI =====
 
     /**
      * Processa tutte le rate scadute dei piani di ammortamento.
      */
     public void processAmortizationDueDates() {
-        amortizationManager.processDueInstallments(this);
+        update(() -> amortizationManager.processDueInstallments(this));
     }
 
     /**
@@ -258,9 +615,9 @@ public class Ledger {
     public AmortizationPlan createAmortizationPlan(String description, double principalAmount,
                                                    double annualInterestRate, int numberOfInstallments,
                                                    LocalDate startDate, List<ITag> tags) {
-        return amortizationManager.createAmortizationPlan(description, principalAmount,
+        return update(() -> amortizationManager.createAmortizationPlan(description, principalAmount,
                 annualInterestRate, numberOfInstallments,
-                startDate, tags);
+                startDate, tags));
     }
 
     public List<AmortizationPlan> getAmortizationPlans() {
@@ -268,7 +625,7 @@ public class Ledger {
     }
 
     public boolean deleteAmortizationPlan(AmortizationPlan plan) {
-        return amortizationManager.deleteAmortizationPlan(plan);
+        return update(() -> amortizationManager.deleteAmortizationPlan(plan));
     }
 
     /**
@@ -292,13 +649,7 @@ public class Ledger {
     public int countAmortizationPaymentsForPeriod(LocalDate startDate, LocalDate endDate) {
         int count = 0;
         for (AmortizationPlan plan : amortizationManager.getAmortizationPlans()) {
-            for (Installment installment : plan.getInstallments()) {
-                if (!installment.isPaid() &&
-                        !installment.getDueDate().isBefore(startDate) &&
-                        !installment.getDueDate().isAfter(endDate)) {
-                    count++;
-                }
-            }
+            count += plan.countUnpaidBetween(startDate, endDate);
         }
         return count;
     }
@@ -321,4 +672,181 @@ public class Ledger {
         return deadlineManager.getUpcomingDeadlines();
     }
 
+    // ===== ACCESSO CONCORRENTE =====
+
+    /**
+     * Restituisce l'ultima versione pubblicata del registro, senza lock e senza copie.
+     *
+     * @return fotografia immutabile del registro
+     */
+    public LedgerSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Esegue una modifica come unico scrittore. Le modifiche annidate fanno parte di quella esterna:
+     * la nuova versione viene pubblicata una sola volta, al termine della modifica più esterna.
+     * Anche le modifiche fatte direttamente sui manager del registro vanno eseguite qui.
+     *
+     * @param change modifica da eseguire
+     */
+    public void update(Runnable change) {
+        update(() -> {
+            change.run();
+            return null;
+        });
+    }
+
+    /**
+     * Esegue una modifica come unico scrittore e ne restituisce il risultato.
+     *
+     * @param change modifica da eseguire
+     * @return risultato della modifica
+     */
+    public <T> T update(Supplier<T> change) {
+        synchronized (writeLock) {
+            writeDepth++;
+            try {
+                return change.get();
+            } finally {
+                if (--writeDepth == 0) {
+                    publish();
+                }
+            }
+        }
+    }
+
+    /**
+     * Esegue una modifica sul thread di scrittura in background, ad esempio un'importazione
+     * o l'esecuzione delle transazioni programmate, lasciando libero il thread dell'interfaccia.
+     *
+     * @param change modifica da eseguire
+     * @return completato con la versione pubblicata al termine della modifica
+     */
+    public CompletableFuture<LedgerSnapshot> submit(Runnable change) {
+        return CompletableFuture.supplyAsync(() -> {
+            update(change);
+            return snapshot;
+        }, writer);
+    }
+
+    /**
+     * Pubblica una nuova versione del registro. Chiamato dal costruttore o tenendo {@link #writeLock}.
+     */
+    private void publish() {
+        snapshot = new LedgerSnapshot(++version,
+                budgetManagement.snapshot(),
+                scheduledTransactionManager.getScheduledTransactions().stream()
+                        .map(ScheduledTransaction::frozenCopy).toList(),
+                amortizationManager.getAmortizationPlans().stream().map(AmortizationPlan::frozenCopy).toList(),
+                budgetManager.getAllBudgets());
+    }
+
+    // ===== CUBO DEGLI AGGREGATI =====
+
+    /**
+     * Esegue un'interrogazione sul cubo degli aggregati, ricalcolandolo prima
+     * se la lista delle transazioni è stata sostituita.
+     *
+     * @param query interrogazione da eseguire
+     * @return risultato dell'interrogazione
+     */
+    <T> T withCube(Function<TransactionCube, T> query) {
+        synchronized (aggregatesLock) {
+            if (cubeStale) {
+                cube.rebuild(budgetManagement.snapshot());
+                cubeStale = false;
+            }
+            return query.apply(cube);
+        }
+    }
+
+    // ===== SERIE TEMPORALI =====
+
+    /**
+     * Esegue un'interrogazione sulla serie temporale, ricalcolandola prima
+     * se la lista delle transazioni è stata sostituita.
+     *
+     * @param query interrogazione da eseguire
+     * @return risultato dell'interrogazione
+     */
+    <T> T withTimeSeries(Function<TransactionTimeSeries, T> query) {
+        synchronized (aggregatesLock) {
+            if (timeSeriesStale) {
+                timeSeries.rebuild(budgetManagement.snapshot());
+                timeSeriesStale = false;
+            }
+            return query.apply(timeSeries);
+        }
+    }
+
+    // ===== DISTRIBUZIONE DELLE SPESE =====
+
+    /**
+     * Esegue un'interrogazione sulla distribuzione delle spese, ricalcolandola prima
+     * se la lista delle transazioni è stata sostituita.
+     *
+     * @param query interrogazione da eseguire
+     * @return risultato dell'interrogazione
+     */
+    <T> T withExpenses(Function<ExpenseDistribution, T> query) {
+        synchronized (aggregatesLock) {
+            if (expensesStale) {
+                expenses.rebuild(budgetManagement.snapshot());
+                expensesStale = false;
+            }
+            return query.apply(expenses);
+        }
+    }
+
+    private void insert(ITransaction transaction) {
+        // Inserimento e aggiornamento degli aggregati insieme: un ricalcolo concorrente non conta la transazione due volte
+        synchronized (aggregatesLock) {
+            budgetManagement.insert(transaction);
+            if (!cubeStale) {
+                cube.add(transaction);
+            }
+            if (!timeSeriesStale) {
+                timeSeries.add(transaction);
+            }
+            if (!expensesStale) {
+                expenses.add(transaction);
+            }
+        }
+    }
+
+    /**
+     * Rilegge le transazioni dai file, scartando quelle aggiunte in memoria e mai confermate.
+     */
+    private void reloadTransactions() {
+        budgetManagement.setList(fileManagement.read());
+        invalidateAggregates();
+        budgetManager.updateAllBudgets();
+    }
+
+    private void invalidateAggregates() {
+        synchronized (aggregatesLock) {
+            cubeStale = true;
+            timeSeriesStale = true;
+            expensesStale = true;
+        }
+    }
+
+    private static Map<Double, Double> toEuro(QuantileSketch sketch, double... quantiles) {
+        Map<Double, Double> map = new LinkedHashMap<>();
+        if (sketch.count() == 0) {
+            return map;
+        }
+        long[] values = sketch.quantiles(quantiles);
+        for (int i = 0; i < quantiles.length; i++) {
+            map.put(quantiles[i], Money.toDouble(values[i]));
+        }
+        return map;
+    }
+
+    private static <K> Map<K, Double> toEuro(Map<K, Long> cents) {
+        Map<K, Double> map = new LinkedHashMap<>();
+        cents.forEach((key, value) -> map.put(key, Money.toDouble(value)));
+        return map;
+    }
 }
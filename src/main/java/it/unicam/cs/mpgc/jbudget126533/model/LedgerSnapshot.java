@@ -0,0 +1,61 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fotografia immutabile del {@link Ledger} a una certa versione.
+ * <p>
+ * Il registro ne pubblica una nuova al termine di ogni modifica, con un'unica scrittura:
+ * chi legge ottiene sempre uno stato completo e coerente (transazioni, transazioni programmate,
+ * piani di ammortamento e budget della stessa versione) senza prendere lock, anche mentre un
+ * altro thread sta modificando il registro. Le liste e le mappe non sono modificabili e non
+ * cambiano dopo la pubblicazione, e nemmeno le entità che cambiano stato: i budget sono immutabili
+ * e vengono sostituiti quando si aggiorna l'importo speso, i piani di ammortamento e le transazioni
+ * programmate sono copie di sola lettura ({@link AmortizationPlan#frozenCopy()},
+ * {@link ScheduledTransaction#frozenCopy()}). Le transazioni reali sono condivise con il registro,
+ * che non le modifica dopo l'inserimento.
+ * </p>
+ */
+public final class LedgerSnapshot {
+
+    private final long version;
+    private final List<ITransaction> transactions;
+    private final List<ScheduledTransaction> scheduledTransactions;
+    private final List<AmortizationPlan> amortizationPlans;
+    private final Map<String, Budget> budgets;
+
+    LedgerSnapshot(long version, List<ITransaction> transactions, List<ScheduledTransaction> scheduledTransactions,
+                   List<AmortizationPlan> amortizationPlans, Map<String, Budget> budgets) {
+        this.version = version;
+        this.transactions = transactions;
+        this.scheduledTransactions = scheduledTransactions;
+        this.amortizationPlans = amortizationPlans;
+        this.budgets = Map.copyOf(budgets);
+    }
+
+    /** @return versione del registro, crescente a ogni modifica pubblicata */
+    public long getVersion() { return version; }
+
+    /** @return transazioni reali (lista immutabile) */
+    public List<ITransaction> getTransactions() { return transactions; }
+
+    /** @return transazioni programmate (lista immutabile) */
+    public List<ScheduledTransaction> getScheduledTransactions() { return scheduledTransactions; }
+
+    /** @return piani di ammortamento (lista immutabile) */
+    public List<AmortizationPlan> getAmortizationPlans() { return amortizationPlans; }
+
+    /** @return budget per categoria (mappa immutabile) */
+    public Map<String, Budget> getBudgets() { return budgets; }
+
+    /**
+     * Indica se questa fotografia è più recente di un'altra.
+     *
+     * @param other fotografia da confrontare, può essere null
+     * @return true se la versione è successiva
+     */
+    public boolean isNewerThan(LedgerSnapshot other) {
+        return other == null || version > other.version;
+    }
+}
@@ -0,0 +1,424 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Istanza Gson condivisa dall'applicazione e adapter in streaming per i modelli persistiti.
+ * <p>
+ * Ogni modello viene letto e scritto direttamente con {@link JsonReader} e {@link JsonWriter},
+ * senza passare dalla riflessione né da un albero {@code JsonObject} intermedio.
+ * Il formato prodotto è identico a quello della serializzazione riflessiva usata in precedenza
+ * (stessi nomi e stesso ordine dei campi, campi null omessi), quindi i file esistenti
+ * restano leggibili e i campi sconosciuti vengono ignorati.
+ * </p>
+ * <p>
+ * Gli adapter sono registrati una sola volta: tutte le classi che leggono o scrivono JSON
+ * usano {@link #gson()}; per i file leggibili a mano si usa {@link #toPrettyJson(Object, Writer)},
+ * che applica l'indentazione allo stesso Gson.
+ * </p>
+ */
+public final class ModelTypeAdapters {
+
+    /** Indentazione dei file JSON scritti in forma leggibile */
+    private static final String INDENT = "  ";
+
+    static final TypeAdapter<LocalDate> LOCAL_DATE = new TypeAdapter<>() {
+        @Override
+        public void write(JsonWriter out, LocalDate value) throws IOException {
+            out.value(value != null ? value.toString() : null);
+        }
+
+        @Override
+        public LocalDate read(JsonReader in) throws IOException {
+            String value = readString(in);
+            return value != null ? LocalDate.parse(value) : null;
+        }
+    };
+
+    static final TypeAdapter<LocalDateTime> LOCAL_DATE_TIME = new TypeAdapter<>() {
+        @Override
+        public void write(JsonWriter out, LocalDateTime value) throws IOException {
+            out.value(value != null ? value.toString() : null);
+        }
+
+        @Override
+        public LocalDateTime read(JsonReader in) throws IOException {
+            String value = readString(in);
+            return value != null ? LocalDateTime.parse(value) : null;
+        }
+    };
+
+    static final ITagTypeAdapter TAG = new ITagTypeAdapter();
+
+    static final TypeAdapter<Person> PERSON = new TypeAdapter<>() {
+        @Override
+        public void write(JsonWriter out, Person person) throws IOException {
+            if (person == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("name").value(person.getName());
+            out.name("email").value(person.getEmail());
+            out.name("phone").value(person.getPhone());
+            out.name("defaultTags");
+            writeTags(out, person.getDefaultTags());
+            out.endObject();
+        }
+
+        @Override
+        public Person read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            String name = null;
+            String email = null;
+            String phone = null;
+            List<ITag> defaultTags = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name" -> name = readString(in);
+                    case "email" -> email = readString(in);
+                    case "phone" -> phone = readString(in);
+                    case "defaultTags" -> defaultTags = readTags(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+
+            Person person = new Person(name, email, phone);
+            if (defaultTags != null) {
+                person.setDefaultTags(defaultTags);
+            }
+            return person;
+        }
+    };
+
+    static final MovementTypeAdapter<Transaction> TRANSACTION = new MovementTypeAdapter<>(Transaction::new);
+    static final MovementTypeAdapter<ScheduledTransaction> SCHEDULED_TRANSACTION =
+            new MovementTypeAdapter<>(ScheduledTransaction::new);
+    static final MovementTypeAdapter<Installment> INSTALLMENT = new MovementTypeAdapter<>(Installment::new);
+
+    /** Le transazioni dichiarate come interfaccia vengono lette come {@link Transaction} */
+    static final TypeAdapter<ITransaction> ITRANSACTION = new TypeAdapter<>() {
+        @Override
+        public void write(JsonWriter out, ITransaction transaction) throws IOException {
+            if (transaction instanceof Movement movement) {
+                writeMovement(out, movement);
+            } else {
+                out.nullValue();
+            }
+        }
+
+        @Override
+        public ITransaction read(JsonReader in) throws IOException {
+            return TRANSACTION.read(in);
+        }
+    };
+
+    static final TypeAdapter<AmortizationPlan> AMORTIZATION_PLAN = new TypeAdapter<>() {
+        @Override
+        public void write(JsonWriter out, AmortizationPlan plan) throws IOException {
+            if (plan == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            plan.writeJsonFields(out);
+            out.endObject();
+        }
+
+        @Override
+        public AmortizationPlan read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            AmortizationPlan plan = new AmortizationPlan();
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!plan.readJsonField(in.nextName(), in)) {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return plan;
+        }
+    };
+
+    /**
+     * I budget restano salvati con gli importi in euro ({@code allocatedAmount}, {@code spentAmount}),
+     * come prima del passaggio ai centesimi; i file scritti con i campi in centesimi vengono letti comunque.
+     */
+    static final TypeAdapter<Budget> BUDGET = new TypeAdapter<>() {
+        @Override
+        public void write(JsonWriter out, Budget budget) throws IOException {
+            if (budget == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("category").value(budget.getCategory());
+            out.name("allocatedAmount").value(budget.getAllocatedAmount());
+            out.name("spentAmount").value(budget.getSpentAmount());
+            out.name("startDate");
+            writeDate(out, budget.getStartDate());
+            out.name("endDate");
+            writeDate(out, budget.getEndDate());
+            out.endObject();
+        }
+
+        @Override
+        public Budget read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            String category = null;
+            double allocated = 0;
+            double spent = 0;
+            LocalDate startDate = null;
+            LocalDate endDate = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "category" -> category = readString(in);
+                    case "allocatedAmount" -> allocated = in.nextDouble();
+                    case "spentAmount" -> spent = in.nextDouble();
+                    case "allocatedCents" -> allocated = Money.toDouble(in.nextLong());
+                    case "spentCents" -> spent = Money.toDouble(in.nextLong());
+                    case "startDate" -> startDate = readDate(in);
+                    case "endDate" -> endDate = readDate(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return new Budget(category, allocated, startDate, endDate).withSpentAmount(spent);
+        }
+    };
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(LocalDate.class, LOCAL_DATE)
+            .registerTypeAdapter(LocalDateTime.class, LOCAL_DATE_TIME)
+            .registerTypeAdapter(ITag.class, TAG)
+            .registerTypeAdapter(Person.class, PERSON)
+            .registerTypeAdapter(ITransaction.class, ITRANSACTION)
+            .registerTypeAdapter(Transaction.class, TRANSACTION)
+            .registerTypeAdapter(ScheduledTransaction.class, SCHEDULED_TRANSACTION)
+            .registerTypeAdapter(Installment.class, INSTALLMENT)
+            .registerTypeAdapter(AmortizationPlan.class, AMORTIZATION_PLAN)
+            .registerTypeAdapter(Budget.class, BUDGET)
+            .create();
+
+    private ModelTypeAdapters() {
+        throw new UnsupportedOperationException("Classe di utilità, non istanziabile");
+    }
+
+    /**
+     * Restituisce l'istanza Gson condivisa, con tutti gli adapter dei modelli registrati.
+     * L'output è compatto (una riga); per i file leggibili usare {@link #toPrettyJson(Object, Writer)}.
+     *
+     * @return istanza Gson condivisa
+     */
+    public static Gson gson() {
+        return GSON;
+    }
+
+    /**
+     * Serializza un oggetto con indentazione, usando l'istanza Gson condivisa.
+     *
+     * @param object oggetto da serializzare
+     * @param writer destinazione del testo JSON
+     * @throws IOException in caso di errore di scrittura
+     */
+    public static void toPrettyJson(Object object, Writer writer) throws IOException {
+        JsonWriter jsonWriter = GSON.newJsonWriter(writer);
+        jsonWriter.setIndent(INDENT);
+        if (object == null) {
+            jsonWriter.nullValue();
+        } else {
+            GSON.toJson(object, object.getClass(), jsonWriter);
+        }
+        jsonWriter.flush();
+    }
+
+    /**
+     * Serializza un oggetto con indentazione, usando l'istanza Gson condivisa.
+     *
+     * @param object oggetto da serializzare
+     * @return testo JSON indentato
+     */
+    public static String toPrettyJson(Object object) {
+        StringWriter writer = new StringWriter();
+        try {
+            toPrettyJson(object, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Errore nella serializzazione JSON: " + e.getMessage(), e);
+        }
+        return writer.toString();
+    }
+
+    // ==================== SUPPORTO AI MODELLI ====================
+
+    /**
+     * Adapter comune alla gerarchia di {@link Movement}: ogni classe legge e scrive
+     * i propri campi e delega quelli ereditati alla superclasse.
+     */
+    static final class MovementTypeAdapter<T extends Movement> extends TypeAdapter<T> {
+        private final Supplier<T> factory;
+
+        MovementTypeAdapter(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public void write(JsonWriter out, T movement) throws IOException {
+            writeMovement(out, movement);
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            T movement = factory.get();
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!movement.readJsonField(in.nextName(), in)) {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return movement;
+        }
+    }
+
+    private static void writeMovement(JsonWriter out, Movement movement) throws IOException {
+        if (movement == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        movement.writeJsonFields(out);
+        out.endObject();
+    }
+
+    static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    static LocalDate readDate(JsonReader in) throws IOException {
+        return LOCAL_DATE.read(in);
+    }
+
+    static void writeDate(JsonWriter out, LocalDate date) throws IOException {
+        LOCAL_DATE.write(out, date);
+    }
+
+    /**
+     * Legge una costante enum dal suo nome; un nome sconosciuto produce null,
+     * come nella deserializzazione riflessiva di Gson.
+     */
+    static <E extends Enum<E>> E readEnum(JsonReader in, Class<E> type) throws IOException {
+        String name = readString(in);
+        if (name == null) {
+            return null;
+        }
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equals(name)) {
+                return constant;
+            }
+        }
+        return null;
+    }
+
+    static void writeEnum(JsonWriter out, Enum<?> value) throws IOException {
+        out.value(value != null ? value.name() : null);
+    }
+
+    static List<ITag> readTags(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<ITag> tags = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            tags.add(TAG.read(in));
+        }
+        in.endArray();
+        return tags;
+    }
+
+    static void writeTags(JsonWriter out, List<ITag> tags) throws IOException {
+        if (tags == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (ITag tag : tags) {
+            TAG.write(out, tag);
+        }
+        out.endArray();
+    }
+
+    static List<String> readStrings(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            values.add(readString(in));
+        }
+        in.endArray();
+        return values;
+    }
+
+    static void writeStrings(JsonWriter out, List<String> values) throws IOException {
+        if (values == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (String value : values) {
+            out.value(value);
+        }
+        out.endArray();
+    }
+
+    /**
+     * Segnala un campo obbligatorio mancante.
+     */
+    static JsonParseException missingField(String field) {
+        return new JsonParseException("Campo obbligatorio mancante: " + field);
+    }
+}
@@ -0,0 +1,130 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Importo monetario a virgola fissa, memorizzato come numero intero di centesimi.
+ * <p>
+ * Somme e confronti sono esatti: non si accumulano gli errori di arrotondamento dei {@code double}
+ * e due importi uguali hanno sempre la stessa rappresentazione. Le aggregazioni sui grandi volumi
+ * usano direttamente i centesimi ({@code long}) tramite i metodi statici di conversione,
+ * senza creare un oggetto per ogni transazione.
+ * </p>
+ * <p>
+ * Nei file JSON gli importi restano numeri decimali in euro, come in precedenza.
+ * </p>
+ */
+public final class Money implements Comparable<Money> {
+
+    /** Numero di centesimi in un'unità */
+    private static final int SCALE = 100;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    /**
+     * @param cents importo in centesimi
+     * @return importo corrispondente
+     */
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Converte un importo decimale arrotondandolo al centesimo più vicino.
+     *
+     * @param amount importo in euro
+     * @return importo corrispondente
+     */
+    public static Money of(double amount) {
+        return ofCents(centsOf(amount));
+    }
+
+    /**
+     * Converte un importo decimale in centesimi, arrotondando al centesimo più vicino.
+     *
+     * @param amount importo in euro
+     * @return importo in centesimi
+     */
+    public static long centsOf(double amount) {
+        return Math.round(amount * SCALE);
+    }
+
+    /**
+     * Converte un importo in centesimi nel corrispondente valore decimale.
+     *
+     * @param cents importo in centesimi
+     * @return importo in euro
+     */
+    public static double toDouble(long cents) {
+        return (double) cents / SCALE;
+    }
+
+    /** @return importo in centesimi */
+    public long cents() {
+        return cents;
+    }
+
+    /** @return importo in euro come {@code double}, per la visualizzazione e i calcoli non monetari */
+    public double toDouble() {
+        return toDouble(cents);
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money times(long factor) {
+        return ofCents(Math.multiplyExact(cents, factor));
+    }
+
+    public Money negate() {
+        return ofCents(Math.negateExact(cents));
+    }
+
+    public Money abs() {
+        return cents < 0 ? negate() : this;
+    }
+
+    public boolean isNegative() {
+        return cents < 0;
+    }
+
+    public boolean isZero() {
+        return cents == 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Money money)) return false;
+        return cents == money.cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * @return importo con due cifre decimali, ad esempio {@code -12.50}
+     */
+    @Override
+    public String toString() {
+        return BigDecimal.valueOf(cents, 2).toPlainString();
+    }
+}
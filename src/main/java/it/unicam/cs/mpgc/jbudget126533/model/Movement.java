@@ -1,8 +1,14 @@
 package it.unicam.cs.mpgc.jbudget126533.model;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Classe astratta base per tutti i movimenti
@@ -11,22 +17,24 @@ import java.util.List;
 public abstract class Movement implements ITransaction {
     protected MovementType type;
     protected String user;
-    protected double money;
+    /** Importo in centesimi, vedi {@link Money} */
+    protected long cents;
     protected LocalDate date;
+    /** Tag come lista immutabile: le modifiche la sostituiscono, quindi {@link #getTags()} non copia */
     protected List<ITag> tags;
     protected Person person;
 
     public Movement() {
-        this.tags = new ArrayList<>();
+        this.tags = List.of();
     }
 
     public Movement(MovementType type, Person person, double money, LocalDate date, List<ITag> tags) {
         this.type = type;
         this.person = person;
         this.user = person != null ? person.getName() : "";
-        this.money = money;
+        this.cents = Money.centsOf(money);
         this.date = date;
-        this.tags = new ArrayList<>(tags);
+        this.tags = immutableTags(tags);
     }
 
     // Implementazioni dei metodi dell'interfaccia ITransaction
@@ -43,10 +51,19 @@ public abstract class Movement implements ITransaction {
     public void setUser(String user) { this.user = user; }
 
     @Override
-    public double getMoney() { return money; }
+    public double getMoney() { return Money.toDouble(cents); }
+
+    @Override
+    public void setMoney(double money) { this.cents = Money.centsOf(money); }
+
+    @Override
+    public long getCents() { return cents; }
+
+    @Override
+    public Money getMoneyAmount() { return Money.ofCents(cents); }
 
     @Override
-    public void setMoney(double money) { this.money = money; }
+    public void setMoneyAmount(Money amount) { this.cents = amount.cents(); }
 
     @Override
     public LocalDate getDate() { return date; }
@@ -55,10 +72,10 @@ public abstract class Movement implements ITransaction {
     public void setDate(LocalDate date) { this.date = date; }
 
     @Override
-    public List<ITag> getTags() { return new ArrayList<>(tags); }
+    public List<ITag> getTags() { return tags; }
 
     @Override
-    public void setTags(List<ITag> tags) { this.tags = new ArrayList<>(tags); }
+    public void setTags(List<ITag> tags) { this.tags = immutableTags(tags); }
 
     public Person getPerson() { return person; }
 
@@ -68,10 +85,21 @@ public abstract class Movement implements ITransaction {
     }
 
     @Override
-    public void addTag(ITag tag) { if (tag != null) tags.add(tag); }
+    public void addTag(ITag tag) {
+        if (tag != null) {
+            List<ITag> updated = new ArrayList<>(tags);
+            updated.add(tag);
+            tags = Collections.unmodifiableList(updated);
+        }
+    }
 
     @Override
-    public void removeTag(ITag tag) { tags.remove(tag); }
+    public void removeTag(ITag tag) {
+        List<ITag> updated = new ArrayList<>(tags);
+        if (updated.remove(tag)) {
+            tags = Collections.unmodifiableList(updated);
+        }
+    }
 
     @Override
     public boolean hasTag(ITag tag) { return tags.contains(tag); }
@@ -81,8 +109,64 @@ public abstract class Movement implements ITransaction {
         return tags.stream().anyMatch(tag -> tag.getName().equalsIgnoreCase(tagName));
     }
 
+    /**
+     * Copia i tag in una lista immutabile, scartando i valori nulli.
+     *
+     * @param tags tag da copiare (può essere null)
+     * @return lista immutabile dei tag
+     */
+    protected static List<ITag> immutableTags(List<ITag> tags) {
+        return tags == null ? List.of() : tags.stream().filter(Objects::nonNull).toList();
+    }
+
     @Override
     public <T> String spaceWord(T obj) {
         return " ".repeat(Math.max(0, 15 - obj.toString().length() + 1));
     }
+
+    // ----------------- SERIALIZZAZIONE -----------------
+
+    /**
+     * Scrive i campi del movimento nell'oggetto JSON aperto da {@link ModelTypeAdapters}.
+     * Le sottoclassi scrivono prima i propri campi e poi richiamano questo metodo.
+     *
+     * @param out writer JSON di destinazione
+     * @throws IOException in caso di errore di scrittura
+     */
+    void writeJsonFields(JsonWriter out) throws IOException {
+        out.name("type");
+        ModelTypeAdapters.writeEnum(out, type);
+        out.name("user").value(user);
+        out.name("money").value(Money.toDouble(cents));
+        out.name("date");
+        ModelTypeAdapters.writeDate(out, date);
+        out.name("tags");
+        ModelTypeAdapters.writeTags(out, tags);
+        out.name("person");
+        ModelTypeAdapters.PERSON.write(out, person);
+    }
+
+    /**
+     * Legge il valore di un campo del movimento. Le sottoclassi gestiscono i propri
+     * campi e delegano gli altri a questo metodo.
+     *
+     * @param name nome del campo
+     * @param in   reader JSON posizionato sul valore
+     * @return true se il campo è stato riconosciuto e letto, false se va ignorato
+     * @throws IOException in caso di errore di lettura
+     */
+    boolean readJsonField(String name, JsonReader in) throws IOException {
+        switch (name) {
+            case "type" -> type = ModelTypeAdapters.readEnum(in, MovementType.class);
+            case "user" -> user = ModelTypeAdapters.readString(in);
+            case "money" -> cents = Money.centsOf(in.nextDouble());
+            case "date" -> date = ModelTypeAdapters.readDate(in);
+            case "tags" -> tags = immutableTags(ModelTypeAdapters.readTags(in));
+            case "person" -> person = ModelTypeAdapters.PERSON.read(in);
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,44 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Sceglie se scorrere una collezione con un flusso sequenziale o parallelo.
+ * <p>
+ * Oltre la soglia {@link #THRESHOLD} le scansioni vengono suddivise sul pool fork-join comune:
+ * ogni sotto-attività calcola un aggregato parziale e i parziali vengono uniti alla fine.
+ * Sotto la soglia, o con un solo core disponibile, il costo di suddivisione supererebbe
+ * il guadagno e il flusso resta sequenziale.
+ * </p>
+ * <p>
+ * Gli aggregati sono somme in centesimi ({@code long}), esatte e associative: il risultato
+ * è identico qualunque sia la suddivisione del lavoro.
+ * </p>
+ */
+final class ParallelScan {
+
+    /** Numero minimo di elementi per cui conviene la scansione parallela */
+    static final int THRESHOLD = 20_000;
+
+    private ParallelScan() {
+        throw new UnsupportedOperationException("Classe di utilità, non istanziabile");
+    }
+
+    /**
+     * @param items elementi da scorrere
+     * @return flusso parallelo per le collezioni grandi, sequenziale altrimenti
+     */
+    static <T> Stream<T> stream(Collection<T> items) {
+        return isWorthSplitting(items.size()) ? items.parallelStream() : items.stream();
+    }
+
+    /**
+     * @param size numero di elementi
+     * @return true se conviene suddividere la scansione
+     */
+    static boolean isWorthSplitting(int size) {
+        return size >= THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+}
@@ -0,0 +1,227 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Variante di {@link TransactionManager} che non tiene in memoria tutte le transazioni,
+ * ma le legge dall'archivio partizionato per mese del {@link IFileManagement}.
+ * <p>
+ * Al caricamento attiva il layout partizionato (migrando i dati se necessario) e calcola
+ * il saldo una sola volta; i calcoli per intervallo di date leggono solo le partizioni
+ * dei mesi coinvolti, mentre quelle non più usate vengono scaricate dalla memoria.
+ * Le nuove transazioni sono scritte su file dal {@link Ledger} prima di essere inserite qui,
+ * quindi l'inserimento aggiorna solo il saldo.
+ * </p>
+ * <p>
+ * Le viste pubblicate da {@link #snapshot()} sono fissate alla versione in cui vengono create:
+ * ciascuna ricorda quante transazioni erano state inserite dal caricamento. L'archivio viene letto
+ * al più una volta per caricamento, al primo accesso a una vista, e le transazioni inserite nel
+ * frattempo vengono tolte dalla lettura: ogni vista è l'archivio iniziale più i propri inserimenti.
+ * </p>
+ */
+public class PartitionedTransactionManager extends TransactionManager {
+
+    /** Archivio da cui leggere le transazioni, null finché non viene chiamato {@link #load(IFileManagement)} */
+    private IFileManagement storage;
+
+    /** Saldo delle transazioni reali, in centesimi, mantenuto a ogni inserimento */
+    private volatile long balance;
+
+    /** Archivio all'ultimo caricamento e transazioni inserite da allora, condivisi dalle viste */
+    private Generation generation;
+
+    /**
+     * Collega il manager all'archivio partizionato e calcola il saldo iniziale.
+     * @param fileManagement gestore dei file delle transazioni
+     */
+    @Override
+    public void load(IFileManagement fileManagement) {
+        fileManagement.enablePartitionedLayout();
+        this.storage = fileManagement;
+        super.setList(new ArrayList<>());
+        this.balance = transactions().mapToLong(ITransaction::getCents).sum();
+        this.generation = new Generation(fileManagement);
+    }
+
+    /**
+     * Restituisce il saldo mantenuto in memoria, senza rileggere l'archivio.
+     * @return saldo totale
+     */
+    @Override
+    public double getBalance() {
+        return storage == null ? super.getBalance() : Money.toDouble(balance);
+    }
+
+    /**
+     * Aggiorna il saldo con una transazione già scritta nell'archivio.
+     * @param transaction la transazione inserita
+     */
+    @Override
+    public synchronized void insert(ITransaction transaction) {
+        if (storage == null) {
+            super.insert(transaction);
+            return;
+        }
+        balance += transaction.getCents();
+        generation.inserted(transaction);
+    }
+
+    /**
+     * Restituisce tutte le transazioni lette dall'archivio.
+     * @return lista di transazioni
+     */
+    @Override
+    public ArrayList<ITransaction> getList() {
+        return storage == null ? super.getList() : storage.read();
+    }
+
+    /**
+     * Restituisce una vista non modificabile delle transazioni a questa versione.
+     * Crearla costa tempo costante: l'archivio viene letto solo al primo accesso a una vista.
+     * @return vista delle transazioni
+     */
+    @Override
+    public synchronized List<ITransaction> snapshot() {
+        return storage == null ? super.snapshot() : new ArchiveView(generation, generation.insertedCount());
+    }
+
+    /**
+     * Ricalcola il saldo sulla nuova lista; la riscrittura su file resta a carico del chiamante,
+     * come per {@link TransactionManager}.
+     * @param list lista di transazioni da impostare
+     */
+    @Override
+    public synchronized void setList(ArrayList<ITransaction> list) {
+        if (storage == null) {
+            super.setList(list);
+            return;
+        }
+        if (list != null) {
+            balance = list.stream().mapToLong(ITransaction::getCents).sum();
+            // L'archivio viene riscritto con la nuova lista: le viste successive ripartono da lì
+            generation = new Generation(storage);
+        }
+    }
+
+    /**
+     * Contenuto dell'archivio a partire da un caricamento: le transazioni già presenti,
+     * lette una sola volta quando servono, e quelle inserite dopo, in ordine di inserimento.
+     */
+    private static final class Generation {
+        private final IFileManagement storage;
+        private final List<ITransaction> inserted = new ArrayList<>();
+        private List<ITransaction> base;
+
+        private Generation(IFileManagement storage) {
+            this.storage = storage;
+        }
+
+        synchronized void inserted(ITransaction transaction) {
+            inserted.add(transaction);
+        }
+
+        synchronized int insertedCount() {
+            return inserted.size();
+        }
+
+        synchronized int baseSize() {
+            return base().size();
+        }
+
+        synchronized ITransaction get(int index) {
+            List<ITransaction> rows = base();
+            return index < rows.size() ? rows.get(index) : inserted.get(index - rows.size());
+        }
+
+        /**
+         * Transazioni presenti al caricamento: l'archivio letto ora, meno una copia
+         * di ciascuna transazione inserita nel frattempo (riconosciuta dal contenuto).
+         */
+        private List<ITransaction> base() {
+            if (base == null) {
+                Map<RowKey, Integer> pending = new HashMap<>();
+                for (ITransaction transaction : inserted) {
+                    pending.merge(RowKey.of(transaction), 1, Integer::sum);
+                }
+                List<ITransaction> rows = new ArrayList<>();
+                storage.forEachTransaction(transaction -> {
+                    RowKey key = RowKey.of(transaction);
+                    Integer left = pending.get(key);
+                    if (left == null) {
+                        rows.add(transaction);
+                    } else if (left == 1) {
+                        pending.remove(key);
+                    } else {
+                        pending.put(key, left - 1);
+                    }
+                });
+                base = rows;
+            }
+            return base;
+        }
+    }
+
+    /**
+     * Contenuto salvato di una transazione, usato per riconoscerla dopo la rilettura dall'archivio.
+     */
+    private record RowKey(LocalDate date, long cents, MovementType type, String user, List<String> tags) {
+        static RowKey of(ITransaction transaction) {
+            List<String> tags = transaction.getTags() == null ? List.of()
+                    : transaction.getTags().stream().map(tag -> tag == null ? null : tag.getName()).toList();
+            return new RowKey(transaction.getDate(), transaction.getCents(), transaction.getType(),
+                    transaction.getUser(), tags);
+        }
+    }
+
+    /**
+     * Vista fissata a una versione: l'archivio iniziale più i primi {@code insertedCount} inserimenti.
+     */
+    private static final class ArchiveView extends AbstractList<ITransaction> {
+        private final Generation generation;
+        private final int insertedCount;
+
+        private ArchiveView(Generation generation, int insertedCount) {
+            this.generation = generation;
+            this.insertedCount = insertedCount;
+        }
+
+        @Override
+        public ITransaction get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return generation.get(index);
+        }
+
+        @Override
+        public int size() {
+            return generation.baseSize() + insertedCount;
+        }
+    }
+
+    @Override
+    protected Stream<ITransaction> transactions() {
+        if (storage == null) {
+            return super.transactions();
+        }
+        Stream.Builder<ITransaction> builder = Stream.builder();
+        storage.forEachTransaction(builder);
+        return builder.build();
+    }
+
+    @Override
+    protected Stream<ITransaction> transactionsBetween(LocalDate start, LocalDate end) {
+        if (storage == null) {
+            return super.transactionsBetween(start, end);
+        }
+        Stream.Builder<ITransaction> builder = Stream.builder();
+        storage.forEachTransactionBetween(start, end, builder);
+        return builder.build();
+    }
+}
@@ -0,0 +1,103 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import com.google.gson.Gson;
+
+/**
+ * Contesto di persistenza condiviso dall'intera applicazione.
+ * <p>
+ * Possiede un solo gestore dei file ({@link IFileManagement}), l'istanza Gson condivisa
+ * e un'unica copia caricata dei manager: {@link TagManager}, {@link PersonManager},
+ * {@link AmortizationManager} e il {@link Ledger} principale con i suoi manager.
+ * Manager, viste e sincronizzazione ottengono i dati da qui invece di creare un proprio
+ * {@code FileManagement} e rileggere gli stessi file da disco.
+ * </p>
+ */
+public final class PersistenceContext {
+
+    private static IFileManagement fileManagement;
+    private static AmortizationManager amortizationManager;
+    private static Ledger ledger;
+
+    private PersistenceContext() {
+        throw new UnsupportedOperationException("Classe di utilità, non istanziabile");
+    }
+
+    /**
+     * Restituisce il gestore dei file condiviso, creandolo al primo utilizzo.
+     *
+     * @return gestore dei file dell'applicazione
+     */
+    public static synchronized IFileManagement fileManagement() {
+        if (fileManagement == null) {
+            fileManagement = new FileManagement();
+        }
+        return fileManagement;
+    }
+
+    /**
+     * Sostituisce il gestore dei file condiviso (ad esempio per i test).
+     * Va chiamato prima che i manager vengano creati.
+     *
+     * @param customFileManagement gestore dei file da usare
+     */
+    public static synchronized void setFileManagement(IFileManagement customFileManagement) {
+        fileManagement = customFileManagement;
+        amortizationManager = null;
+        ledger = null;
+    }
+
+    /**
+     * Restituisce l'istanza Gson condivisa, con gli adapter di tutti i modelli.
+     *
+     * @return istanza Gson
+     */
+    public static Gson gson() {
+        return ModelTypeAdapters.gson();
+    }
+
+    /**
+     * Restituisce il gestore dei piani di ammortamento condiviso, caricandolo al primo utilizzo.
+     *
+     * @return gestore dei piani di ammortamento
+     */
+    public static synchronized AmortizationManager amortizationManager() {
+        if (amortizationManager == null) {
+            amortizationManager = new AmortizationManager(fileManagement());
+        }
+        return amortizationManager;
+    }
+
+    /**
+     * Restituisce il registro principale. Se nessun {@link Ledger} è stato ancora registrato
+     * ne viene creato, caricato e registrato uno con un {@link DateIndexedTransactionManager}.
+     * Console, interfaccia grafica e sincronizzazione usano tutte questo registro.
+     *
+     * @return registro principale dell'applicazione
+     */
+    public static synchronized Ledger ledger() {
+        if (ledger == null) {
+            Ledger created = new Ledger(new DateIndexedTransactionManager());
+            created.read();
+            register(created);
+        }
+        return ledger;
+    }
+
+    /**
+     * Registra come registro principale un {@link Ledger} già caricato, ad esempio
+     * costruito con un'altra implementazione di {@link IBudgetManagement}.
+     * Va chiamato prima del primo {@link #ledger()}.
+     *
+     * @param loaded registro caricato con {@link Ledger#read()}
+     * @throws IllegalStateException se il registro non è stato caricato o se ne è già registrato un altro
+     */
+    public static synchronized void register(Ledger loaded) {
+        if (!loaded.isLoaded()) {
+            throw new IllegalStateException("Il registro va caricato con read() prima di essere registrato");
+        }
+        if (ledger != null && ledger != loaded) {
+            throw new IllegalStateException("È già registrato un registro principale");
+        }
+        ledger = loaded;
+    }
+}
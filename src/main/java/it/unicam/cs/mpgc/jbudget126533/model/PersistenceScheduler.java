@@ -0,0 +1,153 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pianificatore dei salvataggi in modalità write-behind.
+ * <p>
+ * I manager non scrivono più su file a ogni modifica: segnalano di essere "sporchi"
+ * tramite {@link #schedule(Object, Runnable)} e un thread in background esegue un unico
+ * salvataggio per manager ogni {@link #DEFAULT_FLUSH_INTERVAL_MS} millisecondi, qualunque sia
+ * il numero di modifiche avvenute nel frattempo. {@link #flush()} scrive subito tutto ciò che
+ * è in sospeso ed è eseguito anche alla chiusura della JVM.
+ * </p>
+ * <p>
+ * Con {@link #setWriteBehindEnabled(boolean)} a false ogni salvataggio viene eseguito
+ * immediatamente, come nel comportamento originale.
+ * </p>
+ */
+public final class PersistenceScheduler {
+
+    /** Intervallo predefinito tra due scritture dello stesso insieme di modifiche */
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 500;
+
+    /** Salvataggi in sospeso, uno per manager: le richieste successive si sovrascrivono */
+    private static final Map<Object, Runnable> pending = new LinkedHashMap<>();
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jbudget-persistence");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile boolean writeBehindEnabled = true;
+    private static volatile long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+    private static boolean flushScheduled = false;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(PersistenceScheduler::flush, "jbudget-persistence-shutdown"));
+    }
+
+    private PersistenceScheduler() {
+        throw new UnsupportedOperationException("Classe di utilità, non istanziabile");
+    }
+
+    /**
+     * Registra un salvataggio da eseguire. Se per lo stesso proprietario è già in sospeso
+     * un salvataggio, le due richieste vengono unite in una sola scrittura.
+     *
+     * @param owner oggetto che possiede i dati (tipicamente il manager)
+     * @param save  azione che scrive su file lo stato corrente dei dati
+     */
+    public static void schedule(Object owner, Runnable save) {
+        if (!writeBehindEnabled) {
+            runSafely(save);
+            return;
+        }
+
+        synchronized (pending) {
+            pending.put(owner, save);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(PersistenceScheduler::flush, flushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Esegue immediatamente tutti i salvataggi in sospeso, comprese le date di modifica
+     * registrate solo in memoria nel manifest. Da chiamare prima di leggere i file da un'altra istanza e alla chiusura dell'applicazione.
+     */
+    public static synchronized void flush() {
+        Map<Object, Runnable> toRun;
+        synchronized (pending) {
+            toRun = new LinkedHashMap<>(pending);
+            pending.clear();
+            flushScheduled = false;
+        }
+
+        // Tutti i file in sospeso vengono confermati insieme, con un unico record del log
+        try {
+            WriteAheadLog.atomically(() -> {
+                for (Runnable save : toRun.values()) {
+                    runSafely(save);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Nessun file è stato scritto: i salvataggi restano in sospeso per il prossimo tentativo
+            System.err.println("Errore nel salvataggio differito: " + e.getMessage());
+            toRun.forEach(PersistenceScheduler::retry);
+        }
+        FileManifest.flush();
+    }
+
+    /**
+     * Indica se ci sono salvataggi non ancora scritti su file.
+     *
+     * @return true se esistono modifiche in sospeso
+     */
+    public static boolean hasPendingWrites() {
+        synchronized (pending) {
+            return !pending.isEmpty();
+        }
+    }
+
+    /**
+     * Abilita o disabilita la modalità write-behind. Disabilitandola,
+     * le modifiche in sospeso vengono scritte subito.
+     *
+     * @param enabled true per raggruppare i salvataggi, false per scrivere a ogni modifica
+     */
+    public static void setWriteBehindEnabled(boolean enabled) {
+        writeBehindEnabled = enabled;
+        if (!enabled) {
+            flush();
+        }
+    }
+
+    /**
+     * Imposta l'intervallo di raggruppamento dei salvataggi.
+     *
+     * @param intervalMs intervallo in millisecondi
+     */
+    public static void setFlushInterval(long intervalMs) {
+        if (intervalMs < 0) {
+            throw new IllegalArgumentException("L'intervallo non può essere negativo");
+        }
+        flushIntervalMs = intervalMs;
+    }
+
+    private static void retry(Object owner, Runnable save) {
+        synchronized (pending) {
+            // Un salvataggio più recente dello stesso proprietario sostituisce quello fallito
+            pending.putIfAbsent(owner, save);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(PersistenceScheduler::flush, flushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static void runSafely(Runnable save) {
+        try {
+            save.run();
+        } catch (Exception e) {
+            System.err.println("Errore nel salvataggio differito: " + e.getMessage());
+        }
+    }
+}
@@ -3,6 +3,7 @@ package it.unicam.cs.mpgc.jbudget126533.model;
 import com.google.gson.reflect.TypeToken;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Gestisce la raccolta di oggetti Person, offrendo metodi statici per aggiungere,
@@ -11,8 +12,9 @@ import java.util.*;
  */
 public class PersonManager {
     private static final String PERSON_FILE = "Persons.json";
-    private static final Map<String, Person> persons = new HashMap<>();
-    private static IFileManagement fileManagement = new FileManagement();
+    private static final Map<String, Person> persons = new ConcurrentHashMap<>();
+    private static final Object PERSONS_OWNER = new Object();
+    private static IFileManagement fileManagement = PersistenceContext.fileManagement();
 
     /**
      * Blocco statico che carica le persone salvate dal file all'inizializzazione della classe.
@@ -86,11 +88,19 @@ public class PersonManager {
         }
     }
 
+    /**
+     * Pianifica il salvataggio delle persone tramite {@link PersistenceScheduler},
+     * che raggruppa le modifiche ravvicinate in un'unica scrittura.
+     */
+    private static void savePersons() {
+        PersistenceScheduler.schedule(PERSONS_OWNER, PersonManager::writePersons);
+    }
+
     /**
      * Salva la lista corrente delle persone nel file JSON.
      * In caso di errori stampa un messaggio sullo standard error.
      */
-    private static void savePersons() {
+    private static void writePersons() {
         try {
             fileManagement.writeObject(PERSON_FILE, new ArrayList<>(persons.values()));
         } catch (Exception e) {
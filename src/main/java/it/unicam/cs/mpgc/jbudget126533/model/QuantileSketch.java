@@ -0,0 +1,223 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sketch dei quantili in stile KLL su valori interi (importi in centesimi).
+ * <p>
+ * I valori sono conservati su più livelli: un elemento del livello h rappresenta 2<sup>h</sup>
+ * valori. Quando lo sketch supera la sua capacità, il livello più basso pieno viene ordinato e
+ * ne viene promossa al livello superiore un elemento ogni due, alternando a ogni compattazione gli
+ * elementi pari e dispari. La capacità dei livelli decresce geometricamente verso il basso,
+ * quindi la memoria resta O({@link #DEFAULT_ACCURACY}) qualunque sia il numero di valori
+ * e l'errore sul rango di un quantile è circa 1.7/{@link #DEFAULT_ACCURACY}.
+ * </p>
+ * <p>
+ * Due sketch si uniscono ({@link #merge(QuantileSketch)}) concatenando i livelli e ricompattando:
+ * lo sketch di un intervallo di mesi, o di più dispositivi, si ottiene unendo gli sketch parziali.
+ * Conteggio, minimo e massimo sono esatti.
+ * </p>
+ */
+final class QuantileSketch {
+
+    /** Capacità del livello più alto: determina precisione e memoria */
+    static final int DEFAULT_ACCURACY = 200;
+
+    private static final int MIN_LEVEL_CAPACITY = 2;
+    private static final double LEVEL_DECAY = 2.0 / 3.0;
+
+    /**
+     * Elementi di un livello, con il numero di compattazioni subite per alternare pari e dispari.
+     */
+    private static final class Level {
+        private long[] items = new long[8];
+        private int size;
+        private int compactions;
+
+        private void add(long value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+    }
+
+    private final int accuracy;
+    private final List<Level> levels = new ArrayList<>();
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    QuantileSketch() {
+        this(DEFAULT_ACCURACY);
+    }
+
+    QuantileSketch(int accuracy) {
+        this.accuracy = accuracy;
+        levels.add(new Level());
+    }
+
+    /**
+     * Aggiunge un valore.
+     *
+     * @param value valore da aggiungere
+     */
+    void add(long value) {
+        levels.get(0).add(value);
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        compress();
+    }
+
+    /**
+     * Unisce un altro sketch a questo; l'altro resta invariato.
+     *
+     * @param other sketch da unire
+     */
+    void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        while (levels.size() < other.levels.size()) {
+            levels.add(new Level());
+        }
+        for (int h = 0; h < other.levels.size(); h++) {
+            Level source = other.levels.get(h);
+            for (int i = 0; i < source.size; i++) {
+                levels.get(h).add(source.items[i]);
+            }
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        compress();
+    }
+
+    /**
+     * @return numero di valori aggiunti
+     */
+    long count() {
+        return count;
+    }
+
+    /**
+     * Stima il valore al quantile indicato.
+     *
+     * @param quantile quantile tra 0 e 1 (0.5 per la mediana)
+     * @return valore stimato; il minimo e il massimo esatti per 0 e 1
+     * @throws IllegalStateException se lo sketch è vuoto
+     */
+    long quantile(double quantile) {
+        return quantiles(quantile)[0];
+    }
+
+    /**
+     * Stima i valori di più quantili con un solo ordinamento degli elementi.
+     *
+     * @param quantiles quantili tra 0 e 1
+     * @return valori stimati, nello stesso ordine
+     * @throws IllegalStateException se lo sketch è vuoto
+     */
+    long[] quantiles(double... quantiles) {
+        if (count == 0) {
+            throw new IllegalStateException("Sketch vuoto: nessun quantile disponibile");
+        }
+        int retained = retained();
+        long[] values = new long[retained];
+        long[] weights = new long[retained];
+        int n = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            Level level = levels.get(h);
+            for (int i = 0; i < level.size; i++) {
+                values[n] = level.items[i];
+                weights[n++] = 1L << h;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(values[a], values[b]));
+
+        long[] result = new long[quantiles.length];
+        for (int q = 0; q < quantiles.length; q++) {
+            double quantile = quantiles[q];
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("Quantile non valido: " + quantile);
+            }
+            if (quantile == 0) {
+                result[q] = min;
+            } else if (quantile == 1) {
+                result[q] = max;
+            } else {
+                double rank = quantile * count;
+                long cumulative = 0;
+                long value = max;
+                for (Integer index : order) {
+                    cumulative += weights[index];
+                    if (cumulative >= rank) {
+                        value = values[index];
+                        break;
+                    }
+                }
+                result[q] = value;
+            }
+        }
+        return result;
+    }
+
+    private int retained() {
+        int retained = 0;
+        for (Level level : levels) {
+            retained += level.size;
+        }
+        return retained;
+    }
+
+    private int capacity(int level) {
+        int depth = levels.size() - 1 - level;
+        return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(accuracy * Math.pow(LEVEL_DECAY, depth)));
+    }
+
+    private int capacity() {
+        int capacity = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            capacity += capacity(h);
+        }
+        return capacity;
+    }
+
+    private void compress() {
+        while (retained() > capacity()) {
+            for (int h = 0; h < levels.size(); h++) {
+                if (levels.get(h).size >= capacity(h)) {
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Promuove al livello superiore un elemento ogni due del livello indicato.
+     * Con un numero dispari di elementi, il più piccolo resta al suo livello.
+     */
+    private void compact(int h) {
+        if (h + 1 == levels.size()) {
+            levels.add(new Level());
+        }
+        Level level = levels.get(h);
+        Level next = levels.get(h + 1);
+        Arrays.sort(level.items, 0, level.size);
+
+        int kept = level.size % 2;
+        for (int i = kept + (level.compactions & 1); i < level.size; i += 2) {
+            next.add(level.items[i]);
+        }
+        level.compactions++;
+        level.size = kept;
+    }
+}
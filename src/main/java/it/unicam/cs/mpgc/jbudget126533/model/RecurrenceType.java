@@ -1,7 +1,18 @@
 package it.unicam.cs.mpgc.jbudget126533.model;
 
+import java.time.LocalDate;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
 /**
  * Tipo di ricorrenza della transazione programmata.
+ * <p>
+ * L'occorrenza n-esima è calcolata direttamente dalla data di inizio: n giorni o settimane dopo,
+ * oppure n mesi o anni dopo con lo stesso giorno del mese, riportato all'ultimo giorno se il mese
+ * è più corto (una ricorrenza mensile dal 31 gennaio cade il 28 febbraio e poi il 31 marzo).
+ * Contare le occorrenze in un periodo è quindi un calcolo sugli indici, in O(1), senza
+ * scorrere il calendario.
+ * </p>
  */
 public enum RecurrenceType {
     /** Transazione che si ripete ogni giorno. */
@@ -14,5 +25,101 @@ public enum RecurrenceType {
     MENSILE,
 
     /** Transazione che si ripete ogni anno. */
-    ANNUALE
+    ANNUALE;
+
+    /**
+     * Restituisce l'occorrenza con l'indice indicato.
+     *
+     * @param start data della prima occorrenza (indice 0)
+     * @param index indice dell'occorrenza
+     * @return data dell'occorrenza
+     */
+    public LocalDate occurrence(LocalDate start, long index) {
+        return isMonthly() ? start.plusMonths(index * step()) : start.plusDays(index * step());
+    }
+
+    /**
+     * Restituisce l'indice dell'ultima occorrenza che cade entro la data indicata.
+     *
+     * @param start data della prima occorrenza
+     * @param date  data limite (inclusa)
+     * @return indice dell'occorrenza, negativo se la data precede l'inizio
+     */
+    public long lastIndexOnOrBefore(LocalDate start, LocalDate date) {
+        if (!isMonthly()) {
+            return Math.floorDiv(date.toEpochDay() - start.toEpochDay(), step());
+        }
+        long months = (date.getYear() * 12L + date.getMonthValue()) - (start.getYear() * 12L + start.getMonthValue());
+        long index = Math.floorDiv(months, step());
+        // Nello stesso mese della data, l'occorrenza può cadere in un giorno successivo
+        return occurrence(start, index).isAfter(date) ? index - 1 : index;
+    }
+
+    /**
+     * Restituisce l'indice della prima occorrenza che cade dalla data indicata in poi.
+     *
+     * @param start data della prima occorrenza
+     * @param date  data limite (inclusa)
+     * @return indice dell'occorrenza, 0 se la data precede l'inizio
+     */
+    public long firstIndexOnOrAfter(LocalDate start, LocalDate date) {
+        return Math.max(0, lastIndexOnOrBefore(start, date.minusDays(1)) + 1);
+    }
+
+    /**
+     * Conta le occorrenze comprese nel periodo e prima della data di fine della ricorrenza.
+     *
+     * @param start       data della prima occorrenza
+     * @param end         ultima data utile della ricorrenza, null se non termina
+     * @param periodStart inizio del periodo (incluso)
+     * @param periodEnd   fine del periodo (inclusa)
+     * @return numero di occorrenze
+     */
+    public long count(LocalDate start, LocalDate end, LocalDate periodStart, LocalDate periodEnd) {
+        LocalDate last = end != null && end.isBefore(periodEnd) ? end : periodEnd;
+        long first = firstIndexOnOrAfter(start, periodStart);
+        return Math.max(0, lastIndexOnOrBefore(start, last) - first + 1);
+    }
+
+    /**
+     * Elenca in ordine le date delle occorrenze comprese nel periodo, calcolandole una alla volta.
+     *
+     * @param start       data della prima occorrenza
+     * @param end         ultima data utile della ricorrenza, null se non termina
+     * @param periodStart inizio del periodo (incluso)
+     * @param periodEnd   fine del periodo (inclusa), null per nessun limite
+     * @return flusso delle date, infinito se né la ricorrenza né il periodo terminano
+     */
+    public Stream<LocalDate> occurrences(LocalDate start, LocalDate end, LocalDate periodStart, LocalDate periodEnd) {
+        LocalDate last = end == null || (periodEnd != null && periodEnd.isBefore(end)) ? periodEnd : end;
+        long first = firstIndexOnOrAfter(start, periodStart);
+        LongStream indexes = last == null
+                ? LongStream.iterate(first, index -> index + 1)
+                : LongStream.rangeClosed(first, lastIndexOnOrBefore(start, last));
+        return indexes.mapToObj(index -> occurrence(start, index));
+    }
+
+    /**
+     * Restituisce la prima occorrenza successiva alla data indicata.
+     *
+     * @param start data della prima occorrenza
+     * @param date  data di riferimento (esclusa)
+     * @return data dell'occorrenza
+     */
+    public LocalDate nextAfter(LocalDate start, LocalDate date) {
+        return occurrence(start, firstIndexOnOrAfter(start, date.plusDays(1)));
+    }
+
+    private boolean isMonthly() {
+        return this == MENSILE || this == ANNUALE;
+    }
+
+    /** Passo in giorni per le ricorrenze giornaliere e settimanali, in mesi per le altre */
+    private int step() {
+        return switch (this) {
+            case GIORNALIERO, MENSILE -> 1;
+            case SETTIMANALE -> 7;
+            case ANNUALE -> 12;
+        };
+    }
 }
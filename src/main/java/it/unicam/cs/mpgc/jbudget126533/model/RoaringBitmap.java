@@ -0,0 +1,322 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Bitmap compressa di interi non negativi, organizzata come una roaring bitmap.
+ * <p>
+ * I valori sono divisi in blocchi da 65536 in base ai 16 bit alti; ogni blocco è memorizzato
+ * come array ordinato di {@code short} finché contiene al più {@value #ARRAY_LIMIT} valori,
+ * oltre come bitmap di 65536 bit. Le liste sparse occupano così pochi byte per valore
+ * e quelle dense un bit per valore; intersezioni e scansioni procedono blocco per blocco.
+ * </p>
+ */
+final class RoaringBitmap {
+
+    /** Numero massimo di valori di un blocco rappresentato come array */
+    static final int ARRAY_LIMIT = 4096;
+
+    /** Numero di valori coperti da un blocco */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    private static final int BITMAP_WORDS = CHUNK_SIZE / 64;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    /**
+     * Aggiunge un valore. L'inserimento di valori crescenti (il caso tipico) costa tempo costante.
+     *
+     * @param value valore non negativo
+     */
+    void add(int value) {
+        char key = (char) (value >>> 16);
+        int index = containerIndex(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+        containers[index] = containers[index].add((char) value);
+    }
+
+    /**
+     * @param value valore da cercare
+     * @return true se il valore è presente
+     */
+    boolean contains(int value) {
+        int index = containerIndex((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * @return numero di valori presenti
+     */
+    int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * @return true se la bitmap non contiene valori
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Emette i valori in ordine crescente.
+     *
+     * @param consumer destinatario dei valori
+     */
+    void forEach(IntConsumer consumer) {
+        forEachInRange(0, Integer.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Emette in ordine crescente i valori compresi in {@code [from, to)}.
+     *
+     * @param from     estremo inferiore (incluso)
+     * @param to       estremo superiore (escluso)
+     * @param consumer destinatario dei valori
+     */
+    void forEachInRange(int from, int to, IntConsumer consumer) {
+        if (from >= to) {
+            return;
+        }
+        int first = containerIndex((char) (from >>> 16));
+        first = first < 0 ? -first - 1 : first;
+        for (int i = first; i < size; i++) {
+            int base = keys[i] << 16;
+            if (base >= to) {
+                break;
+            }
+            int low = Math.max(from - base, 0);
+            int high = Math.min(to - base, CHUNK_SIZE);
+            containers[i].forEachInRange(low, high, base, consumer);
+        }
+    }
+
+    /**
+     * Rimuove i blocchi a partire da quello indicato, cioè tutti i valori {@code >= chunk * CHUNK_SIZE}.
+     *
+     * @param chunk primo blocco da rimuovere
+     */
+    void removeChunksFrom(int chunk) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) chunk);
+        index = index < 0 ? -index - 1 : index;
+        Arrays.fill(containers, index, size, null);
+        size = index;
+    }
+
+    /**
+     * Restituisce l'intersezione con un'altra bitmap, calcolata solo sui blocchi presenti in entrambe.
+     *
+     * @param other altra bitmap
+     * @return nuova bitmap con i valori comuni
+     */
+    RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container common = containers[i].and(other.containers[j]);
+                if (common.cardinality() > 0) {
+                    result.insertContainer(result.size, keys[i], common);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Restituisce l'unione con un'altra bitmap.
+     *
+     * @param other altra bitmap
+     * @return nuova bitmap con i valori di entrambe
+     */
+    RoaringBitmap or(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        forEach(result::add);
+        other.forEach(result::add);
+        return result;
+    }
+
+    // ==================== METODI PRIVATI ====================
+
+    private int containerIndex(char key) {
+        // Accesso in coda: gli inserimenti crescenti colpiscono quasi sempre l'ultimo blocco
+        if (size > 0 && keys[size - 1] == key) {
+            return size - 1;
+        }
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    // ==================== BLOCCHI ====================
+
+    private interface Container {
+        Container add(char value);
+
+        boolean contains(char value);
+
+        int cardinality();
+
+        void forEachInRange(int low, int high, int base, IntConsumer consumer);
+
+        Container and(Container other);
+    }
+
+    /** Blocco sparso: valori ordinati in un array */
+    private static final class ArrayContainer implements Container {
+        private char[] values = new char[4];
+        private int cardinality;
+
+        @Override
+        public Container add(char value) {
+            int index;
+            if (cardinality == 0 || values[cardinality - 1] < value) {
+                index = cardinality;
+            } else {
+                index = Arrays.binarySearch(values, 0, cardinality, value);
+                if (index >= 0) {
+                    return this;
+                }
+                index = -index - 1;
+            }
+
+            if (cardinality == ARRAY_LIMIT) {
+                return toBitmap().add(value);
+            }
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_LIMIT));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public void forEachInRange(int low, int high, int base, IntConsumer consumer) {
+            int start = Arrays.binarySearch(values, 0, cardinality, (char) low);
+            start = start < 0 ? -start - 1 : start;
+            for (int i = start; i < cardinality && values[i] < high; i++) {
+                consumer.accept(base | values[i]);
+            }
+        }
+
+        @Override
+        public Container and(Container other) {
+            ArrayContainer result = new ArrayContainer();
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i])) {
+                    result.add(values[i]);
+                }
+            }
+            return result;
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    /** Blocco denso: un bit per ciascuno dei 65536 valori */
+    private static final class BitmapContainer implements Container {
+        private final long[] words = new long[BITMAP_WORDS];
+        private int cardinality;
+
+        @Override
+        public Container add(char value) {
+            long mask = 1L << value;
+            int word = value >>> 6;
+            if ((words[word] & mask) == 0) {
+                words[word] |= mask;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public void forEachInRange(int low, int high, int base, IntConsumer consumer) {
+            if (low >= high) {
+                return;
+            }
+            int firstWord = low >>> 6;
+            int lastWord = (high - 1) >>> 6;
+            for (int w = firstWord; w <= lastWord; w++) {
+                long word = words[w];
+                if (w == firstWord) {
+                    word &= -1L << low;
+                }
+                if (w == lastWord) {
+                    word &= -1L >>> (63 - ((high - 1) & 63));
+                }
+                while (word != 0) {
+                    consumer.accept(base | (w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        public Container and(Container other) {
+            if (other instanceof BitmapContainer bitmap) {
+                BitmapContainer result = new BitmapContainer();
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    result.words[w] = words[w] & bitmap.words[w];
+                    result.cardinality += Long.bitCount(result.words[w]);
+                }
+                return result;
+            }
+            return other.and(this);
+        }
+    }
+}
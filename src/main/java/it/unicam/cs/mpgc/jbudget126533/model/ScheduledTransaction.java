@@ -1,5 +1,9 @@
 package it.unicam.cs.mpgc.jbudget126533.model;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -10,9 +14,13 @@ import java.util.stream.Collectors;
  * Ogni transazione programmata ha una descrizione, un importo, un tipo di movimento (entrata/uscita),
  * una lista di tag per la categorizzazione, una data di inizio, una data di fine e una ricorrenza.
  * </p>
+ * <p>
+ * Le fotografie del registro contengono copie di sola lettura ({@link #frozenCopy()}):
+ * l'esecuzione aggiorna la prossima data solo sull'istanza gestita dal registro.
+ * </p>
  */
 public class ScheduledTransaction extends Transaction {
-    private final String description;
+    private String description;
     private RecurrenceType recurrence;
     private LocalDate startDate;
     private LocalDate nextExecutionDate;
@@ -20,6 +28,8 @@ public class ScheduledTransaction extends Transaction {
     private boolean active;
     private List<String> tagNames;
 
+    /** True per le copie di sola lettura pubblicate nelle {@link LedgerSnapshot} */
+    private boolean frozen;
 
     public ScheduledTransaction() {
         super();
@@ -58,13 +68,14 @@ public class ScheduledTransaction extends Transaction {
      * @param allTags Mappa dei tag esistenti per nome
      */
     public void rebuildTags(Map<String, ITag> allTags) {
+        checkMutable();
         if (tagNames != null && allTags != null) {
             this.tags = tagNames.stream()
                     .map(allTags::get)
                     .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+                    .toList();
         } else {
-            this.tags = new ArrayList<>();
+            this.tags = List.of();
         }
     }
 
@@ -81,13 +92,13 @@ public class ScheduledTransaction extends Transaction {
     /**
      * Restituisce i tag associati alla transazione.
      *
-     * @return Lista dei tag
+     * @return Lista immutabile dei tag
      */
     public List<ITag> getTags() {
         if (tags == null) {
             return Collections.emptyList();
         }
-        return new ArrayList<>(tags);
+        return tags;
     }
 
     /**
@@ -105,8 +116,10 @@ public class ScheduledTransaction extends Transaction {
      * Calcola inoltre la prossima data di esecuzione.
      *
      * @return La transazione generata, o null se non ancora eseguibile
+     * @throws UnsupportedOperationException se la transazione è una copia di sola lettura
      */
     public ITransaction execute() {
+        checkMutable();
         if (!active || nextExecutionDate.isAfter(LocalDate.now())) {
             return null;
         }
@@ -135,24 +148,80 @@ public class ScheduledTransaction extends Transaction {
     }
 
     /**
-     * Aggiorna la prossima data di esecuzione in base alla ricorrenza.
+     * Restituisce una copia di sola lettura con lo stato attuale, per le fotografie del registro.
+     *
+     * @return copia che non può essere eseguita
+     */
+    synchronized ScheduledTransaction frozenCopy() {
+        if (frozen) {
+            return this;
+        }
+        ScheduledTransaction copy = new ScheduledTransaction();
+        copy.type = type;
+        copy.user = user;
+        copy.cents = cents;
+        copy.date = date;
+        copy.tags = tags;
+        copy.person = person;
+        copy.description = description;
+        copy.recurrence = recurrence;
+        copy.startDate = startDate;
+        copy.nextExecutionDate = nextExecutionDate;
+        copy.endDate = endDate;
+        copy.active = active;
+        copy.tagNames = tagNames != null ? Collections.unmodifiableList(new ArrayList<>(tagNames)) : List.of();
+        copy.frozen = true;
+        return copy;
+    }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Transazione programmata di sola lettura: " + description);
+        }
+    }
+
+    @Override
+    void writeJsonFields(JsonWriter out) throws IOException {
+        out.name("description").value(description);
+        out.name("recurrence");
+        ModelTypeAdapters.writeEnum(out, recurrence);
+        out.name("startDate");
+        ModelTypeAdapters.writeDate(out, startDate);
+        out.name("nextExecutionDate");
+        ModelTypeAdapters.writeDate(out, nextExecutionDate);
+        out.name("endDate");
+        ModelTypeAdapters.writeDate(out, endDate);
+        out.name("active").value(active);
+        out.name("tagNames");
+        ModelTypeAdapters.writeStrings(out, tagNames);
+        super.writeJsonFields(out);
+    }
+
+    @Override
+    boolean readJsonField(String name, JsonReader in) throws IOException {
+        switch (name) {
+            case "description" -> description = ModelTypeAdapters.readString(in);
+            case "recurrence" -> recurrence = ModelTypeAdapters.readEnum(in, RecurrenceType.class);
+            case "startDate" -> startDate = ModelTypeAdapters.readDate(in);
+            case "nextExecutionDate" -> nextExecutionDate = ModelTypeAdapters.readDate(in);
+            case "endDate" -> endDate = ModelTypeAdapters.readDate(in);
+            case "active" -> active = in.nextBoolean();
+            case "tagNames" -> tagNames = ModelTypeAdapters.readStrings(in);
+            default -> {
+                return super.readJsonField(name, in);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Aggiorna la prossima data di esecuzione in base alla ricorrenza ({@link RecurrenceType#nextAfter}).
      * Disattiva la transazione se si supera la data di fine.
      */
     private void calculateNextExecutionDate() {
-        switch (recurrence) {
-            case GIORNALIERO:
-                nextExecutionDate = nextExecutionDate.plusDays(1);
-                break;
-            case SETTIMANALE:
-                nextExecutionDate = nextExecutionDate.plusWeeks(1);
-                break;
-            case MENSILE:
-                nextExecutionDate = nextExecutionDate.plusMonths(1);
-                break;
-            case ANNUALE:
-                nextExecutionDate = nextExecutionDate.plusYears(1);
-                break;
-        }
+        // Calcolata dalla data di inizio, così le ricorrenze mensili dal 31 non scivolano al 28
+        LocalDate anchor = startDate != null ? startDate : nextExecutionDate;
+        nextExecutionDate = recurrence.nextAfter(anchor, nextExecutionDate);
 
         if (endDate != null && nextExecutionDate.isAfter(endDate)) {
             active = false;
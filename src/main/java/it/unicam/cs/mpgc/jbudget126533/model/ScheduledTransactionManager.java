@@ -48,6 +48,7 @@ public class ScheduledTransactionManager extends BaseManager<ScheduledTransactio
             System.err.println("Errore nel caricamento transazioni programmate: " + e.getMessage());
             managedItems.clear();
         }
+        itemsChanged();
     }
 
     /**
@@ -73,12 +74,13 @@ public class ScheduledTransactionManager extends BaseManager<ScheduledTransactio
     }
 
     /**
-     * Restituisce una copia della lista di tutte le transazioni programmate.
+     * Restituisce tutte le transazioni programmate, nello stesso ordine usato dagli indici di
+     * {@link #removeScheduledTransaction(int)}. La lista è immutabile e condivisa fino alla prossima modifica.
      *
-     * @return Lista di transazioni programmate
+     * @return Lista immutabile di transazioni programmate
      */
     public List<ScheduledTransaction> getScheduledTransactions() {
-        return new ArrayList<>(managedItems.values());
+        return itemsSnapshot();
     }
 
     /**
@@ -88,6 +90,16 @@ public class ScheduledTransactionManager extends BaseManager<ScheduledTransactio
      * </p>
      */
     public void checkAndExecuteScheduledTransactions() {
+        // Transazioni eseguite e nuove date di esecuzione vengono confermate insieme
+        WriteAheadLog.atomically(() -> {
+            if (executeDueTransactions()) {
+                itemsChanged();
+                writeItems();
+            }
+        });
+    }
+
+    private boolean executeDueTransactions() {
         boolean executed = false;
         LocalDate today = LocalDate.now();
 
@@ -95,23 +107,33 @@ public class ScheduledTransactionManager extends BaseManager<ScheduledTransactio
             if (scheduled.isActive() && !scheduled.getNextExecutionDate().isAfter(today)) {
                 ITransaction transaction = scheduled.execute();
                 if (transaction != null) {
-                    ledger.addTransaction(transaction);
-                    ledger.write(transaction);
+                    ledger.record(transaction);
                     executed = true;
                     System.out.println("Eseguita transazione programmata: " + scheduled.getDescription());
                 }
             }
         }
 
-        if (executed) {
-            saveItems();
-        }
+        return executed;
     }
 
     public void saveScheduledTransactions() {
         saveItems();
     }
 
+    /**
+     * Sostituisce tutte le transazioni programmate (ad esempio dopo una sincronizzazione) e salva lo stato.
+     *
+     * @param transactions nuova lista completa di transazioni programmate
+     */
+    public void replaceScheduledTransactions(List<ScheduledTransaction> transactions) {
+        managedItems.clear();
+        for (ScheduledTransaction transaction : transactions) {
+            managedItems.put("SCHED_" + transaction.hashCode(), transaction);
+        }
+        saveItems();
+    }
+
     /**
      * Ricostruisce i tag delle transazioni programmate usando il TagManager.
      */
@@ -0,0 +1,111 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Vista immutabile di una lista che cresce solo in coda, con condivisione strutturale.
+ * <p>
+ * Ogni vista vede i primi {@code size} elementi di un array condiviso. Aggiungere un elemento
+ * ({@link #appended(Object)}) crea una nuova vista che scrive nella prima posizione libera
+ * dello stesso array, invisibile alle viste precedenti; l'array viene copiato solo quando è pieno
+ * o quando la posizione è già stata occupata da un'altra vista. Le viste esistenti non cambiano
+ * mai: chi le riceve le può scorrere senza copie e senza lock.
+ * </p>
+ * <p>
+ * Ogni vista ha una versione, incrementata a ogni aggiunta o sostituzione, che permette ai lettori
+ * di riconoscere in O(1) se i dati sono cambiati.
+ * </p>
+ *
+ * @param <E> tipo degli elementi
+ */
+final class SnapshotList<E> extends AbstractList<E> implements RandomAccess {
+
+    /** Array condiviso tra le viste; {@code used} è il numero di posizioni già occupate */
+    private static final class Buffer {
+        private final Object[] elements;
+        private int used;
+
+        private Buffer(Object[] elements, int used) {
+            this.elements = elements;
+            this.used = used;
+        }
+    }
+
+    private static final SnapshotList<?> EMPTY = new SnapshotList<>(new Buffer(new Object[0], 0), 0, 0);
+
+    private final Buffer buffer;
+    private final Object[] elements;
+    private final int size;
+    private final long version;
+
+    private SnapshotList(Buffer buffer, int size, long version) {
+        this.buffer = buffer;
+        this.elements = buffer.elements;
+        this.size = size;
+        this.version = version;
+    }
+
+    /**
+     * @return vista vuota
+     */
+    @SuppressWarnings("unchecked")
+    static <E> SnapshotList<E> empty() {
+        return (SnapshotList<E>) EMPTY;
+    }
+
+    /**
+     * Crea una vista con una copia degli elementi indicati.
+     *
+     * @param items   elementi iniziali
+     * @param version versione della nuova vista
+     * @return nuova vista
+     */
+    static <E> SnapshotList<E> copyOf(Collection<? extends E> items, long version) {
+        Object[] copy = items.toArray();
+        return new SnapshotList<>(new Buffer(Arrays.copyOf(copy, Math.max(16, copy.length)), copy.length),
+                copy.length, version);
+    }
+
+    /**
+     * Restituisce una vista con un elemento in più in coda. Questa vista resta invariata.
+     *
+     * @param element elemento da aggiungere
+     * @return nuova vista
+     */
+    SnapshotList<E> appended(E element) {
+        synchronized (buffer) {
+            if (buffer.used == size && size < elements.length) {
+                elements[size] = element;
+                buffer.used++;
+                return new SnapshotList<>(buffer, size + 1, version + 1);
+            }
+        }
+        Object[] grown = Arrays.copyOf(elements, Math.max(16, size * 2));
+        grown[size] = element;
+        return new SnapshotList<>(new Buffer(grown, size + 1), size + 1, version + 1);
+    }
+
+    /**
+     * @return versione della vista
+     */
+    long version() {
+        return version;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Indice " + index + " fuori dalla vista di " + size + " elementi");
+        }
+        return (E) elements[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -4,6 +4,8 @@ import com.google.gson.reflect.TypeToken;
 
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -11,9 +13,10 @@ import java.util.stream.Collectors;
  */
 public class TagManager {
 
-    private static final Map<String, ITag> allTags = new HashMap<>();
-    private static final Set<String> selectedTags = new HashSet<>();
-    private static IFileManagement fileManagement = new FileManagement();
+    // Strutture concorrenti: i salvataggi differiti le leggono dal thread di PersistenceScheduler
+    private static final Map<String, ITag> allTags = new ConcurrentHashMap<>();
+    private static final Set<String> selectedTags = ConcurrentHashMap.newKeySet();
+    private static IFileManagement fileManagement = PersistenceContext.fileManagement();
 
     private static final String TAG_FILE = FilePaths.TAG_FILE;
     private static final String ALL_TAGS_FILE = FilePaths.ALL_TAGS_FILE;
@@ -21,6 +24,19 @@ public class TagManager {
     public static Map<String, ITag> getAllTagsMap() { return allTags; }
     public static Set<String> getSelectedTagsSet() { return selectedTags; }
 
+    // Chiavi con cui i due file vengono registrati presso PersistenceScheduler
+    private static final Object ALL_TAGS_OWNER = new Object();
+    private static final Object SELECTED_TAGS_OWNER = new Object();
+
+    // Incrementato a ogni modifica della gerarchia: gli indici per sottoalbero si ricostruiscono quando cambia
+    private static final AtomicInteger hierarchyVersion = new AtomicInteger();
+
+    // Ultima vista immutabile di allTags, valida finché la versione della gerarchia non cambia
+    private static volatile TagsView tagsView;
+
+    private record TagsView(int version, Map<String, ITag> tags) {
+    }
+
     static {
         loadAllTags();        // Carica tutti i tag salvati
         loadSelectedTags();   // Carica tag selezionati
@@ -79,6 +95,7 @@ public class TagManager {
     private static ITag createTagInternal(String name, ITag parent) {
         ITag tag = new Tag(name, parent);
         allTags.put(name, tag);
+        hierarchyVersion.incrementAndGet();
         return tag;
     }
 
@@ -89,16 +106,37 @@ public class TagManager {
         if (allTags.containsKey(name)) return allTags.get(name);
         ITag tag = new Tag(name, parent);
         allTags.put(name, tag);
+        hierarchyVersion.incrementAndGet();
         saveAllTags();
         return tag;
     }
 
     public static ITag getTag(String name) { return allTags.get(name); }
 
-    public static Map<String, ITag> getAllTags() { return new HashMap<>(allTags); }
+    /**
+     * Restituisce tutti i tag come mappa immutabile. La mappa viene copiata solo quando
+     * la gerarchia cambia: finché resta invariata le chiamate condividono la stessa vista.
+     *
+     * @return mappa immutabile nome → tag
+     */
+    public static Map<String, ITag> getAllTags() {
+        int version = hierarchyVersion.get();
+        TagsView view = tagsView;
+        if (view == null || view.version() != version) {
+            view = new TagsView(version, Collections.unmodifiableMap(new HashMap<>(allTags)));
+            tagsView = view;
+        }
+        return view.tags();
+    }
 
     public static boolean tagExists(String name) { return allTags.containsKey(name); }
 
+    /**
+     * Restituisce la versione corrente della gerarchia, che cambia a ogni creazione,
+     * caricamento o reset dei tag.
+     */
+    static int hierarchyVersion() { return hierarchyVersion.get(); }
+
     // ----------------- gestione tag selezionati -----------------
 
     public static void selectTag(String name) {
@@ -134,7 +172,14 @@ public class TagManager {
         }
     }
 
+    /**
+     * Pianifica il salvataggio dei tag selezionati tramite {@link PersistenceScheduler}.
+     */
     public static void saveSelectedTags() {
+        PersistenceScheduler.schedule(SELECTED_TAGS_OWNER, TagManager::writeSelectedTags);
+    }
+
+    private static void writeSelectedTags() {
         try {
             fileManagement.writeObject(FilePaths.getFileNameOnly(FilePaths.TAG_FILE), selectedTags);
         } catch (Exception e) {
@@ -196,9 +241,17 @@ public class TagManager {
                 }
             }
         }
+        hierarchyVersion.incrementAndGet();
     }
 
+    /**
+     * Pianifica il salvataggio della gerarchia dei tag tramite {@link PersistenceScheduler}.
+     */
     public static void saveAllTags() {
+        PersistenceScheduler.schedule(ALL_TAGS_OWNER, TagManager::writeAllTags);
+    }
+
+    private static void writeAllTags() {
         try {
             List<TagStructure> tagStructures = allTags.values().stream()
                     .map(TagStructure::new)
@@ -221,6 +274,7 @@ public class TagManager {
 
             allTags.clear();
             selectedTags.clear();
+            hierarchyVersion.incrementAndGet();
             initializeDefaultTags();
             saveAllTags();
 
@@ -0,0 +1,132 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Dizionario degli insiemi di tag: ogni combinazione distinta di tag riceve un id intero stabile
+ * al momento dell'inserimento della transazione.
+ * <p>
+ * Le aggregazioni per insieme di tag diventano così incrementi di un array indicizzato per id,
+ * senza copiare, ordinare e concatenare i nomi dei tag a ogni riga. Le chiavi testuali
+ * ({@code "A, B"}, come in {@link IBudgetManagement#balanceForEachTag}) e i nomi in minuscolo
+ * per i filtri vengono calcolati una sola volta per insieme.
+ * </p>
+ */
+final class TagSetDictionary {
+
+    private final List<List<ITag>> tagSets = new ArrayList<>();
+    private final List<List<String>> names = new ArrayList<>();
+    private final List<List<String>> lowerCaseNames = new ArrayList<>();
+    private final List<String> keys = new ArrayList<>();
+    private final Map<List<String>, Integer> ids = new HashMap<>();
+
+    /**
+     * Restituisce l'id dell'insieme di tag, registrandolo se è nuovo.
+     * Due liste con gli stessi nomi nello stesso ordine hanno lo stesso id.
+     *
+     * @param tags tag della transazione (può essere null)
+     * @return id dell'insieme
+     */
+    synchronized int intern(List<ITag> tags) {
+        List<ITag> tagList = tags == null ? List.of() : tags.stream()
+                .filter(tag -> tag != null && tag.getName() != null)
+                .toList();
+        List<String> tagNames = tagList.stream().map(ITag::getName).toList();
+        Integer id = ids.get(tagNames);
+        if (id != null) {
+            return id;
+        }
+
+        tagSets.add(tagList);
+        names.add(tagNames);
+        lowerCaseNames.add(tagNames.stream().map(name -> name.toLowerCase(Locale.ROOT)).toList());
+        keys.add(tagNames.stream().sorted().collect(Collectors.joining(", ")));
+        ids.put(tagNames, keys.size() - 1);
+        return keys.size() - 1;
+    }
+
+    /**
+     * @return numero di insiemi registrati
+     */
+    synchronized int size() {
+        return keys.size();
+    }
+
+    /**
+     * Rimuove tutti gli insiemi registrati.
+     */
+    synchronized void clear() {
+        tagSets.clear();
+        names.clear();
+        lowerCaseNames.clear();
+        keys.clear();
+        ids.clear();
+    }
+
+    /**
+     * @param id id dell'insieme
+     * @return tag dell'insieme (lista immutabile condivisa)
+     */
+    synchronized List<ITag> tags(int id) {
+        return tagSets.get(id);
+    }
+
+    /**
+     * @param id id dell'insieme
+     * @return nomi dei tag dell'insieme, nell'ordine originale
+     */
+    synchronized List<String> names(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * @param id id dell'insieme
+     * @return nomi dei tag in ordine alfabetico separati da {@code ", "}; vuota per nessun tag
+     */
+    synchronized String key(int id) {
+        return keys.get(id);
+    }
+
+    /**
+     * Indica, per ogni insieme, se contiene il tag: i filtri sulle righe confrontano poi solo interi.
+     *
+     * @param tag nome del tag, senza distinzione tra maiuscole e minuscole
+     * @return array indicizzato per id dell'insieme
+     */
+    synchronized boolean[] containing(String tag) {
+        boolean[] matching = new boolean[keys.size()];
+        if (tag == null) {
+            return matching;
+        }
+        String wanted = tag.toLowerCase(Locale.ROOT);
+        for (int id = 0; id < matching.length; id++) {
+            matching[id] = lowerCaseNames.get(id).contains(wanted);
+        }
+        return matching;
+    }
+
+    /**
+     * Riporta i totali per id sulle chiavi testuali, escludendo l'insieme vuoto.
+     * Più insiemi possono avere la stessa chiave (gli stessi tag in ordine diverso): i totali si sommano.
+     *
+     * @param totals  somme in centesimi indicizzate per id
+     * @param present per ogni id, true se almeno una transazione vi ha contribuito
+     * @return mappa chiave → importo
+     */
+    synchronized HashMap<String, Double> totalsByKey(long[] totals, boolean[] present) {
+        HashMap<String, long[]> byKey = new HashMap<>();
+        for (int id = 0; id < totals.length; id++) {
+            if (present[id] && !tagSets.get(id).isEmpty()) {
+                byKey.computeIfAbsent(keys.get(id), k -> new long[1])[0] += totals[id];
+            }
+        }
+        HashMap<String, Double> map = new HashMap<>();
+        byKey.forEach((key, cents) -> map.put(key, Money.toDouble(cents[0])));
+        return map;
+    }
+}
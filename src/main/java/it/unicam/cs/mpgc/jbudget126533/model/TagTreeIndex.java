@@ -0,0 +1,565 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Indice per le somme su un sottoalbero di tag in un intervallo di date.
+ * <p>
+ * Ogni tag della gerarchia riceve una posizione in una visita in profondità (Euler tour),
+ * così che il sottoalbero di un tag corrisponda all'intervallo contiguo {@code [tin, tout)}.
+ * Le transazioni diventano punti (posizione del tag, giorno) raccolti in un albero di Fenwick
+ * sulle posizioni i cui nodi contengono i punti ordinati per giorno, con somme e conteggi prefissi
+ * per tipo: una somma per sottoalbero e periodo costa O(log T · log N).
+ * </p>
+ * <p>
+ * Una transazione con più tag dello stesso sottoalbero va contata una volta sola: per questo
+ * i suoi tag, ordinati per posizione, producono un punto +1 ciascuno e un punto -1 sul minimo
+ * antenato comune di ogni coppia consecutiva. Qualunque sottoalbero contiene allora un saldo
+ * netto di 1 se include almeno uno dei tag della transazione, altrimenti 0.
+ * </p>
+ * <p>
+ * Le transazioni aggiunte dopo la costruzione ({@link #add(ITransaction)}) finiscono in un piccolo
+ * delta che le query scorrono per intero; i loro tag non ancora presenti diventano radici senza figli.
+ * L'indice va ricostruito quando il delta raggiunge {@link #DELTA_LIMIT} voci, quando cambia la
+ * gerarchia o quando le transazioni vengono sostituite.
+ * </p>
+ */
+final class TagTreeIndex {
+
+    private static final int TYPES = MovementType.values().length;
+
+    /** Numero massimo di transazioni tenute nel delta prima della ricostruzione */
+    static final int DELTA_LIMIT = 128;
+
+    /** Nome del tag in minuscolo → nodo */
+    private final Map<String, Integer> nodeIds = new HashMap<>();
+    private final List<String> displayNames = new ArrayList<>();
+    private int[] parent;
+    private int[] depth;
+    private int[] tin;
+    private int[] tout;
+    /** Nodi in ordine di visita */
+    private int[] order;
+
+    /** Nodi dell'albero di Fenwick (1..T), ciascuno con i propri punti ordinati per giorno */
+    private final FenwickNode[] fenwick;
+
+    // Transazioni aggiunte dopo la costruzione, con i nodi distinti dei loro tag
+    private final long[] deltaDays = new long[DELTA_LIMIT];
+    private final long[] deltaAmounts = new long[DELTA_LIMIT];
+    private final byte[] deltaTypes = new byte[DELTA_LIMIT];
+    private final int[][] deltaNodes = new int[DELTA_LIMIT][];
+    private int deltaSize;
+
+    /**
+     * Costruisce l'indice per un insieme di transazioni e una gerarchia di tag.
+     * I tag delle transazioni assenti dalla gerarchia vengono trattati come radici senza figli.
+     *
+     * @param transactions transazioni da indicizzare
+     * @param hierarchy    tag della gerarchia (con genitori e figli)
+     */
+    TagTreeIndex(Collection<ITransaction> transactions, Collection<ITag> hierarchy) {
+        Map<Integer, List<Integer>> children = new HashMap<>();
+        List<Integer> parents = new ArrayList<>();
+        for (ITag tag : hierarchy) {
+            node(tag.getName(), parents);
+        }
+        for (ITag tag : hierarchy) {
+            if (tag.getParent() != null && tag.getParent().getName() != null) {
+                int child = node(tag.getName(), parents);
+                int father = node(tag.getParent().getName(), parents);
+                if (child != father) {
+                    parents.set(child, father);
+                }
+            }
+        }
+        for (ITransaction transaction : transactions) {
+            for (ITag tag : tagsOf(transaction)) {
+                node(tag.getName(), parents);
+            }
+        }
+
+        int nodes = displayNames.size();
+        parent = parents.stream().mapToInt(Integer::intValue).toArray();
+        for (int v = 0; v < nodes; v++) {
+            children.computeIfAbsent(parent[v], k -> new ArrayList<>()).add(v);
+        }
+        eulerTour(children, nodes);
+
+        Points points = new Points();
+        for (ITransaction transaction : transactions) {
+            if (transaction.getDate() != null && transaction.getType() != null) {
+                addPoints(transaction, points);
+            }
+        }
+        fenwick = points.toFenwick(nodes);
+    }
+
+    /**
+     * Aggiunge una transazione al delta. Le transazioni senza data o senza tipo non vengono indicizzate.
+     *
+     * @param transaction transazione da aggiungere
+     * @return false se il delta è pieno e la transazione non è stata aggiunta: l'indice va ricostruito
+     */
+    synchronized boolean add(ITransaction transaction) {
+        if (transaction.getDate() == null || transaction.getType() == null) {
+            return true;
+        }
+        if (deltaSize == DELTA_LIMIT) {
+            return false;
+        }
+        deltaDays[deltaSize] = transaction.getDate().toEpochDay();
+        deltaAmounts[deltaSize] = transaction.getCents();
+        deltaTypes[deltaSize] = (byte) transaction.getType().ordinal();
+        deltaNodes[deltaSize] = tagsOf(transaction).stream()
+                .mapToInt(tag -> nodeOrRoot(tag.getName()))
+                .distinct()
+                .toArray();
+        deltaSize++;
+        return true;
+    }
+
+    /**
+     * Somma gli importi delle transazioni con almeno un tag nel sottoalbero del tag indicato.
+     *
+     * @param type  tipo di movimento, null per tutti
+     * @param tag   nome del tag radice del sottoalbero
+     * @param start data di inizio (inclusa), null per nessun limite
+     * @param end   data di fine (inclusa), null per nessun limite
+     * @return somma degli importi
+     */
+    synchronized double sum(MovementType type, String tag, LocalDate start, LocalDate end) {
+        Integer node = tag != null ? nodeIds.get(normalize(tag)) : null;
+        if (node == null) {
+            return 0;
+        }
+        long from = firstDay(start);
+        long to = lastDay(end);
+        long total = subtreeSum(type, node, from, to);
+        for (int i = 0; i < deltaSize; i++) {
+            if (deltaMatches(i, type, from, to) && deltaInSubtree(i, node)) {
+                total += deltaAmounts[i];
+            }
+        }
+        return Money.toDouble(total);
+    }
+
+    /**
+     * Conta le transazioni con almeno un tag nel sottoalbero del tag indicato.
+     *
+     * @param type  tipo di movimento, null per tutti
+     * @param tag   nome del tag radice del sottoalbero
+     * @param start data di inizio (inclusa), null per nessun limite
+     * @param end   data di fine (inclusa), null per nessun limite
+     * @return numero di transazioni
+     */
+    synchronized int count(MovementType type, String tag, LocalDate start, LocalDate end) {
+        Integer node = tag != null ? nodeIds.get(normalize(tag)) : null;
+        if (node == null) {
+            return 0;
+        }
+        long from = firstDay(start);
+        long to = lastDay(end);
+        int total = subtreeCount(type, node, from, to);
+        for (int i = 0; i < deltaSize; i++) {
+            if (deltaMatches(i, type, from, to) && deltaInSubtree(i, node)) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Calcola il totale di ogni sottoalbero che contiene transazioni nel periodo,
+     * in ordine di visita (ogni categoria è seguita dalle sue sottocategorie).
+     *
+     * @param type  tipo di movimento, null per tutti
+     * @param start data di inizio (inclusa), null per nessun limite
+     * @param end   data di fine (inclusa), null per nessun limite
+     * @return mappa percorso completo del tag → totale del sottoalbero
+     */
+    synchronized Map<String, Double> totals(MovementType type, LocalDate start, LocalDate end) {
+        long from = firstDay(start);
+        long to = lastDay(end);
+
+        // Il delta viene riportato su ogni antenato dei suoi tag, una volta per transazione
+        long[] deltaSums = new long[order.length];
+        int[] deltaCounts = new int[order.length];
+        int[] seen = new int[order.length];
+        for (int i = 0; i < deltaSize; i++) {
+            if (!deltaMatches(i, type, from, to)) {
+                continue;
+            }
+            for (int v : deltaNodes[i]) {
+                for (int u = v; u >= 0 && seen[u] != i + 1; u = parent[u]) {
+                    seen[u] = i + 1;
+                    deltaSums[u] += deltaAmounts[i];
+                    deltaCounts[u]++;
+                }
+            }
+        }
+
+        Map<String, Double> totals = new LinkedHashMap<>();
+        for (int node : order) {
+            if (subtreeCount(type, node, from, to) + deltaCounts[node] != 0) {
+                totals.put(fullPath(node), Money.toDouble(subtreeSum(type, node, from, to) + deltaSums[node]));
+            }
+        }
+        return totals;
+    }
+
+    // ==================== COSTRUZIONE ====================
+
+    private int node(String name, List<Integer> parents) {
+        String key = normalize(name);
+        Integer id = nodeIds.get(key);
+        if (id == null) {
+            id = displayNames.size();
+            nodeIds.put(key, id);
+            displayNames.add(name);
+            parents.add(-1);
+        }
+        return id;
+    }
+
+    /** Nodo del tag; un tag nuovo viene aggiunto senza genitore e senza figli, in coda alla visita */
+    private int nodeOrRoot(String name) {
+        Integer id = nodeIds.get(normalize(name));
+        if (id != null) {
+            return id;
+        }
+        int v = displayNames.size();
+        nodeIds.put(normalize(name), v);
+        displayNames.add(name);
+        parent = Arrays.copyOf(parent, v + 1);
+        depth = Arrays.copyOf(depth, v + 1);
+        tin = Arrays.copyOf(tin, v + 1);
+        tout = Arrays.copyOf(tout, v + 1);
+        order = Arrays.copyOf(order, v + 1);
+        parent[v] = -1;
+        tin[v] = v;
+        tout[v] = v + 1;
+        order[v] = v;
+        return v;
+    }
+
+    /** Visita iterativa in profondità, con i figli in ordine alfabetico */
+    private void eulerTour(Map<Integer, List<Integer>> children, int nodes) {
+        Comparator<Integer> byName = Comparator.comparing(v -> displayNames.get(v).toLowerCase(Locale.ROOT));
+        children.values().forEach(list -> list.sort(byName));
+
+        tin = new int[nodes];
+        tout = new int[nodes];
+        depth = new int[nodes];
+        order = new int[nodes];
+        Arrays.fill(tin, -1);
+
+        int time = 0;
+        int[] stack = new int[nodes];
+        int[] next = new int[nodes];
+        for (int root : children.getOrDefault(-1, List.of())) {
+            int top = 0;
+            stack[0] = root;
+            tin[root] = time;
+            order[time++] = root;
+            while (top >= 0) {
+                int v = stack[top];
+                List<Integer> kids = children.getOrDefault(v, List.of());
+                if (next[v] < kids.size()) {
+                    int child = kids.get(next[v]++);
+                    depth[child] = depth[v] + 1;
+                    tin[child] = time;
+                    order[time++] = child;
+                    stack[++top] = child;
+                } else {
+                    tout[v] = time;
+                    top--;
+                }
+            }
+        }
+
+        // Nodi su un ciclo di genitori (gerarchia non valida): trattati come radici isolate
+        for (int v = 0; v < nodes; v++) {
+            if (tin[v] < 0) {
+                parent[v] = -1;
+                depth[v] = 0;
+                tin[v] = time;
+                order[time++] = v;
+                tout[v] = time;
+            }
+        }
+    }
+
+    private void addPoints(ITransaction transaction, Points points) {
+        int[] nodes = tagsOf(transaction).stream()
+                .mapToInt(tag -> nodeIds.get(normalize(tag.getName())))
+                .distinct()
+                .map(v -> tin[v])
+                .sorted()
+                .map(position -> order[position])
+                .toArray();
+        if (nodes.length == 0) {
+            return;
+        }
+
+        long day = transaction.getDate().toEpochDay();
+        byte type = (byte) transaction.getType().ordinal();
+        long amount = transaction.getCents();
+        for (int i = 0; i < nodes.length; i++) {
+            points.add(tin[nodes[i]], day, type, 1, amount);
+            if (i > 0) {
+                int ancestor = lowestCommonAncestor(nodes[i - 1], nodes[i]);
+                if (ancestor >= 0) {
+                    points.add(tin[ancestor], day, type, -1, -amount);
+                }
+            }
+        }
+    }
+
+    /** Minimo antenato comune, -1 se i nodi appartengono a radici diverse */
+    private int lowestCommonAncestor(int a, int b) {
+        while (depth[a] > depth[b]) {
+            a = parent[a];
+        }
+        while (depth[b] > depth[a]) {
+            b = parent[b];
+        }
+        while (a != b && a >= 0) {
+            a = parent[a];
+            b = parent[b];
+        }
+        return a;
+    }
+
+    // ==================== INTERROGAZIONE ====================
+
+    private boolean deltaMatches(int i, MovementType type, long from, long to) {
+        return deltaDays[i] >= from && deltaDays[i] <= to && (type == null || deltaTypes[i] == type.ordinal());
+    }
+
+    private boolean deltaInSubtree(int i, int node) {
+        for (int v : deltaNodes[i]) {
+            if (tin[v] >= tin[node] && tin[v] < tout[node]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long subtreeSum(MovementType type, int node, long from, long to) {
+        return prefixSum(type, tout[node], from, to) - prefixSum(type, tin[node], from, to);
+    }
+
+    private int subtreeCount(MovementType type, int node, long from, long to) {
+        return prefixCount(type, tout[node], from, to) - prefixCount(type, tin[node], from, to);
+    }
+
+    /**
+     * Somma dei punti con posizione minore di {@code positions} e giorno in [from, to].
+     * Le posizioni dei tag aggiunti con il delta sono oltre l'albero di Fenwick, che non ha punti lì.
+     */
+    private long prefixSum(MovementType type, int positions, long from, long to) {
+        long total = 0;
+        for (int i = Math.min(positions, fenwick.length - 1); i > 0; i -= i & -i) {
+            total += fenwick[i].sum(type, from, to);
+        }
+        return total;
+    }
+
+    private int prefixCount(MovementType type, int positions, long from, long to) {
+        int total = 0;
+        for (int i = Math.min(positions, fenwick.length - 1); i > 0; i -= i & -i) {
+            total += fenwick[i].count(type, from, to);
+        }
+        return total;
+    }
+
+    private String fullPath(int node) {
+        StringBuilder path = new StringBuilder(displayNames.get(node));
+        for (int v = parent[node]; v >= 0; v = parent[v]) {
+            path.insert(0, displayNames.get(v) + " > ");
+        }
+        return path.toString();
+    }
+
+    private static List<ITag> tagsOf(ITransaction transaction) {
+        List<ITag> tags = transaction.getTags();
+        if (tags == null) {
+            return List.of();
+        }
+        return tags.stream().filter(tag -> tag != null && tag.getName() != null).toList();
+    }
+
+    private static String normalize(String tag) {
+        return tag.toLowerCase(Locale.ROOT);
+    }
+
+    private static long firstDay(LocalDate start) {
+        return start != null ? start.toEpochDay() : Long.MIN_VALUE;
+    }
+
+    private static long lastDay(LocalDate end) {
+        return end != null ? end.toEpochDay() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Punti raccolti durante la costruzione, in array primitivi.
+     */
+    private static final class Points {
+        private int[] positions = new int[16];
+        private long[] days = new long[16];
+        private byte[] types = new byte[16];
+        private byte[] weights = new byte[16];
+        private long[] amounts = new long[16];
+        private int size;
+
+        void add(int position, long day, byte type, int weight, long amount) {
+            if (size == positions.length) {
+                int capacity = size * 2;
+                positions = Arrays.copyOf(positions, capacity);
+                days = Arrays.copyOf(days, capacity);
+                types = Arrays.copyOf(types, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+            }
+            positions[size] = position;
+            days[size] = day;
+            types[size] = type;
+            weights[size] = (byte) weight;
+            amounts[size] = amount;
+            size++;
+        }
+
+        /**
+         * Distribuisce i punti nei nodi dell'albero di Fenwick. I punti vengono ordinati
+         * per giorno una sola volta, così ogni nodo riceve già la propria sequenza ordinata.
+         */
+        FenwickNode[] toFenwick(int nodes) {
+            long minDay = Long.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                minDay = Math.min(minDay, days[i]);
+            }
+            long[] byDay = new long[size];
+            for (int i = 0; i < size; i++) {
+                byDay[i] = ((days[i] - minDay) << 32) | i;
+            }
+            Arrays.sort(byDay);
+
+            int[] sizes = new int[nodes + 1];
+            for (int i = 0; i < size; i++) {
+                for (int f = positions[i] + 1; f <= nodes; f += f & -f) {
+                    sizes[f]++;
+                }
+            }
+            FenwickNode[] fenwick = new FenwickNode[nodes + 1];
+            for (int f = 1; f <= nodes; f++) {
+                fenwick[f] = new FenwickNode(sizes[f]);
+            }
+            for (long key : byDay) {
+                int i = (int) key;
+                for (int f = positions[i] + 1; f <= nodes; f += f & -f) {
+                    fenwick[f].append(days[i], types[i], weights[i], amounts[i]);
+                }
+            }
+            return fenwick;
+        }
+    }
+
+    /**
+     * Punti di un nodo dell'albero di Fenwick ordinati per giorno, con somme e conteggi prefissi per tipo.
+     */
+    private static final class FenwickNode {
+        private final long[] days;
+        private final long[][] prefixSums;
+        private final int[][] prefixCounts;
+        private int size;
+
+        FenwickNode(int capacity) {
+            days = new long[capacity];
+            prefixSums = new long[TYPES][capacity + 1];
+            prefixCounts = new int[TYPES][capacity + 1];
+        }
+
+        /** Accoda un punto; i punti arrivano in ordine di giorno */
+        void append(long day, int type, int weight, long amount) {
+            days[size] = day;
+            for (int t = 0; t < TYPES; t++) {
+                boolean match = type == t;
+                prefixSums[t][size + 1] = prefixSums[t][size] + (match ? amount : 0);
+                prefixCounts[t][size + 1] = prefixCounts[t][size] + (match ? weight : 0);
+            }
+            size++;
+        }
+
+        long sum(MovementType type, long from, long to) {
+            int low = lowerBound(from);
+            int high = upperBound(to);
+            if (low >= high) {
+                return 0;
+            }
+            if (type != null) {
+                return prefixSums[type.ordinal()][high] - prefixSums[type.ordinal()][low];
+            }
+            long total = 0;
+            for (long[] prefix : prefixSums) {
+                total += prefix[high] - prefix[low];
+            }
+            return total;
+        }
+
+        int count(MovementType type, long from, long to) {
+            int low = lowerBound(from);
+            int high = upperBound(to);
+            if (low >= high) {
+                return 0;
+            }
+            if (type != null) {
+                return prefixCounts[type.ordinal()][high] - prefixCounts[type.ordinal()][low];
+            }
+            int total = 0;
+            for (int[] prefix : prefixCounts) {
+                total += prefix[high] - prefix[low];
+            }
+            return total;
+        }
+
+        /** Primo indice con giorno >= day */
+        private int lowerBound(long day) {
+            int low = 0;
+            int high = days.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (days[mid] < day) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /** Primo indice con giorno > day */
+        private int upperBound(long day) {
+            int low = 0;
+            int high = days.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (days[mid] <= day) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
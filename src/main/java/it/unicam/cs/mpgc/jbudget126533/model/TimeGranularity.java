@@ -0,0 +1,57 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Ampiezza degli intervalli in cui vengono raggruppate le serie temporali del {@link Ledger}.
+ * <p>
+ * Ogni intervallo è identificato dal suo primo giorno: il giorno stesso, il lunedì della settimana,
+ * il primo del mese o il primo gennaio dell'anno.
+ * </p>
+ */
+public enum TimeGranularity {
+
+    /** Un intervallo per ogni giorno */
+    DAY,
+
+    /** Settimane da lunedì a domenica */
+    WEEK,
+
+    /** Mesi di calendario */
+    MONTH,
+
+    /** Anni di calendario */
+    YEAR;
+
+    /**
+     * Restituisce il primo giorno dell'intervallo che contiene la data.
+     *
+     * @param date data qualsiasi
+     * @return inizio dell'intervallo
+     */
+    public LocalDate bucketStart(LocalDate date) {
+        return switch (this) {
+            case DAY -> date;
+            case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> date.withDayOfMonth(1);
+            case YEAR -> date.withDayOfYear(1);
+        };
+    }
+
+    /**
+     * Restituisce il primo giorno dell'intervallo successivo.
+     *
+     * @param bucketStart inizio di un intervallo
+     * @return inizio dell'intervallo seguente
+     */
+    public LocalDate nextBucket(LocalDate bucketStart) {
+        return switch (this) {
+            case DAY -> bucketStart.plusDays(1);
+            case WEEK -> bucketStart.plusWeeks(1);
+            case MONTH -> bucketStart.plusMonths(1);
+            case YEAR -> bucketStart.plusYears(1);
+        };
+    }
+}
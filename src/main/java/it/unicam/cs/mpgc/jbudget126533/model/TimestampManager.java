@@ -1,15 +1,20 @@
 package it.unicam.cs.mpgc.jbudget126533.model;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Gestisce i timestamp di modifica inseriti direttamente nei file.
+ * Gestisce i timestamp di modifica dei file di dati.
+ * <p>
+ * I timestamp, insieme a dimensione e hash del contenuto, sono registrati nel
+ * {@link FileManifest} ({@code Data/manifest.json}) e non più nella prima riga dei file:
+ * i file di dati restano JSON valido e aggiornare un timestamp non richiede di riscriverli.
+ * I file nel vecchio formato, con la riga {@code // TIMESTAMP:} in testa, continuano a essere
+ * letti e il loro timestamp viene importato nel manifest.
+ * </p>
  */
 public final class TimestampManager {
 
@@ -17,14 +22,22 @@ public final class TimestampManager {
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     private static final String TIMESTAMP_PREFIX = "// TIMESTAMP: ";
 
-    private static final Map<String, LocalDateTime> timestampCache = new HashMap<>();
+    private static final String[] MAIN_FILES = {
+            FilePaths.MOVEMENT_FILE,
+            FilePaths.TAG_FILE,
+            FilePaths.ALL_TAGS_FILE,
+            FilePaths.BUDGET_FILE,
+            FilePaths.SCHEDULED_FILE,
+            FilePaths.AMORTIZATION_FILE
+    };
 
     private TimestampManager() {
         throw new UnsupportedOperationException("Classe di utilità, non istanziabile");
     }
 
     /**
-     * Inserisce o aggiorna il timestamp nella prima riga di un file.
+     * Registra nel manifest timestamp, dimensione e hash correnti di un file.
+     * Il file viene solo letto per calcolarne l'hash, mai riscritto.
      *
      * @param filePath percorso del file
      */
@@ -37,54 +50,50 @@ public final class TimestampManager {
         }
 
         try {
-            // Legge tutto il contenuto del file
-            String content = new String(Files.readAllBytes(file.toPath()));
-
-            // Divide in righe
-            String[] lines = content.split("\n");
-            StringBuilder newContent = new StringBuilder();
-
-            // Controlla se la prima riga è già un timestamp
-            boolean hasTimestamp = lines.length > 0 && lines[0].startsWith(TIMESTAMP_PREFIX);
-
-            // Aggiunge il nuovo timestamp come prima riga
-            newContent.append(TIMESTAMP_PREFIX).append(now.format(TIMESTAMP_FORMATTER)).append("\n");
-
-            // Aggiunge il resto del contenuto (saltando il vecchio timestamp se esiste)
-            int startLine = hasTimestamp ? 1 : 0;
-            for (int i = startLine; i < lines.length; i++) {
-                newContent.append(lines[i]);
-                if (i < lines.length - 1) {
-                    newContent.append("\n");
-                }
-            }
-
-            // Scrive il nuovo contenuto
-            Files.write(
-                    file.toPath(),
-                    newContent.toString().getBytes(),
-                    StandardOpenOption.TRUNCATE_EXISTING,
-                    StandardOpenOption.WRITE
-            );
-
-            timestampCache.put(filePath, now);
+            FileManifest.record(filePath, file.length(), FileManifest.hashOf(file), now);
             System.out.println("Timestamp aggiornato per " + filePath + ": " + now.format(TIMESTAMP_FORMATTER));
-
         } catch (IOException e) {
             System.err.println("Errore nell'aggiornamento del timestamp per " + filePath + ": " + e.getMessage());
         }
     }
 
     /**
-     * Legge il timestamp dalla prima riga di un file.
+     * Registra nel manifest un file appena scritto, di cui il chiamante conosce già
+     * dimensione e hash (calcolato durante la scrittura).
+     *
+     * @param filePath percorso del file
+     * @param size     dimensione in byte
+     * @param sha256   hash SHA-256 del contenuto in esadecimale
+     */
+    public static void recordWrite(String filePath, long size, String sha256) {
+        FileManifest.record(filePath, size, sha256, LocalDateTime.now());
+    }
+
+    /**
+     * Registra la modifica di un file senza riscriverlo né ricalcolarne l'hash.
+     * <p>
+     * Usato per le scritture in coda (journal), dove rileggere il file annullerebbe
+     * il vantaggio dell'append. Il manifest viene salvato con il prossimo aggiornamento,
+     * al consolidamento del {@link WriteAheadLog} o con {@link PersistenceScheduler#flush()}.
+     * </p>
+     *
+     * @param filePath percorso del file
+     */
+    public static void markModified(String filePath) {
+        FileManifest.touch(filePath, LocalDateTime.now());
+    }
+
+    /**
+     * Legge il timestamp di un file dal manifest, ricorrendo all'intestazione
+     * del vecchio formato se il file non è ancora registrato.
      *
      * @param filePath percorso del file
      * @return il timestamp dell'ultima modifica, o null se non esiste
      */
     public static LocalDateTime readTimestamp(String filePath) {
-        // Controlla prima la cache
-        if (timestampCache.containsKey(filePath)) {
-            return timestampCache.get(filePath);
+        FileManifest.Entry entry = FileManifest.get(filePath);
+        if (entry != null && entry.getLastModified() != null) {
+            return entry.getLastModified();
         }
 
         File file = new File(filePath);
@@ -94,20 +103,24 @@ public final class TimestampManager {
         }
 
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String firstLine = reader.readLine();
-
-            if (firstLine != null && firstLine.startsWith(TIMESTAMP_PREFIX)) {
-                String timestampStr = firstLine.substring(TIMESTAMP_PREFIX.length()).trim();
-                LocalDateTime timestamp = LocalDateTime.parse(timestampStr, TIMESTAMP_FORMATTER);
-                timestampCache.put(filePath, timestamp);
-                return timestamp;
-            }
-
+            skipTimestamp(filePath, reader);
         } catch (Exception e) {
             System.err.println("Errore nella lettura del timestamp per " + filePath + ": " + e.getMessage());
         }
 
-        return null;
+        entry = FileManifest.get(filePath);
+        return entry != null ? entry.getLastModified() : null;
+    }
+
+    /**
+     * Restituisce l'hash SHA-256 registrato per un file, o null se non disponibile.
+     *
+     * @param filePath percorso del file
+     * @return hash del contenuto in esadecimale
+     */
+    public static String readContentHash(String filePath) {
+        FileManifest.Entry entry = FileManifest.get(filePath);
+        return entry != null ? entry.sha256 : null;
     }
 
     /**
@@ -123,24 +136,18 @@ public final class TimestampManager {
     }
 
     /**
-     * Restituisce una mappa con tutti i timestamp correnti.
+     * Restituisce una mappa con tutti i timestamp correnti dei file principali.
+     * Per i file già registrati la risposta arriva dal solo manifest.
      *
      * @return mappa con i percorsi dei file e i relativi timestamp
      */
     public static Map<String, LocalDateTime> getAllTimestamps() {
         Map<String, LocalDateTime> allTimestamps = new HashMap<>();
+        Map<String, FileManifest.Entry> entries = FileManifest.getAll();
 
-        String[] mainFiles = {
-                FilePaths.MOVEMENT_FILE,
-                FilePaths.TAG_FILE,
-                FilePaths.ALL_TAGS_FILE,
-                FilePaths.BUDGET_FILE,
-                FilePaths.SCHEDULED_FILE,
-                FilePaths.AMORTIZATION_FILE
-        };
-
-        for (String filePath : mainFiles) {
-            LocalDateTime timestamp = readTimestamp(filePath);
+        for (String filePath : MAIN_FILES) {
+            FileManifest.Entry entry = entries.get(filePath);
+            LocalDateTime timestamp = entry != null ? entry.getLastModified() : readTimestamp(filePath);
             if (timestamp != null) {
                 allTimestamps.put(filePath, timestamp);
             }
@@ -150,35 +157,35 @@ public final class TimestampManager {
     }
 
     /**
-     * Legge il contenuto di un file saltando la riga del timestamp.
+     * Posiziona un reader dopo la riga del timestamp del vecchio formato, se presente,
+     * senza leggere il resto del file. Il timestamp letto viene importato nel manifest.
      *
-     * @param filePath percorso del file
-     * @return contenuto del file senza la riga del timestamp
+     * @param filePath percorso del file letto dal reader
+     * @param reader   reader posizionato all'inizio del file
+     * @throws IOException in caso di errore di lettura
      */
-    public static String readFileWithoutTimestamp(String filePath) throws IOException {
-        File file = new File(filePath);
-
-        if (!file.exists()) {
-            return "";
+    static void skipTimestamp(String filePath, BufferedReader reader) throws IOException {
+        reader.mark(TIMESTAMP_PREFIX.length());
+        char[] prefix = new char[TIMESTAMP_PREFIX.length()];
+        int read = 0;
+        while (read < prefix.length) {
+            int n = reader.read(prefix, read, prefix.length - read);
+            if (n < 0) break;
+            read += n;
         }
 
-        String content = new String(Files.readAllBytes(file.toPath()));
-        String[] lines = content.split("\n");
-
-        // Se la prima riga è un timestamp, la salta
-        boolean hasTimestamp = lines.length > 0 && lines[0].startsWith(TIMESTAMP_PREFIX);
+        if (read != prefix.length || !TIMESTAMP_PREFIX.equals(new String(prefix))) {
+            reader.reset();
+            return;
+        }
 
-        if (hasTimestamp) {
-            StringBuilder contentWithoutTimestamp = new StringBuilder();
-            for (int i = 1; i < lines.length; i++) {
-                contentWithoutTimestamp.append(lines[i]);
-                if (i < lines.length - 1) {
-                    contentWithoutTimestamp.append("\n");
-                }
+        String timestampStr = reader.readLine();
+        if (timestampStr != null) {
+            try {
+                FileManifest.importLegacy(filePath, LocalDateTime.parse(timestampStr.trim(), TIMESTAMP_FORMATTER));
+            } catch (Exception e) {
+                System.err.println("Timestamp non valido in " + filePath + ": " + e.getMessage());
             }
-            return contentWithoutTimestamp.toString();
         }
-
-        return content;
     }
 }
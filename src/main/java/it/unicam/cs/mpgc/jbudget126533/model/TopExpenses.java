@@ -0,0 +1,62 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Le transazioni di importo maggiore (in valore assoluto) tra quelle aggiunte, in numero limitato.
+ * <p>
+ * È un min-heap di capacità fissa: la radice è la più piccola delle transazioni conservate e
+ * una nuova transazione la sostituisce solo se è più grande, in O(log capacità). Due insiemi
+ * si uniscono aggiungendo le transazioni dell'uno all'altro, quindi le prime N di un intervallo
+ * di mesi si ottengono dalle prime N di ciascun mese.
+ * </p>
+ */
+final class TopExpenses {
+
+    /** Numero massimo di transazioni conservate */
+    static final int CAPACITY = 50;
+
+    /** Ordine crescente per importo assoluto; a parità di importo la più recente è considerata maggiore */
+    private static final Comparator<ITransaction> BY_AMOUNT = Comparator
+            .comparingLong((ITransaction transaction) -> Math.abs(transaction.getCents()))
+            .thenComparing(ITransaction::getDate, Comparator.nullsFirst(Comparator.<LocalDate>naturalOrder()));
+
+    private final PriorityQueue<ITransaction> heap = new PriorityQueue<>(BY_AMOUNT);
+
+    /**
+     * Aggiunge una transazione, scartando la minore se si supera la capacità.
+     *
+     * @param transaction transazione da aggiungere
+     */
+    void add(ITransaction transaction) {
+        if (heap.size() < CAPACITY) {
+            heap.add(transaction);
+        } else if (BY_AMOUNT.compare(transaction, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(transaction);
+        }
+    }
+
+    /**
+     * Aggiunge le transazioni di un altro insieme; l'altro resta invariato.
+     *
+     * @param other insieme da unire
+     */
+    void merge(TopExpenses other) {
+        other.heap.forEach(this::add);
+    }
+
+    /**
+     * @param limit numero massimo di transazioni, al più {@link #CAPACITY}
+     * @return transazioni dalla maggiore alla minore
+     */
+    List<ITransaction> largest(int limit) {
+        List<ITransaction> sorted = new ArrayList<>(heap);
+        sorted.sort(BY_AMOUNT.reversed());
+        return sorted.subList(0, Math.min(Math.max(limit, 0), sorted.size()));
+    }
+}
@@ -1,7 +1,6 @@
 package it.unicam.cs.mpgc.jbudget126533.model;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -12,7 +11,7 @@ import java.util.stream.Collectors;
 public class Transaction extends Movement {
 
     public Transaction() {
-        this.tags = new ArrayList<>();
+        this.tags = List.of();
     }
 
     /**
@@ -29,9 +28,9 @@ public class Transaction extends Movement {
         this.type = type;
         this.person = person;
         this.user = person != null ? person.getName() : "";
-        this.money = money;
+        this.cents = Money.centsOf(money);
         this.date = date;
-        this.tags = new ArrayList<>(tags);
+        this.tags = immutableTags(tags);
     }
 
     // ----------------- UTILITY -----------------
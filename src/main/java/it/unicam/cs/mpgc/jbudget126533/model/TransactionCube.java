@@ -0,0 +1,270 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Cubo pre-aggregato delle transazioni reali per (mese, insieme di tag, tipo, persona).
+ * <p>
+ * Ogni cella contiene la somma in centesimi e il numero delle transazioni con quelle coordinate.
+ * Un inserimento aggiorna una sola cella, quindi costa tempo costante; le interrogazioni
+ * (totali, raggruppamenti per mese, tag, insieme di tag o persona, su un intervallo di mesi)
+ * scorrono le celle dei mesi richiesti e non dipendono dal numero di transazioni del registro.
+ * </p>
+ * <p>
+ * Persone e insiemi di tag ({@link TagSetDictionary}) sono dizionari: una cella ne memorizza solo gli indici.
+ * Le transazioni senza data finiscono in un mese fittizio, incluso solo nelle interrogazioni
+ * senza limite inferiore.
+ * </p>
+ */
+final class TransactionCube {
+
+    static final int NO_MONTH = Integer.MIN_VALUE;
+    private static final int NO_TYPE = -1;
+
+    /**
+     * Coordinate di una cella all'interno di un mese.
+     */
+    private record CellKey(int tagSet, int type, int person) {
+    }
+
+    /**
+     * Aggregati di una cella.
+     */
+    private static final class Cell {
+        private long cents;
+        private int count;
+    }
+
+    /** Mese (anno * 12 + mese - 1) → celle del mese */
+    private final NavigableMap<Integer, Map<CellKey, Cell>> months = new TreeMap<>();
+
+    private final List<String> persons = new ArrayList<>();
+    private final Map<String, Integer> personIds = new HashMap<>();
+
+    private final TagSetDictionary tagSets = new TagSetDictionary();
+
+    /**
+     * Svuota il cubo e lo ricalcola dalle transazioni indicate.
+     *
+     * @param transactions transazioni reali del registro
+     */
+    synchronized void rebuild(Collection<ITransaction> transactions) {
+        months.clear();
+        persons.clear();
+        personIds.clear();
+        tagSets.clear();
+        transactions.forEach(this::add);
+    }
+
+    /**
+     * Aggiunge una transazione alla sua cella.
+     *
+     * @param transaction transazione da aggiungere
+     */
+    synchronized void add(ITransaction transaction) {
+        int month = transaction.getDate() != null ? monthIndex(YearMonth.from(transaction.getDate())) : NO_MONTH;
+        int type = transaction.getType() != null ? transaction.getType().ordinal() : NO_TYPE;
+        CellKey key = new CellKey(tagSets.intern(transaction.getTags()), type, personId(transaction.getUser()));
+
+        Cell cell = months.computeIfAbsent(month, m -> new HashMap<>()).computeIfAbsent(key, k -> new Cell());
+        cell.cents += transaction.getCents();
+        cell.count++;
+    }
+
+    /**
+     * Somma le transazioni che soddisfano i filtri.
+     *
+     * @param type   tipo di movimento, null per tutti
+     * @param tag    tag che la transazione deve avere, null per tutti
+     * @param person utente della transazione, null per tutti
+     * @param from   primo mese (incluso), null per nessun limite
+     * @param to     ultimo mese (incluso), null per nessun limite
+     * @return somma in centesimi
+     */
+    synchronized long sum(MovementType type, String tag, String person, YearMonth from, YearMonth to) {
+        boolean[] tagSetsWithTag = tag != null ? tagSets.containing(tag) : null;
+        long total = 0;
+        for (Map<CellKey, Cell> cells : range(from, to).values()) {
+            for (Map.Entry<CellKey, Cell> entry : cells.entrySet()) {
+                if (matches(entry.getKey(), type, tagSetsWithTag, person)) {
+                    total += entry.getValue().cents;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Conta le transazioni che soddisfano i filtri.
+     *
+     * @param type   tipo di movimento, null per tutti
+     * @param tag    tag che la transazione deve avere, null per tutti
+     * @param person utente della transazione, null per tutti
+     * @param from   primo mese (incluso), null per nessun limite
+     * @param to     ultimo mese (incluso), null per nessun limite
+     * @return numero di transazioni
+     */
+    synchronized int count(MovementType type, String tag, String person, YearMonth from, YearMonth to) {
+        boolean[] tagSetsWithTag = tag != null ? tagSets.containing(tag) : null;
+        int count = 0;
+        for (Map<CellKey, Cell> cells : range(from, to).values()) {
+            for (Map.Entry<CellKey, Cell> entry : cells.entrySet()) {
+                if (matches(entry.getKey(), type, tagSetsWithTag, person)) {
+                    count += entry.getValue().count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Scompone per mese la somma delle transazioni che soddisfano i filtri.
+     *
+     * @param type   tipo di movimento, null per tutti
+     * @param tag    tag che la transazione deve avere, null per tutti
+     * @param person utente della transazione, null per tutti
+     * @param from   primo mese (incluso), null per nessun limite
+     * @param to     ultimo mese (incluso), null per nessun limite
+     * @return mappa mese → somma in centesimi, in ordine cronologico, solo per i mesi con transazioni
+     */
+    synchronized Map<YearMonth, Long> sumByMonth(MovementType type, String tag, String person, YearMonth from, YearMonth to) {
+        boolean[] tagSetsWithTag = tag != null ? tagSets.containing(tag) : null;
+        Map<YearMonth, Long> totals = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Map<CellKey, Cell>> month : range(from, to).entrySet()) {
+            if (month.getKey() == NO_MONTH) {
+                continue;
+            }
+            long total = 0;
+            boolean present = false;
+            for (Map.Entry<CellKey, Cell> entry : month.getValue().entrySet()) {
+                if (matches(entry.getKey(), type, tagSetsWithTag, person)) {
+                    total += entry.getValue().cents;
+                    present = true;
+                }
+            }
+            if (present) {
+                totals.put(yearMonth(month.getKey()), total);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Scompone per insieme di tag la somma delle transazioni con almeno un tag,
+     * con le stesse chiavi di {@link IBudgetManagement#balanceForEachTag}.
+     *
+     * @param type   tipo di movimento, null per tutti
+     * @param tag    tag che la transazione deve avere, null per tutti
+     * @param person utente della transazione, null per tutti
+     * @param from   primo mese (incluso), null per nessun limite
+     * @param to     ultimo mese (incluso), null per nessun limite
+     * @return mappa insieme di tag → somma in centesimi
+     */
+    synchronized Map<String, Long> sumByTagSet(MovementType type, String tag, String person, YearMonth from, YearMonth to) {
+        Map<String, Long> totals = new HashMap<>();
+        sumBy(type, tag, person, from, to, CellKey::tagSet).forEach((tagSet, cents) -> {
+            if (!tagSets.names(tagSet).isEmpty()) {
+                totals.merge(tagSets.key(tagSet), cents, Long::sum);
+            }
+        });
+        return totals;
+    }
+
+    /**
+     * Scompone per persona la somma delle transazioni.
+     *
+     * @param type   tipo di movimento, null per tutti
+     * @param tag    tag che la transazione deve avere, null per tutti
+     * @param person utente della transazione, null per tutti
+     * @param from   primo mese (incluso), null per nessun limite
+     * @param to     ultimo mese (incluso), null per nessun limite
+     * @return mappa utente → somma in centesimi
+     */
+    synchronized Map<String, Long> sumByPerson(MovementType type, String tag, String person, YearMonth from, YearMonth to) {
+        Map<String, Long> totals = new HashMap<>();
+        sumBy(type, tag, person, from, to, CellKey::person)
+                .forEach((id, cents) -> totals.merge(persons.get(id), cents, Long::sum));
+        return totals;
+    }
+
+    /**
+     * Scompone per singolo tag la somma delle transazioni: una transazione con più tag
+     * contribuisce al totale di ciascuno di essi.
+     *
+     * @param type   tipo di movimento, null per tutti
+     * @param tag    tag che la transazione deve avere, null per tutti
+     * @param person utente della transazione, null per tutti
+     * @param from   primo mese (incluso), null per nessun limite
+     * @param to     ultimo mese (incluso), null per nessun limite
+     * @return mappa tag → somma in centesimi
+     */
+    synchronized Map<String, Long> sumByTag(MovementType type, String tag, String person, YearMonth from, YearMonth to) {
+        Map<String, Long> totals = new HashMap<>();
+        sumBy(type, tag, person, from, to, CellKey::tagSet).forEach((tagSet, cents) -> {
+            tagSets.names(tagSet).stream()
+                    .distinct()
+                    .forEach(name -> totals.merge(name, cents, Long::sum));
+        });
+        return totals;
+    }
+
+    // ==================== METODI PRIVATI ====================
+
+    /**
+     * Somma le celle che soddisfano i filtri raggruppandole per una coordinata (indice di dizionario).
+     */
+    private Map<Integer, Long> sumBy(MovementType type, String tag, String person, YearMonth from, YearMonth to,
+                                     ToIntFunction<CellKey> dimension) {
+        boolean[] tagSetsWithTag = tag != null ? tagSets.containing(tag) : null;
+        Map<Integer, Long> byId = new HashMap<>();
+        for (Map<CellKey, Cell> cells : range(from, to).values()) {
+            for (Map.Entry<CellKey, Cell> entry : cells.entrySet()) {
+                if (matches(entry.getKey(), type, tagSetsWithTag, person)) {
+                    byId.merge(dimension.applyAsInt(entry.getKey()), entry.getValue().cents, Long::sum);
+                }
+            }
+        }
+        return byId;
+    }
+
+    private NavigableMap<Integer, Map<CellKey, Cell>> range(YearMonth from, YearMonth to) {
+        int first = from != null ? monthIndex(from) : NO_MONTH;
+        int last = to != null ? monthIndex(to) : Integer.MAX_VALUE;
+        return first > last ? new TreeMap<>() : months.subMap(first, true, last, true);
+    }
+
+    private boolean matches(CellKey key, MovementType type, boolean[] tagSetsWithTag, String person) {
+        if (type != null && key.type() != type.ordinal()) {
+            return false;
+        }
+        if (tagSetsWithTag != null && !tagSetsWithTag[key.tagSet()]) {
+            return false;
+        }
+        return person == null || persons.get(key.person()).equalsIgnoreCase(person);
+    }
+
+    private int personId(String user) {
+        String name = user != null ? user : "";
+        return personIds.computeIfAbsent(name, k -> {
+            persons.add(name);
+            return persons.size() - 1;
+        });
+    }
+
+    static int monthIndex(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    static YearMonth yearMonth(int index) {
+        return YearMonth.of(Math.floorDiv(index, 12), Math.floorMod(index, 12) + 1);
+    }
+}
@@ -0,0 +1,542 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Indice delle transazioni ordinato per data, con somme e conteggi prefissi per ciascun tipo di movimento.
+ * <p>
+ * Somma e conteggio delle transazioni in un intervallo di date si ottengono con due ricerche binarie
+ * e una differenza tra prefissi. Le transazioni inserite in ordine cronologico (il caso normale)
+ * vengono accodate in tempo costante. Quelle con una data precedente all'ultima indicizzata
+ * finiscono in un piccolo delta non ordinato, che le query scorrono per intero; quando il delta
+ * raggiunge {@link #DELTA_LIMIT} voci viene ordinato e fuso nell'indice dal fondo, ricalcolando
+ * prefissi e liste dei tag solo dalla prima posizione spostata.
+ * </p>
+ * <p>
+ * L'indice è anche invertito per tag: ogni tag ha una {@link RoaringBitmap} delle posizioni
+ * (nell'ordine per data) delle transazioni che lo contengono, con somme e conteggi per tipo
+ * precalcolati per ciascun blocco di 65536 posizioni. Un intervallo di date diventa un intervallo
+ * di posizioni, quindi le somme per tag e periodo sommano i blocchi interi già aggregati
+ * e scorrono i bit solo nei due blocchi di bordo.
+ * </p>
+ */
+final class TransactionDateIndex {
+
+    private static final int TYPES = MovementType.values().length;
+
+    /** Numero massimo di transazioni fuori ordine tenute nel delta prima della fusione */
+    static final int DELTA_LIMIT = 128;
+
+    /** Identificativo che indica nessun filtro per tag nelle scansioni del delta */
+    private static final int NO_TAG = -1;
+
+    private long[] days = new long[16];
+    /** Importi in centesimi: le somme prefisse restano esatte */
+    private long[] amounts = new long[16];
+    private byte[] types = new byte[16];
+    /** Identificativi dei tag di ciascuna transazione, senza ripetizioni */
+    private int[][] entryTags = new int[16][];
+    private int size;
+
+    /** Nome del tag in minuscolo → identificativo, cioè indice in {@link #postings} */
+    private final Map<String, Integer> tagIds = new HashMap<>();
+    private final List<TagPostings> postings = new ArrayList<>();
+
+    /** prefixSums[t][i] = somma degli importi di tipo t tra le prime i transazioni in ordine di data */
+    private long[][] prefixSums = new long[TYPES][17];
+    private int[][] prefixCounts = new int[TYPES][17];
+
+    // Transazioni fuori ordine non ancora fuse nell'indice, nell'ordine di inserimento
+    private final long[] deltaDays = new long[DELTA_LIMIT];
+    private final long[] deltaAmounts = new long[DELTA_LIMIT];
+    private final byte[] deltaTypes = new byte[DELTA_LIMIT];
+    private final int[][] deltaTags = new int[DELTA_LIMIT][];
+    private int deltaSize;
+
+    /**
+     * Aggiunge una transazione all'indice. Le transazioni senza data o senza tipo non vengono indicizzate.
+     *
+     * @param transaction transazione da aggiungere
+     */
+    synchronized void add(ITransaction transaction) {
+        if (transaction.getDate() == null || transaction.getType() == null) {
+            return;
+        }
+        long day = transaction.getDate().toEpochDay();
+        if (size > 0 && day < days[size - 1]) {
+            if (deltaSize == DELTA_LIMIT) {
+                mergeDelta();
+            }
+            if (day < days[size - 1]) {
+                deltaDays[deltaSize] = day;
+                deltaAmounts[deltaSize] = transaction.getCents();
+                deltaTypes[deltaSize] = (byte) transaction.getType().ordinal();
+                deltaTags[deltaSize] = tagIdsOf(transaction);
+                deltaSize++;
+                return;
+            }
+        }
+        ensureCapacity(size + 1);
+        days[size] = day;
+        amounts[size] = transaction.getCents();
+        types[size] = (byte) transaction.getType().ordinal();
+        entryTags[size] = tagIdsOf(transaction);
+        size++;
+        extendPrefix(size - 1);
+        addPostings(size - 1);
+    }
+
+    /**
+     * Ricostruisce l'indice a partire da una collezione di transazioni,
+     * ordinandole una sola volta se non sono in ordine cronologico.
+     *
+     * @param transactions transazioni da indicizzare
+     */
+    synchronized void rebuild(Collection<ITransaction> transactions) {
+        size = 0;
+        deltaSize = 0;
+        tagIds.clear();
+        postings.clear();
+        boolean sorted = true;
+        for (ITransaction transaction : transactions) {
+            if (transaction.getDate() == null || transaction.getType() == null) {
+                continue;
+            }
+            ensureCapacity(size + 1);
+            days[size] = transaction.getDate().toEpochDay();
+            sorted &= size == 0 || days[size] >= days[size - 1];
+            amounts[size] = transaction.getCents();
+            types[size] = (byte) transaction.getType().ordinal();
+            entryTags[size] = tagIdsOf(transaction);
+            size++;
+        }
+        if (!sorted) {
+            sortEntries();
+        }
+        reindexFrom(0);
+    }
+
+    /**
+     * Somma gli importi delle transazioni con data nell'intervallo.
+     *
+     * @param type  tipo di movimento, null per tutti
+     * @param start data di inizio (inclusa)
+     * @param end   data di fine (inclusa)
+     * @return somma degli importi
+     */
+    synchronized double sum(MovementType type, LocalDate start, LocalDate end) {
+        long total = deltaSum(type, NO_TAG, start.toEpochDay(), end.toEpochDay());
+        int from = lowerBound(start.toEpochDay());
+        int to = upperBound(end.toEpochDay());
+        if (from >= to) {
+            return Money.toDouble(total);
+        }
+        for (int t = 0; t < TYPES; t++) {
+            if (type == null || t == type.ordinal()) {
+                total += prefixSums[t][to] - prefixSums[t][from];
+            }
+        }
+        return Money.toDouble(total);
+    }
+
+    /**
+     * Conta le transazioni con data nell'intervallo.
+     *
+     * @param type  tipo di movimento, null per tutti
+     * @param start data di inizio (inclusa)
+     * @param end   data di fine (inclusa)
+     * @return numero di transazioni
+     */
+    synchronized int count(MovementType type, LocalDate start, LocalDate end) {
+        int total = deltaCount(type, NO_TAG, start.toEpochDay(), end.toEpochDay());
+        int from = lowerBound(start.toEpochDay());
+        int to = upperBound(end.toEpochDay());
+        if (from >= to) {
+            return total;
+        }
+        if (type != null) {
+            int[] prefix = prefixCounts[type.ordinal()];
+            return total + prefix[to] - prefix[from];
+        }
+        return total + to - from;
+    }
+
+    /**
+     * Somma gli importi delle transazioni con un tag e data nell'intervallo.
+     *
+     * @param type  tipo di movimento, null per tutti
+     * @param tag   nome del tag (senza distinzione tra maiuscole e minuscole)
+     * @param start data di inizio (inclusa), null per nessun limite
+     * @param end   data di fine (inclusa), null per nessun limite
+     * @return somma degli importi
+     */
+    synchronized double sumForTag(MovementType type, String tag, LocalDate start, LocalDate end) {
+        Integer id = tagIdOf(tag);
+        if (id == null) {
+            return 0;
+        }
+        long total = postings.get(id).sum(type, positionFrom(start), positionTo(end));
+        return Money.toDouble(total + deltaSum(type, id, dayFrom(start), dayTo(end)));
+    }
+
+    /**
+     * Conta le transazioni con un tag e data nell'intervallo.
+     *
+     * @param type  tipo di movimento, null per tutti
+     * @param tag   nome del tag (senza distinzione tra maiuscole e minuscole)
+     * @param start data di inizio (inclusa), null per nessun limite
+     * @param end   data di fine (inclusa), null per nessun limite
+     * @return numero di transazioni
+     */
+    synchronized int countForTag(MovementType type, String tag, LocalDate start, LocalDate end) {
+        Integer id = tagIdOf(tag);
+        if (id == null) {
+            return 0;
+        }
+        return postings.get(id).count(type, positionFrom(start), positionTo(end))
+                + deltaCount(type, id, dayFrom(start), dayTo(end));
+    }
+
+    // ==================== METODI PRIVATI ====================
+
+    private Integer tagIdOf(String tag) {
+        return tag != null ? tagIds.get(normalize(tag)) : null;
+    }
+
+    private static long dayFrom(LocalDate start) {
+        return start != null ? start.toEpochDay() : Long.MIN_VALUE;
+    }
+
+    private static long dayTo(LocalDate end) {
+        return end != null ? end.toEpochDay() : Long.MAX_VALUE;
+    }
+
+    /** Somma le voci del delta con data in {@code [fromDay, toDay]}, del tipo e del tag indicati */
+    private long deltaSum(MovementType type, int tagId, long fromDay, long toDay) {
+        long total = 0;
+        for (int i = 0; i < deltaSize; i++) {
+            if (deltaMatches(i, type, tagId, fromDay, toDay)) {
+                total += deltaAmounts[i];
+            }
+        }
+        return total;
+    }
+
+    private int deltaCount(MovementType type, int tagId, long fromDay, long toDay) {
+        int total = 0;
+        for (int i = 0; i < deltaSize; i++) {
+            if (deltaMatches(i, type, tagId, fromDay, toDay)) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    private boolean deltaMatches(int i, MovementType type, int tagId, long fromDay, long toDay) {
+        if (deltaDays[i] < fromDay || deltaDays[i] > toDay || (type != null && deltaTypes[i] != type.ordinal())) {
+            return false;
+        }
+        if (tagId == NO_TAG) {
+            return true;
+        }
+        for (int id : deltaTags[i]) {
+            if (id == tagId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int positionFrom(LocalDate start) {
+        return start != null ? lowerBound(start.toEpochDay()) : 0;
+    }
+
+    private int positionTo(LocalDate end) {
+        return end != null ? upperBound(end.toEpochDay()) : size;
+    }
+
+    private static String normalize(String tag) {
+        return tag.toLowerCase(Locale.ROOT);
+    }
+
+    private int[] tagIdsOf(ITransaction transaction) {
+        List<ITag> tags = transaction.getTags();
+        if (tags == null || tags.isEmpty()) {
+            return new int[0];
+        }
+        int[] ids = new int[tags.size()];
+        int count = 0;
+        for (ITag tag : tags) {
+            if (tag == null || tag.getName() == null) {
+                continue;
+            }
+            int id = tagIds.computeIfAbsent(normalize(tag.getName()), name -> {
+                postings.add(new TagPostings());
+                return postings.size() - 1;
+            });
+            boolean duplicate = false;
+            for (int i = 0; i < count && !duplicate; i++) {
+                duplicate = ids[i] == id;
+            }
+            if (!duplicate) {
+                ids[count++] = id;
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    private void addPostings(int position) {
+        for (int id : entryTags[position]) {
+            postings.get(id).add(position);
+        }
+    }
+
+    /** Primo indice con data >= day */
+    private int lowerBound(long day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Primo indice con data > day */
+    private int upperBound(long day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] <= day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void extendPrefix(int index) {
+        for (int t = 0; t < TYPES; t++) {
+            boolean match = types[index] == t;
+            prefixSums[t][index + 1] = prefixSums[t][index] + (match ? amounts[index] : 0);
+            prefixCounts[t][index + 1] = prefixCounts[t][index] + (match ? 1 : 0);
+        }
+    }
+
+    /**
+     * Fonde il delta nell'indice: il delta viene ordinato e le voci vengono spostate dal fondo
+     * verso l'inizio, come nella fusione di due array ordinati. Le posizioni precedenti
+     * alla prima voce inserita non cambiano, quindi prefissi e liste dei tag vengono
+     * ricalcolati solo da lì.
+     */
+    private void mergeDelta() {
+        int[] order = sortedOrder(deltaDays, deltaSize);
+        ensureCapacity(size + deltaSize);
+
+        int i = size - 1;
+        int target = size + deltaSize - 1;
+        for (int j = deltaSize - 1; j >= 0; target--) {
+            // A parità di data le voci del delta seguono quelle già indicizzate
+            if (i >= 0 && days[i] > deltaDays[order[j]]) {
+                days[target] = days[i];
+                amounts[target] = amounts[i];
+                types[target] = types[i];
+                entryTags[target] = entryTags[i];
+                i--;
+            } else {
+                int entry = order[j--];
+                days[target] = deltaDays[entry];
+                amounts[target] = deltaAmounts[entry];
+                types[target] = deltaTypes[entry];
+                entryTags[target] = deltaTags[entry];
+            }
+        }
+        size += deltaSize;
+        Arrays.fill(deltaTags, 0, deltaSize, null);
+        deltaSize = 0;
+        reindexFrom(target + 1);
+    }
+
+    /**
+     * Ordina per data le voci indicizzate (a parità di data resta l'ordine di inserimento).
+     */
+    private void sortEntries() {
+        int[] order = sortedOrder(days, size);
+        long[] sortedDays = new long[days.length];
+        long[] sortedAmounts = new long[amounts.length];
+        byte[] sortedTypes = new byte[types.length];
+        int[][] sortedTags = new int[entryTags.length][];
+        for (int i = 0; i < size; i++) {
+            sortedDays[i] = days[order[i]];
+            sortedAmounts[i] = amounts[order[i]];
+            sortedTypes[i] = types[order[i]];
+            sortedTags[i] = entryTags[order[i]];
+        }
+        days = sortedDays;
+        amounts = sortedAmounts;
+        types = sortedTypes;
+        entryTags = sortedTags;
+    }
+
+    /**
+     * Restituisce le posizioni delle prime {@code count} voci in ordine di data, con un ordinamento
+     * primitivo: giorno relativo al minimo nei 32 bit alti, posizione nei 32 bassi.
+     */
+    private static int[] sortedOrder(long[] days, int count) {
+        long minDay = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            minDay = Math.min(minDay, days[i]);
+        }
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (days[i] - minDay) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Ricalcola i prefissi dalla posizione indicata e le liste dei tag dal blocco che la contiene.
+     */
+    private void reindexFrom(int position) {
+        for (int i = position; i < size; i++) {
+            extendPrefix(i);
+        }
+        int chunk = position / RoaringBitmap.CHUNK_SIZE;
+        for (TagPostings tagPostings : postings) {
+            tagPostings.truncate(chunk);
+        }
+        for (int i = chunk * RoaringBitmap.CHUNK_SIZE; i < size; i++) {
+            addPostings(i);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= days.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, days.length * 2);
+        days = Arrays.copyOf(days, newCapacity);
+        amounts = Arrays.copyOf(amounts, newCapacity);
+        types = Arrays.copyOf(types, newCapacity);
+        entryTags = Arrays.copyOf(entryTags, newCapacity);
+        for (int t = 0; t < TYPES; t++) {
+            prefixSums[t] = Arrays.copyOf(prefixSums[t], newCapacity + 1);
+            prefixCounts[t] = Arrays.copyOf(prefixCounts[t], newCapacity + 1);
+        }
+    }
+
+    /**
+     * Lista delle posizioni di un tag, con somme e conteggi per tipo di ciascun blocco
+     * di {@link RoaringBitmap#CHUNK_SIZE} posizioni.
+     */
+    private final class TagPostings {
+        private final RoaringBitmap positions = new RoaringBitmap();
+        private long[][] chunkSums = new long[TYPES][1];
+        private int[][] chunkCounts = new int[TYPES][1];
+
+        void add(int position) {
+            positions.add(position);
+            int chunk = position / RoaringBitmap.CHUNK_SIZE;
+            if (chunk >= chunkSums[0].length) {
+                for (int t = 0; t < TYPES; t++) {
+                    chunkSums[t] = Arrays.copyOf(chunkSums[t], Math.max(chunk + 1, chunkSums[t].length * 2));
+                    chunkCounts[t] = Arrays.copyOf(chunkCounts[t], Math.max(chunk + 1, chunkCounts[t].length * 2));
+                }
+            }
+            chunkSums[types[position]][chunk] += amounts[position];
+            chunkCounts[types[position]][chunk]++;
+        }
+
+        /** Rimuove le posizioni dal blocco indicato in poi, con i relativi aggregati */
+        void truncate(int chunk) {
+            positions.removeChunksFrom(chunk);
+            for (int t = 0; t < TYPES; t++) {
+                if (chunk < chunkSums[t].length) {
+                    Arrays.fill(chunkSums[t], chunk, chunkSums[t].length, 0);
+                    Arrays.fill(chunkCounts[t], chunk, chunkCounts[t].length, 0);
+                }
+            }
+        }
+
+        long sum(MovementType type, int from, int to) {
+            long[] total = new long[1];
+            scan(from, to,
+                    chunk -> total[0] += chunkTotal(chunkSums, type, chunk),
+                    position -> {
+                        if (type == null || types[position] == type.ordinal()) {
+                            total[0] += amounts[position];
+                        }
+                    });
+            return total[0];
+        }
+
+        int count(MovementType type, int from, int to) {
+            int[] total = new int[1];
+            scan(from, to,
+                    chunk -> {
+                        for (int t = 0; t < TYPES; t++) {
+                            if (type == null || t == type.ordinal()) {
+                                total[0] += chunkCounts[t][chunk];
+                            }
+                        }
+                    },
+                    position -> {
+                        if (type == null || types[position] == type.ordinal()) {
+                            total[0]++;
+                        }
+                    });
+            return total[0];
+        }
+
+        private long chunkTotal(long[][] sums, MovementType type, int chunk) {
+            if (type != null) {
+                return sums[type.ordinal()][chunk];
+            }
+            long total = 0;
+            for (long[] typeSums : sums) {
+                total += typeSums[chunk];
+            }
+            return total;
+        }
+
+        /**
+         * Visita l'intervallo di posizioni {@code [from, to)}: i blocchi interamente coperti
+         * passano per i valori aggregati, i blocchi di bordo bit per bit.
+         */
+        private void scan(int from, int to, IntConsumer wholeChunk, IntConsumer position) {
+            if (from >= to) {
+                return;
+            }
+            int firstChunk = from / RoaringBitmap.CHUNK_SIZE;
+            int lastChunk = (to - 1) / RoaringBitmap.CHUNK_SIZE;
+            for (int chunk = firstChunk; chunk <= lastChunk && chunk < chunkSums[0].length; chunk++) {
+                int chunkStart = chunk * RoaringBitmap.CHUNK_SIZE;
+                int chunkEnd = Math.min(chunkStart + RoaringBitmap.CHUNK_SIZE, size);
+                if (from <= chunkStart && to >= chunkEnd) {
+                    wholeChunk.accept(chunk);
+                } else {
+                    positions.forEachInRange(Math.max(from, chunkStart), Math.min(to, chunkEnd), position);
+                }
+            }
+        }
+    }
+}
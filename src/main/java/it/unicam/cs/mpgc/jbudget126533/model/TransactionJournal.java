@@ -0,0 +1,125 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.Consumer;
+
+/**
+ * Journal append-only delle transazioni.
+ * <p>
+ * Ogni nuova transazione viene accodata al file come record JSON su una singola riga,
+ * senza rileggere né riscrivere lo snapshot {@code Movement.json}: il costo di un inserimento
+ * è quindi indipendente dal numero di movimenti già registrati.
+ * Lo stato completo si ottiene riproducendo lo snapshot seguito dai record del journal;
+ * la compattazione ({@link FileManagement#compact()}) riversa il journal nello snapshot e lo svuota.
+ * </p>
+ */
+class TransactionJournal {
+
+    private final File file;
+    private final Gson gson;
+
+    /** Numero di record presenti nel journal (-1 finché non viene contato) */
+    private int recordCount = -1;
+
+    /**
+     * @param file file del journal
+     * @param gson istanza Gson compatta (senza pretty printing) usata per i record
+     */
+    TransactionJournal(File file, Gson gson) {
+        this.file = file;
+        this.gson = gson;
+    }
+
+    /**
+     * Accoda una transazione al journal tramite il {@link WriteAheadLog}: se è in corso
+     * un'operazione atomica, la riga viene scritta solo alla sua conferma.
+     * Il conteggio dei record viene aggiornato solo a conferma avvenuta.
+     *
+     * @param transaction transazione da registrare
+     */
+    void append(ITransaction transaction) {
+        WriteAheadLog.appendLine(file, gson.toJson(transaction));
+        WriteAheadLog.afterCommit(() -> {
+            if (recordCount >= 0) {
+                recordCount++;
+            }
+        });
+    }
+
+    /**
+     * Riproduce in ordine tutti i record del journal.
+     * <p>
+     * Un record non leggibile (ad esempio l'ultima riga troncata da un'interruzione
+     * durante la scrittura) viene segnalato e ignorato.
+     * </p>
+     *
+     * @param consumer destinatario di ciascuna transazione letta
+     * @throws IOException in caso di errore di lettura
+     */
+    void replay(Consumer<ITransaction> consumer) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                count++;
+                try {
+                    Transaction transaction = gson.fromJson(line, Transaction.class);
+                    if (transaction != null) {
+                        consumer.accept(transaction);
+                    }
+                } catch (JsonParseException e) {
+                    System.err.println("Record del journal non valido ignorato: " + e.getMessage());
+                }
+            }
+        }
+        recordCount = count;
+    }
+
+    /**
+     * Restituisce il numero di record presenti nel journal.
+     *
+     * @return numero di record
+     */
+    int size() {
+        if (recordCount < 0) {
+            int count = 0;
+            if (file.exists()) {
+                try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.isBlank()) {
+                            count++;
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Errore nel conteggio dei record del journal: " + e.getMessage());
+                }
+            }
+            recordCount = count;
+        }
+        return recordCount;
+    }
+
+    /**
+     * Svuota il journal, tipicamente dopo che il suo contenuto è stato riversato nello snapshot.
+     * Anche lo svuotamento passa dal {@link WriteAheadLog}, così è atomico insieme allo snapshot.
+     */
+    void clear() {
+        WriteAheadLog.reset(file);
+        WriteAheadLog.afterCommit(() -> recordCount = 0);
+    }
+}
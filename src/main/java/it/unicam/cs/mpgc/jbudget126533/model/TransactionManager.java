@@ -3,11 +3,14 @@ package it.unicam.cs.mpgc.jbudget126533.model;
 import it.unicam.cs.mpgc.jbudget126533.util.Pair;
 
 import java.time.LocalDate;
+import java.time.Period;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Gestisce le transazioni, i bilanci e le analisi per categorie e date.
@@ -15,8 +18,11 @@ import java.util.stream.Collectors;
  */
 public class TransactionManager implements IBudgetManagement {
 
-    /** Lista delle transazioni già avvenute */
-    private ArrayList<ITransaction> transactionsList;
+    /**
+     * Transazioni già avvenute: ogni modifica pubblica una nuova vista con un'unica scrittura,
+     * quindi chi legge la vista corrente non ne vede mai cambiare il contenuto, senza lock.
+     */
+    private volatile SnapshotList<ITransaction> transactionsList = SnapshotList.empty();
 
     /** Manager per le transazioni programmate */
     private ScheduledTransactionManager scheduledTransactionManager;
@@ -24,20 +30,33 @@ public class TransactionManager implements IBudgetManagement {
     /** Manager per le rate di ammortamento */
     private AmortizationManager amortizationManager;
 
+    /** Flussi previsti di transazioni programmate e rate, ricreata quando cambia uno dei due manager */
+    private Period projectionHorizon = CashFlowProjection.DEFAULT_HORIZON;
+    private volatile CashFlowProjection projection = new CashFlowProjection(null, null, projectionHorizon);
+
     /**
      * Imposta il manager per i piani di ammortamento.
      * @param amortizationManager il manager di ammortamento da usare
      */
     public void setAmortizationManager(AmortizationManager amortizationManager) {
         this.amortizationManager = amortizationManager;
+        resetProjection();
+    }
+
+    /**
+     * Imposta fino a quanto nel futuro vengono materializzati i flussi previsti.
+     * Le interrogazioni oltre l'orizzonte restano corrette, ma vengono calcolate senza la proiezione.
+     * @param horizon distanza da oggi dell'ultimo giorno proiettato
+     */
+    public void setProjectionHorizon(Period horizon) {
+        this.projectionHorizon = horizon;
+        resetProjection();
     }
 
     /**
      * Costruttore vuoto.
-     * Inizializza la lista delle transazioni.
      */
     public TransactionManager() {
-        this.transactionsList = new ArrayList<>();
     }
 
     /**
@@ -46,9 +65,9 @@ public class TransactionManager implements IBudgetManagement {
      */
     @Override
     public double getBalance() {
-        return transactionsList.stream()
-                .mapToDouble(ITransaction::getMoney)
-                .sum();
+        return Money.toDouble(transactions()
+                .mapToLong(ITransaction::getCents)
+                .sum());
     }
 
     /**
@@ -56,8 +75,8 @@ public class TransactionManager implements IBudgetManagement {
      * @param transaction la transazione da inserire
      */
     @Override
-    public void insert(ITransaction transaction) {
-        transactionsList.add(transaction);
+    public synchronized void insert(ITransaction transaction) {
+        transactionsList = transactionsList.appended(transaction);
     }
 
     /**
@@ -72,16 +91,16 @@ public class TransactionManager implements IBudgetManagement {
         LocalDate endDate = (dateEnd != null) ? dateEnd : LocalDate.now();
 
         return list -> {
-            double realTrend = list.stream()
+            double realTrend = Money.toDouble(ParallelScan.stream(list)
                     .filter(t -> isDateInRange(t.getDate(), dateStart, endDate))
-                    .mapToDouble(ITransaction::getMoney)
-                    .sum();
+                    .mapToLong(ITransaction::getCents)
+                    .sum());
 
             double scheduledTrend = calculateScheduledTransactionsForPeriod(null, dateStart, endDate);
 
             double amortizationTrend = 0;
             if (amortizationManager != null) {
-                amortizationTrend = amortizationManager.calculateFutureInstallments(dateStart, endDate);
+                amortizationTrend = calculateFutureInstallments(dateStart, endDate);
             }
 
             double totalTrend = realTrend + scheduledTrend + amortizationTrend;
@@ -97,11 +116,7 @@ public class TransactionManager implements IBudgetManagement {
      */
     @Override
     public double balanceForTag(MovementType type, String tag) {
-        double realTransactions = transactionsList.stream()
-                .filter(t -> t.getType().equals(type))
-                .filter(t -> t.hasTag(tag))
-                .mapToDouble(ITransaction::getMoney)
-                .sum();
+        double realTransactions = realBalanceForTag(type, tag, null, null);
 
         LocalDate reasonableStart = LocalDate.now().minusYears(10);
         LocalDate reasonableEnd = LocalDate.now().plusYears(10);
@@ -122,22 +137,69 @@ public class TransactionManager implements IBudgetManagement {
     public double balanceForDates(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
         LocalDate endDate = (dateEnd != null) ? dateEnd : LocalDate.now();
 
-        double realTransactions = transactionsList.stream()
-                .filter(t -> type == null || t.getType().equals(type))
-                .filter(t -> isDateInRange(t.getDate(), dateStart, endDate))
-                .mapToDouble(ITransaction::getMoney)
-                .sum();
+        double realTransactions = realBalanceForDates(type, dateStart, endDate);
 
         double scheduledTransactions = calculateScheduledTransactionsForPeriod(type, dateStart, endDate);
 
         double amortizationTransactions = 0;
         if (amortizationManager != null && type == MovementType.SPESA) {
-            amortizationTransactions = amortizationManager.calculateFutureInstallments(dateStart, endDate);
+            amortizationTransactions = calculateFutureInstallments(dateStart, endDate);
         }
 
         return realTransactions + scheduledTransactions + amortizationTransactions;
     }
 
+    /**
+     * Somma le transazioni reali in un intervallo di date.
+     * @param type tipo di transazione, può essere null
+     * @param dateStart data di inizio
+     * @param dateEnd data di fine
+     * @return somma degli importi nel periodo
+     */
+    @Override
+    public double realBalanceForDates(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        return Money.toDouble(transactionsBetween(dateStart, dateEnd)
+                .filter(t -> type == null || t.getType().equals(type))
+                .mapToLong(ITransaction::getCents)
+                .sum());
+    }
+
+    /**
+     * Conta le transazioni reali in un intervallo di date.
+     * @param type tipo di transazione, può essere null
+     * @param dateStart data di inizio
+     * @param dateEnd data di fine
+     * @return numero di transazioni nel periodo
+     */
+    @Override
+    public int countForDates(MovementType type, LocalDate dateStart, LocalDate dateEnd) {
+        return (int) transactionsBetween(dateStart, dateEnd)
+                .filter(t -> type == null || t.getType().equals(type))
+                .count();
+    }
+
+    /**
+     * Somma le transazioni reali con un tag, eventualmente limitate a un intervallo di date.
+     * @param type tipo di transazione, può essere null
+     * @param tag tag da considerare
+     * @param dateStart data di inizio, null per nessun limite
+     * @param dateEnd data di fine, null per nessun limite
+     * @return somma degli importi con il tag
+     */
+    @Override
+    public double realBalanceForTag(MovementType type, String tag, LocalDate dateStart, LocalDate dateEnd) {
+        Stream<ITransaction> candidates = (dateStart != null && dateEnd != null)
+                ? transactionsBetween(dateStart, dateEnd)
+                : transactions()
+                        .filter(t -> dateStart == null || !t.getDate().isBefore(dateStart))
+                        .filter(t -> dateEnd == null || !t.getDate().isAfter(dateEnd));
+        return Money.toDouble(candidates
+                .filter(t -> type == null || t.getType().equals(type))
+                .filter(t -> t.hasTag(tag))
+                .mapToLong(ITransaction::getCents)
+                .sum());
+    }
+
     /**
      * Calcola il saldo per un tag in un intervallo di date.
      * @param type tipo di transazione
@@ -150,12 +212,7 @@ public class TransactionManager implements IBudgetManagement {
     public double balanceForTag(MovementType type, String tag, LocalDate dateStart, LocalDate dateEnd) {
         LocalDate endDate = (dateEnd != null) ? dateEnd : LocalDate.now();
 
-        double realTransactions = transactionsList.stream()
-                .filter(t -> type == null || t.getType().equals(type))
-                .filter(t -> t.hasTag(tag))
-                .filter(t -> isDateInRange(t.getDate(), dateStart, endDate))
-                .mapToDouble(ITransaction::getMoney)
-                .sum();
+        double realTransactions = realBalanceForTag(type, tag, dateStart, endDate);
 
         double scheduledTransactions = calculateScheduledTagTransactionsForPeriod(type, tag, dateStart, dateEnd);
 
@@ -164,45 +221,65 @@ public class TransactionManager implements IBudgetManagement {
 
     /**
      * Restituisce un HashMap con saldo totale per ogni combinazione di tag per un tipo di transazione specifico.
+     * Il {@link Ledger} risponde dal proprio {@link TransactionCube}, che registra gli insiemi di tag
+     * all'inserimento: qui gli insiemi vengono registrati solo durante il calcolo.
      * @param type tipo di transazione
      * @return mappa <tag, saldo totale>
      */
     @Override
     public HashMap<String, Double> balanceForEachTag(MovementType type) {
-        HashMap<String, Double> map = new HashMap<>();
-
-        transactionsList.stream()
-                .filter(t -> t.getType().equals(type))
-                .filter(t -> !t.getTags().isEmpty())
-                .forEach(transaction -> {
-                    double amount = transaction.getMoney();
-                    String tagKey = transaction.getTags().stream()
-                            .map(ITag::getName)
-                            .sorted()
-                            .collect(Collectors.joining(", "));
-                    map.put(tagKey, map.getOrDefault(tagKey, 0.0) + amount);
-                });
-
-        return map;
+        return balanceForEachTag(transactions(), type);
+    }
+
+    /**
+     * Calcola {@link #balanceForEachTag(MovementType)} su un flusso di transazioni,
+     * costruendo un dizionario degli insiemi di tag temporaneo.
+     * @param transactions transazioni da aggregare
+     * @param type tipo di transazione
+     * @return mappa <tag, saldo totale>
+     */
+    protected HashMap<String, Double> balanceForEachTag(Stream<ITransaction> transactions, MovementType type) {
+        TagSetDictionary dictionary = new TagSetDictionary();
+        Map<Integer, Long> totals = transactions.sequential()
+                .filter(t -> type != null && type == t.getType())
+                .collect(Collectors.groupingBy(t -> dictionary.intern(t.getTags()),
+                        Collectors.summingLong(ITransaction::getCents)));
+
+        long[] cents = new long[dictionary.size()];
+        boolean[] present = new boolean[dictionary.size()];
+        totals.forEach((id, total) -> {
+            cents[id] = total;
+            present[id] = true;
+        });
+        return dictionary.totalsByKey(cents, present);
     }
 
     /**
      * Restituisce la lista delle transazioni reali.
-     * @return lista di transazioni
+     * @return lista di transazioni (copia modificabile)
      */
     @Override
     public ArrayList<ITransaction> getList() {
         return new ArrayList<>(transactionsList);
     }
 
+    /**
+     * Restituisce la vista corrente delle transazioni reali, senza copiarla.
+     * @return vista immutabile e stabile
+     */
+    @Override
+    public List<ITransaction> snapshot() {
+        return transactionsList;
+    }
+
     /**
      * Imposta la lista delle transazioni.
      * @param list lista di transazioni da impostare
      */
     @Override
-    public void setList(ArrayList<ITransaction> list) {
+    public synchronized void setList(ArrayList<ITransaction> list) {
         if (list != null) {
-            this.transactionsList = new ArrayList<>(list);
+            transactionsList = SnapshotList.copyOf(list, transactionsList.version() + 1);
         }
     }
 
@@ -213,6 +290,7 @@ public class TransactionManager implements IBudgetManagement {
     @Override
     public void setScheduledTransactionManager(ScheduledTransactionManager scheduledTransactionManager) {
         this.scheduledTransactionManager = scheduledTransactionManager;
+        resetProjection();
     }
 
     /**
@@ -225,22 +303,26 @@ public class TransactionManager implements IBudgetManagement {
     public double calculateScheduledTransactionsForPeriod(MovementType type, LocalDate start, LocalDate end) {
         if (scheduledTransactionManager == null) return 0;
 
-        double total = 0;
-        for (ScheduledTransaction scheduled : scheduledTransactionManager.getScheduledTransactions()) {
-            if ((type == null || scheduled.getType().equals(type)) && scheduled.isActive()) {
-                int occurrences = calculateScheduledOccurrences(scheduled, start, end);
-                double amount = scheduled.getAmount();
-
-                if (scheduled.getType() == MovementType.SPESA) {
-                    amount = -Math.abs(amount);
-                } else if (scheduled.getType() == MovementType.GUADAGNO) {
-                    amount = Math.abs(amount);
-                }
-
-                total += occurrences * amount;
-            }
+        CashFlowProjection current = projection;
+        if (current.covers(end)) {
+            return Money.toDouble(current.scheduledCents(type, start, end));
         }
-        return total;
+
+        return Money.toDouble(ParallelScan.stream(scheduledTransactionManager.getScheduledTransactions())
+                .filter(scheduled -> (type == null || scheduled.getType().equals(type)) && scheduled.isActive())
+                .mapToLong(scheduled -> {
+                    long occurrences = calculateScheduledOccurrences(scheduled, start, end);
+                    long amount = scheduled.getCents();
+
+                    if (scheduled.getType() == MovementType.SPESA) {
+                        amount = -Math.abs(amount);
+                    } else if (scheduled.getType() == MovementType.GUADAGNO) {
+                        amount = Math.abs(amount);
+                    }
+
+                    return occurrences * amount;
+                })
+                .sum());
     }
 
     /**
@@ -255,84 +337,79 @@ public class TransactionManager implements IBudgetManagement {
     public double calculateScheduledTagTransactionsForPeriod(MovementType type, String tag, LocalDate start, LocalDate end) {
         if (scheduledTransactionManager == null) return 0;
 
-        double total = 0;
-        for (ScheduledTransaction scheduled : scheduledTransactionManager.getScheduledTransactions()) {
-            if ((type == null || scheduled.getType().equals(type)) &&
-                    scheduled.isActive() &&
-                    scheduled.hasTag(tag)) {
-                total += calculateScheduledOccurrences(scheduled, start, end) * scheduled.getAmount();
-            }
-        }
-        return total;
+        return Money.toDouble(ParallelScan.stream(scheduledTransactionManager.getScheduledTransactions())
+                .filter(scheduled -> (type == null || scheduled.getType().equals(type)) &&
+                        scheduled.isActive() &&
+                        scheduled.hasTag(tag))
+                .mapToLong(scheduled -> calculateScheduledOccurrences(scheduled, start, end) * scheduled.getCents())
+                .sum());
     }
 
-    // ==================== METODI PRIVATI ====================
-
-    /** Controlla se una data è compresa tra start e end */
-    private boolean isDateInRange(LocalDate date, LocalDate start, LocalDate end) {
-        return !date.isBefore(start) && !date.isAfter(end);
+    /**
+     * Calcola il saldo previsto in un periodo: occorrenze delle transazioni programmate
+     * e, se richieste le spese, rate di ammortamento non pagate.
+     * @param type tipo di transazione, null per tutti
+     * @param start data di inizio
+     * @param end data di fine
+     * @return saldo previsto nel periodo
+     */
+    @Override
+    public double forecastBalance(MovementType type, LocalDate start, LocalDate end) {
+        double amortization = type == null || type == MovementType.SPESA ? calculateFutureInstallments(start, end) : 0;
+        return calculateScheduledTransactionsForPeriod(type, start, end) + amortization;
     }
 
-    /** Calcola le occorrenze totali in un periodo per una transazione programmata */
-    private int calculateScheduledOccurrences(ScheduledTransaction scheduled, LocalDate periodStart, LocalDate periodEnd) {
-        if (!scheduled.isActive()) return 0;
-
-        int occurrences = 0;
-        LocalDate currentDate = scheduled.getStartDate();
+    /**
+     * Restituisce le transazioni reali su cui lavorano i calcoli di saldo.
+     * Le sottoclassi possono leggerle da una sorgente diversa dalla lista in memoria.
+     * Oltre {@link ParallelScan#THRESHOLD} transazioni il flusso è parallelo: le operazioni
+     * sul flusso non devono quindi modificare stato condiviso.
+     * @return flusso delle transazioni
+     */
+    protected Stream<ITransaction> transactions() {
+        return ParallelScan.stream(transactionsList);
+    }
 
-        // Se la transazione non è ancora iniziata nel periodo
-        if (currentDate.isAfter(periodEnd)) {
-            return 0;
-        }
+    /**
+     * Restituisce le transazioni reali con data compresa nell'intervallo (estremi inclusi).
+     * @param start data di inizio
+     * @param end data di fine
+     * @return flusso delle transazioni nell'intervallo
+     */
+    protected Stream<ITransaction> transactionsBetween(LocalDate start, LocalDate end) {
+        return ParallelScan.stream(transactionsList)
+                .filter(t -> isDateInRange(t.getDate(), start, end));
+    }
 
-        // Avanza fino all'inizio del periodo
-        while (currentDate.isBefore(periodStart)) {
-            currentDate = calculateNextDate(currentDate, scheduled.getRecurrence());
-            if (currentDate.isAfter(periodEnd) ||
-                    (scheduled.getEndDate() != null && currentDate.isAfter(scheduled.getEndDate()))) {
-                return 0;
-            }
-        }
+    // ==================== METODI PRIVATI ====================
 
-        // Conta le occorrenze nel periodo (anche future)
-        int maxIterations = 1000;
-        while (!currentDate.isAfter(periodEnd) && occurrences < maxIterations) {
-            if (!currentDate.isBefore(periodStart) &&
-                    (scheduled.getEndDate() == null || !currentDate.isAfter(scheduled.getEndDate()))) {
-                occurrences++;
-            }
+    /** Totale delle rate non pagate nel periodo, dalla proiezione se il periodo è entro l'orizzonte */
+    private double calculateFutureInstallments(LocalDate start, LocalDate end) {
+        if (amortizationManager == null) return 0;
 
-            currentDate = calculateNextDate(currentDate, scheduled.getRecurrence());
-            if (currentDate.isAfter(periodEnd) ||
-                    (scheduled.getEndDate() != null && currentDate.isAfter(scheduled.getEndDate()))) {
-                break;
-            }
-        }
+        CashFlowProjection current = projection;
+        return current.covers(end)
+                ? Money.toDouble(current.installmentCents(start, end))
+                : amortizationManager.calculateFutureInstallments(start, end);
+    }
 
-        return occurrences;
+    private void resetProjection() {
+        projection = new CashFlowProjection(scheduledTransactionManager, amortizationManager, projectionHorizon);
     }
 
-    /** Calcola la prossima data di una transazione programmata in base alla ricorrenza */
-    private LocalDate calculateNextDate(LocalDate currentDate, RecurrenceType recurrence) {
-        try {
-            return switch (recurrence) {
-                case GIORNALIERO -> currentDate.plusDays(1);
-                case SETTIMANALE -> currentDate.plusWeeks(1);
-                case MENSILE -> currentDate.plusMonths(1);
-                case ANNUALE -> currentDate.plusYears(1);
-            };
-        } catch (Exception e) {
-            // In caso di errore (es. data impossibile), ritorna la data corrente
-            System.err.println("Errore nel calcolo della prossima data: " + e.getMessage());
-            return currentDate;
-        }
+    /** Controlla se una data è compresa tra start e end */
+    private boolean isDateInRange(LocalDate date, LocalDate start, LocalDate end) {
+        return !date.isBefore(start) && !date.isAfter(end);
     }
 
-    /** Predicato per filtrare transazioni in un intervallo di date e tipo */
-    private Predicate<ITransaction> forDates(MovementType type, LocalDate... dates) {
-        if (type != null) {
-            return t -> isDateInRange(t.getDate(), dates[0], dates[1]) && t.getType().equals(type);
-        }
-        return t -> isDateInRange(t.getDate(), dates[0], dates[1]);
+    /**
+     * Calcola le occorrenze in un periodo per una transazione programmata, anche future,
+     * in tempo costante tramite {@link RecurrenceType#count}.
+     */
+    private long calculateScheduledOccurrences(ScheduledTransaction scheduled, LocalDate periodStart, LocalDate periodEnd) {
+        if (!scheduled.isActive() || scheduled.getStartDate() == null || scheduled.getRecurrence() == null) return 0;
+
+        return scheduled.getRecurrence().count(scheduled.getStartDate(), scheduled.getEndDate(), periodStart, periodEnd);
     }
+
 }
@@ -0,0 +1,221 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Archivio delle transazioni suddiviso in una partizione per mese
+ * ({@code Data/movements/2025-08.json}), con un indice ({@code Data/movements/index.json})
+ * che per ogni partizione registra numero di transazioni, totale e date estreme.
+ * <p>
+ * Le letture per intervallo di date caricano solo le partizioni che lo intersecano;
+ * le partizioni lette restano in memoria fino a un massimo di {@link #DEFAULT_RESIDENT_PARTITIONS},
+ * oltre il quale vengono scaricate quelle usate meno di recente.
+ * Le scritture passano da {@link IFileManagement#writeObject(String, Object)} e quindi dal
+ * {@link WriteAheadLog}: partizioni e indice modificati da un'operazione vengono confermati insieme.
+ * </p>
+ */
+final class TransactionPartitions {
+
+    /** Numero predefinito di partizioni tenute in memoria */
+    static final int DEFAULT_RESIDENT_PARTITIONS = 12;
+
+    /** Chiave della partizione che raccoglie le transazioni senza data */
+    private static final String UNDATED = "undated";
+
+    private static final String INDEX_FILE = FilePaths.getFileNameOnly(FilePaths.MOVEMENTS_INDEX_FILE);
+    private static final Type PARTITION_TYPE = new TypeToken<List<Transaction>>() {}.getType();
+    private static final Type INDEX_TYPE = new TypeToken<TreeMap<String, PartitionInfo>>() {}.getType();
+
+    /**
+     * Voce dell'indice relativa a una partizione.
+     */
+    static class PartitionInfo {
+        int count;
+        /** Totale in centesimi, esatto come gli importi delle transazioni */
+        long totalCents;
+        /** Totale in euro dei vecchi indici, convertito in {@link #totalCents} alla lettura */
+        Double total;
+        String firstDate;
+        String lastDate;
+    }
+
+    private final IFileManagement storage;
+    private final TreeMap<String, PartitionInfo> index;
+    private final Map<String, List<ITransaction>> resident;
+
+    /**
+     * @param storage            gestore dei file usato per leggere e scrivere partizioni e indice
+     * @param residentPartitions numero massimo di partizioni tenute in memoria
+     */
+    TransactionPartitions(IFileManagement storage, int residentPartitions) {
+        this.storage = storage;
+        TreeMap<String, PartitionInfo> loaded = storage.readObject(INDEX_FILE, INDEX_TYPE);
+        this.index = loaded != null ? loaded : new TreeMap<>();
+        for (PartitionInfo info : index.values()) {
+            if (info.total != null) {
+                info.totalCents = Money.centsOf(info.total);
+                info.total = null;
+            }
+        }
+        this.resident = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<ITransaction>> eldest) {
+                return size() > residentPartitions;
+            }
+        };
+    }
+
+    /**
+     * Indica se nella directory dei dati esiste già un archivio partizionato.
+     *
+     * @return true se l'indice delle partizioni è presente
+     */
+    static boolean exists() {
+        return FilePaths.isPartitionedLayout();
+    }
+
+    /**
+     * Emette tutte le transazioni, partizione per partizione in ordine cronologico.
+     *
+     * @param consumer destinatario delle transazioni
+     */
+    synchronized void forEach(Consumer<ITransaction> consumer) {
+        for (String key : index.keySet()) {
+            partition(key).forEach(consumer);
+        }
+    }
+
+    /**
+     * Emette le transazioni con data nell'intervallo, leggendo solo le partizioni che lo intersecano.
+     *
+     * @param start    data di inizio (inclusa)
+     * @param end      data di fine (inclusa)
+     * @param consumer destinatario delle transazioni
+     */
+    synchronized void forEachBetween(LocalDate start, LocalDate end, Consumer<ITransaction> consumer) {
+        String from = keyOf(YearMonth.from(start));
+        String to = keyOf(YearMonth.from(end));
+        if (from.compareTo(to) > 0) {
+            return;
+        }
+
+        for (Map.Entry<String, PartitionInfo> entry : index.subMap(from, true, to, true).entrySet()) {
+            PartitionInfo info = entry.getValue();
+            boolean fullyInside = !LocalDate.parse(info.firstDate).isBefore(start)
+                    && !LocalDate.parse(info.lastDate).isAfter(end);
+
+            for (ITransaction transaction : partition(entry.getKey())) {
+                if (fullyInside || isInRange(transaction.getDate(), start, end)) {
+                    consumer.accept(transaction);
+                }
+            }
+        }
+    }
+
+    /**
+     * Aggiunge transazioni alle partizioni del loro mese, riscrivendo solo quelle coinvolte.
+     *
+     * @param transactions transazioni da aggiungere
+     */
+    synchronized void addAll(Collection<ITransaction> transactions) {
+        Map<String, List<ITransaction>> byPartition = groupByPartition(transactions);
+        if (byPartition.isEmpty()) {
+            return;
+        }
+
+        WriteAheadLog.atomically(() -> {
+            for (Map.Entry<String, List<ITransaction>> entry : byPartition.entrySet()) {
+                List<ITransaction> partition = new ArrayList<>(partition(entry.getKey()));
+                partition.addAll(entry.getValue());
+                writePartition(entry.getKey(), partition);
+            }
+            storage.writeObject(INDEX_FILE, index);
+        });
+    }
+
+    /**
+     * Sostituisce l'intero contenuto dell'archivio.
+     * Le partizioni che restano vuote vengono svuotate e rimosse dall'indice.
+     *
+     * @param transactions nuova lista completa delle transazioni
+     */
+    synchronized void replaceAll(Collection<ITransaction> transactions) {
+        Map<String, List<ITransaction>> byPartition = groupByPartition(transactions);
+
+        WriteAheadLog.atomically(() -> {
+            for (String key : new ArrayList<>(index.keySet())) {
+                if (!byPartition.containsKey(key)) {
+                    storage.writeObject(fileNameOf(key), Collections.emptyList());
+                    index.remove(key);
+                    resident.remove(key);
+                }
+            }
+            for (Map.Entry<String, List<ITransaction>> entry : byPartition.entrySet()) {
+                writePartition(entry.getKey(), entry.getValue());
+            }
+            storage.writeObject(INDEX_FILE, index);
+        });
+    }
+
+    // ==================== METODI PRIVATI ====================
+
+    private List<ITransaction> partition(String key) {
+        List<ITransaction> partition = resident.get(key);
+        if (partition == null) {
+            List<ITransaction> loaded = storage.readObject(fileNameOf(key), PARTITION_TYPE);
+            partition = loaded != null ? loaded : new ArrayList<>();
+            resident.put(key, partition);
+        }
+        return partition;
+    }
+
+    private void writePartition(String key, List<ITransaction> transactions) {
+        storage.writeObject(fileNameOf(key), transactions);
+        resident.put(key, transactions);
+
+        PartitionInfo info = new PartitionInfo();
+        info.count = transactions.size();
+        LocalDate first = null;
+        LocalDate last = null;
+        long totalCents = 0;
+        for (ITransaction transaction : transactions) {
+            totalCents += transaction.getCents();
+            LocalDate date = transaction.getDate();
+            if (date != null) {
+                first = first == null || date.isBefore(first) ? date : first;
+                last = last == null || date.isAfter(last) ? date : last;
+            }
+        }
+        info.totalCents = totalCents;
+        info.firstDate = first != null ? first.toString() : null;
+        info.lastDate = last != null ? last.toString() : null;
+        index.put(key, info);
+    }
+
+    private static Map<String, List<ITransaction>> groupByPartition(Collection<ITransaction> transactions) {
+        Map<String, List<ITransaction>> byPartition = new TreeMap<>();
+        for (ITransaction transaction : transactions) {
+            String key = transaction.getDate() != null ? keyOf(YearMonth.from(transaction.getDate())) : UNDATED;
+            byPartition.computeIfAbsent(key, k -> new ArrayList<>()).add(transaction);
+        }
+        return byPartition;
+    }
+
+    private static boolean isInRange(LocalDate date, LocalDate start, LocalDate end) {
+        return date != null && !date.isBefore(start) && !date.isAfter(end);
+    }
+
+    private static String keyOf(YearMonth month) {
+        return month.toString();
+    }
+
+    private static String fileNameOf(String key) {
+        return FilePaths.getFileNameOnly(FilePaths.MOVEMENTS_DIRECTORY) + "/" + key + ".json";
+    }
+}
@@ -0,0 +1,385 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Interrogazione componibile sulle transazioni reali di un {@link Ledger}.
+ * <p>
+ * I filtri (tipo, periodo, tag o categoria con sottocategorie, persona, intervallo di importi)
+ * si concatenano e vengono valutati solo dall'operazione finale (somma, conteggio, minimo,
+ * massimo, raggruppamento, elenco). Prima di eseguirla si sceglie un piano di accesso
+ * ({@link Access}): il cubo degli aggregati se i filtri lo permettono, altrimenti l'indice
+ * del {@link IBudgetManagement} più adatto, e la scansione solo come ultima risorsa.
+ * </p>
+ * <pre>{@code
+ * double spesaCibo = ledger.query()
+ *         .type(MovementType.SPESA)
+ *         .tag("Cibo")
+ *         .between(inizio, fine)
+ *         .sum();
+ * }</pre>
+ */
+public final class TransactionQuery {
+
+    /**
+     * Coordinate per cui raggruppare i risultati.
+     */
+    public enum Dimension {
+        /** Mese della transazione ({@code yyyy-MM}), in ordine cronologico */
+        MONTH,
+        /** Singolo tag: una transazione con più tag conta per ciascuno */
+        TAG,
+        /** Insieme dei tag, come in {@link Ledger#balanceForEachTag} */
+        TAG_SET,
+        /** Utente della transazione */
+        PERSON,
+        /** Tipo di movimento */
+        TYPE
+    }
+
+    /**
+     * Piani di accesso, dal più al meno efficiente.
+     */
+    public enum Access {
+        /** Celle del cubo mese × insieme di tag × tipo × persona */
+        CUBE,
+        /** Somme per sottoalbero di tag del {@link IBudgetManagement} */
+        TAG_TREE_INDEX,
+        /** Somme per tag del {@link IBudgetManagement} */
+        TAG_INDEX,
+        /** Somme e conteggi per periodo del {@link IBudgetManagement} */
+        DATE_INDEX,
+        /** Scansione delle sole transazioni del periodo */
+        DATE_RANGE_SCAN,
+        /** Scansione di tutte le transazioni */
+        FULL_SCAN
+    }
+
+    private enum Aggregate { SUM, COUNT, GROUP }
+
+    private final Ledger ledger;
+    private final IBudgetManagement budgetManagement;
+
+    private MovementType type;
+    private LocalDate dateStart;
+    private LocalDate dateEnd;
+    private String tag;
+    private boolean subtree;
+    private String person;
+    private Long minCents;
+    private Long maxCents;
+
+    TransactionQuery(Ledger ledger, IBudgetManagement budgetManagement) {
+        this.ledger = ledger;
+        this.budgetManagement = budgetManagement;
+    }
+
+    /**
+     * @param type tipo di movimento, null per tutti
+     * @return questa interrogazione
+     */
+    public TransactionQuery type(MovementType type) {
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * @param dateStart data di inizio (inclusa), null per nessun limite
+     * @param dateEnd   data di fine (inclusa), null per nessun limite
+     * @return questa interrogazione
+     */
+    public TransactionQuery between(LocalDate dateStart, LocalDate dateEnd) {
+        this.dateStart = dateStart;
+        this.dateEnd = dateEnd;
+        return this;
+    }
+
+    /**
+     * @param from primo mese (incluso), null per nessun limite
+     * @param to   ultimo mese (incluso), null per nessun limite
+     * @return questa interrogazione
+     */
+    public TransactionQuery months(YearMonth from, YearMonth to) {
+        return between(from != null ? from.atDay(1) : null, to != null ? to.atEndOfMonth() : null);
+    }
+
+    /**
+     * Limita alle transazioni con il tag indicato.
+     *
+     * @param tag nome del tag, null per tutti
+     * @return questa interrogazione
+     */
+    public TransactionQuery tag(String tag) {
+        this.tag = tag;
+        this.subtree = false;
+        return this;
+    }
+
+    /**
+     * Limita alle transazioni con il tag indicato o una delle sue sottocategorie.
+     *
+     * @param tag nome del tag radice
+     * @return questa interrogazione
+     */
+    public TransactionQuery tagSubtree(String tag) {
+        this.tag = tag;
+        this.subtree = tag != null;
+        return this;
+    }
+
+    /**
+     * @param person utente della transazione, null per tutti
+     * @return questa interrogazione
+     */
+    public TransactionQuery person(String person) {
+        this.person = person;
+        return this;
+    }
+
+    /**
+     * Limita alle transazioni con importo compreso tra i due estremi (inclusi).
+     *
+     * @param min importo minimo, null per nessun limite
+     * @param max importo massimo, null per nessun limite
+     * @return questa interrogazione
+     */
+    public TransactionQuery amountBetween(Double min, Double max) {
+        this.minCents = min != null ? Money.centsOf(min) : null;
+        this.maxCents = max != null ? Money.centsOf(max) : null;
+        return this;
+    }
+
+    // ==================== OPERAZIONI FINALI ====================
+
+    /**
+     * @return somma degli importi
+     */
+    public double sum() {
+        return switch (plan(Aggregate.SUM, null)) {
+            case CUBE -> Money.toDouble(ledger.withCube(c -> c.sum(type, tag, person, fromMonth(), toMonth())));
+            case TAG_TREE_INDEX -> budgetManagement.realBalanceForTagSubtree(type, tag, dateStart, dateEnd);
+            case TAG_INDEX -> budgetManagement.realBalanceForTag(type, tag, dateStart, dateEnd);
+            case DATE_INDEX -> budgetManagement.realBalanceForDates(type, dateStart, dateEnd);
+            default -> Money.toDouble(scan().mapToLong(ITransaction::getCents).sum());
+        };
+    }
+
+    /**
+     * @return numero di transazioni
+     */
+    public int count() {
+        return switch (plan(Aggregate.COUNT, null)) {
+            case CUBE -> ledger.withCube(c -> c.count(type, tag, person, fromMonth(), toMonth()));
+            case DATE_INDEX -> budgetManagement.countForDates(type, dateStart, dateEnd);
+            default -> (int) scan().count();
+        };
+    }
+
+    /**
+     * @return importo minimo, vuoto se nessuna transazione soddisfa i filtri
+     */
+    public OptionalDouble min() {
+        return scan().mapToLong(ITransaction::getCents).min().stream().mapToDouble(Money::toDouble).findFirst();
+    }
+
+    /**
+     * @return importo massimo, vuoto se nessuna transazione soddisfa i filtri
+     */
+    public OptionalDouble max() {
+        return scan().mapToLong(ITransaction::getCents).max().stream().mapToDouble(Money::toDouble).findFirst();
+    }
+
+    /**
+     * Somma gli importi raggruppandoli per una coordinata.
+     *
+     * @param dimension coordinata di raggruppamento
+     * @return mappa chiave → somma (per {@link Dimension#MONTH} in ordine cronologico)
+     */
+    public Map<String, Double> groupBy(Dimension dimension) {
+        Map<String, Long> cents = plan(Aggregate.GROUP, dimension) == Access.CUBE
+                ? ledger.withCube(c -> groupCube(c, dimension))
+                : groupScan(dimension);
+
+        Map<String, Double> totals = dimension == Dimension.MONTH ? new TreeMap<>() : new HashMap<>();
+        cents.forEach((key, value) -> totals.put(key, Money.toDouble(value)));
+        return totals;
+    }
+
+    /**
+     * @return transazioni che soddisfano i filtri
+     */
+    public List<ITransaction> list() {
+        return scan().toList();
+    }
+
+    /**
+     * Indica il piano scelto per la somma, utile per verificare quale indice viene usato.
+     *
+     * @return piano di accesso della somma
+     */
+    public Access explain() {
+        return plan(Aggregate.SUM, null);
+    }
+
+    // ==================== PIANIFICAZIONE ====================
+
+    /**
+     * Sceglie il piano di accesso più efficiente compatibile con i filtri e l'operazione.
+     */
+    private Access plan(Aggregate aggregate, Dimension dimension) {
+        boolean amountFilter = minCents != null || maxCents != null;
+
+        // Il cubo ha granularità mensile e conosce tipo, tag, persona: nessun filtro sugli importi
+        boolean cubeAggregate = aggregate == Aggregate.SUM || aggregate == Aggregate.COUNT
+                || (aggregate == Aggregate.GROUP && dimension != Dimension.TYPE);
+        if (cubeAggregate && !amountFilter && !subtree && monthAligned()) {
+            return Access.CUBE;
+        }
+
+        if (!amountFilter && person == null) {
+            if (aggregate == Aggregate.SUM && subtree) {
+                return Access.TAG_TREE_INDEX;
+            }
+            if (aggregate == Aggregate.SUM && tag != null) {
+                return Access.TAG_INDEX;
+            }
+            if ((aggregate == Aggregate.SUM || aggregate == Aggregate.COUNT)
+                    && tag == null && dateStart != null && dateEnd != null) {
+                return Access.DATE_INDEX;
+            }
+        }
+
+        if (dateStart != null && dateEnd != null && budgetManagement instanceof TransactionManager) {
+            return Access.DATE_RANGE_SCAN;
+        }
+        return Access.FULL_SCAN;
+    }
+
+    private boolean monthAligned() {
+        return (dateStart == null || dateStart.getDayOfMonth() == 1)
+                && (dateEnd == null || dateEnd.equals(YearMonth.from(dateEnd).atEndOfMonth()));
+    }
+
+    // ==================== ESECUZIONE ====================
+
+    private Map<String, Long> groupCube(TransactionCube cube, Dimension dimension) {
+        return switch (dimension) {
+            case MONTH -> cube.sumByMonth(type, tag, person, fromMonth(), toMonth()).entrySet().stream()
+                    .collect(Collectors.toMap(entry -> entry.getKey().toString(), Map.Entry::getValue));
+            case TAG -> cube.sumByTag(type, tag, person, fromMonth(), toMonth());
+            case TAG_SET -> cube.sumByTagSet(type, tag, person, fromMonth(), toMonth());
+            case PERSON -> cube.sumByPerson(type, tag, person, fromMonth(), toMonth());
+            case TYPE -> throw new IllegalStateException("Raggruppamento per tipo non disponibile sul cubo");
+        };
+    }
+
+    private Map<String, Long> groupScan(Dimension dimension) {
+        // La scansione può essere parallela: i parziali per chiave vengono uniti dal collector
+        return scan()
+                .flatMap(transaction -> keysOf(transaction, dimension).stream()
+                        .map(key -> Map.entry(key, transaction.getCents())))
+                .collect(Collectors.groupingBy(Map.Entry::getKey, Collectors.summingLong(Map.Entry::getValue)));
+    }
+
+    private static List<String> keysOf(ITransaction transaction, Dimension dimension) {
+        return switch (dimension) {
+            case MONTH -> transaction.getDate() != null
+                    ? List.of(YearMonth.from(transaction.getDate()).toString()) : List.of();
+            case TAG -> tagNames(transaction).distinct().toList();
+            case TAG_SET -> {
+                String key = tagNames(transaction).sorted().collect(Collectors.joining(", "));
+                yield key.isEmpty() ? List.of() : List.of(key);
+            }
+            case PERSON -> List.of(transaction.getUser() != null ? transaction.getUser() : "");
+            case TYPE -> transaction.getType() != null ? List.of(transaction.getType().name()) : List.of();
+        };
+    }
+
+    /**
+     * Scorre le transazioni che soddisfano tutti i filtri, limitandosi al periodo quando
+     * il gestore sa restituirlo senza scorrere l'intera lista.
+     */
+    private Stream<ITransaction> scan() {
+        Stream<ITransaction> candidates = budgetManagement instanceof TransactionManager manager
+                && dateStart != null && dateEnd != null
+                ? manager.transactionsBetween(dateStart, dateEnd)
+                : budgetManagement.snapshot().stream();
+
+        Set<String> wantedTags = wantedTags();
+        return candidates.filter(transaction -> matches(transaction, wantedTags));
+    }
+
+    private boolean matches(ITransaction transaction, Set<String> wantedTags) {
+        if (type != null && transaction.getType() != type) {
+            return false;
+        }
+        LocalDate date = transaction.getDate();
+        if ((dateStart != null || dateEnd != null) && date == null) {
+            return false;
+        }
+        if ((dateStart != null && date.isBefore(dateStart)) || (dateEnd != null && date.isAfter(dateEnd))) {
+            return false;
+        }
+        long cents = transaction.getCents();
+        if ((minCents != null && cents < minCents) || (maxCents != null && cents > maxCents)) {
+            return false;
+        }
+        if (person != null && !person.equalsIgnoreCase(transaction.getUser())) {
+            return false;
+        }
+        return wantedTags == null
+                || tagNames(transaction).anyMatch(name -> wantedTags.contains(name.toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * Nomi in minuscolo dei tag accettati: il tag richiesto e, per una categoria, tutti i suoi discendenti.
+     */
+    private Set<String> wantedTags() {
+        if (tag == null) {
+            return null;
+        }
+        Set<String> names = new HashSet<>();
+        names.add(tag.toLowerCase(Locale.ROOT));
+        if (!subtree) {
+            return names;
+        }
+
+        // Si risale ai genitori, l'unico legame sempre ricostruito al caricamento della gerarchia
+        for (ITag candidate : TagManager.getAllTags().values()) {
+            for (ITag ancestor = candidate.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+                if (tag.equalsIgnoreCase(ancestor.getName()) && candidate.getName() != null) {
+                    names.add(candidate.getName().toLowerCase(Locale.ROOT));
+                    break;
+                }
+            }
+        }
+        return names;
+    }
+
+    private static Stream<String> tagNames(ITransaction transaction) {
+        return transaction.getTags() == null ? Stream.empty() : transaction.getTags().stream()
+                .filter(Objects::nonNull)
+                .map(ITag::getName)
+                .filter(Objects::nonNull);
+    }
+
+    private YearMonth fromMonth() {
+        return dateStart != null ? YearMonth.from(dateStart) : null;
+    }
+
+    private YearMonth toMonth() {
+        return dateEnd != null ? YearMonth.from(dateEnd) : null;
+    }
+}
@@ -0,0 +1,312 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Snapshot binario a colonne delle transazioni ({@code Movement.bin}).
+ * <p>
+ * È una cache di {@code Movement.json}, che resta il formato di interscambio ed esportazione:
+ * l'intestazione contiene l'hash SHA-256 del JSON da cui è stato generato e lo snapshot
+ * viene usato solo se coincide con l'hash registrato nel {@link FileManifest}.
+ * </p>
+ * <p>
+ * Le transazioni sono memorizzate per colonne: giorno epoch ({@code int}), importo in
+ * centesimi ({@code long}), tipo ({@code byte}), id della persona e id dell'insieme di tag
+ * ({@code int}) riferiti a dizionari scritti una sola volta. Gli importi sono {@link Money}
+ * in centesimi esatti. La lettura avviene tramite un {@link MappedByteBuffer}, senza parsing di testo.
+ * Uno snapshot con una versione diversa da {@link #VERSION} viene ignorato e rigenerato dal JSON.
+ * </p>
+ */
+final class TransactionSnapshot {
+
+    private static final int MAGIC = 0x4A425453; // "JBTS"
+    /** Versione 2: importi solo in centesimi, senza la sezione delle eccezioni in double */
+    private static final int VERSION = 2;
+    private static final int HASH_LENGTH = 32;
+
+    /** Giorno epoch usato per le transazioni senza data */
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final byte NO_TYPE = -1;
+    private static final int NO_ID = -1;
+
+    /**
+     * Voce del dizionario delle persone: l'utente della transazione e,
+     * se presente, l'oggetto {@link Person} associato.
+     */
+    private record PersonEntry(String user, boolean hasPerson, String name, String email, String phone,
+                               int defaultTagSet) {
+    }
+
+    /**
+     * Voce del dizionario dei tag, con gli stessi campi serializzati in JSON.
+     */
+    private record TagEntry(String name, String color, String description, String parentName) {
+    }
+
+    private TransactionSnapshot() {
+        throw new UnsupportedOperationException("Classe di utilità, non istanziabile");
+    }
+
+    // ==================== SCRITTURA ====================
+
+    /**
+     * Scrive lo snapshot binario delle transazioni passando per un file temporaneo.
+     *
+     * @param file       file di destinazione
+     * @param transactions transazioni da salvare
+     * @param sourceHash hash del {@code Movement.json} che contiene le stesse transazioni
+     * @throws IOException in caso di errore di scrittura
+     */
+    static void write(File file, List<ITransaction> transactions, String sourceHash) throws IOException {
+        int count = transactions.size();
+        Map<TagEntry, Integer> tagIds = new LinkedHashMap<>();
+        Map<List<Integer>, Integer> tagSetIds = new LinkedHashMap<>();
+        Map<PersonEntry, Integer> personIds = new LinkedHashMap<>();
+
+        int[] days = new int[count];
+        long[] cents = new long[count];
+        byte[] types = new byte[count];
+        int[] persons = new int[count];
+        int[] tagSets = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            ITransaction transaction = transactions.get(i);
+
+            LocalDate date = transaction.getDate();
+            days[i] = date != null ? (int) date.toEpochDay() : NO_DATE;
+
+            cents[i] = transaction.getCents();
+
+            types[i] = transaction.getType() != null ? (byte) transaction.getType().ordinal() : NO_TYPE;
+            tagSets[i] = tagSetId(transaction.getTags(), tagIds, tagSetIds);
+
+            Person person = transaction instanceof Movement movement ? movement.getPerson() : null;
+            PersonEntry entry = person == null
+                    ? new PersonEntry(transaction.getUser(), false, null, null, null, NO_ID)
+                    : new PersonEntry(transaction.getUser(), true, person.getName(), person.getEmail(),
+                    person.getPhone(), tagSetId(person.getDefaultTags(), tagIds, tagSetIds));
+            persons[i] = personIds.computeIfAbsent(entry, k -> personIds.size());
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(HexFormat.of().parseHex(sourceHash));
+            out.writeInt(count);
+
+            // Dizionari
+            out.writeInt(tagIds.size());
+            for (TagEntry tag : tagIds.keySet()) {
+                writeString(out, tag.name());
+                writeString(out, tag.color());
+                writeString(out, tag.description());
+                writeString(out, tag.parentName());
+            }
+
+            out.writeInt(tagSetIds.size());
+            for (List<Integer> tagSet : tagSetIds.keySet()) {
+                out.writeInt(tagSet.size());
+                for (int tagId : tagSet) {
+                    out.writeInt(tagId);
+                }
+            }
+
+            out.writeInt(personIds.size());
+            for (PersonEntry person : personIds.keySet()) {
+                writeString(out, person.user());
+                out.writeBoolean(person.hasPerson());
+                writeString(out, person.name());
+                writeString(out, person.email());
+                writeString(out, person.phone());
+                out.writeInt(person.defaultTagSet());
+            }
+
+            // Colonne
+            for (int day : days) out.writeInt(day);
+            for (long value : cents) out.writeLong(value);
+            for (int person : persons) out.writeInt(person);
+            for (int tagSet : tagSets) out.writeInt(tagSet);
+            out.write(types);
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // ==================== LETTURA ====================
+
+    /**
+     * Legge lo snapshot se è allineato al JSON con l'hash indicato.
+     * <p>
+     * Dizionari e dimensioni delle colonne vengono verificati prima di emettere
+     * la prima transazione: se il file è assente, obsoleto o incompleto il consumer
+     * non viene mai invocato e il chiamante può ricorrere al JSON.
+     * </p>
+     *
+     * @param file         file dello snapshot
+     * @param expectedHash hash corrente di {@code Movement.json}
+     * @param consumer     destinatario di ciascuna transazione letta
+     * @return true se lo snapshot è stato usato
+     */
+    static boolean read(File file, String expectedHash, Consumer<ITransaction> consumer) {
+        if (expectedHash == null || !file.exists()) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < 12 + HASH_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return false;
+            }
+            byte[] hash = new byte[HASH_LENGTH];
+            buffer.get(hash);
+            if (!HexFormat.of().formatHex(hash).equalsIgnoreCase(expectedHash)) {
+                return false;
+            }
+            int count = buffer.getInt();
+
+            // Dizionari: i tag vengono risolti come nella deserializzazione JSON
+            ITag[] tags = new ITag[buffer.getInt()];
+            for (int i = 0; i < tags.length; i++) {
+                tags[i] = ITagTypeAdapter.resolve(readString(buffer), readString(buffer),
+                        readString(buffer), readString(buffer));
+            }
+
+            List<List<ITag>> tagSets = new ArrayList<>();
+            int tagSetCount = buffer.getInt();
+            for (int i = 0; i < tagSetCount; i++) {
+                List<ITag> tagSet = new ArrayList<>();
+                int size = buffer.getInt();
+                for (int j = 0; j < size; j++) {
+                    tagSet.add(tags[buffer.getInt()]);
+                }
+                tagSets.add(tagSet);
+            }
+
+            PersonEntry[] persons = new PersonEntry[buffer.getInt()];
+            for (int i = 0; i < persons.length; i++) {
+                persons[i] = new PersonEntry(readString(buffer), buffer.get() != 0, readString(buffer),
+                        readString(buffer), readString(buffer), buffer.getInt());
+            }
+
+            // Colonne: viste tipizzate sulla regione mappata, senza copie
+            if (buffer.remaining() != (long) count * (Integer.BYTES * 3 + Long.BYTES + Byte.BYTES)) {
+                return false;
+            }
+            IntBuffer days = column(buffer, count, Integer.BYTES).asIntBuffer();
+            LongBuffer cents = column(buffer, count, Long.BYTES).asLongBuffer();
+            IntBuffer personIds = column(buffer, count, Integer.BYTES).asIntBuffer();
+            IntBuffer tagSetIds = column(buffer, count, Integer.BYTES).asIntBuffer();
+            ByteBuffer types = column(buffer, count, Byte.BYTES);
+
+            Person[] personObjects = new Person[persons.length];
+            MovementType[] movementTypes = MovementType.values();
+
+            for (int i = 0; i < count; i++) {
+                Transaction transaction = new Transaction();
+
+                int day = days.get(i);
+                transaction.setDate(day != NO_DATE ? LocalDate.ofEpochDay(day) : null);
+
+                transaction.setMoneyAmount(Money.ofCents(cents.get(i)));
+
+                byte type = types.get(i);
+                transaction.setType(type != NO_TYPE ? movementTypes[type] : null);
+
+                int tagSetId = tagSetIds.get(i);
+                if (tagSetId != NO_ID) {
+                    transaction.setTags(tagSets.get(tagSetId));
+                }
+
+                int personId = personIds.get(i);
+                PersonEntry person = persons[personId];
+                if (person.hasPerson()) {
+                    if (personObjects[personId] == null) {
+                        personObjects[personId] = toPerson(person, tagSets);
+                    }
+                    transaction.setPerson(personObjects[personId]);
+                }
+                transaction.setUser(person.user());
+
+                consumer.accept(transaction);
+            }
+            return true;
+
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Snapshot binario non utilizzabile: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // ==================== METODI PRIVATI ====================
+
+    private static int tagSetId(List<ITag> tags, Map<TagEntry, Integer> tagIds,
+                                Map<List<Integer>, Integer> tagSetIds) {
+        if (tags == null) {
+            return NO_ID;
+        }
+        List<Integer> ids = new ArrayList<>(tags.size());
+        for (ITag tag : tags) {
+            TagEntry entry = new TagEntry(tag.getName(), tag.getColor(), tag.getDescription(),
+                    tag.getParent() != null ? tag.getParent().getName() : null);
+            ids.add(tagIds.computeIfAbsent(entry, k -> tagIds.size()));
+        }
+        return tagSetIds.computeIfAbsent(ids, k -> tagSetIds.size());
+    }
+
+    private static Person toPerson(PersonEntry entry, List<List<ITag>> tagSets) {
+        Person person = new Person(entry.name(), entry.email(), entry.phone());
+        if (entry.defaultTagSet() != NO_ID) {
+            person.setDefaultTags(tagSets.get(entry.defaultTagSet()));
+        }
+        return person;
+    }
+
+    /**
+     * Restituisce la porzione del buffer che contiene una colonna e avanza oltre di essa.
+     */
+    private static ByteBuffer column(ByteBuffer buffer, int count, int width) {
+        ByteBuffer slice = buffer.slice(buffer.position(), count * width);
+        buffer.position(buffer.position() + count * width);
+        return slice;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,306 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serie temporale delle transazioni reali: per ogni tipo di movimento un albero di Fenwick
+ * sulle somme giornaliere in centesimi, indicizzato per giorno.
+ * <p>
+ * Un inserimento aggiorna O(log n) nodi e la somma di un qualunque intervallo di giorni
+ * è la differenza di due prefissi, anch'essa O(log n), dove n è il numero di giorni coperti.
+ * Le serie per giorno, settimana, mese o anno e le finestre mobili (ad esempio la spesa degli
+ * ultimi 30 giorni) sono quindi una somma per intervallo ciascuna, senza scorrere le transazioni.
+ * </p>
+ * <p>
+ * L'intervallo di giorni coperto cresce raddoppiando quando arriva una transazione fuori dai limiti:
+ * gli alberi vengono riportati alle somme giornaliere, spostati e ricostruiti in tempo lineare.
+ * Le transazioni senza data o senza tipo non vengono considerate; quelle con date fuori dagli anni
+ * {@value #FIRST_YEAR}-{@value #LAST_YEAR} (tipicamente errori di inserimento) restano in una lista
+ * a parte, sommata per scansione, così da non dilatare gli alberi.
+ * </p>
+ */
+final class TransactionTimeSeries {
+
+    private static final int TYPES = MovementType.values().length;
+    private static final int INITIAL_DAYS = 64;
+    private static final int FIRST_YEAR = 1900;
+    private static final int LAST_YEAR = 2199;
+    private static final long FIRST_INDEXED_DAY = LocalDate.of(FIRST_YEAR, 1, 1).toEpochDay();
+    private static final long LAST_INDEXED_DAY = LocalDate.of(LAST_YEAR, 12, 31).toEpochDay();
+
+    /** Giorno (epoch day) corrispondente alla posizione 1 degli alberi */
+    private long firstDay;
+    /** Numero di giorni coperti, 0 finché non è stata aggiunta nessuna transazione */
+    private int days;
+    /** trees[t] = albero di Fenwick, con indici da 1 a {@link #days}, sulle somme giornaliere del tipo t */
+    private long[][] trees = new long[TYPES][1];
+
+    /** Primo e ultimo giorno con almeno una transazione */
+    private long minDay = Long.MAX_VALUE;
+    private long maxDay = Long.MIN_VALUE;
+
+    /** Transazioni con date fuori dagli anni indicizzati */
+    private final List<ITransaction> outliers = new ArrayList<>();
+
+    /**
+     * Svuota la serie e la ricalcola dalle transazioni indicate, in tempo lineare.
+     *
+     * @param transactions transazioni reali del registro
+     */
+    synchronized void rebuild(Collection<ITransaction> transactions) {
+        minDay = Long.MAX_VALUE;
+        maxDay = Long.MIN_VALUE;
+        outliers.clear();
+        for (ITransaction transaction : transactions) {
+            if (isIndexable(transaction)) {
+                long day = transaction.getDate().toEpochDay();
+                minDay = Math.min(minDay, day);
+                maxDay = Math.max(maxDay, day);
+            } else if (isOutlier(transaction)) {
+                outliers.add(transaction);
+            }
+        }
+        if (minDay > maxDay) {
+            days = 0;
+            trees = new long[TYPES][1];
+            return;
+        }
+
+        firstDay = minDay;
+        days = (int) Math.max(INITIAL_DAYS, maxDay - minDay + 1);
+        trees = new long[TYPES][days + 1];
+        for (ITransaction transaction : transactions) {
+            if (isIndexable(transaction)) {
+                trees[transaction.getType().ordinal()][position(transaction.getDate().toEpochDay())]
+                        += transaction.getCents();
+            }
+        }
+        for (long[] tree : trees) {
+            build(tree);
+        }
+    }
+
+    /**
+     * Aggiunge una transazione alla serie.
+     *
+     * @param transaction transazione da aggiungere
+     */
+    synchronized void add(ITransaction transaction) {
+        if (!isIndexable(transaction)) {
+            if (isOutlier(transaction)) {
+                outliers.add(transaction);
+            }
+            return;
+        }
+        long day = transaction.getDate().toEpochDay();
+        ensureCovers(day);
+        long[] tree = trees[transaction.getType().ordinal()];
+        for (int i = position(day); i <= days; i += i & -i) {
+            tree[i] += transaction.getCents();
+        }
+        minDay = Math.min(minDay, day);
+        maxDay = Math.max(maxDay, day);
+    }
+
+    /**
+     * Somma le transazioni in un intervallo di date.
+     *
+     * @param type tipo di movimento, null per tutti
+     * @param from primo giorno (incluso), null per nessun limite
+     * @param to   ultimo giorno (incluso), null per nessun limite
+     * @return somma in centesimi
+     */
+    synchronized long sum(MovementType type, LocalDate from, LocalDate to) {
+        return sum(type,
+                from != null ? from.toEpochDay() : Long.MIN_VALUE,
+                to != null ? to.toEpochDay() : Long.MAX_VALUE);
+    }
+
+    /**
+     * Somma le transazioni di ciascun intervallo della granularità indicata.
+     * Sono presenti tutti gli intervalli tra le due date, anche quelli senza transazioni.
+     *
+     * @param type        tipo di movimento, null per tutti
+     * @param granularity ampiezza degli intervalli
+     * @param from        primo giorno (incluso), null per la prima transazione
+     * @param to          ultimo giorno (incluso), null per l'ultima transazione
+     * @return mappa inizio dell'intervallo → somma in centesimi, in ordine cronologico
+     */
+    synchronized Map<LocalDate, Long> series(MovementType type, TimeGranularity granularity,
+                                             LocalDate from, LocalDate to) {
+        Map<LocalDate, Long> series = new LinkedHashMap<>();
+        forEachBucket(granularity, from, to, (start, first, last) ->
+                series.put(start, sum(type, first, last)));
+        return series;
+    }
+
+    /**
+     * Calcola il saldo progressivo alla fine di ciascun intervallo, comprese le transazioni
+     * precedenti alla data di inizio.
+     *
+     * @param type        tipo di movimento, null per tutti
+     * @param granularity ampiezza degli intervalli
+     * @param from        primo giorno (incluso), null per la prima transazione
+     * @param to          ultimo giorno (incluso), null per l'ultima transazione
+     * @return mappa inizio dell'intervallo → saldo in centesimi alla sua fine, in ordine cronologico
+     */
+    synchronized Map<LocalDate, Long> cumulative(MovementType type, TimeGranularity granularity,
+                                                 LocalDate from, LocalDate to) {
+        Map<LocalDate, Long> series = new LinkedHashMap<>();
+        forEachBucket(granularity, from, to, (start, first, last) ->
+                series.put(start, sum(type, Long.MIN_VALUE, last)));
+        return series;
+    }
+
+    /**
+     * Calcola una somma mobile: per ogni intervallo, la somma dei {@code windowDays} giorni
+     * che terminano con il suo ultimo giorno (con {@link TimeGranularity#DAY}, una finestra per ogni giorno).
+     *
+     * @param type        tipo di movimento, null per tutti
+     * @param windowDays  ampiezza della finestra in giorni
+     * @param granularity intervalli alla fine dei quali valutare la finestra
+     * @param from        primo giorno (incluso), null per la prima transazione
+     * @param to          ultimo giorno (incluso), null per l'ultima transazione
+     * @return mappa ultimo giorno della finestra → somma in centesimi, in ordine cronologico
+     */
+    synchronized Map<LocalDate, Long> rolling(MovementType type, int windowDays, TimeGranularity granularity,
+                                              LocalDate from, LocalDate to) {
+        if (windowDays <= 0) {
+            throw new IllegalArgumentException("La finestra deve essere di almeno un giorno");
+        }
+        Map<LocalDate, Long> series = new LinkedHashMap<>();
+        forEachBucket(granularity, from, to, (start, first, last) ->
+                series.put(LocalDate.ofEpochDay(last), sum(type, last - windowDays + 1, last)));
+        return series;
+    }
+
+    // ==================== METODI PRIVATI ====================
+
+    /**
+     * Intervallo della serie: inizio di calendario e giorni effettivamente inclusi.
+     */
+    @FunctionalInterface
+    private interface BucketConsumer {
+        void accept(LocalDate start, long firstDay, long lastDay);
+    }
+
+    private void forEachBucket(TimeGranularity granularity, LocalDate from, LocalDate to, BucketConsumer consumer) {
+        if ((from == null || to == null) && days == 0) {
+            return;
+        }
+        LocalDate first = from != null ? from : LocalDate.ofEpochDay(minDay);
+        LocalDate last = to != null ? to : LocalDate.ofEpochDay(maxDay);
+        for (LocalDate start = granularity.bucketStart(first); !start.isAfter(last); start = granularity.nextBucket(start)) {
+            LocalDate end = granularity.nextBucket(start).minusDays(1);
+            consumer.accept(start,
+                    (start.isBefore(first) ? first : start).toEpochDay(),
+                    (end.isAfter(last) ? last : end).toEpochDay());
+        }
+    }
+
+    private long sum(MovementType type, long fromDay, long toDay) {
+        long total = 0;
+        for (ITransaction outlier : outliers) {
+            long day = outlier.getDate().toEpochDay();
+            if (day >= fromDay && day <= toDay && (type == null || type == outlier.getType())) {
+                total += outlier.getCents();
+            }
+        }
+        if (days == 0) {
+            return total;
+        }
+        long from = Math.max(fromDay, firstDay);
+        long to = Math.min(toDay, firstDay + days - 1);
+        if (from > to) {
+            return total;
+        }
+        for (int t = 0; t < TYPES; t++) {
+            if (type == null || t == type.ordinal()) {
+                total += prefix(trees[t], position(to)) - prefix(trees[t], position(from) - 1);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Allarga l'intervallo coperto fino a includere il giorno, almeno raddoppiandolo.
+     */
+    private void ensureCovers(long day) {
+        if (days == 0) {
+            firstDay = day;
+            days = INITIAL_DAYS;
+            trees = new long[TYPES][days + 1];
+            return;
+        }
+        long lastDay = firstDay + days - 1;
+        if (day >= firstDay && day <= lastDay) {
+            return;
+        }
+
+        int grown = (int) Math.max(2L * days, Math.max(lastDay, day) - Math.min(firstDay, day) + 1);
+        long newFirstDay = day < firstDay ? lastDay - grown + 1 : firstDay;
+        int shift = Math.toIntExact(firstDay - newFirstDay);
+        for (int t = 0; t < TYPES; t++) {
+            unbuild(trees[t]);
+            long[] tree = new long[grown + 1];
+            System.arraycopy(trees[t], 1, tree, 1 + shift, days);
+            build(tree);
+            trees[t] = tree;
+        }
+        firstDay = newFirstDay;
+        days = grown;
+    }
+
+    private int position(long day) {
+        return (int) (day - firstDay) + 1;
+    }
+
+    private static boolean isIndexable(ITransaction transaction) {
+        if (transaction.getDate() == null || transaction.getType() == null) {
+            return false;
+        }
+        long day = transaction.getDate().toEpochDay();
+        return day >= FIRST_INDEXED_DAY && day <= LAST_INDEXED_DAY;
+    }
+
+    private static boolean isOutlier(ITransaction transaction) {
+        return transaction.getDate() != null && transaction.getType() != null && !isIndexable(transaction);
+    }
+
+    private static long prefix(long[] tree, int position) {
+        long total = 0;
+        for (int i = position; i > 0; i -= i & -i) {
+            total += tree[i];
+        }
+        return total;
+    }
+
+    /**
+     * Trasforma le somme giornaliere in albero di Fenwick, in tempo lineare.
+     */
+    private static void build(long[] tree) {
+        for (int i = 1; i < tree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    /**
+     * Operazione inversa di {@link #build(long[])}: riporta l'albero alle somme giornaliere.
+     */
+    private static void unbuild(long[] tree) {
+        for (int i = tree.length - 1; i > 0; i--) {
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] -= tree[i];
+            }
+        }
+    }
+}
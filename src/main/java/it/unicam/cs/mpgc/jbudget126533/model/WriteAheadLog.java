@@ -0,0 +1,559 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Write-ahead log che rende atomiche le operazioni logiche che toccano più file di dati.
+ * <p>
+ * Durante un'operazione ({@link #atomically(Runnable)}) le scritture non modificano i file:
+ * il nuovo contenuto di ogni file viene preparato in un file temporaneo e le righe destinate
+ * al journal delle transazioni vengono accumulate. Al termine viene accodato a
+ * {@code Data/wal.log} un unico record che descrive tutte le modifiche; solo dopo che il record
+ * è su disco i file temporanei vengono spostati al loro posto con {@code ATOMIC_MOVE} e le righe
+ * accodate al journal.
+ * </p>
+ * <p>
+ * All'avvio ({@link #recover()}) i record vengono riapplicati in ordine. La riapplicazione è
+ * idempotente: un file temporaneo già spostato non esiste più, uno con hash diverso da quello
+ * registrato viene scartato, e le righe del journal vengono riscritte a partire dall'offset
+ * registrato. I file temporanei di operazioni mai confermate vengono eliminati.
+ * Un record che non può essere applicato resta nel log: viene ritentato prima dell'operazione
+ * successiva, che altrimenti viene rifiutata, e al più tardi al prossimo avvio.
+ * </p>
+ * <p>
+ * Il costo dei {@code fsync} si controlla con {@link #setFsyncBatchSize(int)}: con 1 ogni
+ * operazione è durevole al suo termine, con N i record fatti solo di righe accodate al journal
+ * vengono forzati su disco ogni N operazioni (group commit). Un record che sostituisce o svuota
+ * un file viene invece sempre forzato su disco, insieme ai file preparati, prima di essere
+ * applicato: un crash può far perdere le ultime righe accodate, mai l'atomicità di un'operazione.
+ * Con 0 non viene eseguito alcun {@code fsync}: l'atomicità resta garantita contro l'interruzione
+ * del processo, ma non contro lo spegnimento del sistema.
+ * </p>
+ */
+public final class WriteAheadLog {
+
+    /** Numero di record dopo il quale il log viene consolidato e svuotato */
+    private static final int CHECKPOINT_RECORDS = 256;
+
+    /** Suffisso dei file temporanei preparati per un record */
+    private static final String STAGED_SUFFIX = ".wal-";
+
+    private static final ThreadLocal<Batch> currentBatch = new ThreadLocal<>();
+
+    private static int fsyncBatchSize = 1;
+    private static int unsyncedRecords = 0;
+    private static int recordsSinceCheckpoint = 0;
+    private static long nextSequence = 0;
+    private static boolean recovered = false;
+
+    /** File sostituiti dall'ultimo consolidamento, da forzare su disco prima di svuotare il log */
+    private static final Set<String> replacedSinceCheckpoint = new HashSet<>();
+
+    /**
+     * Record confermati nel log ma non ancora applicati ai file per un errore, in ordine:
+     * finché non sono applicati il log non viene svuotato e le nuove operazioni vengono rifiutate
+     */
+    private static final List<Record> unapplied = new ArrayList<>();
+
+    /**
+     * Record del log: tutte le modifiche di un'operazione logica.
+     */
+    private static class Record {
+        long seq;
+        List<Operation> ops = new ArrayList<>();
+    }
+
+    /**
+     * Singola modifica di un record.
+     */
+    private static class Operation {
+        static final String REPLACE = "replace";
+        static final String APPEND = "append";
+        static final String RESET = "reset";
+
+        String type;
+        String target;
+        String staged;
+        long size;
+        String sha256;
+        long offset;
+        String line;
+    }
+
+    /**
+     * Modifiche raccolte durante un'operazione logica non ancora confermata.
+     */
+    private static class Batch {
+        final List<Operation> ops = new ArrayList<>();
+        final List<Runnable> afterCommit = new ArrayList<>();
+        int depth;
+    }
+
+    private WriteAheadLog() {
+        throw new UnsupportedOperationException("Classe di utilità, non istanziabile");
+    }
+
+    // ==================== API PUBBLICA ====================
+
+    /**
+     * Esegue un'operazione facendo confluire tutte le sue scritture in un unico record del log.
+     * Le chiamate annidate partecipano all'operazione più esterna.
+     * Se il record non può essere scritto nel log le modifiche vengono scartate, le azioni
+     * registrate con {@link #afterCommit(Runnable)} non vengono eseguite e l'errore viene rilanciato.
+     *
+     * @param operation operazione da eseguire
+     * @throws UncheckedIOException se il record non può essere scritto nel log
+     */
+    public static void atomically(Runnable operation) {
+        Batch batch = currentBatch.get();
+        if (batch == null) {
+            batch = new Batch();
+            currentBatch.set(batch);
+        }
+
+        batch.depth++;
+        boolean completed = false;
+        try {
+            operation.run();
+            completed = true;
+        } finally {
+            if (--batch.depth == 0) {
+                currentBatch.remove();
+                if (completed) {
+                    commit(batch.ops);
+                    batch.afterCommit.forEach(Runnable::run);
+                } else {
+                    discard(batch.ops);
+                }
+            }
+        }
+    }
+
+    /**
+     * Imposta ogni quante operazioni il log viene forzato su disco.
+     *
+     * @param batchSize 1 per un fsync a ogni operazione, N per raggruppare N operazioni fatte solo
+     *                  di righe accodate al journal, 0 per non forzarlo mai
+     */
+    public static synchronized void setFsyncBatchSize(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("La dimensione del gruppo non può essere negativa");
+        }
+        fsyncBatchSize = batchSize;
+    }
+
+    /**
+     * Forza su disco i record del log non ancora sincronizzati.
+     */
+    public static synchronized void sync() {
+        try (FileChannel channel = openLog()) {
+            channel.force(true);
+            unsyncedRecords = 0;
+        } catch (IOException e) {
+            System.err.println("Errore nella sincronizzazione del log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Riapplica i record del log rimasti da un'esecuzione precedente.
+     * Viene eseguito una sola volta, prima della prima lettura dei file di dati.
+     * Se un record non può essere applicato, esso e i successivi restano nel log.
+     */
+    public static synchronized void recover() {
+        if (recovered) {
+            return;
+        }
+        recovered = true;
+
+        List<Record> records = readLog();
+        Set<String> referenced = new HashSet<>();
+        for (Record record : records) {
+            unapplied.add(record);
+            for (Operation op : record.ops) {
+                if (op.staged != null) {
+                    referenced.add(op.staged);
+                }
+            }
+            nextSequence = Math.max(nextSequence, record.seq + 1);
+        }
+
+        deleteOrphanStagedFiles(referenced);
+
+        // Le righe riapplicate sono transazioni accodate il cui timestamp può non essere stato salvato
+        if (records.stream().anyMatch(record -> record.ops.stream().anyMatch(op -> Operation.APPEND.equals(op.type)))) {
+            TimestampManager.markModified(FilePaths.MOVEMENT_FILE);
+        }
+
+        if (!records.isEmpty() && applyUnapplied()) {
+            System.out.println("Recuperate " + records.size() + " operazioni dal log");
+            checkpoint();
+        }
+    }
+
+    // ==================== API DEL PACKAGE ====================
+
+    /**
+     * Esegue un'azione dopo la conferma dell'operazione in corso, fuori da essa, oppure subito
+     * se non c'è un'operazione in corso. Serve alle azioni che rileggono i file di dati, come la
+     * compattazione del journal: durante l'operazione le righe accodate non sono ancora nei file,
+     * e uno svuotamento del journal nello stesso record le cancellerebbe.
+     * Se l'operazione fallisce l'azione non viene eseguita.
+     *
+     * @param action azione da eseguire
+     */
+    static void afterCommit(Runnable action) {
+        Batch batch = currentBatch.get();
+        if (batch != null) {
+            batch.afterCommit.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Restituisce il file temporaneo in cui preparare il nuovo contenuto di un file di dati.
+     *
+     * @param target file di destinazione
+     * @return file temporaneo, unico per ogni chiamata
+     */
+    static File stagedFileFor(File target) {
+        return new File(target.getPath() + STAGED_SUFFIX + UUID.randomUUID());
+    }
+
+    /**
+     * Sostituisce un file con il contenuto già preparato in un file temporaneo.
+     *
+     * @param target destinazione
+     * @param staged file temporaneo ottenuto da {@link #stagedFileFor(File)}
+     * @param size   dimensione del contenuto
+     * @param sha256 hash del contenuto
+     */
+    static void replaceFile(File target, File staged, long size, String sha256) {
+        Operation op = new Operation();
+        op.type = Operation.REPLACE;
+        op.target = target.getPath();
+        op.staged = staged.getPath();
+        op.size = size;
+        op.sha256 = sha256;
+        submit(op);
+    }
+
+    /**
+     * Accoda una riga a un file di journal.
+     *
+     * @param journal file del journal
+     * @param line    riga da accodare, senza terminatore
+     */
+    static void appendLine(File journal, String line) {
+        Operation op = new Operation();
+        op.type = Operation.APPEND;
+        op.target = journal.getPath();
+        op.line = line;
+        submit(op);
+    }
+
+    /**
+     * Svuota un file di journal.
+     *
+     * @param journal file del journal
+     */
+    static void reset(File journal) {
+        Operation op = new Operation();
+        op.type = Operation.RESET;
+        op.target = journal.getPath();
+        submit(op);
+    }
+
+    // ==================== METODI PRIVATI ====================
+
+    private static void submit(Operation op) {
+        Batch batch = currentBatch.get();
+        if (batch != null) {
+            batch.ops.add(op);
+        } else {
+            commit(List.of(op));
+        }
+    }
+
+    private static synchronized void commit(List<Operation> ops) {
+        if (ops.isEmpty()) {
+            return;
+        }
+        recover();
+
+        // Le righe del journal hanno offset calcolati sui file: prima vanno completati i record precedenti
+        if (!applyUnapplied()) {
+            discard(ops);
+            throw new UncheckedIOException(new IOException("Operazioni precedenti non ancora applicate ai file"));
+        }
+
+        Record record = new Record();
+        record.seq = nextSequence++;
+        record.ops = ops;
+        assignOffsets(ops);
+
+        try {
+            // Sostituzioni e svuotamenti non si possono applicare prima che il record sia su disco
+            boolean appendOnly = ops.stream().allMatch(op -> Operation.APPEND.equals(op.type));
+            boolean syncNow = fsyncBatchSize > 0 && (++unsyncedRecords >= fsyncBatchSize || !appendOnly);
+            if (syncNow) {
+                forceStagedFiles(ops);
+            }
+            try (FileChannel channel = openLog()) {
+                long end = channel.size();
+                try {
+                    channel.write(ByteBuffer.wrap((ModelTypeAdapters.gson().toJson(record) + "\n").getBytes(StandardCharsets.UTF_8)));
+                    if (syncNow) {
+                        channel.force(true);
+                        unsyncedRecords = 0;
+                    }
+                } catch (IOException e) {
+                    // Un record scritto a metà non deve unirsi al successivo
+                    truncateQuietly(channel, end, e);
+                    throw e;
+                }
+            }
+        } catch (IOException e) {
+            // Senza record nel log le modifiche non vengono applicate: i file restano coerenti
+            System.err.println("Errore di scrittura del log, operazione annullata: " + e.getMessage());
+            discard(ops);
+            throw new UncheckedIOException("Operazione non registrata nel log", e);
+        }
+
+        try {
+            apply(record, false);
+        } catch (IOException e) {
+            // Il record resta nel log: viene completato dalla prossima operazione o dal recupero all'avvio
+            unapplied.add(record);
+            throw new UncheckedIOException("Operazione registrata nel log ma non applicata ai file", e);
+        }
+
+        if (++recordsSinceCheckpoint >= CHECKPOINT_RECORDS) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Applica in ordine i record rimasti in sospeso, fermandosi al primo errore.
+     *
+     * @return true se non resta alcun record da applicare
+     */
+    private static boolean applyUnapplied() {
+        while (!unapplied.isEmpty()) {
+            try {
+                // Come nel recupero: il contenuto preparato viene verificato prima di essere spostato
+                apply(unapplied.get(0), true);
+            } catch (IOException e) {
+                return false;
+            }
+            unapplied.remove(0);
+        }
+        return true;
+    }
+
+    /**
+     * Calcola, per ogni riga da accodare, l'offset a cui verrà scritta.
+     * Serve a rendere idempotente la riapplicazione dopo un crash.
+     */
+    private static void assignOffsets(List<Operation> ops) {
+        Map<String, Long> lengths = new HashMap<>();
+        for (Operation op : ops) {
+            switch (op.type) {
+                case Operation.RESET -> lengths.put(op.target, 0L);
+                case Operation.APPEND -> {
+                    long offset = lengths.computeIfAbsent(op.target, t -> new File(t).length());
+                    op.offset = offset;
+                    lengths.put(op.target, offset + lineBytes(op.line).length);
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * Applica le operazioni di un record in ordine. Al primo errore si ferma: il record non è
+     * applicato e, essendo idempotente, può essere riapplicato per intero.
+     */
+    private static void apply(Record record, boolean recovering) throws IOException {
+        for (Operation op : record.ops) {
+            try {
+                switch (op.type) {
+                    case Operation.REPLACE -> applyReplace(op, recovering);
+                    case Operation.APPEND -> applyAppend(op);
+                    case Operation.RESET -> applyReset(op);
+                    default -> System.err.println("Operazione sconosciuta nel log: " + op.type);
+                }
+            } catch (IOException e) {
+                System.err.println("Errore nell'applicazione del log su " + op.target + ": " + e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    private static void applyReplace(Operation op, boolean recovering) throws IOException {
+        File staged = new File(op.staged);
+        if (!staged.exists()) {
+            return; // già applicata
+        }
+
+        if (recovering && !op.sha256.equals(FileManifest.hashOf(staged))) {
+            System.err.println("Contenuto preparato per " + op.target + " incompleto, scartato");
+            Files.deleteIfExists(staged.toPath());
+            return;
+        }
+
+        moveAtomically(staged.toPath(), Path.of(op.target));
+        replacedSinceCheckpoint.add(op.target);
+        TimestampManager.recordWrite(op.target, op.size, op.sha256);
+    }
+
+    private static void applyAppend(Operation op) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(op.target),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (channel.size() > op.offset) {
+                channel.truncate(op.offset);
+            }
+            channel.position(channel.size());
+            channel.write(ByteBuffer.wrap(lineBytes(op.line)));
+        }
+    }
+
+    private static void applyReset(Operation op) throws IOException {
+        Files.write(Path.of(op.target), new byte[0],
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Porta su disco le modifiche già applicate e svuota il log.
+     */
+    private static void checkpoint() {
+        try {
+            for (String target : replacedSinceCheckpoint) {
+                forceFile(Path.of(target));
+            }
+            forceFile(Path.of(FilePaths.MOVEMENT_JOURNAL_FILE));
+            forceDirectory(Path.of(FilePaths.DATA_DIRECTORY));
+            // Le date delle scritture in coda sono nel manifest solo in memoria: vanno salvate prima di svuotare il log
+            FileManifest.flush();
+            Files.write(Path.of(FilePaths.WAL_FILE), new byte[0],
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            replacedSinceCheckpoint.clear();
+            recordsSinceCheckpoint = 0;
+        } catch (IOException e) {
+            System.err.println("Errore nel consolidamento del log: " + e.getMessage());
+        }
+    }
+
+    private static List<Record> readLog() {
+        List<Record> records = new ArrayList<>();
+        Path log = Path.of(FilePaths.WAL_FILE);
+        if (!Files.exists(log)) {
+            return records;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    Record record = ModelTypeAdapters.gson().fromJson(line, Record.class);
+                    if (record != null && record.ops != null) {
+                        records.add(record);
+                    }
+                } catch (JsonParseException e) {
+                    // Ultimo record troncato: l'operazione non era confermata
+                    System.err.println("Record del log incompleto ignorato");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Errore di lettura del log: " + e.getMessage());
+        }
+        return records;
+    }
+
+    private static void deleteOrphanStagedFiles(Set<String> referenced) {
+        for (String directory : new String[]{FilePaths.DATA_DIRECTORY, FilePaths.MOVEMENTS_DIRECTORY}) {
+            File[] files = new File(directory).listFiles((dir, name) -> name.contains(STAGED_SUFFIX));
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (!referenced.contains(file.getPath())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private static void discard(List<Operation> ops) {
+        for (Operation op : ops) {
+            if (op.staged != null) {
+                new File(op.staged).delete();
+            }
+        }
+    }
+
+    private static void truncateQuietly(FileChannel channel, long size, IOException cause) {
+        try {
+            channel.truncate(size);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private static void forceStagedFiles(List<Operation> ops) throws IOException {
+        for (Operation op : ops) {
+            if (op.staged != null) {
+                forceFile(Path.of(op.staged));
+            }
+        }
+    }
+
+    private static FileChannel openLog() throws IOException {
+        Path log = Path.of(FilePaths.WAL_FILE);
+        Files.createDirectories(log.getParent());
+        return FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void forceFile(Path path) throws IOException {
+        if (Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+    }
+
+    private static void forceDirectory(Path directory) {
+        // Non tutti i sistemi permettono di aprire una directory: in quel caso ci si affida al file system
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // ignorato
+        }
+    }
+
+    private static byte[] lineBytes(String line) {
+        return (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -2,7 +2,6 @@ package it.unicam.cs.mpgc.jbudget126533.sync;
 
 import it.unicam.cs.mpgc.jbudget126533.model.*;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import it.unicam.cs.mpgc.jbudget126533.model.Ledger;
 import java.io.*;
 import java.nio.file.Files;
@@ -19,17 +18,16 @@ import java.util.stream.Collectors;
 public class SyncManager {
 
     private final Gson gson;
-    private final FileManagement fileManagement;
+    private final IFileManagement fileManagement;
 
     /**
      * Costruttore del gestore di sincronizzazione.
-     * Inizializza il sistema di gestione file e il parser JSON.
+     * Usa il gestore dei file, l'istanza Gson e il registro principale di {@link PersistenceContext}:
+     * i dati vengono letti e aggiornati sulla copia già caricata, senza rileggerli da disco.
      */
     public SyncManager() {
-        this.fileManagement = new FileManagement();
-        this.gson = new GsonBuilder()
-                .setPrettyPrinting()
-                .create();
+        this.fileManagement = PersistenceContext.fileManagement();
+        this.gson = PersistenceContext.gson();
     }
 
     /**
@@ -44,20 +42,12 @@ public class SyncManager {
         syncPackage.setDeviceId(getDeviceId());
 
         try {
-            // Carica tutti i dati
-            syncPackage.setTransactions(fileManagement.read());
-            syncPackage.setBudgets(new ArrayList<>(new BudgetManager(
-                    new TransactionManager(),
-                    new Ledger(new TransactionManager()),
-                    fileManagement
-            ).getAllBudgets().values()));
-
-            syncPackage.setScheduledTransactions(new ScheduledTransactionManager(
-                    new Ledger(new TransactionManager()),
-                    fileManagement
-            ).getScheduledTransactions());
-
-            syncPackage.setAmortizationPlans(new AmortizationManager(fileManagement).getAmortizationPlans());
+            // I dati provengono dalla copia già caricata nel contesto di persistenza
+            Ledger ledger = PersistenceContext.ledger();
+            syncPackage.setTransactions(ledger.getTransactionSnapshot());
+            syncPackage.setBudgets(new ArrayList<>(ledger.getAllBudgets().values()));
+            syncPackage.setScheduledTransactions(ledger.getScheduledTransactions());
+            syncPackage.setAmortizationPlans(ledger.getAmortizationPlans());
 
             // Carica i tag
             Map<String, ITag> allTags = TagManager.getAllTagsMap();
@@ -81,20 +71,32 @@ public class SyncManager {
      */
     public boolean applySyncPackage(SyncPackage syncPackage, ConflictResolutionStrategy conflictResolution) {
         try {
-            // 1. Sincronizza i tag (prima perché sono referenziati da altri dati)
-            syncTags(syncPackage.getTags(), syncPackage.getSelectedTags());
+            if (!PersistenceContext.ledger().isLoaded()) {
+                System.err.println("Sincronizzazione annullata: il registro non è stato caricato da file");
+                return false;
+            }
+            PersistenceScheduler.flush();
+
+            // Un'unica modifica del registro: chi legge vede lo stato precedente o quello sincronizzato
+            PersistenceContext.ledger().update(() -> {
+                // 1. Sincronizza i tag (prima perché sono referenziati da altri dati)
+                syncTags(syncPackage.getTags(), syncPackage.getSelectedTags());
+
+                // 2. Sincronizza le transazioni
+                syncTransactions(syncPackage.getTransactions(), conflictResolution);
 
-            // 2. Sincronizza le transazioni
-            syncTransactions(syncPackage.getTransactions(), conflictResolution);
+                // 3. Sincronizza i budget
+                syncBudgets(syncPackage.getBudgets(), conflictResolution);
 
-            // 3. Sincronizza i budget
-            syncBudgets(syncPackage.getBudgets(), conflictResolution);
+                // 4. Sincronizza le transazioni programmate
+                syncScheduledTransactions(syncPackage.getScheduledTransactions(), conflictResolution);
 
-            // 4. Sincronizza le transazioni programmate
-            syncScheduledTransactions(syncPackage.getScheduledTransactions(), conflictResolution);
+                // 5. Sincronizza i piani di ammortamento
+                syncAmortizationPlans(syncPackage.getAmortizationPlans(), conflictResolution);
+            });
 
-            // 5. Sincronizza i piani di ammortamento
-            syncAmortizationPlans(syncPackage.getAmortizationPlans(), conflictResolution);
+            // Scrive subito i dati sincronizzati
+            PersistenceScheduler.flush();
 
             System.out.println("Sincronizzazione completata con successo");
             return true;
@@ -114,7 +116,7 @@ public class SyncManager {
     public boolean exportSyncPackage(String filePath) {
         try {
             SyncPackage syncPackage = createSyncPackage();
-            String json = gson.toJson(syncPackage);
+            String json = ModelTypeAdapters.toPrettyJson(syncPackage);
 
             Files.write(Path.of(filePath), json.getBytes());
             System.out.println("Pacchetto di sincronizzazione esportato: " + filePath);
@@ -206,24 +208,22 @@ public class SyncManager {
      * @param strategy strategia di risoluzione dei conflitti
      */
     private void syncTransactions(List<ITransaction> remoteTransactions, ConflictResolutionStrategy strategy) {
-        List<ITransaction> localTransactions;
-        localTransactions = fileManagement.read();
+        Ledger ledger = PersistenceContext.ledger();
+        if (!ledger.isLoaded()) {
+            // Le transazioni unite sostituiscono quelle su disco: senza i dati locali andrebbero perse
+            throw new IllegalStateException("Registro non caricato: le transazioni su disco non vengono sovrascritte");
+        }
+        List<ITransaction> localTransactions = ledger.getTransactionSnapshot();
 
         Map<String, ITransaction> localMap = createTransactionMap(localTransactions);
         Map<String, ITransaction> remoteMap = createTransactionMap(remoteTransactions);
 
         List<ITransaction> mergedTransactions = mergeData(localMap, remoteMap, strategy);
 
-        // Sostituisci tutte le transazioni
-        try {
-            File movementFile = new File(FilePaths.MOVEMENT_FILE);
-            try (FileWriter writer = new FileWriter(movementFile)) {
-                writer.write(gson.toJson(mergedTransactions));
-            }
-            TimestampManager.updateTimestamp(FilePaths.MOVEMENT_FILE);
-        } catch (IOException e) {
-            System.err.println("Errore nel salvataggio delle transazioni sincronizzate: " + e.getMessage());
-        }
+        // Sostituisci tutte le transazioni (snapshot e journal) e aggiorna il registro in memoria
+        fileManagement.writeAll(mergedTransactions);
+        ledger.setList(new ArrayList<>(mergedTransactions));
+        ledger.updateBudgets();
     }
 
     /**
@@ -233,8 +233,8 @@ public class SyncManager {
      * @param strategy strategia di risoluzione dei conflitti
      */
     private void syncBudgets(List<Budget> remoteBudgets, ConflictResolutionStrategy strategy) {
-        BudgetManager budgetManager = new BudgetManager(new TransactionManager(), new Ledger(new TransactionManager()), fileManagement);
-        Map<String, Budget> localBudgets = budgetManager.getAllBudgets();
+        Ledger ledger = PersistenceContext.ledger();
+        Map<String, Budget> localBudgets = ledger.getAllBudgets();
         Map<String, Budget> remoteBudgetMap = remoteBudgets.stream()
                 .collect(Collectors.toMap(Budget::getCategory, b -> b));
 
@@ -245,7 +245,7 @@ public class SyncManager {
 
             if (!localBudgets.containsKey(category) ||
                     strategy == ConflictResolutionStrategy.REMOTE_WINS) {
-                budgetManager.setBudget(
+                ledger.setBudget(
                         remoteBudget.getCategory(),
                         remoteBudget.getAllocatedAmount(),
                         remoteBudget.getStartDate(),
@@ -262,7 +262,7 @@ public class SyncManager {
      * @param strategy strategia di risoluzione dei conflitti
      */
     private void syncScheduledTransactions(List<ScheduledTransaction> remoteTransactions, ConflictResolutionStrategy strategy) {
-        ScheduledTransactionManager stManager = new ScheduledTransactionManager(new Ledger(new TransactionManager()), fileManagement);
+        ScheduledTransactionManager stManager = PersistenceContext.ledger().getScheduledTransactionManager();
         List<ScheduledTransaction> localTransactions = stManager.getScheduledTransactions();
 
         Map<String, ScheduledTransaction> localMap = localTransactions.stream()
@@ -274,9 +274,7 @@ public class SyncManager {
         List<ScheduledTransaction> merged = mergeScheduledTransactions(localMap, remoteMap, strategy);
 
         // Sostituisci tutte le transazioni programmate
-        stManager.getScheduledTransactions().clear();
-        stManager.getScheduledTransactions().addAll(merged);
-        stManager.saveScheduledTransactions();
+        stManager.replaceScheduledTransactions(merged);
     }
 
     /**
@@ -286,7 +284,7 @@ public class SyncManager {
      * @param strategy strategia di risoluzione dei conflitti
      */
     private void syncAmortizationPlans(List<AmortizationPlan> remotePlans, ConflictResolutionStrategy strategy) {
-        AmortizationManager amortizationManager = new AmortizationManager(fileManagement);
+        AmortizationManager amortizationManager = PersistenceContext.amortizationManager();
         List<AmortizationPlan> localPlans = amortizationManager.getAmortizationPlans();
 
         Map<String, AmortizationPlan> localMap = localPlans.stream()
@@ -331,7 +329,7 @@ public class SyncManager {
     private Map<String, ITransaction> createTransactionMap(List<ITransaction> transactions) {
         return transactions.stream()
                 .collect(Collectors.toMap(
-                        t -> t.getDate().toString() + "_" + t.getUser() + "_" + t.getMoney(),
+                        t -> t.getDate().toString() + "_" + t.getUser() + "_" + t.getCents(),
                         t -> t
                 ));
     }
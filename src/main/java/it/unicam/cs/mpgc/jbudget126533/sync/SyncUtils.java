@@ -38,17 +38,9 @@ public final class SyncUtils {
             return true; // Prima sincronizzazione
         }
 
-        String[] filesToCheck = {
-                FilePaths.MOVEMENT_FILE,
-                FilePaths.TAG_FILE,
-                FilePaths.ALL_TAGS_FILE,
-                FilePaths.BUDGET_FILE,
-                FilePaths.SCHEDULED_FILE,
-                FilePaths.AMORTIZATION_FILE
-        };
-
-        for (String filePath : filesToCheck) {
-            if (TimestampManager.isModifiedAfter(filePath, lastSyncTime)) {
+        // Un'unica lettura del manifest per tutti i file
+        for (LocalDateTime lastModified : TimestampManager.getAllTimestamps().values()) {
+            if (lastModified.isAfter(lastSyncTime)) {
                 return true;
             }
         }
@@ -74,9 +66,12 @@ public final class SyncUtils {
                 FilePaths.AMORTIZATION_FILE
         };
 
+        // I timestamp arrivano tutti insieme dal manifest, senza aprire i singoli file
+        Map<String, LocalDateTime> timestamps = TimestampManager.getAllTimestamps();
+
         for (String filePath : filesToCheck) {
             String fileName = new File(filePath).getName();
-            LocalDateTime lastModified = TimestampManager.readTimestamp(filePath);
+            LocalDateTime lastModified = timestamps.get(filePath);
 
             if (lastModified == null) {
                 status.put(fileName, SyncStatus.NEVER_SYNCED);
@@ -1,6 +1,7 @@
 package it.unicam.cs.mpgc.jbudget126533.util;
 
 import it.unicam.cs.mpgc.jbudget126533.model.FilePaths;
+import it.unicam.cs.mpgc.jbudget126533.model.PersistenceScheduler;
 import it.unicam.cs.mpgc.jbudget126533.model.TimestampManager;
 
 import java.io.File;
@@ -8,8 +9,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Classe di utilità per la gestione delle directory e dei file persistenti dell'applicazione.
@@ -51,19 +53,10 @@ public class FileSystemUtils {
      * Crea file vuoti per quelli mancanti.
      * <p>
      * I file creati vengono inizializzati con contenuto appropriato (es. "[]" per JSON vuoto)
-     * e il loro timestamp viene aggiornato tramite {@link TimestampManager}.
+     * e registrati nel manifest tramite {@link TimestampManager}.
      */
     public static void createMissingFiles() {
-        String[] filesToCreate = {
-                FilePaths.MOVEMENT_FILE,
-                FilePaths.TAG_FILE,
-                FilePaths.ALL_TAGS_FILE,
-                FilePaths.BUDGET_FILE,
-                FilePaths.SCHEDULED_FILE,
-                FilePaths.AMORTIZATION_FILE
-        };
-
-        for (String filePath : filesToCreate) {
+        for (String filePath : requiredFiles()) {
             File file = new File(filePath);
             if (!file.exists()) {
                 try {
@@ -88,29 +81,41 @@ public class FileSystemUtils {
      * Crea un backup dei file di dati nell'apposita cartella "backups".
      * <p>
      * Ogni file viene copiato con un suffisso ".backup.<timestamp>" per permettere versioni multiple.
+     * Le partizioni e l'indice dell'archivio partizionato vengono copiati in una cartella
+     * "movements.backup.<timestamp>" con lo stesso timestamp degli altri file.
      */
     public static void createBackup() {
+        // Salvataggi in sospeso e date del manifest tenute in memoria vanno su file prima della copia
+        PersistenceScheduler.flush();
         try {
             Path backupDir = Path.of(FilePaths.DATA_DIRECTORY, "backups");
             Files.createDirectories(backupDir);
+            long timestamp = System.currentTimeMillis();
 
-            List<String> filesToBackup = Arrays.asList(
-                    FilePaths.MOVEMENT_FILE,
-                    FilePaths.TAG_FILE,
-                    FilePaths.ALL_TAGS_FILE,
-                    FilePaths.BUDGET_FILE,
-                    FilePaths.SCHEDULED_FILE,
-                    FilePaths.AMORTIZATION_FILE
-            );
+            List<String> filesToBackup = requiredFiles();
+            filesToBackup.add(FilePaths.MOVEMENT_JOURNAL_FILE);
+            filesToBackup.add(FilePaths.MANIFEST_FILE);
 
             for (String filePath : filesToBackup) {
                 File source = new File(filePath);
                 if (source.exists()) {
-                    Path target = backupDir.resolve(source.getName() + ".backup." + System.currentTimeMillis());
+                    Path target = backupDir.resolve(source.getName() + ".backup." + timestamp);
                     Files.copy(source.toPath(), target);
                 }
             }
 
+            Path movementsDir = Path.of(FilePaths.MOVEMENTS_DIRECTORY);
+            if (Files.isDirectory(movementsDir)) {
+                Path target = Files.createDirectories(
+                        backupDir.resolve(movementsDir.getFileName() + ".backup." + timestamp));
+                // Solo partizioni e indice: i file temporanei del write-ahead log non sono dati confermati
+                try (Stream<Path> partitions = Files.list(movementsDir)) {
+                    for (Path partition : partitions.filter(FileSystemUtils::isJsonFile).toList()) {
+                        Files.copy(partition, target.resolve(partition.getFileName()));
+                    }
+                }
+            }
+
         } catch (IOException e) {
             System.err.println("Errore durante il backup: " + e.getMessage());
         }
@@ -120,15 +125,31 @@ public class FileSystemUtils {
      * Verifica se tutti i file richiesti dall'applicazione esistono.
      */
     public static void checkAllFilesExist() {
-        List<String> requiredFiles = Arrays.asList(
-                FilePaths.MOVEMENT_FILE,
-                FilePaths.TAG_FILE,
-                FilePaths.ALL_TAGS_FILE,
-                FilePaths.BUDGET_FILE,
-                FilePaths.SCHEDULED_FILE,
-                FilePaths.AMORTIZATION_FILE
-        );
+        requiredFiles().stream().allMatch(filePath -> new File(filePath).exists());
+    }
+
+    /**
+     * Restituisce i file di dati dell'applicazione.
+     * <p>
+     * Con l'archivio partizionato le transazioni stanno in {@link FilePaths#MOVEMENTS_DIRECTORY}
+     * e {@code Movement.json} non fa più parte dei dati: non va ricreato né controllato.
+     *
+     * @return lista modificabile dei percorsi
+     */
+    private static List<String> requiredFiles() {
+        List<String> files = new ArrayList<>();
+        if (!FilePaths.isPartitionedLayout()) {
+            files.add(FilePaths.MOVEMENT_FILE);
+        }
+        files.add(FilePaths.TAG_FILE);
+        files.add(FilePaths.ALL_TAGS_FILE);
+        files.add(FilePaths.BUDGET_FILE);
+        files.add(FilePaths.SCHEDULED_FILE);
+        files.add(FilePaths.AMORTIZATION_FILE);
+        return files;
+    }
 
-        requiredFiles.stream().allMatch(filePath -> new File(filePath).exists());
+    private static boolean isJsonFile(Path path) {
+        return path.getFileName().toString().endsWith(".json");
     }
 }
@@ -2,8 +2,8 @@ package it.unicam.cs.mpgc.jbudget126533.view;
 
 import it.unicam.cs.mpgc.jbudget126533.model.Ledger;
 import it.unicam.cs.mpgc.jbudget126533.model.ITag;
+import it.unicam.cs.mpgc.jbudget126533.model.PersistenceContext;
 import it.unicam.cs.mpgc.jbudget126533.model.TagManager;
-import it.unicam.cs.mpgc.jbudget126533.model.TransactionManager;
 import it.unicam.cs.mpgc.jbudget126533.sync.SyncManager;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -22,11 +22,9 @@ public final class ApplicationContext {
 
     public static void init() {
         if (ledger == null) {
-            TagManager.loadAllTags();
-            TagManager.loadSelectedTags();
+            // TagManager carica tag e selezione al primo accesso, dal gestore dei file condiviso
             selectedTags.setAll(TagManager.getSelectedTagsList());
-            ledger = new Ledger(new TransactionManager());
-            ledger.read();
+            ledger = PersistenceContext.ledger();
             ledger.updateBudgets();
         }
         if (syncManager == null) {
@@ -6,6 +6,7 @@ import it.unicam.cs.mpgc.jbudget126533.model.Ledger;
 import it.unicam.cs.mpgc.jbudget126533.util.Pair;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -101,8 +102,7 @@ public class ConsoleView implements View {
             List<ITag> selectedTags = selectMultipleTags();
 
             ITransaction transaction = new Transaction(type, person, amount, date, selectedTags);
-            this.ledger.write(transaction);
-            this.ledger.addTransaction(transaction);
+            this.ledger.record(transaction);
 
             System.out.println("Transaction added successfully.");
 
@@ -144,7 +144,7 @@ public class ConsoleView implements View {
         System.out.println("Type            | User            | Amount          | Date            | Tags");
         System.out.println("------------------------------------------------------------------------------------");
 
-        for (ITransaction transaction : this.ledger.getTransaction()) {
+        for (ITransaction transaction : this.ledger.getTransactionSnapshot()) {
             String tags = transaction.getTags().stream()
                     .map(ITag::getName)
                     .collect(Collectors.joining(", "));
@@ -558,7 +558,11 @@ public class ConsoleView implements View {
             System.out.println("1. Balance for date range");
             System.out.println("2. Balance trend");
             System.out.println("3. Transactions by tag");
-            System.out.println("4. Back to main menu");
+            System.out.println("4. Monthly breakdown");
+            System.out.println("5. Balance by person");
+            System.out.println("6. Time series");
+            System.out.println("7. Expense distribution");
+            System.out.println("8. Back to main menu");
             System.out.print("Choice: ");
 
             String choice = scanner.nextLine();
@@ -566,7 +570,11 @@ public class ConsoleView implements View {
                 case "1": balanceForDateRange(); break;
                 case "2": balanceTrend(); break;
                 case "3": transactionsByTag(); break;
-                case "4": inStatsMenu = false; break;
+                case "4": monthlyBreakdown(); break;
+                case "5": balanceByPerson(); break;
+                case "6": timeSeries(); break;
+                case "7": expenseDistribution(); break;
+                case "8": inStatsMenu = false; break;
                 default: System.out.println("Invalid choice");
             }
         }
@@ -625,6 +633,114 @@ public class ConsoleView implements View {
                 .forEach(entry -> System.out.printf("%-20s: %8.2f€%n", entry.getKey(), entry.getValue()));
     }
 
+    private void monthlyBreakdown() {
+        try {
+            System.out.print("Type [1] GUADAGNO [2] SPESA (enter for all): ");
+            String typeInput = scanner.nextLine();
+            MovementType type = typeInput.isEmpty() ? null
+                    : typeInput.equals("1") ? MovementType.GUADAGNO : MovementType.SPESA;
+
+            System.out.print("Tag (enter for all): ");
+            String tag = scanner.nextLine();
+
+            System.out.print("From month [yyyy-MM] (enter for all history): ");
+            String fromInput = scanner.nextLine();
+            System.out.print("To month [yyyy-MM] (enter for current): ");
+            String toInput = scanner.nextLine();
+            YearMonth from = fromInput.isEmpty() ? null : YearMonth.parse(fromInput);
+            YearMonth to = toInput.isEmpty() ? YearMonth.now() : YearMonth.parse(toInput);
+
+            Map<YearMonth, Double> balances = ledger.balanceForEachMonth(type, tag.isEmpty() ? null : tag, null, from, to);
+            System.out.println("\n=== MONTHLY BREAKDOWN ===");
+            balances.forEach((month, amount) -> System.out.printf("%-10s: %10.2f€%n", month, amount));
+            System.out.printf("%-10s: %10.2f€%n", "Total",
+                    ledger.balanceForMonths(type, tag.isEmpty() ? null : tag, null, from, to));
+
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void balanceByPerson() {
+        System.out.print("Type [1] GUADAGNO [2] SPESA: ");
+        MovementType type = scanner.nextLine().equals("1") ? MovementType.GUADAGNO : MovementType.SPESA;
+
+        Map<String, Double> balances = ledger.balanceForEachPerson(type, null, null);
+        System.out.println("\n=== BALANCE BY PERSON ===");
+
+        balances.entrySet().stream()
+                .sorted((e1, e2) -> Double.compare(Math.abs(e2.getValue()), Math.abs(e1.getValue())))
+                .forEach(entry -> System.out.printf("%-20s: %8.2f€%n", entry.getKey(), entry.getValue()));
+    }
+
+    private void timeSeries() {
+        try {
+            System.out.print("Type [1] GUADAGNO [2] SPESA (enter for all): ");
+            String typeInput = scanner.nextLine();
+            MovementType type = typeInput.isEmpty() ? null
+                    : typeInput.equals("1") ? MovementType.GUADAGNO : MovementType.SPESA;
+
+            System.out.print("Granularity [1] day [2] week [3] month [4] year: ");
+            TimeGranularity granularity = switch (scanner.nextLine()) {
+                case "1" -> TimeGranularity.DAY;
+                case "2" -> TimeGranularity.WEEK;
+                case "4" -> TimeGranularity.YEAR;
+                default -> TimeGranularity.MONTH;
+            };
+
+            System.out.print("Start date [yyyy-MM-dd] (enter for first transaction): ");
+            String startInput = scanner.nextLine();
+            System.out.print("End date [yyyy-MM-dd] (enter for today): ");
+            String endInput = scanner.nextLine();
+            LocalDate start = startInput.isEmpty() ? null : LocalDate.parse(startInput);
+            LocalDate end = endInput.isEmpty() ? LocalDate.now() : LocalDate.parse(endInput);
+
+            Map<LocalDate, Double> balances = ledger.balanceSeries(type, granularity, start, end);
+            Map<LocalDate, Double> cumulative = ledger.cumulativeBalanceSeries(type, granularity, start, end);
+            Map<LocalDate, Double> rolling = ledger.rollingBalance(MovementType.SPESA, 30, granularity, start, end);
+
+            System.out.println("\n=== TIME SERIES ===");
+            System.out.printf("%-12s %12s %14s %14s%n", "Period", "Amount", "Running total", "30-day spend");
+            Iterator<Double> rollingValues = rolling.values().iterator();
+            balances.forEach((period, amount) -> System.out.printf("%-12s %11.2f€ %13.2f€ %13.2f€%n",
+                    period, amount, cumulative.get(period), rollingValues.next()));
+
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void expenseDistribution() {
+        try {
+            System.out.print("From month [yyyy-MM] (enter for all history): ");
+            String fromInput = scanner.nextLine();
+            System.out.print("To month [yyyy-MM] (enter for current): ");
+            String toInput = scanner.nextLine();
+            YearMonth from = fromInput.isEmpty() ? null : YearMonth.parse(fromInput);
+            YearMonth to = toInput.isEmpty() ? YearMonth.now() : YearMonth.parse(toInput);
+
+            System.out.println("\n=== EXPENSE DISTRIBUTION ===");
+            System.out.printf("%-20s %11s %11s %11s%n", "Tag", "Median", "p90", "p99");
+            Map<String, Map<Double, Double>> byTag = ledger.expenseQuantilesByTag(from, to, 0.5, 0.9, 0.99);
+            byTag.put("(all)", ledger.expenseQuantiles(null, from, to, 0.5, 0.9, 0.99));
+            byTag.forEach((tag, quantiles) -> {
+                if (!quantiles.isEmpty()) {
+                    System.out.printf("%-20s %10.2f€ %10.2f€ %10.2f€%n",
+                            tag, quantiles.get(0.5), quantiles.get(0.9), quantiles.get(0.99));
+                }
+            });
+
+            System.out.println("\n=== LARGEST EXPENSES ===");
+            for (ITransaction transaction : ledger.largestExpenses(null, from, to, 20)) {
+                System.out.printf("%-12s %10.2f€  %s%n", transaction.getDate(), transaction.getMoney(),
+                        transaction.getTags().stream().map(ITag::getName).collect(Collectors.joining(", ")));
+            }
+
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
     // ==================== METODI ESISTENTI (aggiornati) ====================
 
     private void transactionByDate() {
@@ -717,6 +833,7 @@ public class ConsoleView implements View {
     @Override
     public void close() {
         flag = false;
+        PersistenceScheduler.flush();
         System.out.println("Application closed.");
         System.exit(0);
     }
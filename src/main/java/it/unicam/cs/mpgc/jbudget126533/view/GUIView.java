@@ -1,5 +1,6 @@
 package it.unicam.cs.mpgc.jbudget126533.view;
 
+import it.unicam.cs.mpgc.jbudget126533.model.PersistenceScheduler;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -38,6 +39,15 @@ public class GUIView extends Application implements View {
         primaryStage.show();
     }
 
+    /**
+     * Chiamato da JavaFX alla chiusura dell'applicazione:
+     * scrive su file le modifiche ancora in sospeso.
+     */
+    @Override
+    public void stop() {
+        PersistenceScheduler.flush();
+    }
+
     /**
      * Metodo aperto dall'interfaccia {@link View}.
      * <p>
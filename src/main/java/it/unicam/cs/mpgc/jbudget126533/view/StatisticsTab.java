@@ -3,8 +3,10 @@ package it.unicam.cs.mpgc.jbudget126533.view;
 import it.unicam.cs.mpgc.jbudget126533.model.Ledger;
 import it.unicam.cs.mpgc.jbudget126533.controller.StatisticsHandler;
 import it.unicam.cs.mpgc.jbudget126533.model.MovementType;
+import it.unicam.cs.mpgc.jbudget126533.model.TimeGranularity;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.chart.LineChart;
 import javafx.scene.control.*;
 
 import java.net.URL;
@@ -26,6 +28,9 @@ public class StatisticsTab implements Initializable {
     @FXML private TableView<Map.Entry<String, Double>> tagTable;
     @FXML private ChoiceBox<MovementType> choiceTypeForEachTag;
 
+    @FXML private ChoiceBox<TimeGranularity> choiceGranularity;
+    @FXML private LineChart<String, Number> timeSeriesChart;
+
     private Ledger ledger;
     private StatisticsHandler handler;
 
@@ -33,7 +38,8 @@ public class StatisticsTab implements Initializable {
     public void initialize(URL location, ResourceBundle resources) {
         ledger = ApplicationContext.ledger();
         handler = new StatisticsHandler(ledger, balanceForRange, dateStartForRange, dateEndForRange,
-                choiceForRange, balanceTrend, dateStartForTrend, dateEndForTrend, tagTable, choiceTypeForEachTag);
+                choiceForRange, balanceTrend, dateStartForTrend, dateEndForTrend, tagTable, choiceTypeForEachTag,
+                choiceGranularity, timeSeriesChart);
 
 
         dateStartForRange.setValue(LocalDate.now().minusMonths(1));
@@ -48,4 +54,6 @@ public class StatisticsTab implements Initializable {
     @FXML public void updateBalanceForRange(javafx.event.ActionEvent e) { handler.updateBalanceForRange(e); }
     @FXML public void updateBalanceTrend(javafx.event.ActionEvent e)    { handler.updateBalanceTrend(e); }
     @FXML public void showTypeTagTable(javafx.event.ActionEvent e)      { handler.showTypeTagTable(e); }
+    @FXML public void showCategoryTable(javafx.event.ActionEvent e)     { handler.showCategoryTable(e); }
+    @FXML public void showTimeSeries(javafx.event.ActionEvent e)        { handler.showTimeSeries(e); }
 }
@@ -0,0 +1,162 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Confronta i totali della {@link CashFlowProjection}, letti dalle somme prefisse,
+ * con i totali calcolati scorrendo una a una occorrenze e rate.
+ * I file vengono scritti in {@code Data/} sotto la directory di lavoro dei test.
+ */
+class CashFlowProjectionTest {
+
+    private static final Period HORIZON = Period.ofYears(3);
+
+    private final Random random = new Random(19);
+    private final LocalDate today = LocalDate.now();
+
+    private ScheduledTransactionManager scheduledManager;
+    private AmortizationManager amortizationManager;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        deleteDataDirectory();
+        FileManagement files = new FileManagement();
+        scheduledManager = new ScheduledTransactionManager(null, files);
+        amortizationManager = new AmortizationManager(files);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        PersistenceScheduler.flush();
+        deleteDataDirectory();
+    }
+
+    @Test
+    void totalsMatchIterativeTotals() {
+        for (int i = 0; i < 40; i++) {
+            RecurrenceType recurrence = RecurrenceType.values()[i % RecurrenceType.values().length];
+            MovementType type = random.nextBoolean() ? MovementType.SPESA : MovementType.GUADAGNO;
+            LocalDate start = today.minusDays(400).plusDays(random.nextInt(900));
+            LocalDate end = random.nextBoolean() ? null : start.plusDays(random.nextInt(700));
+            scheduledManager.addScheduledTransaction(new ScheduledTransaction("Programmata " + i,
+                    random.nextInt(100000) / 100.0, type, List.of(), recurrence, start, end));
+        }
+        for (int i = 0; i < 5; i++) {
+            AmortizationPlan plan = amortizationManager.createAmortizationPlan("Piano " + i,
+                    1000 + random.nextInt(20000), random.nextInt(8), 12 + random.nextInt(36),
+                    today.minusMonths(random.nextInt(24)), List.of());
+            for (int number = 1; number <= plan.getNumberOfInstallments(); number++) {
+                if (random.nextInt(4) == 0) {
+                    plan.markPaid(number, true);
+                }
+            }
+        }
+        CashFlowProjection projection = new CashFlowProjection(scheduledManager, amortizationManager, HORIZON);
+
+        assertTrue(projection.covers(today.plus(HORIZON)));
+        assertFalse(projection.covers(today.plus(HORIZON).plusDays(1)));
+        for (int query = 0; query < 50; query++) {
+            LocalDate start = query % 10 == 0 ? null : today.minusDays(500).plusDays(random.nextInt(1500));
+            LocalDate end = (start != null ? start : today).plusDays(random.nextInt(600));
+            if (!projection.covers(end)) {
+                end = today.plus(HORIZON);
+            }
+            MovementType type = query % 3 == 0 ? null : MovementType.values()[query % 2];
+
+            assertEquals(scheduledCents(type, start, end), projection.scheduledCents(type, start, end));
+            assertEquals(installmentCents(start, end), projection.installmentCents(start, end));
+            assertEquals(installmentCount(start, end), projection.installmentCount(start, end));
+        }
+    }
+
+    @Test
+    void changedScheduledTransactionsAreProjectedAgain() {
+        LocalDate start = today.plusDays(1);
+        scheduledManager.addScheduledTransaction(new ScheduledTransaction("Affitto", 500, MovementType.SPESA,
+                List.of(), RecurrenceType.MENSILE, start, null));
+        CashFlowProjection projection = new CashFlowProjection(scheduledManager, amortizationManager, HORIZON);
+        LocalDate end = start.plusMonths(11);
+        assertEquals(-600000, projection.scheduledCents(null, start, end));
+
+        scheduledManager.addScheduledTransaction(new ScheduledTransaction("Stipendio", 1500, MovementType.GUADAGNO,
+                List.of(), RecurrenceType.MENSILE, start, null));
+        assertEquals(1200000, projection.scheduledCents(null, start, end));
+        assertEquals(1800000, projection.scheduledCents(MovementType.GUADAGNO, start, end));
+    }
+
+    private long scheduledCents(MovementType type, LocalDate start, LocalDate end) {
+        long total = 0;
+        for (ScheduledTransaction scheduled : scheduledManager.getScheduledTransactions()) {
+            if (type != null && scheduled.getType() != type) {
+                continue;
+            }
+            long cents = scheduled.getType() == MovementType.SPESA
+                    ? -Math.abs(scheduled.getCents()) : Math.abs(scheduled.getCents());
+            for (long index = 0; ; index++) {
+                LocalDate date = scheduled.getRecurrence().occurrence(scheduled.getStartDate(), index);
+                if (date.isAfter(end) || (scheduled.getEndDate() != null && date.isAfter(scheduled.getEndDate()))) {
+                    break;
+                }
+                if (start == null || !date.isBefore(start)) {
+                    total += cents;
+                }
+            }
+        }
+        return total;
+    }
+
+    private long installmentCents(LocalDate start, LocalDate end) {
+        long total = 0;
+        for (AmortizationPlan plan : amortizationManager.getAmortizationPlans()) {
+            total -= plan.getMonthlyPaymentCents() * unpaidInstallments(plan, start, end);
+        }
+        return total;
+    }
+
+    private int installmentCount(LocalDate start, LocalDate end) {
+        int count = 0;
+        for (AmortizationPlan plan : amortizationManager.getAmortizationPlans()) {
+            count += unpaidInstallments(plan, start, end);
+        }
+        return count;
+    }
+
+    private static int unpaidInstallments(AmortizationPlan plan, LocalDate start, LocalDate end) {
+        int count = 0;
+        for (int number = 1; number <= plan.getNumberOfInstallments(); number++) {
+            LocalDate dueDate = plan.getInstallmentDueDate(number);
+            if (!plan.isInstallmentPaid(number) && (start == null || !dueDate.isBefore(start)) && !dueDate.isAfter(end)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void deleteDataDirectory() throws IOException {
+        Path data = Path.of(FilePaths.DATA_DIRECTORY);
+        if (!Files.exists(data)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(data)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
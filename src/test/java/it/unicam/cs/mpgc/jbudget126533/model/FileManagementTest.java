@@ -0,0 +1,200 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica che la compattazione del journal non perda transazioni registrate
+ * dentro un'operazione atomica del {@link WriteAheadLog}.
+ * I file vengono scritti in {@code Data/} sotto la directory di lavoro dei test.
+ */
+class FileManagementTest {
+
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        deleteDataDirectory();
+        WriteAheadLog.setFsyncBatchSize(0);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        WriteAheadLog.setFsyncBatchSize(1);
+        deleteDataDirectory();
+    }
+
+    @Test
+    void compactionReachedInsideAtomicOperationKeepsTheRecord() {
+        FileManagement files = new FileManagement();
+
+        // Come Ledger.record: ogni scrittura è un'operazione atomica, la millesima supera la soglia
+        for (int i = 0; i < COMPACTION_THRESHOLD; i++) {
+            ITransaction transaction = transaction(i);
+            WriteAheadLog.atomically(() -> files.write(transaction));
+        }
+
+        assertEquals(COMPACTION_THRESHOLD, files.read().size());
+        assertEquals(0, new File(FilePaths.MOVEMENT_JOURNAL_FILE).length());
+    }
+
+    @Test
+    void compactionReachedInsideBatchOfSeveralWritesKeepsAllRecords() {
+        FileManagement files = new FileManagement();
+        for (int i = 0; i < COMPACTION_THRESHOLD - 2; i++) {
+            files.write(transaction(i));
+        }
+
+        // La soglia viene superata a metà di un'operazione con più scritture
+        WriteAheadLog.atomically(() -> {
+            for (int i = 0; i < 5; i++) {
+                files.write(transaction(COMPACTION_THRESHOLD + i));
+            }
+        });
+
+        assertEquals(COMPACTION_THRESHOLD + 3, files.read().size());
+    }
+
+    @Test
+    void partitionedCompactionReachedInsideAtomicOperationKeepsTheRecord() {
+        FileManagement files = new FileManagement();
+        files.enablePartitionedLayout();
+
+        for (int i = 0; i < COMPACTION_THRESHOLD; i++) {
+            ITransaction transaction = transaction(i);
+            WriteAheadLog.atomically(() -> files.write(transaction));
+        }
+
+        assertEquals(COMPACTION_THRESHOLD, files.read().size());
+        assertEquals(0, new File(FilePaths.MOVEMENT_JOURNAL_FILE).length());
+    }
+
+    @Test
+    void writeThatCannotBeLoggedIsReportedAndSkipsAfterCommitActions() throws IOException {
+        FileManagement files = new FileManagement();
+        files.write(transaction(0));
+        boolean[] afterCommitRan = {false};
+
+        // Una directory al posto del log ne impedisce la scrittura
+        Path log = Path.of(FilePaths.WAL_FILE);
+        Files.deleteIfExists(log);
+        Files.createDirectory(log);
+        assertThrows(UncheckedIOException.class, () -> WriteAheadLog.atomically(() -> {
+            files.write(transaction(1));
+            WriteAheadLog.afterCommit(() -> afterCommitRan[0] = true);
+        }));
+        Files.delete(log);
+
+        assertFalse(afterCommitRan[0]);
+        assertEquals(1, files.read().size());
+        files.write(transaction(2));
+        assertEquals(2, files.read().size());
+    }
+
+    @Test
+    void recordThatCannotBeAppliedStaysInTheLogAndIsCompletedLater() throws IOException {
+        FileManagement files = new FileManagement();
+        files.write(transaction(0));
+
+        // Una directory al posto del journal ne impedisce l'aggiornamento, non la scrittura del log
+        Path journal = Path.of(FilePaths.MOVEMENT_JOURNAL_FILE);
+        byte[] content = Files.readAllBytes(journal);
+        Files.delete(journal);
+        Files.createDirectory(journal);
+        assertThrows(UncheckedIOException.class, () -> files.write(transaction(1)));
+        // Finché il record precedente non è applicato le nuove operazioni vengono rifiutate
+        assertThrows(UncheckedIOException.class, () -> files.write(transaction(2)));
+        assertTrue(Files.size(Path.of(FilePaths.WAL_FILE)) > 0);
+        Files.delete(journal);
+        Files.write(journal, content);
+
+        // Il record rimasto nel log viene riapplicato prima della scrittura successiva
+        files.write(transaction(3));
+        assertEquals(List.of(-1.0, -2.0, -4.0), files.read().stream().map(ITransaction::getMoney).toList());
+    }
+
+    @Test
+    void recordThatCannotBeLoggedLeavesTheLedgerAsOnFile() throws IOException {
+        Ledger ledger = new Ledger(new TransactionManager());
+        ledger.read();
+        ledger.record(transaction(0));
+
+        Path log = Path.of(FilePaths.WAL_FILE);
+        Files.deleteIfExists(log);
+        Files.createDirectory(log);
+        assertThrows(UncheckedIOException.class, () -> ledger.record(transaction(1)));
+        Files.delete(log);
+
+        assertEquals(1, ledger.getTransactionSnapshot().size());
+        assertEquals(1, ledger.snapshot().getTransactions().size());
+    }
+
+    @Test
+    void recordWritesTheUpdatedBudgetsInTheSameOperation() throws IOException {
+        Ledger ledger = new Ledger(new TransactionManager());
+        ledger.read();
+        LocalDate today = LocalDate.now();
+        ledger.setBudget("Spesa", 100, today.minusDays(1), today.plusDays(1));
+        PersistenceScheduler.flush();
+
+        ledger.record(new Transaction(MovementType.SPESA, new Person("test"), 40, today, List.of(new Tag("Spesa"))));
+
+        // Senza attendere il salvataggio differito il file dei budget è già aggiornato
+        List<Budget> saved = ModelTypeAdapters.gson().fromJson(Files.readString(Path.of(FilePaths.BUDGET_FILE)),
+                new TypeToken<List<Budget>>() {}.getType());
+        assertEquals(40.0, saved.get(0).getSpentAmount());
+        assertFalse(PersistenceScheduler.hasPendingWrites());
+    }
+
+    @Test
+    void appendKeepsTheManifestDateInMemoryUntilFlushed() throws IOException {
+        FileManagement files = new FileManagement();
+        PersistenceScheduler.flush();
+        Path manifest = Path.of(FilePaths.MANIFEST_FILE);
+        String saved = Files.exists(manifest) ? Files.readString(manifest) : "";
+        LocalDateTime start = LocalDateTime.now();
+
+        files.write(transaction(0));
+
+        // La data è aggiornata senza riscrivere il manifest a ogni transazione accodata
+        assertTrue(TimestampManager.isModifiedAfter(FilePaths.MOVEMENT_FILE, start.minusNanos(1)));
+        assertEquals(saved, Files.exists(manifest) ? Files.readString(manifest) : "");
+        PersistenceScheduler.flush();
+        assertFalse(saved.equals(Files.readString(manifest)));
+    }
+
+    private static ITransaction transaction(int index) {
+        return new Transaction(MovementType.SPESA, new Person("test"), -(index + 1),
+                LocalDate.of(2024, 1, 1).plusDays(index % 365), List.of());
+    }
+
+    private static void deleteDataDirectory() throws IOException {
+        Path data = Path.of(FilePaths.DATA_DIRECTORY);
+        if (!Files.exists(data)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(data)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
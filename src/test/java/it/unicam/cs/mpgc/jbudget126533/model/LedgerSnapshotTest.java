@@ -0,0 +1,131 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica che una {@link LedgerSnapshot} già pubblicata non cambi quando il registro
+ * aggiorna budget e rate dei piani di ammortamento.
+ * I file vengono scritti in {@code Data/} sotto la directory di lavoro dei test.
+ */
+class LedgerSnapshotTest {
+
+    private Ledger ledger;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        deleteDataDirectory();
+        ledger = new Ledger(new DateIndexedTransactionManager());
+        ledger.read();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        PersistenceScheduler.flush();
+        deleteDataDirectory();
+    }
+
+    @Test
+    void publishedBudgetKeepsItsSpentAmount() {
+        LocalDate today = LocalDate.now();
+        ledger.setBudget("Spesa", 100, today.minusDays(1), today.plusDays(1));
+        LedgerSnapshot before = ledger.snapshot();
+
+        ledger.addTransaction(new Transaction(MovementType.SPESA, new Person("Mario"), 40, today,
+                List.of(new Tag("Spesa"))));
+        ledger.updateBudgets();
+
+        assertEquals(0.0, before.getBudgets().get("Spesa").getSpentAmount());
+        assertEquals(40.0, ledger.snapshot().getBudgets().get("Spesa").getSpentAmount());
+    }
+
+    @Test
+    void publishedPlanKeepsItsPaymentState() {
+        AmortizationPlan plan = ledger.createAmortizationPlan("Auto", 1200, 0, 12,
+                LocalDate.now().plusMonths(1), List.of());
+        LedgerSnapshot before = ledger.snapshot();
+
+        ledger.update(() -> plan.getInstallments().get(0).setPaid(true));
+
+        AmortizationPlan published = planIn(before, plan.getId());
+        assertFalse(published.isInstallmentPaid(1));
+        assertFalse(published.getInstallments().get(0).isPaid());
+        assertTrue(planIn(ledger.snapshot(), plan.getId()).isInstallmentPaid(1));
+    }
+
+    @Test
+    void publishedPlanIsReadOnly() {
+        AmortizationPlan plan = ledger.createAmortizationPlan("Auto", 1200, 0, 12,
+                LocalDate.now().plusMonths(1), List.of());
+        Installment installment = planIn(ledger.snapshot(), plan.getId()).getInstallments().get(0);
+
+        assertThrows(UnsupportedOperationException.class, () -> installment.setPaid(true));
+        assertFalse(installment.isPaid());
+    }
+
+    @Test
+    void publishedScheduledTransactionKeepsItsNextExecutionDate() {
+        LocalDate start = LocalDate.now().minusDays(1);
+        ledger.addScheduledTransaction(new ScheduledTransaction("Affitto", 500, MovementType.SPESA,
+                List.of(), RecurrenceType.MENSILE, start, null));
+        LedgerSnapshot before = ledger.snapshot();
+
+        ledger.checkScheduledTransactions();
+
+        ScheduledTransaction published = before.getScheduledTransactions().get(0);
+        assertEquals(start, published.getNextExecutionDate());
+        assertEquals(start.plusMonths(1), ledger.snapshot().getScheduledTransactions().get(0).getNextExecutionDate());
+        assertThrows(UnsupportedOperationException.class, published::execute);
+    }
+
+    @Test
+    void partitionedSnapshotIsFixedAtItsVersion() {
+        Ledger partitioned = new Ledger(new PartitionedTransactionManager());
+        partitioned.read();
+        LocalDate day = LocalDate.of(2025, 3, 10);
+        partitioned.record(new Transaction(MovementType.SPESA, new Person("Mario"), 10, day, List.of()));
+        LedgerSnapshot first = partitioned.snapshot();
+
+        partitioned.record(new Transaction(MovementType.SPESA, new Person("Mario"), 10, day, List.of()));
+        partitioned.record(new Transaction(MovementType.GUADAGNO, new Person("Mario"), 99, day.minusMonths(2), List.of()));
+        LedgerSnapshot third = partitioned.snapshot();
+
+        // La prima vista viene letta solo ora, dopo le scritture successive
+        assertEquals(1, first.getTransactions().size());
+        assertEquals(3, third.getTransactions().size());
+        assertEquals(1000L, first.getTransactions().get(0).getCents());
+    }
+
+    private static AmortizationPlan planIn(LedgerSnapshot snapshot, String id) {
+        return snapshot.getAmortizationPlans().stream()
+                .filter(plan -> plan.getId().equals(id))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static void deleteDataDirectory() throws IOException {
+        Path data = Path.of(FilePaths.DATA_DIRECTORY);
+        if (!Files.exists(data)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(data)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
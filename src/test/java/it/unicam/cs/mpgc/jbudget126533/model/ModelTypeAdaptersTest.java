@@ -0,0 +1,50 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Type;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica che i budget sopravvivano al salvataggio con gli importi in euro,
+ * il formato letto da {@link BudgetManager}.
+ */
+class ModelTypeAdaptersTest {
+
+    private static final Type BUDGET_LIST = new TypeToken<List<Budget>>() {}.getType();
+
+    @Test
+    void budgetRoundTripKeepsAllocatedAndSpentAmounts() {
+        Gson gson = ModelTypeAdapters.gson();
+        Budget budget = new Budget("Spesa", 250.50, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31))
+                .withSpentAmount(75.25);
+
+        String json = gson.toJson(List.of(budget), BUDGET_LIST);
+        assertTrue(json.contains("\"allocatedAmount\":250.5"));
+        assertTrue(json.contains("\"spentAmount\":75.25"));
+
+        List<Budget> loaded = gson.fromJson(json, BUDGET_LIST);
+        assertEquals(1, loaded.size());
+        assertEquals("Spesa", loaded.get(0).getCategory());
+        assertEquals(250.50, loaded.get(0).getAllocatedAmount());
+        assertEquals(75.25, loaded.get(0).getSpentAmount());
+        assertEquals(LocalDate.of(2025, 1, 1), loaded.get(0).getStartDate());
+        assertEquals(LocalDate.of(2025, 1, 31), loaded.get(0).getEndDate());
+    }
+
+    @Test
+    void budgetWrittenInCentsIsStillRead() {
+        String json = "[{\"category\":\"Casa\",\"allocatedCents\":120000,\"spentCents\":4550,"
+                + "\"startDate\":\"2025-02-01\",\"endDate\":\"2025-02-28\"}]";
+
+        List<Budget> loaded = ModelTypeAdapters.gson().fromJson(json, BUDGET_LIST);
+        assertEquals(1200.0, loaded.get(0).getAllocatedAmount());
+        assertEquals(45.5, loaded.get(0).getSpentAmount());
+    }
+}
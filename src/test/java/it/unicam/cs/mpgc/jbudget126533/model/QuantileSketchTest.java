@@ -0,0 +1,103 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica che i quantili di un {@link QuantileSketch}, anche ottenuto unendo sketch parziali,
+ * restino entro l'errore sul rango atteso rispetto ai valori ordinati.
+ */
+class QuantileSketchTest {
+
+    /** Errore massimo accettato sul rango, con margine rispetto a 1.7/{@link QuantileSketch#DEFAULT_ACCURACY} */
+    private static final double RANK_ERROR = 0.02;
+
+    private static final double[] QUANTILES = {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99};
+
+    private final Random random = new Random(29);
+
+    @Test
+    void mergedPartialSketchesStayWithinRankError() {
+        int parts = 24;
+        int perPart = 2500;
+        long[] values = new long[parts * perPart];
+        QuantileSketch merged = new QuantileSketch();
+        for (int part = 0; part < parts; part++) {
+            // Ogni parte (un mese, un dispositivo) ha una distribuzione diversa
+            QuantileSketch partial = new QuantileSketch();
+            long scale = 1000L * (part + 1);
+            for (int i = 0; i < perPart; i++) {
+                long value = (long) (scale * -Math.log(1 - random.nextDouble()));
+                partial.add(value);
+                values[part * perPart + i] = value;
+            }
+            merged.merge(partial);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, merged.count());
+        assertEquals(values[0], merged.quantile(0));
+        assertEquals(values[values.length - 1], merged.quantile(1));
+        long[] estimates = merged.quantiles(QUANTILES);
+        for (int q = 0; q < QUANTILES.length; q++) {
+            assertWithinRankError(values, QUANTILES[q], estimates[q]);
+        }
+    }
+
+    @Test
+    void mergeMatchesSingleSketchOnSameValues() {
+        QuantileSketch single = new QuantileSketch();
+        QuantileSketch first = new QuantileSketch();
+        QuantileSketch second = new QuantileSketch();
+        long[] values = new long[30000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(1_000_000);
+            single.add(values[i]);
+            (i % 3 == 0 ? first : second).add(values[i]);
+        }
+        first.merge(second);
+        first.merge(new QuantileSketch());
+        Arrays.sort(values);
+
+        assertEquals(single.count(), first.count());
+        for (double quantile : QUANTILES) {
+            assertWithinRankError(values, quantile, single.quantile(quantile));
+            assertWithinRankError(values, quantile, first.quantile(quantile));
+        }
+    }
+
+    @Test
+    void emptySketchHasNoQuantiles() {
+        assertThrows(IllegalStateException.class, () -> new QuantileSketch().quantile(0.5));
+    }
+
+    /** Il rango esatto del valore stimato (un intervallo, se ci sono ripetizioni) deve essere vicino a quello richiesto */
+    private static void assertWithinRankError(long[] sorted, double quantile, long estimate) {
+        int below = lowerBound(sorted, estimate);
+        int atOrBelow = lowerBound(sorted, estimate + 1);
+        double wanted = quantile * sorted.length;
+        double tolerance = RANK_ERROR * sorted.length;
+        assertTrue(atOrBelow >= wanted - tolerance && below <= wanted + tolerance,
+                "quantile " + quantile + ": rango [" + below + ", " + atOrBelow + "], atteso " + wanted);
+    }
+
+    private static int lowerBound(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,84 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Confronta occorrenze e conteggi di {@link RecurrenceType}, calcolati sugli indici,
+ * con un calendario scorso giorno per giorno, compresi i giorni riportati a fine mese.
+ */
+class RecurrenceTypeTest {
+
+    private static final LocalDate ORIGIN = LocalDate.of(2023, 1, 1);
+
+    private final Random random = new Random(17);
+
+    @Test
+    void monthlyFromEndOfMonthClampsToShorterMonths() {
+        LocalDate start = LocalDate.of(2024, 1, 31);
+        LocalDate periodEnd = LocalDate.of(2024, 6, 30);
+
+        assertEquals(List.of(start, LocalDate.of(2024, 2, 29), LocalDate.of(2024, 3, 31),
+                        LocalDate.of(2024, 4, 30), LocalDate.of(2024, 5, 31), LocalDate.of(2024, 6, 30)),
+                RecurrenceType.MENSILE.occurrences(start, null, start, periodEnd).toList());
+        assertEquals(6, RecurrenceType.MENSILE.count(start, null, start, periodEnd));
+        // Il riporto a fine febbraio non si propaga: a marzo si torna al 31
+        assertEquals(LocalDate.of(2024, 3, 31), RecurrenceType.MENSILE.nextAfter(start, LocalDate.of(2024, 2, 29)));
+    }
+
+    @Test
+    void annualFromLeapDayFallsOnLastDayOfFebruary() {
+        LocalDate start = LocalDate.of(2024, 2, 29);
+
+        assertEquals(List.of(start, LocalDate.of(2025, 2, 28), LocalDate.of(2026, 2, 28),
+                        LocalDate.of(2027, 2, 28), LocalDate.of(2028, 2, 29)),
+                RecurrenceType.ANNUALE.occurrences(start, null, start, LocalDate.of(2028, 12, 31)).toList());
+        assertEquals(2, RecurrenceType.ANNUALE.count(start, null, LocalDate.of(2025, 3, 1), LocalDate.of(2028, 2, 28)));
+        assertEquals(1, RecurrenceType.ANNUALE.count(start, LocalDate.of(2025, 2, 27),
+                LocalDate.of(2024, 1, 1), LocalDate.of(2030, 1, 1)));
+    }
+
+    @Test
+    void countAndOccurrencesMatchDayByDayCalendar() {
+        for (int i = 0; i < 300; i++) {
+            RecurrenceType recurrence = RecurrenceType.values()[i % RecurrenceType.values().length];
+            // Inizi concentrati a fine mese, dove il riporto all'ultimo giorno fa la differenza
+            LocalDate start = random.nextBoolean()
+                    ? ORIGIN.plusMonths(random.nextInt(36)).withDayOfMonth(1).plusMonths(1).minusDays(1 + random.nextInt(3))
+                    : ORIGIN.plusDays(random.nextInt(1000));
+            LocalDate end = random.nextInt(3) == 0 ? null : start.plusDays(random.nextInt(1500));
+            LocalDate periodStart = ORIGIN.plusDays(random.nextInt(1500));
+            LocalDate periodEnd = periodStart.plusDays(random.nextInt(1200));
+
+            List<LocalDate> expected = new ArrayList<>();
+            for (LocalDate day = periodStart; !day.isAfter(periodEnd); day = day.plusDays(1)) {
+                if (isOccurrence(recurrence, start, end, day)) {
+                    expected.add(day);
+                }
+            }
+
+            assertEquals(expected, recurrence.occurrences(start, end, periodStart, periodEnd).toList());
+            assertEquals(expected.size(), recurrence.count(start, end, periodStart, periodEnd));
+        }
+    }
+
+    /** Verifica diretta sul giorno: stesso giorno del mese dell'inizio, o l'ultimo se il mese è più corto */
+    private static boolean isOccurrence(RecurrenceType recurrence, LocalDate start, LocalDate end, LocalDate day) {
+        if (day.isBefore(start) || (end != null && day.isAfter(end))) {
+            return false;
+        }
+        boolean clampedDay = day.getDayOfMonth() == Math.min(start.getDayOfMonth(), day.lengthOfMonth());
+        return switch (recurrence) {
+            case GIORNALIERO -> true;
+            case SETTIMANALE -> (day.toEpochDay() - start.toEpochDay()) % 7 == 0;
+            case MENSILE -> clampedDay;
+            case ANNUALE -> day.getMonth() == start.getMonth() && clampedDay;
+        };
+    }
+}
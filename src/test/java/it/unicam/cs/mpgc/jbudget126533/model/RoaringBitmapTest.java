@@ -0,0 +1,95 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Confronta una {@link RoaringBitmap} con un insieme ordinato, con blocchi sparsi rappresentati come array
+ * e blocchi densi convertiti in bitmap.
+ */
+class RoaringBitmapTest {
+
+    private final Random random = new Random(41);
+
+    @Test
+    void sparseAndDenseChunksMatchSortedSet() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        fill(bitmap, expected);
+
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertEquals(new ArrayList<>(expected), values(bitmap));
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(5 * RoaringBitmap.CHUNK_SIZE);
+            assertEquals(expected.contains(value), bitmap.contains(value));
+        }
+        for (int query = 0; query < 50; query++) {
+            int from = random.nextInt(5 * RoaringBitmap.CHUNK_SIZE);
+            int to = from + random.nextInt(2 * RoaringBitmap.CHUNK_SIZE);
+            List<Integer> range = new ArrayList<>();
+            bitmap.forEachInRange(from, to, range::add);
+            assertEquals(new ArrayList<>(expected.subSet(from, to)), range);
+        }
+    }
+
+    @Test
+    void andOrMatchSetOperations() {
+        RoaringBitmap first = new RoaringBitmap();
+        RoaringBitmap second = new RoaringBitmap();
+        TreeSet<Integer> firstValues = new TreeSet<>();
+        TreeSet<Integer> secondValues = new TreeSet<>();
+        fill(first, firstValues);
+        fill(second, secondValues);
+
+        TreeSet<Integer> intersection = new TreeSet<>(firstValues);
+        intersection.retainAll(secondValues);
+        TreeSet<Integer> union = new TreeSet<>(firstValues);
+        union.addAll(secondValues);
+
+        assertEquals(new ArrayList<>(intersection), values(first.and(second)));
+        assertEquals(new ArrayList<>(union), values(first.or(second)));
+        assertTrue(first.and(new RoaringBitmap()).isEmpty());
+    }
+
+    @Test
+    void removeChunksDropsValuesFromChunkOn() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        fill(bitmap, expected);
+
+        bitmap.removeChunksFrom(2);
+        assertEquals(new ArrayList<>(expected.headSet(2 * RoaringBitmap.CHUNK_SIZE)), values(bitmap));
+        bitmap.removeChunksFrom(0);
+        assertTrue(bitmap.isEmpty());
+        assertFalse(bitmap.contains(0));
+    }
+
+    /**
+     * Riempie cinque blocchi, dall'ultimo al primo: sparsi, oltre {@link RoaringBitmap#ARRAY_LIMIT},
+     * vuoto e pieno per metà, con inserimenti non crescenti anche all'interno di un blocco.
+     */
+    private void fill(RoaringBitmap bitmap, TreeSet<Integer> values) {
+        int[] perChunk = {500, RoaringBitmap.ARRAY_LIMIT * 3, 0, RoaringBitmap.CHUNK_SIZE / 2, 100};
+        for (int chunk = perChunk.length - 1; chunk >= 0; chunk--) {
+            for (int i = 0; i < perChunk[chunk]; i++) {
+                int value = chunk * RoaringBitmap.CHUNK_SIZE + random.nextInt(RoaringBitmap.CHUNK_SIZE);
+                bitmap.add(value);
+                values.add(value);
+            }
+        }
+    }
+
+    private static List<Integer> values(RoaringBitmap bitmap) {
+        List<Integer> values = new ArrayList<>();
+        bitmap.forEach(values::add);
+        return values;
+    }
+}
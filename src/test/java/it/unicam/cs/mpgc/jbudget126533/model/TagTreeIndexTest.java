@@ -0,0 +1,134 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Confronta le somme per sottoalbero di un {@link TagTreeIndex} con una scansione completa
+ * e, per le transazioni aggiunte nel delta, con lo stesso indice ricostruito da zero.
+ */
+class TagTreeIndexTest {
+
+    private static final LocalDate ORIGIN = LocalDate.of(2024, 1, 1);
+
+    private final Random random = new Random(13);
+
+    private final ITag casa = new Tag("Casa");
+    private final ITag affitto = new Tag("Affitto", casa);
+    private final ITag bollette = new Tag("Bollette", casa);
+    private final ITag luce = new Tag("Luce", bollette);
+    private final ITag auto = new Tag("Auto");
+    private final ITag carburante = new Tag("Carburante", auto);
+    private final List<ITag> hierarchy = List.of(casa, affitto, bollette, luce, auto, carburante);
+
+    /** Tag delle transazioni: anche tag fuori dalla gerarchia, che nel delta diventano radici nuove */
+    private final List<ITag> tags = List.of(casa, affitto, bollette, luce, auto, carburante,
+            new Tag("Viaggi"), new Tag("Regali"));
+
+    @Test
+    void subtreeSumsMatchFullScan() {
+        List<ITransaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            transactions.add(transaction(random.nextInt(600), tags));
+        }
+        TagTreeIndex index = new TagTreeIndex(transactions, hierarchy);
+
+        for (int query = 0; query < 30; query++) {
+            LocalDate start = query % 10 == 0 ? null : ORIGIN.plusDays(random.nextInt(400));
+            LocalDate end = query % 10 == 5 ? null : (start != null ? start : ORIGIN).plusDays(random.nextInt(300));
+            MovementType type = query % 3 == 0 ? null : MovementType.values()[query % 2];
+            for (ITag tag : tags) {
+                long cents = 0;
+                int count = 0;
+                for (ITransaction transaction : transactions) {
+                    if (matches(transaction, type, start, end) && inSubtree(transaction, tag.getName())) {
+                        cents += transaction.getCents();
+                        count++;
+                    }
+                }
+                // Il nome del tag radice non dipende dalle maiuscole
+                assertEquals(Money.toDouble(cents), index.sum(type, tag.getName().toUpperCase(Locale.ROOT), start, end));
+                assertEquals(count, index.count(type, tag.getName(), start, end));
+            }
+        }
+        assertEquals(0.0, index.sum(null, "Sconosciuto", null, null));
+        assertEquals(List.of("Casa", "Casa > Affitto", "Casa > Bollette", "Casa > Bollette > Luce"),
+                index.totals(null, null, null).keySet().stream().filter(path -> path.startsWith("Casa")).toList());
+    }
+
+    @Test
+    void deltaMatchesRebuiltIndex() {
+        List<ITransaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            transactions.add(transaction(i, tags.subList(0, 6)));
+        }
+        TagTreeIndex index = new TagTreeIndex(transactions, hierarchy);
+
+        for (int i = 0; i < TagTreeIndex.DELTA_LIMIT; i++) {
+            ITransaction transaction = transaction(random.nextInt(600), tags);
+            assertTrue(index.add(transaction));
+            transactions.add(transaction);
+        }
+
+        assertMatches(index, new TagTreeIndex(transactions, hierarchy));
+    }
+
+    @Test
+    void fullDeltaRejectsFurtherTransactions() {
+        TagTreeIndex index = new TagTreeIndex(List.of(), hierarchy);
+        for (int i = 0; i < TagTreeIndex.DELTA_LIMIT; i++) {
+            assertTrue(index.add(transaction(i, tags)));
+        }
+        assertFalse(index.add(transaction(0, tags)));
+    }
+
+    private ITransaction transaction(int day, List<ITag> candidates) {
+        MovementType type = random.nextBoolean() ? MovementType.SPESA : MovementType.GUADAGNO;
+        // Fino a tre tag, anche dello stesso sottoalbero: la transazione va contata una volta sola
+        List<ITag> chosen = new ArrayList<>();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            chosen.add(candidates.get(random.nextInt(candidates.size())));
+        }
+        return new Transaction(type, new Person("Mario"), random.nextInt(100000) / 100.0, ORIGIN.plusDays(day), chosen);
+    }
+
+    private static boolean matches(ITransaction transaction, MovementType type, LocalDate start, LocalDate end) {
+        LocalDate date = transaction.getDate();
+        return (type == null || transaction.getType() == type)
+                && (start == null || !date.isBefore(start)) && (end == null || !date.isAfter(end));
+    }
+
+    /** Una transazione appartiene al sottoalbero se almeno uno dei suoi tag ne discende */
+    private static boolean inSubtree(ITransaction transaction, String root) {
+        for (ITag tag : transaction.getTags()) {
+            for (ITag ancestor = tag; ancestor != null; ancestor = ancestor.getParent()) {
+                if (ancestor.getName().equalsIgnoreCase(root)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void assertMatches(TagTreeIndex index, TagTreeIndex rebuilt) {
+        for (int query = 0; query < 30; query++) {
+            LocalDate start = ORIGIN.plusDays(random.nextInt(400));
+            LocalDate end = start.plusDays(random.nextInt(300));
+            MovementType type = query % 3 == 0 ? null : MovementType.values()[query % 2];
+            for (ITag tag : tags) {
+                assertEquals(rebuilt.sum(type, tag.getName(), start, end), index.sum(type, tag.getName(), start, end));
+                assertEquals(rebuilt.count(type, tag.getName(), start, end), index.count(type, tag.getName(), start, end));
+            }
+            assertEquals(rebuilt.totals(type, start, end), index.totals(type, start, end));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifica che l'unione delle {@link TopExpenses} parziali restituisca le stesse spese più grandi
+ * dell'ordinamento completo.
+ */
+class TopExpensesTest {
+
+    private static final LocalDate ORIGIN = LocalDate.of(2024, 1, 1);
+
+    private final Random random = new Random(31);
+
+    @Test
+    void mergedPartialsMatchSortedExpenses() {
+        List<ITransaction> all = new ArrayList<>();
+        TopExpenses merged = new TopExpenses();
+        for (int month = 0; month < 12; month++) {
+            TopExpenses partial = new TopExpenses();
+            for (int i = 0; i < 400; i++) {
+                // Importi distinti: l'ordine atteso non dipende da come vengono risolti i pari merito
+                ITransaction transaction = new Transaction(MovementType.SPESA, new Person("Mario"),
+                        -(month * 400 + i + random.nextInt(1000) * 4800 + 1) / 100.0,
+                        ORIGIN.plusMonths(month).plusDays(i % 28), List.of());
+                partial.add(transaction);
+                all.add(transaction);
+            }
+            merged.merge(partial);
+        }
+        all.sort(Comparator.comparingLong((ITransaction transaction) -> Math.abs(transaction.getCents())).reversed());
+
+        assertEquals(all.subList(0, 10), merged.largest(10));
+        assertEquals(all.subList(0, TopExpenses.CAPACITY), merged.largest(TopExpenses.CAPACITY + 20));
+        assertEquals(List.of(), merged.largest(-1));
+    }
+}
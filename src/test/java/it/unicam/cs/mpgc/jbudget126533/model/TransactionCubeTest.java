@@ -0,0 +1,124 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Confronta totali e raggruppamenti del {@link TransactionCube} con una scansione completa,
+ * con filtri per tipo, tag, persona e intervallo di mesi.
+ */
+class TransactionCubeTest {
+
+    private static final YearMonth ORIGIN = YearMonth.of(2023, 1);
+    private static final String[] TAGS = {"Casa", "Spesa", "Auto", "Svago"};
+    private static final String[] PERSONS = {"Mario", "Anna", "Luca"};
+
+    private final Random random = new Random(37);
+
+    @Test
+    void cubeMatchesFullScan() {
+        List<ITransaction> transactions = new ArrayList<>();
+        TransactionCube cube = new TransactionCube();
+        for (int i = 0; i < 3000; i++) {
+            ITransaction transaction = transaction();
+            cube.add(transaction);
+            transactions.add(transaction);
+        }
+        assertMatches(cube, transactions);
+
+        TransactionCube rebuilt = new TransactionCube();
+        rebuilt.rebuild(transactions);
+        assertMatches(rebuilt, transactions);
+    }
+
+    private ITransaction transaction() {
+        MovementType type = random.nextBoolean() ? MovementType.SPESA : MovementType.GUADAGNO;
+        // Da zero a tre tag, con ripetizioni e maiuscole diverse: i filtri sui tag ignorano le maiuscole
+        List<ITag> tags = new ArrayList<>();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            String name = TAGS[random.nextInt(TAGS.length)];
+            tags.add(new Tag(random.nextInt(5) == 0 ? name.toUpperCase(Locale.ROOT) : name));
+        }
+        LocalDate date = random.nextInt(50) == 0 ? null : ORIGIN.atDay(1).plusDays(random.nextInt(730));
+        return new Transaction(type, new Person(PERSONS[random.nextInt(PERSONS.length)]),
+                random.nextInt(100000) / 100.0, date, tags);
+    }
+
+    private void assertMatches(TransactionCube cube, List<ITransaction> transactions) {
+        for (int query = 0; query < 40; query++) {
+            YearMonth from = query % 8 == 0 ? null : ORIGIN.plusMonths(random.nextInt(24));
+            YearMonth to = query % 8 == 4 ? null : (from != null ? from : ORIGIN).plusMonths(random.nextInt(12));
+            MovementType type = query % 3 == 0 ? null : MovementType.values()[query % 2];
+            String tag = query % 5 == 0 ? null : TAGS[query % TAGS.length].toLowerCase(Locale.ROOT);
+            String person = query % 4 == 0 ? null : PERSONS[query % PERSONS.length];
+
+            List<ITransaction> matching = transactions.stream()
+                    .filter(transaction -> matches(transaction, type, tag, person, from, to))
+                    .toList();
+
+            assertEquals(matching.stream().mapToLong(ITransaction::getCents).sum(), cube.sum(type, tag, person, from, to));
+            assertEquals(matching.size(), cube.count(type, tag, person, from, to));
+            Map<YearMonth, Long> byMonth = cube.sumByMonth(type, tag, person, from, to);
+            assertEquals(new TreeMap<>(group(matching, TransactionCubeTest::month)), byMonth);
+            assertEquals(new ArrayList<>(new TreeMap<>(byMonth).keySet()), new ArrayList<>(byMonth.keySet()));
+            assertEquals(group(matching, TransactionCubeTest::tagSet), cube.sumByTagSet(type, tag, person, from, to));
+            assertEquals(group(matching, transaction -> List.of(transaction.getUser())),
+                    cube.sumByPerson(type, tag, person, from, to));
+            assertEquals(group(matching, transaction -> names(transaction).stream().distinct().toList()),
+                    cube.sumByTag(type, tag, person, from, to));
+        }
+    }
+
+    private static boolean matches(ITransaction transaction, MovementType type, String tag, String person,
+                                   YearMonth from, YearMonth to) {
+        LocalDate date = transaction.getDate();
+        // Le transazioni senza data stanno nel mese fittizio, incluso solo senza limite inferiore
+        if (date == null && from != null) {
+            return false;
+        }
+        if (date != null && ((from != null && YearMonth.from(date).isBefore(from))
+                || (to != null && YearMonth.from(date).isAfter(to)))) {
+            return false;
+        }
+        return (type == null || transaction.getType() == type)
+                && (person == null || person.equalsIgnoreCase(transaction.getUser()))
+                && (tag == null || names(transaction).stream().anyMatch(tag::equalsIgnoreCase));
+    }
+
+    private static List<YearMonth> month(ITransaction transaction) {
+        return transaction.getDate() == null ? List.of() : List.of(YearMonth.from(transaction.getDate()));
+    }
+
+    private static List<String> tagSet(ITransaction transaction) {
+        String key = names(transaction).stream().sorted().collect(Collectors.joining(", "));
+        return key.isEmpty() ? List.of() : List.of(key);
+    }
+
+    private static <K> Map<K, Long> group(List<ITransaction> transactions,
+                                          Function<ITransaction, List<K>> keys) {
+        Map<K, Long> totals = new HashMap<>();
+        for (ITransaction transaction : transactions) {
+            for (K key : keys.apply(transaction)) {
+                totals.merge(key, transaction.getCents(), Long::sum);
+            }
+        }
+        return totals;
+    }
+
+    private static List<String> names(ITransaction transaction) {
+        return transaction.getTags().stream().map(ITag::getName).toList();
+    }
+}
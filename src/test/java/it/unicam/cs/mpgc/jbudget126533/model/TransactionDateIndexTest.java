@@ -0,0 +1,106 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Confronta le risposte del {@link TransactionDateIndex} con una scansione completa,
+ * con inserimenti retrodatati che passano dal delta e dalla sua fusione.
+ */
+class TransactionDateIndexTest {
+
+    private static final LocalDate ORIGIN = LocalDate.of(2020, 1, 1);
+    private static final String[] TAGS = {"Casa", "Spesa", "Auto"};
+
+    private final Random random = new Random(11);
+
+    @Test
+    void backDatedInsertsMatchFullScan() {
+        TransactionDateIndex index = new TransactionDateIndex();
+        List<ITransaction> inserted = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // Un inserimento su cinque è retrodatato: il delta si riempie e viene fuso più volte
+            int day = i % 5 == 0 ? random.nextInt(i + 1) : i;
+            ITransaction transaction = transaction(day);
+            index.add(transaction);
+            inserted.add(transaction);
+            if (i % 97 == 0) {
+                assertMatches(index, inserted);
+            }
+        }
+        assertMatches(index, inserted);
+    }
+
+    @Test
+    void mergeAcrossPostingChunksMatchesFullScan() {
+        TransactionDateIndex index = new TransactionDateIndex();
+        List<ITransaction> inserted = new ArrayList<>();
+        int count = RoaringBitmap.CHUNK_SIZE + 5000;
+        for (int i = 0; i < count; i++) {
+            ITransaction transaction = transaction(i / 10);
+            index.add(transaction);
+            inserted.add(transaction);
+        }
+        // Retrodatate nel primo blocco: la fusione sposta posizioni di entrambi i blocchi
+        for (int i = 0; i <= TransactionDateIndex.DELTA_LIMIT; i++) {
+            ITransaction transaction = transaction(random.nextInt(1000));
+            index.add(transaction);
+            inserted.add(transaction);
+        }
+        assertMatches(index, inserted);
+    }
+
+    @Test
+    void rebuildFromUnsortedTransactionsMatchesFullScan() {
+        List<ITransaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            transactions.add(transaction(random.nextInt(3000)));
+        }
+        TransactionDateIndex index = new TransactionDateIndex();
+        index.rebuild(transactions);
+        assertMatches(index, transactions);
+    }
+
+    private ITransaction transaction(int day) {
+        MovementType type = random.nextBoolean() ? MovementType.SPESA : MovementType.GUADAGNO;
+        List<ITag> tags = random.nextInt(3) == 0 ? List.of() : List.of(new Tag(TAGS[random.nextInt(TAGS.length)]));
+        return new Transaction(type, new Person("Mario"), random.nextInt(100000) / 100.0, ORIGIN.plusDays(day), tags);
+    }
+
+    private void assertMatches(TransactionDateIndex index, List<ITransaction> transactions) {
+        for (int query = 0; query < 30; query++) {
+            LocalDate start = ORIGIN.plusDays(random.nextInt(2000));
+            LocalDate end = start.plusDays(random.nextInt(1500));
+            MovementType type = query % 3 == 0 ? null : MovementType.values()[query % 2];
+            String tag = TAGS[query % TAGS.length];
+
+            long cents = 0;
+            int count = 0;
+            long tagCents = 0;
+            int tagCount = 0;
+            for (ITransaction transaction : transactions) {
+                LocalDate date = transaction.getDate();
+                if (date.isBefore(start) || date.isAfter(end) || (type != null && transaction.getType() != type)) {
+                    continue;
+                }
+                cents += transaction.getCents();
+                count++;
+                if (!transaction.getTags().isEmpty() && transaction.getTags().get(0).getName().equals(tag)) {
+                    tagCents += transaction.getCents();
+                    tagCount++;
+                }
+            }
+
+            assertEquals(Money.toDouble(cents), index.sum(type, start, end));
+            assertEquals(count, index.count(type, start, end));
+            assertEquals(Money.toDouble(tagCents), index.sumForTag(type, tag, start, end));
+            assertEquals(tagCount, index.countForTag(type, tag, start, end));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifica che {@link TransactionQuery} scelga il piano di accesso atteso per ogni combinazione di filtri
+ * e che ciascun piano dia lo stesso risultato di una scansione completa.
+ * I file vengono scritti in {@code Data/} sotto la directory di lavoro dei test.
+ */
+class TransactionQueryTest {
+
+    private static final LocalDate ORIGIN = LocalDate.of(2024, 1, 1);
+    private static final String[] TAGS = {"Svago", "Cinema", "Viaggi", "Carburante", "Casa"};
+    private static final String[] PERSONS = {"Mario", "Anna"};
+
+    private final Random random = new Random(43);
+    private final List<ITransaction> transactions = new ArrayList<>();
+
+    private Ledger ledger;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        deleteDataDirectory();
+        ledger = new Ledger(new DateIndexedTransactionManager());
+        ledger.read();
+        for (int i = 0; i < 600; i++) {
+            ITransaction transaction = transaction();
+            ledger.addTransaction(transaction);
+            transactions.add(transaction);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        PersistenceScheduler.flush();
+        deleteDataDirectory();
+    }
+
+    @Test
+    void monthAlignedFiltersUseTheCube() {
+        LocalDate from = LocalDate.of(2024, 3, 1);
+        LocalDate to = LocalDate.of(2024, 8, 31);
+        TransactionQuery query = ledger.query().type(MovementType.SPESA).tag("casa").person("anna")
+                .months(YearMonth.from(from), YearMonth.from(to));
+        Predicate<ITransaction> filter = transaction -> transaction.getType() == MovementType.SPESA
+                && transaction.hasTag("Casa") && "Anna".equalsIgnoreCase(transaction.getUser()) && within(transaction, from, to);
+
+        assertEquals(TransactionQuery.Access.CUBE, query.explain());
+        assertEquals(sum(filter), query.sum());
+        assertEquals(count(filter), query.count());
+
+        Map<String, Double> byMonth = new HashMap<>();
+        transactions.stream().filter(filter).forEach(transaction -> byMonth.merge(
+                YearMonth.from(transaction.getDate()).toString(), Money.toDouble(transaction.getCents()), Double::sum));
+        assertEquals(rounded(byMonth), rounded(query.groupBy(TransactionQuery.Dimension.MONTH)));
+    }
+
+    @Test
+    void indexedPlansMatchFullScan() {
+        LocalDate from = LocalDate.of(2024, 3, 5);
+        LocalDate to = LocalDate.of(2025, 2, 20);
+
+        TransactionQuery byTag = ledger.query().tag("Viaggi").between(from, to);
+        assertEquals(TransactionQuery.Access.TAG_INDEX, byTag.explain());
+        assertEquals(sum(transaction -> transaction.hasTag("Viaggi") && within(transaction, from, to)), byTag.sum());
+
+        TransactionQuery byDates = ledger.query().type(MovementType.GUADAGNO).between(from, to);
+        Predicate<ITransaction> inPeriod = transaction -> transaction.getType() == MovementType.GUADAGNO
+                && within(transaction, from, to);
+        assertEquals(TransactionQuery.Access.DATE_INDEX, byDates.explain());
+        assertEquals(sum(inPeriod), byDates.sum());
+        assertEquals(count(inPeriod), byDates.count());
+
+        // La gerarchia è quella di TagManager: il riferimento ne ricava i discendenti allo stesso modo
+        Set<String> subtree = subtreeOf("Svago");
+        TransactionQuery bySubtree = ledger.query().tagSubtree("Svago").between(from, to);
+        assertEquals(TransactionQuery.Access.TAG_TREE_INDEX, bySubtree.explain());
+        assertEquals(sum(transaction -> within(transaction, from, to) && transaction.getTags().stream()
+                .anyMatch(tag -> subtree.contains(tag.getName().toLowerCase(Locale.ROOT)))), bySubtree.sum());
+    }
+
+    @Test
+    void scanPlansMatchFullScan() {
+        LocalDate from = LocalDate.of(2024, 5, 10);
+        LocalDate to = LocalDate.of(2024, 11, 3);
+
+        TransactionQuery byPerson = ledger.query().person("Mario").between(from, to);
+        Predicate<ITransaction> ofMario = transaction -> "Mario".equals(transaction.getUser()) && within(transaction, from, to);
+        assertEquals(TransactionQuery.Access.DATE_RANGE_SCAN, byPerson.explain());
+        assertEquals(sum(ofMario), byPerson.sum());
+        assertEquals(count(ofMario), byPerson.count());
+
+        TransactionQuery byAmount = ledger.query().amountBetween(-300.0, 300.0);
+        Predicate<ITransaction> small = transaction -> Math.abs(transaction.getCents()) <= 30000;
+        assertEquals(TransactionQuery.Access.FULL_SCAN, byAmount.explain());
+        assertEquals(sum(small), byAmount.sum());
+        assertEquals(count(small), byAmount.count());
+        assertEquals(transactions.stream().filter(small).mapToLong(ITransaction::getCents).min().getAsLong(),
+                Money.centsOf(byAmount.min().getAsDouble()));
+    }
+
+    private ITransaction transaction() {
+        MovementType type = random.nextBoolean() ? MovementType.SPESA : MovementType.GUADAGNO;
+        List<ITag> tags = new ArrayList<>();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            tags.add(new Tag(TAGS[random.nextInt(TAGS.length)]));
+        }
+        double amount = random.nextInt(100000) / 100.0;
+        return new Transaction(type, new Person(PERSONS[random.nextInt(PERSONS.length)]),
+                type == MovementType.SPESA ? -amount : amount, ORIGIN.plusDays(random.nextInt(700)), tags);
+    }
+
+    private static boolean within(ITransaction transaction, LocalDate from, LocalDate to) {
+        return !transaction.getDate().isBefore(from) && !transaction.getDate().isAfter(to);
+    }
+
+    private double sum(Predicate<ITransaction> filter) {
+        return Money.toDouble(transactions.stream().filter(filter).mapToLong(ITransaction::getCents).sum());
+    }
+
+    private int count(Predicate<ITransaction> filter) {
+        return (int) transactions.stream().filter(filter).count();
+    }
+
+    /** Somme in centesimi: i totali per mese sommano importi decimali in ordine diverso */
+    private static Map<String, Long> rounded(Map<String, Double> totals) {
+        Map<String, Long> cents = new HashMap<>();
+        totals.forEach((key, value) -> cents.put(key, Money.centsOf(value)));
+        return cents;
+    }
+
+    private static Set<String> subtreeOf(String root) {
+        Set<String> names = new HashSet<>();
+        names.add(root.toLowerCase(Locale.ROOT));
+        for (ITag tag : TagManager.getAllTags().values()) {
+            for (ITag ancestor = tag.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+                if (root.equalsIgnoreCase(ancestor.getName())) {
+                    names.add(tag.getName().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return names;
+    }
+
+    private static void deleteDataDirectory() throws IOException {
+        Path data = Path.of(FilePaths.DATA_DIRECTORY);
+        if (!Files.exists(data)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(data)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica che uno snapshot binario di una versione precedente venga ignorato
+ * e rigenerato da {@code Movement.json}.
+ * I file vengono scritti in {@code Data/} sotto la directory di lavoro dei test.
+ */
+class TransactionSnapshotTest {
+
+    private static final Path SNAPSHOT = Path.of(FilePaths.MOVEMENT_SNAPSHOT_FILE);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        deleteDataDirectory();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        deleteDataDirectory();
+    }
+
+    @Test
+    void snapshotOfOlderVersionIsRebuiltFromJson() throws IOException {
+        List<ITransaction> transactions = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            transactions.add(new Transaction(MovementType.SPESA, new Person("Mario"), i * 10.25,
+                    LocalDate.of(2025, 3, i), List.of(new Tag("Spesa"))));
+        }
+        new FileManagement(true, true).writeAll(transactions);
+        assertEquals(2, versionOf(SNAPSHOT));
+
+        // Intestazione della versione 1, che aveva in più la sezione delle eccezioni
+        try (RandomAccessFile file = new RandomAccessFile(SNAPSHOT.toFile(), "rw")) {
+            file.seek(Integer.BYTES);
+            file.writeInt(1);
+        }
+
+        List<ITransaction> loaded = new FileManagement(true, true).read();
+        assertEquals(3, loaded.size());
+        assertEquals(3075L, loaded.get(2).getCents());
+        assertEquals(2, versionOf(SNAPSHOT));
+
+        List<ITransaction> fromSnapshot = new ArrayList<>();
+        assertTrue(TransactionSnapshot.read(SNAPSHOT.toFile(), FileManifest.get(FilePaths.MOVEMENT_FILE).sha256,
+                fromSnapshot::add));
+        assertEquals(1025L, fromSnapshot.get(0).getCents());
+    }
+
+    @Test
+    void truncatedSnapshotIsNotUsed() throws IOException {
+        new FileManagement(true, true).writeAll(List.of(new Transaction(MovementType.GUADAGNO, new Person("Mario"),
+                100, LocalDate.of(2025, 3, 1), List.of())));
+        byte[] content = Files.readAllBytes(SNAPSHOT);
+        Files.write(SNAPSHOT, Arrays.copyOf(content, content.length - 1));
+
+        assertFalse(TransactionSnapshot.read(SNAPSHOT.toFile(), FileManifest.get(FilePaths.MOVEMENT_FILE).sha256,
+                transaction -> { }));
+    }
+
+    private static int versionOf(Path snapshot) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "r")) {
+            file.seek(Integer.BYTES);
+            return file.readInt();
+        }
+    }
+
+    private static void deleteDataDirectory() throws IOException {
+        Path data = Path.of(FilePaths.DATA_DIRECTORY);
+        if (!Files.exists(data)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(data)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package it.unicam.cs.mpgc.jbudget126533.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Confronta somme, serie e finestre mobili della {@link TransactionTimeSeries} con una scansione completa,
+ * con inserimenti che allargano l'intervallo coperto in entrambe le direzioni.
+ */
+class TransactionTimeSeriesTest {
+
+    private static final LocalDate ORIGIN = LocalDate.of(2024, 6, 1);
+
+    private final Random random = new Random(23);
+
+    @Test
+    void insertsOutsideCoveredDaysMatchFullScan() {
+        TransactionTimeSeries series = new TransactionTimeSeries();
+        List<ITransaction> inserted = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            // Date sparse prima e dopo l'origine: gli alberi vengono allargati più volte
+            ITransaction transaction = transaction(random.nextInt(2 * i + 2) - i - 1);
+            series.add(transaction);
+            inserted.add(transaction);
+        }
+        // Date fuori dagli anni indicizzati: restano tra le transazioni sommate per scansione
+        for (LocalDate date : List.of(LocalDate.of(1800, 3, 1), LocalDate.of(2400, 1, 1))) {
+            ITransaction transaction = new Transaction(MovementType.SPESA, new Person("Mario"), 10, date, List.of());
+            series.add(transaction);
+            inserted.add(transaction);
+        }
+        assertMatches(series, inserted);
+
+        TransactionTimeSeries rebuilt = new TransactionTimeSeries();
+        rebuilt.rebuild(inserted);
+        assertMatches(rebuilt, inserted);
+    }
+
+    @Test
+    void seriesAndRollingWindowsMatchFullScan() {
+        TransactionTimeSeries series = new TransactionTimeSeries();
+        List<ITransaction> inserted = new ArrayList<>();
+        for (int i = 0; i < 800; i++) {
+            ITransaction transaction = transaction(random.nextInt(700));
+            series.add(transaction);
+            inserted.add(transaction);
+        }
+
+        LocalDate from = ORIGIN.plusDays(40);
+        LocalDate to = ORIGIN.plusDays(650);
+        for (TimeGranularity granularity : TimeGranularity.values()) {
+            for (MovementType type : new MovementType[]{null, MovementType.SPESA}) {
+                Map<LocalDate, Long> sums = series.series(type, granularity, from, to);
+                Map<LocalDate, Long> cumulative = series.cumulative(type, granularity, from, to);
+                Map<LocalDate, Long> rolling = series.rolling(type, 30, granularity, from, to);
+                for (LocalDate start = granularity.bucketStart(from); !start.isAfter(to); start = granularity.nextBucket(start)) {
+                    LocalDate first = start.isBefore(from) ? from : start;
+                    LocalDate end = granularity.nextBucket(start).minusDays(1);
+                    LocalDate last = end.isAfter(to) ? to : end;
+                    assertEquals(scan(inserted, type, first, last), (long) sums.get(start));
+                    assertEquals(scan(inserted, type, null, last), (long) cumulative.get(start));
+                    assertEquals(scan(inserted, type, last.minusDays(29), last), (long) rolling.get(last));
+                }
+            }
+        }
+    }
+
+    private ITransaction transaction(int day) {
+        MovementType type = random.nextBoolean() ? MovementType.SPESA : MovementType.GUADAGNO;
+        return new Transaction(type, new Person("Mario"), random.nextInt(100000) / 100.0, ORIGIN.plusDays(day), List.of());
+    }
+
+    private void assertMatches(TransactionTimeSeries series, List<ITransaction> transactions) {
+        for (int query = 0; query < 50; query++) {
+            LocalDate from = query % 10 == 0 ? null : ORIGIN.plusDays(random.nextInt(3200) - 1600);
+            LocalDate to = query % 10 == 5 ? null : (from != null ? from : ORIGIN).plusDays(random.nextInt(1600));
+            MovementType type = query % 3 == 0 ? null : MovementType.values()[query % 2];
+            assertEquals(scan(transactions, type, from, to), series.sum(type, from, to));
+        }
+        assertEquals(scan(transactions, null, null, null), series.sum(null, null, null));
+    }
+
+    private static long scan(List<ITransaction> transactions, MovementType type, LocalDate from, LocalDate to) {
+        long cents = 0;
+        for (ITransaction transaction : transactions) {
+            LocalDate date = transaction.getDate();
+            if ((from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to))
+                    && (type == null || transaction.getType() == type)) {
+                cents += transaction.getCents();
+            }
+        }
+        return cents;
+    }
+}